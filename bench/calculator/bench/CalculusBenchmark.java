@@ -0,0 +1,65 @@
+package calculator.bench;
+
+import calculator.CalculatorEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// 数值微积分：积分、求导、求根各算一次的时间（每次都从字符串开始，包括编译）
+// stringLoop 是以前的做法：把 x 换成数拼成字符串，一个点调一次 calculate，1000 个点的中点公式，精度还差得远
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CalculusBenchmark {
+
+    private static final int STRING_POINTS = 1000;
+
+    @Param({"exp(-x^2)", "sin(x)/(1+x^2)", "sqrt(x)*log(1+x)"})
+    public String expression;
+
+    private CalculatorEngine engine;
+
+    @Setup
+    public void setup() {
+        engine = new CalculatorEngine();
+    }
+
+    @Benchmark
+    public double integrate() {
+        return engine.integrate(expression, 0, 2, true);
+    }
+
+    @Benchmark
+    public double stringLoop() {
+        double h = 2.0 / STRING_POINTS;
+        double sum = 0;
+        for (int i = 0; i < STRING_POINTS; i++) {
+            String substituted = expression.replaceAll("(?<![A-Za-z])x(?![A-Za-z])", "(" + (i + 0.5) * h + ")");
+            sum += engine.calculate(substituted, true);
+        }
+        return sum * h;
+    }
+
+    @Benchmark
+    public double derive() {
+        return engine.derive(expression, 1, true);
+    }
+
+    @Benchmark
+    public double solve() {
+        return engine.solve("cos(x) - x", 0, 1, true);
+    }
+}
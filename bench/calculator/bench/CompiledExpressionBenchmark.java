@@ -0,0 +1,56 @@
+package calculator.bench;
+
+import calculator.CalculatorEngine;
+import calculator.CompiledExpression;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// 编译好的带变量表达式：单点求值和批量求值（制表、扫描参数的场景）
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class CompiledExpressionBenchmark {
+
+    private static final int POINTS = 1024;
+
+    private CompiledExpression compiled;
+    private double[] xs;
+    private double[] out;
+
+    @Setup
+    public void setup() {
+        compiled = new CalculatorEngine().compile("(x)^2+cbrt(x)-log(x)/log(2.0)", true, "x");
+        xs = new double[POINTS];
+        out = new double[POINTS];
+        for (int i = 0; i < POINTS; i++) {
+            xs[i] = 1 + i * 0.01;
+        }
+    }
+
+    @Benchmark
+    public double evaluate() {
+        return compiled.evaluate(2.5);
+    }
+
+    // 按每个点计时
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public double[] sweep() {
+        compiled.evaluate(xs, out);
+        return out;
+    }
+}
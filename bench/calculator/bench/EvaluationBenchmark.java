@@ -0,0 +1,55 @@
+package calculator.bench;
+
+import calculator.CalculatorEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// 求值链路的基准：解析+求值（缓存没命中）和缓存命中
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class EvaluationBenchmark {
+
+    // 按钮拼出来的几种典型表达式
+    @Param({
+            "1+2*3",
+            "sqrt(2)+cbrt(27)-(5)^2",
+            "(log(100)/log(2.0))*sin(pi/6)+10^3",
+            "-((1.5+2.5)^3)^(-1)+e^2"
+    })
+    public String expression;
+
+    private CalculatorEngine engine;
+
+    @Setup
+    public void setup() {
+        engine = new CalculatorEngine();
+        engine.evaluate(expression, true); // 先放进缓存
+    }
+
+    // 每次都重新解析编译再算（相当于缓存没命中时的 evaluateExpression）
+    @Benchmark
+    public double parseAndEvaluate() {
+        return engine.compile(expression, true).evaluate();
+    }
+
+    // 缓存命中：只剩查缓存 + 求值
+    @Benchmark
+    public double cachedEvaluate() {
+        return engine.evaluate(expression, true);
+    }
+}
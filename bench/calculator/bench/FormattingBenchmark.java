@@ -0,0 +1,66 @@
+package calculator.bench;
+
+import calculator.CalculatorEngine;
+import calculator.ResultFormatter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.text.DecimalFormat;
+import java.util.concurrent.TimeUnit;
+
+// 结果格式化的基准（displayResult 里把 double 变成显示文本的那一步）
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class FormattingBenchmark {
+
+    // 整数、短小数、要截到 10 位的小数、很大的数、很小的数
+    @Param({"42", "0.125", "3.141592653589793", "1.2345678901234567E15", "1.0E-7"})
+    public double value;
+
+    private CalculatorEngine engine;
+    private char[] buffer;
+    private DecimalFormat decimalFormat;
+
+    @Setup
+    public void setup() {
+        engine = new CalculatorEngine();
+        buffer = new char[ResultFormatter.MAX_LENGTH];
+        decimalFormat = new DecimalFormat("#.##########");
+    }
+
+    @Benchmark
+    public String format() {
+        return engine.format(value);
+    }
+
+    // 直接写进缓冲区（批处理单线程时就是这样用的），没有对象分配
+    @Benchmark
+    public int formatIntoBuffer() {
+        return engine.format(value, buffer, 0);
+    }
+
+    // 百分比拼回表达式时用的完整格式
+    @Benchmark
+    public int formatShortest() {
+        return ResultFormatter.formatShortest(value, buffer, 0);
+    }
+
+    // 以前的做法，做对比用
+    @Benchmark
+    public String decimalFormat() {
+        return decimalFormat.format(value);
+    }
+}
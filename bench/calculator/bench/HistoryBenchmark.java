@@ -0,0 +1,78 @@
+package calculator.bench;
+
+import calculator.CalculationHistory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// 一百万条历史：取一条、按前缀搜（搜不到就得把索引整个扫一遍，是最慢的情况）、追加一条
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HistoryBenchmark {
+
+    private static final int ENTRIES = 1_000_000;
+
+    // 常见的前缀、只有几条的长前缀、一条也没有的
+    @Param({"sin(", "12345+678", "zzz"})
+    public String prefix;
+
+    private Path directory;
+    private CalculationHistory history;
+    private final Random random = new Random(42);
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("history-bench");
+        history = CalculationHistory.open(directory);
+        String[] shapes = {"sin(%d)", "%d+%d", "sqrt(%d)*%d", "%d/%d-1", "log(%d)"};
+        for (int i = 0; i < ENTRIES; i++) {
+            String expression = String.format(shapes[i % shapes.length], random.nextInt(100000), random.nextInt(1000));
+            history.append(expression, "0", true, false, i);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        history.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public CalculationHistory.Entry get() throws IOException {
+        return history.get(random.nextInt(ENTRIES));
+    }
+
+    @Benchmark
+    public List<CalculationHistory.Entry> search() throws IOException {
+        return history.search(prefix, 50);
+    }
+
+    @Benchmark
+    public long append() throws IOException {
+        return history.append("1+2*3", "7", true, false, 0);
+    }
+}
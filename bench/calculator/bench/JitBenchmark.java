@@ -0,0 +1,70 @@
+package calculator.bench;
+
+import calculator.CalculatorEngine;
+import calculator.CompiledExpression;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// 逐点求值：一直解释执行（-Dcalculator.jit=false）和算够次数后换成生成的类比一比，按每个点计时
+// 预热的第一轮就过了门槛，测的都是生成以后的；用户函数的那个看的是调用能不能内联进去
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JitBenchmark {
+
+    private static final int POINTS = 1 << 16;
+
+    @Param({"3*x^3 - 2*x^2 + x - 7", "hyp(x, 2*x) / (x*x + 1)", "sin(x)*cos(x)+x/2"})
+    public String expression;
+
+    private CompiledExpression compiled;
+    private double[] xs;
+    private double[] out;
+
+    @Setup
+    public void setup() {
+        CalculatorEngine engine = new CalculatorEngine();
+        engine.defineFunctions(List.of("hyp(a, b) = sqrt(a^2 + b^2)"));
+        compiled = engine.compile(expression, true, "x");
+        xs = new double[POINTS];
+        out = new double[POINTS];
+        for (int i = 0; i < POINTS; i++) {
+            xs[i] = (i - POINTS / 2) * 0.001;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    @Fork(value = 1, jvmArgsAppend = "-Dcalculator.jit=false")
+    public double[] interpreted() {
+        for (int i = 0; i < POINTS; i++) {
+            out[i] = compiled.evaluate(xs[i]);
+        }
+        return out;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public double[] tiered() {
+        for (int i = 0; i < POINTS; i++) {
+            out[i] = compiled.evaluate(xs[i]);
+        }
+        return out;
+    }
+}
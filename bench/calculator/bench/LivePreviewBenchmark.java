@@ -0,0 +1,60 @@
+package calculator.bench;
+
+import calculator.CalculatorEngine;
+import calculator.LivePreview;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// 边输入边预览：在一个很长的表达式末尾敲一个字再删掉，每次按键的开销不应该跟着表达式长度涨
+// fullReparse 是对照组：每次按键都把整个表达式重新解析一遍
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class LivePreviewBenchmark {
+
+    @Param({"10", "1000"})
+    public int terms;
+
+    private CalculatorEngine engine;
+    private LivePreview preview;
+    private String expression;
+
+    @Setup
+    public void setup() {
+        engine = new CalculatorEngine();
+        StringBuilder sb = new StringBuilder("1");
+        for (int i = 0; i < terms; i++) {
+            sb.append("+sin(").append(i).append(")*(2^0.5)/3");
+        }
+        expression = sb.toString();
+        preview = engine.newLivePreview(true);
+        preview.setText(expression);
+    }
+
+    @Benchmark
+    public Double keystroke() {
+        preview.append("7");
+        Double value = preview.getPreview();
+        preview.backspace();
+        return value;
+    }
+
+    @Benchmark
+    public double fullReparse() {
+        return engine.compile(expression + "7", true).evaluate();
+    }
+}
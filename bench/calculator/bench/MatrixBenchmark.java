@@ -0,0 +1,102 @@
+package calculator.bench;
+
+import calculator.CalculatorEngine;
+import calculator.Matrix;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// 矩阵运算：分块乘法和最直接的三重循环（double[][]，i-j-k）比一比，再加上 LU 求解、求逆、转置
+// expression 是同样的求解从表达式走（"solve(A, b)"，A、b 绑定成变量），看解析那一层的开销
+// 多核的机器上大的运算会并行，核数不同结果差得多，对比的时候注意
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MatrixBenchmark {
+
+    @Param({"64", "256", "512"})
+    public int size;
+
+    private CalculatorEngine engine;
+    private Matrix a;
+    private Matrix b;
+    private double[][] rows;
+    private Map<String, Matrix> variables;
+
+    @Setup
+    public void setup() {
+        engine = new CalculatorEngine();
+        Random random = new Random(42);
+        double[] data = new double[size * size];
+        rows = new double[size][size];
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                double value = random.nextDouble() - 0.5 + (i == j ? size : 0);  // 对角占优，不会是奇异的
+                data[i * size + j] = value;
+                rows[i][j] = value;
+            }
+        }
+        a = Matrix.of(size, size, data);
+        double[] right = new double[size];
+        for (int i = 0; i < size; i++) {
+            right[i] = random.nextDouble();
+        }
+        b = Matrix.vector(right);
+        variables = Map.of("A", a, "b", b);
+    }
+
+    @Benchmark
+    public Matrix multiply() {
+        return a.multiply(a);
+    }
+
+    @Benchmark
+    public double[][] naiveMultiply() {
+        double[][] result = new double[size][size];
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                double sum = 0;
+                for (int k = 0; k < size; k++) {
+                    sum += rows[i][k] * rows[k][j];
+                }
+                result[i][j] = sum;
+            }
+        }
+        return result;
+    }
+
+    @Benchmark
+    public Matrix solve() {
+        return a.solve(b);
+    }
+
+    @Benchmark
+    public Matrix inverse() {
+        return a.inverse();
+    }
+
+    @Benchmark
+    public Matrix transpose() {
+        return a.transpose();
+    }
+
+    @Benchmark
+    public Matrix expression() {
+        return engine.calculateMatrix("solve(A, b)", true, variables);
+    }
+}
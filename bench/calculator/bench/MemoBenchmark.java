@@ -0,0 +1,61 @@
+package calculator.bench;
+
+import calculator.CalculatorEngine;
+import calculator.ExpressionCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// 纯子表达式的结果缓存（角度制）：
+//   distinctTexts：一串文本不同、但都带着同一个纯子表达式的表达式（表达式缓存只留 1 个，每次都要重新解析），纯的部分每次都是查出来的
+//   cached：同一个表达式反复算，纯的部分编译时就换成了数，求值只剩一个常量
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MemoBenchmark {
+
+    private static final int TEXTS = 64;
+
+    @Param({"sin(30)*cos(60)+tan(45)", "cbrt(2)*cbrt(3)"})
+    public String shared;
+
+    private CalculatorEngine missingEngine;
+    private CalculatorEngine engine;
+    private String[] texts;
+    private int next;
+
+    @Setup
+    public void setup() {
+        missingEngine = new CalculatorEngine(new ExpressionCache(1, ExpressionCache.DEFAULT_IDLE_NANOS));
+        engine = new CalculatorEngine();
+        texts = new String[TEXTS];
+        for (int i = 0; i < TEXTS; i++) {
+            texts[i] = "M*" + i + "+" + shared;
+        }
+    }
+
+    @Benchmark
+    public double distinctTexts() {
+        String text = texts[next];
+        next = (next + 1) % TEXTS;
+        return missingEngine.calculate(text, false);
+    }
+
+    @Benchmark
+    public double cached() {
+        return engine.calculate(shared, false);
+    }
+}
@@ -0,0 +1,59 @@
+package calculator.bench;
+
+import calculator.CalculatorEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// 多个线程同时往存储器里加（批处理 M+ 式的累加）：DoubleAdder 和以前那种加锁的 double 比
+// 还有表达式里用寄存器和不用寄存器的求值（用了的话每次要把寄存器读一遍）
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class MemoryBenchmark {
+
+    private CalculatorEngine engine;
+    private double lockedMemory;    // 以前的写法：synchronized 的 memory += value
+
+    @Setup
+    public void setup() {
+        engine = new CalculatorEngine();
+        engine.getRegisters().store(1, 2.5);
+    }
+
+    @Benchmark
+    public void memoryAdd() {
+        engine.memoryAdd(1.5);
+    }
+
+    @Benchmark
+    public void lockedAdd() {
+        synchronized (this) {
+            lockedMemory += 1.5;
+        }
+    }
+
+    @Benchmark
+    public double withoutRegisters() {
+        return engine.evaluate("sqrt(2)*3+1", true);
+    }
+
+    @Benchmark
+    public double withRegisters() {
+        return engine.evaluate("sqrt(M1)*3+M", true);
+    }
+}
@@ -0,0 +1,46 @@
+package calculator.bench;
+
+import calculator.CalculatorEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// 统计开着和关着时，缓存命中的求值 + 格式化差多少
+// 关着的时候应该和没加统计之前一样快，-prof gc 看也不该多出分配（事件对象被逃逸分析消掉了）
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class MetricsBenchmark {
+
+    @Param({"false", "true"})
+    public boolean enabled;
+
+    private final String expression = "sqrt(2)+cbrt(27)-(5)^2";
+    private final char[] buffer = new char[400];
+    private CalculatorEngine engine;
+
+    @Setup
+    public void setup() {
+        engine = new CalculatorEngine();
+        engine.getMetrics().setEnabled(enabled);
+        engine.evaluate(expression, true); // 先放进缓存
+    }
+
+    @Benchmark
+    public int evaluateAndFormat() {
+        return engine.format(engine.evaluate(expression, true), buffer, 0);
+    }
+}
@@ -0,0 +1,55 @@
+package calculator.bench;
+
+import calculator.CalculatorEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// 角度制三角函数和百分比按钮这两条特殊路径的基准
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class ModeBenchmark {
+
+    private CalculatorEngine engine;
+
+    @Setup
+    public void setup() {
+        engine = new CalculatorEngine();
+    }
+
+    // 角度制的 sin(30)，和弧度制的同一个计算对比
+    @Benchmark
+    public double degreeTrig() {
+        return engine.calculate("sin(30)", false);
+    }
+
+    @Benchmark
+    public double radianTrig() {
+        return engine.calculate("sin(0.5235987755982988)", true);
+    }
+
+    // 200+10 按 % 变成 200+20（要先把前半部分算出来）
+    @Benchmark
+    public String percentage() {
+        return engine.applyPercentage("200+10", true);
+    }
+
+    // 没有运算符的百分比：10 -> 0.1
+    @Benchmark
+    public String plainPercentage() {
+        return engine.applyPercentage("10", true);
+    }
+}
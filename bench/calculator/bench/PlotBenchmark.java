@@ -0,0 +1,63 @@
+package calculator.bench;
+
+import calculator.CalculatorEngine;
+import calculator.CompiledExpression;
+import calculator.FunctionSampler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// 函数图像的采样（800 × 600 像素，x 从 -10 到 10）：
+//   第一次画整条曲线；往右拖 10 个像素（只采新露出来的一条）；一个像素不动再画一遍（一个点都不用算）
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PlotBenchmark {
+
+    private static final int WIDTH = 800;
+    private static final int HEIGHT = 600;
+
+    // 平滑的、有跳变的、有定义域边界的
+    @Param({"sin(x)", "tan(x)", "sqrt(x)"})
+    public String function;
+
+    private CompiledExpression expression;
+    private FunctionSampler panning;
+    private double offset;
+
+    @Setup
+    public void setup() {
+        expression = new CalculatorEngine().compile(function, true, "x");
+        panning = new FunctionSampler(expression);
+        panning.cover(-10, 10, -7.5, 7.5, WIDTH, HEIGHT);
+    }
+
+    @Benchmark
+    public long firstFrame() {
+        return new FunctionSampler(expression).cover(-10, 10, -7.5, 7.5, WIDTH, HEIGHT);
+    }
+
+    @Benchmark
+    public long pan() {
+        offset += 10 * 20.0 / WIDTH;
+        return panning.cover(-10 + offset, 10 + offset, -7.5, 7.5, WIDTH, HEIGHT);
+    }
+
+    @Benchmark
+    public long samePosition() {
+        return panning.cover(-10 + offset, 10 + offset, -7.5, 7.5, WIDTH, HEIGHT);
+    }
+}
@@ -0,0 +1,48 @@
+package calculator.bench;
+
+import calculator.CalculatorEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+// 高精度求值和普通 double 求值的对比
+// 0.1+0.2 一遍就够；1e30+1-1e30 有抵消；sin(1e22) 要用很多位的 π 取模
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class PreciseBenchmark {
+
+    @Param({"0.1+0.2", "1e30+1-1e30", "sin(1e22)", "sqrt(2)*exp(pi)/log(7)"})
+    public String expression;
+
+    private CalculatorEngine engine;
+
+    @Setup
+    public void setup() {
+        engine = new CalculatorEngine();
+    }
+
+    @Benchmark
+    public BigDecimal precise() {
+        return engine.calculatePrecise(expression, true);
+    }
+
+    @Benchmark
+    public double plain() {
+        return engine.calculate(expression, true);
+    }
+}
@@ -0,0 +1,72 @@
+package calculator.bench;
+
+import calculator.CalculatorEngine;
+import calculator.CompiledExpression;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// 参数扫描：一百万个点，逐点调 evaluate、分块求值（不开 Vector API）、分块求值 + SIMD 比一比
+// 都按每个点计时；多项式、有理式基本全是 SIMD 能做的，带 sin、cos 的大部分时间花在标量的超越函数上
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SweepBenchmark {
+
+    private static final int POINTS = 1 << 20;
+
+    @Param({"3*x^3 - 2*x^2 + x - 7", "sqrt(abs(x))/(x*x+1)", "sin(x)*cos(x)+x/2"})
+    public String expression;
+
+    private CompiledExpression compiled;
+    private double[] xs;
+    private double[] out;
+
+    @Setup
+    public void setup() {
+        compiled = new CalculatorEngine().compile(expression, true, "x");
+        xs = new double[POINTS];
+        out = new double[POINTS];
+        for (int i = 0; i < POINTS; i++) {
+            xs[i] = (i - POINTS / 2) * 0.001;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public double[] perPoint() {
+        for (int i = 0; i < POINTS; i++) {
+            out[i] = compiled.evaluate(xs[i]);
+        }
+        return out;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public double[] block() {
+        compiled.evaluate(xs, out);
+        return out;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    @Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+    public double[] blockSimd() {
+        compiled.evaluate(xs, out);
+        return out;
+    }
+}
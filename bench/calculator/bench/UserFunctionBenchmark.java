@@ -0,0 +1,68 @@
+package calculator.bench;
+
+import calculator.CalculatorEngine;
+import calculator.CompiledExpression;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// 用户函数：调用一个定义好的函数和直接把函数体写进表达式比；重新加载一遍定义（只改函数体，缓存不清）
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UserFunctionBenchmark {
+
+    private static final List<String> DEFINITIONS = Arrays.asList(
+            "hyp(a, b) = sqrt(a^2 + b^2)",
+            "sq(x) = x^2",
+            "poly(x) = 3*x^3 - 2*x^2 + x - 7");
+
+    private CalculatorEngine engine;
+    private CompiledExpression called;
+    private CompiledExpression inlined;
+    private double x;
+
+    @Setup
+    public void setup() {
+        engine = new CalculatorEngine();
+        engine.defineFunctions(DEFINITIONS);
+        called = engine.compile("hyp(x, sq(x)) + poly(x)", true, "x");
+        inlined = engine.compile("sqrt(x^2 + (x^2)^2) + (3*x^3 - 2*x^2 + x - 7)", true, "x");
+    }
+
+    @Benchmark
+    public double userFunctions() {
+        x += 0.001;
+        return called.evaluate(x);
+    }
+
+    @Benchmark
+    public double inlined() {
+        x += 0.001;
+        return inlined.evaluate(x);
+    }
+
+    @Benchmark
+    public double cachedExpression() {
+        return engine.evaluate("hyp(3, 4) + poly(2)", true);
+    }
+
+    @Benchmark
+    public List<String> reload() {
+        return engine.defineFunctions(DEFINITIONS);
+    }
+}
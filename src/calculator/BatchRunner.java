@@ -0,0 +1,275 @@
+package calculator;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// 批处理模式：一行一个表达式，从标准输入或文件里流式读进来，结果逐行写到标准输出
+// 读一行算一行，输出也只有一个固定大小的缓冲区，所以内存占用跟输入多大没关系
+// 多线程时按块（默认 1024 行）分给线程池去算，同时在算的块数有上限，输出顺序和输入一致
+// 行首可以写寄存器操作："M1 += 表达式" 把结果累加进 M1（"-=" 减掉，"=" 存进去），输出的还是表达式的结果
+// 累加是 DoubleAdder，多线程一起加不用锁；跑完以后用到的寄存器的值打印到标准错误
+public class BatchRunner {
+
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;  // 输出缓冲区大小
+    private static final int CHUNK_SIZE = 1024;               // 多线程时每块多少行
+    private static final int CHUNKS_PER_THREAD = 2;           // 每个线程最多排几块（控制内存）
+    private static final String ERROR = "Error";              // 算不出来的行输出这个
+
+    // 一行一行往外读的数据源（标准输入和映射文件都能套进来）
+    interface LineSource {
+        String readLine() throws IOException;
+    }
+
+    private final CalculatorEngine engine;
+    private final boolean isRadians;
+    private final int threads;   // 用几个线程算，1 就是单线程顺序算
+
+    public BatchRunner(CalculatorEngine engine, boolean isRadians) {
+        this(engine, isRadians, 1);
+    }
+
+    public BatchRunner(CalculatorEngine engine, boolean isRadians, int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads must be positive");
+        }
+        this.engine = engine;
+        this.isRadians = isRadians;
+        this.threads = threads;
+    }
+
+    // 命令行入口：--batch [--degrees] [--threads N] [文件]，不给文件就读标准输入
+    public static int runCommandLine(String[] args) {
+        boolean isRadians = true;
+        int threads = 1;
+        String file = null;
+        Path functions = CalculatorEngine.defaultFunctionsFile();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--batch")) {
+                continue;
+            } else if (arg.equals("--degrees")) {
+                isRadians = false;
+            } else if (arg.equals("--radians")) {
+                isRadians = true;
+            } else if (arg.equals("--threads") && i + 1 < args.length) {
+                try {
+                    threads = Integer.parseInt(args[++i]);
+                } catch (NumberFormatException e) {
+                    threads = 0;
+                }
+                if (threads <= 0) {
+                    return usage();
+                }
+            } else if (arg.equals("--functions") && i + 1 < args.length) {
+                functions = Paths.get(args[++i]);
+            } else if (arg.startsWith("--") || file != null) {
+                return usage();
+            } else {
+                file = arg;
+            }
+        }
+
+        CalculatorEngine engine = new CalculatorEngine();
+        engine.getMetrics().register("batch");
+        try {
+            for (String error : engine.loadFunctions(functions)) {
+                System.err.println(functions.getFileName() + ": " + error);
+            }
+        } catch (IOException e) {
+            System.err.println("Cannot read functions: " + e.getMessage());
+            return 1;
+        }
+        BatchRunner runner = new BatchRunner(engine, isRadians, threads);
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), OUTPUT_BUFFER_SIZE);
+        try {
+            if (file == null) {
+                BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+                runner.run(in::readLine, out);
+            } else {
+                Path path = Paths.get(file);
+                try (MappedLineReader in = new MappedLineReader(path)) {
+                    runner.run(in::readLine, out);
+                }
+            }
+            out.flush();
+            printRegisters(engine.getRegisters());
+            return 0;
+        } catch (IOException e) {
+            System.err.println("Batch failed: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    // 不是 0 的寄存器（就是批处理里累加过的）打到标准错误，不和一行一个的结果混在一起
+    private static void printRegisters(MemoryRegisters registers) {
+        char[] buffer = new char[ResultFormatter.MAX_LENGTH];
+        for (int i = 0; i < MemoryRegisters.COUNT; i++) {
+            double value = registers.get(i);
+            if (value != 0) {
+                int length = ResultFormatter.formatShortest(value, buffer, 0);
+                System.err.println(MemoryRegisters.nameOf(i) + " = " + new String(buffer, 0, length));
+            }
+        }
+    }
+
+    private static int usage() {
+        System.err.println("Usage: --batch [--degrees|--radians] [--threads N] [--functions FILE] [file]");
+        return 2;
+    }
+
+    // 逐行求值：空行原样输出空行，算不出来的输出 Error，保证输出和输入一行对一行
+    public void run(LineSource in, Writer out) throws IOException {
+        if (threads > 1) {
+            runParallel(in, out);
+            return;
+        }
+        // 单线程时结果直接格式化进这个缓冲区再写出去，不用每行建一个 String
+        char[] buffer = new char[ResultFormatter.MAX_LENGTH];
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (CalculatorEngine.isMatrixExpression(line)) {
+                out.write(evaluateLine(line));  // 矩阵的结果多长都有，不走定长缓冲区
+            } else {
+                out.write(buffer, 0, evaluateLine(line, buffer));
+            }
+            out.write('\n');
+        }
+    }
+
+    // 多线程版本：读一块就交给线程池，最早提交的那块算完了就先写出去
+    private void runParallel(LineSource in, Writer out) throws IOException {
+        ExecutorService pool = new ForkJoinPool(threads);
+        ArrayDeque<Future<String[]>> pending = new ArrayDeque<>();
+        int maxPending = threads * CHUNKS_PER_THREAD;
+        try {
+            String[] chunk;
+            while ((chunk = readChunk(in)) != null) {
+                String[] lines = chunk;
+                pending.add(pool.submit(() -> evaluateChunk(lines)));
+                if (pending.size() >= maxPending) {
+                    writeChunk(pending.poll(), out); // 排满了就等最早那块写完再继续读
+                }
+            }
+            while (!pending.isEmpty()) {
+                writeChunk(pending.poll(), out);
+            }
+        } finally {
+            for (Future<String[]> future : pending) {
+                future.cancel(true);
+            }
+            pool.shutdownNow();
+        }
+    }
+
+    // 读一块（最多 CHUNK_SIZE 行），读完了返回 null
+    private static String[] readChunk(LineSource in) throws IOException {
+        String[] chunk = new String[CHUNK_SIZE];
+        int count = 0;
+        String line;
+        while (count < CHUNK_SIZE && (line = in.readLine()) != null) {
+            chunk[count++] = line;
+        }
+        if (count == 0) {
+            return null;
+        }
+        return count == CHUNK_SIZE ? chunk : Arrays.copyOf(chunk, count);
+    }
+
+    // 在线程池里算一块，结果直接写回原数组
+    private String[] evaluateChunk(String[] lines) {
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = evaluateLine(lines[i]);
+        }
+        return lines;
+    }
+
+    private static void writeChunk(Future<String[]> future, Writer out) throws IOException {
+        String[] results;
+        try {
+            results = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Batch interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Batch evaluation failed", e.getCause());
+        }
+        for (String result : results) {
+            out.write(result);
+            out.write('\n');
+        }
+    }
+
+    // 一行的结果，和界面上按“=”的效果一样
+    String evaluateLine(String line) {
+        if (line.trim().isEmpty()) {
+            return "";
+        }
+        try {
+            if (CalculatorEngine.isMatrixExpression(line) && line.indexOf('=') < 0) {
+                return engine.format(engine.calculateMatrix(line, isRadians));
+            }
+            return engine.format(evaluate(line));
+        } catch (Exception | StackOverflowError e) {
+            // 几千项连在一起的一行，语法树太深，递归的优化/编译会爆栈；只算这一行出错，别的行照常输出
+            return ERROR;
+        }
+    }
+
+    // 同上，结果写进 buffer，返回长度
+    private int evaluateLine(String line, char[] buffer) {
+        if (line.trim().isEmpty()) {
+            return 0;
+        }
+        try {
+            return engine.format(evaluate(line), buffer, 0);
+        } catch (Exception | StackOverflowError e) {
+            ERROR.getChars(0, ERROR.length(), buffer, 0);
+            return ERROR.length();
+        }
+    }
+
+    // 算一行；是寄存器操作的话顺便更新寄存器（表达式里不会有 '='，有的话只可能是这种写法）
+    private double evaluate(String line) {
+        int assign = line.indexOf('=');
+        if (assign < 0) {
+            return calculate(line);
+        }
+        char operator = assign > 0 ? line.charAt(assign - 1) : '=';
+        int nameEnd = operator == '+' || operator == '-' ? assign - 1 : assign;
+        int register = MemoryRegisters.indexOf(line.substring(0, nameEnd).trim());
+        if (register < 0) {
+            throw new IllegalArgumentException("Not a register: " + line.substring(0, nameEnd).trim());
+        }
+        double value = calculate(line.substring(assign + 1));
+        MemoryRegisters registers = engine.getRegisters();
+        if (operator == '+') {
+            registers.add(register, value);
+        } else if (operator == '-') {
+            registers.subtract(register, value);
+        } else {
+            registers.store(register, value);
+        }
+        return value;
+    }
+
+    // 存进寄存器的可以是矩阵表达式算出来的一个数（比如 det([[1, 2], [3, 4]])）
+    private double calculate(String expression) {
+        if (CalculatorEngine.isMatrixExpression(expression)) {
+            return engine.calculateMatrix(expression, isRadians).scalarValue();
+        }
+        return engine.calculate(expression, isRadians);
+    }
+}
@@ -0,0 +1,266 @@
+package calculator;
+
+import net.objecthunter.exp4j.function.Function;
+
+import java.util.Arrays;
+import java.util.function.DoubleUnaryOperator;
+
+// 分块求值：一批点（函数制表、参数扫描）不是每个点把指令跑一遍，而是每条指令对一整块（BLOCK 个点）做完再做下一条
+// 栈的每一格是一个数组，指令分派的开销摊到整块上，剩下的都是最简单的数组循环
+// 加减乘除、平方、立方、倒数、开方、绝对值走 VectorKernels 的 SIMD 版本（运行时有 jdk.incubator.vector 才用，
+// 没有就是普通循环，JIT 自己也能向量化一部分）；超越函数、pow、取余、自定义函数按标量一个一个算
+// 结果和逐点调 Program.evaluate 一位不差；除以 0 一样抛 ArithmeticException（出错那一块和后面的 out 不会写）
+final class BlockEvaluator {
+
+    static final int BLOCK = 256;   // 一块多少个点（向量宽度的整数倍；栈的每一格 2KB，都在 L1 里）
+
+    // 有没有 Vector API：运行时加了 --add-modules jdk.incubator.vector 才有，-Dcalculator.vector=false 可以关掉
+    static final boolean VECTOR = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+            && !"false".equals(System.getProperty("calculator.vector"));
+
+    private BlockEvaluator() {
+    }
+
+    // out[i] = program(columns[0][i], columns[1][i], ...)，i 从 0 到 n - 1
+    static void evaluate(Program program, double[][] columns, double[] out, int n) {
+        if (columns.length < program.variableCount) {
+            throw new IllegalArgumentException("Expected " + program.variableCount + " columns but got " + columns.length);
+        }
+        double[][] stack = new double[Math.max(program.maxStack, 1)][BLOCK];
+        for (int base = 0; base < n; base += BLOCK) {
+            int length = Math.min(BLOCK, n - base);
+            run(program, columns, base, length, stack);
+            System.arraycopy(stack[0], 0, out, base, length);
+        }
+    }
+
+    private static void run(Program program, double[][] columns, int base, int n, double[][] stack) {
+        final int[] code = program.code;
+        int sp = 0;
+        int pc = 0;
+        while (pc < code.length) {
+            switch (code[pc++]) {
+                case Program.CONST:
+                    Arrays.fill(stack[sp++], 0, n, program.constants[code[pc++]]);
+                    break;
+                case Program.VAR:
+                    System.arraycopy(columns[code[pc++]], base, stack[sp++], 0, n);
+                    break;
+                case Program.ADD:
+                    sp--;
+                    add(stack[sp - 1], stack[sp], n);
+                    break;
+                case Program.SUB:
+                    sp--;
+                    subtract(stack[sp - 1], stack[sp], n);
+                    break;
+                case Program.MUL:
+                    sp--;
+                    multiply(stack[sp - 1], stack[sp], n);
+                    break;
+                case Program.DIV:
+                    sp--;
+                    if (hasZero(stack[sp], n)) {
+                        throw new ArithmeticException("Division by zero!");
+                    }
+                    divide(stack[sp - 1], stack[sp], n);
+                    break;
+                case Program.MOD: {
+                    sp--;
+                    double[] a = stack[sp - 1];
+                    double[] b = stack[sp];
+                    if (hasZero(b, n)) {
+                        throw new ArithmeticException("Division by zero!");
+                    }
+                    for (int i = 0; i < n; i++) {
+                        a[i] = a[i] % b[i];
+                    }
+                    break;
+                }
+                case Program.BUILTIN2:
+                    pc++; // 目前只有 pow
+                    sp--;
+                    power(stack[sp - 1], stack[sp], n);
+                    break;
+                case Program.POW:
+                    sp--;
+                    power(stack[sp - 1], stack[sp], n);
+                    break;
+                case Program.NEG:
+                    negate(stack[sp - 1], n);
+                    break;
+                case Program.SQUARE:
+                    square(stack[sp - 1], n);
+                    break;
+                case Program.CUBE:
+                    cube(stack[sp - 1], n);
+                    break;
+                case Program.RECIP:
+                    reciprocal(stack[sp - 1], n);
+                    break;
+                case Program.BUILTIN:
+                    builtin(code[pc++], stack[sp - 1], n);
+                    break;
+                case Program.UNARY_CALL: {
+                    DoubleUnaryOperator function = program.unaryFunctions[code[pc++]];
+                    double[] a = stack[sp - 1];
+                    for (int i = 0; i < n; i++) {
+                        a[i] = function.applyAsDouble(a[i]);
+                    }
+                    break;
+                }
+                case Program.CALL: {
+                    Function function = program.functions[code[pc++]];
+                    int count = function.getNumArguments();
+                    sp -= count;
+                    double[] result = stack[sp];
+                    for (int i = 0; i < n; i++) {
+                        double[] args = new double[count];  // 和逐点求值一样每次新建：函数可能留着这个数组
+                        for (int k = 0; k < count; k++) {
+                            args[k] = stack[sp + k][i];
+                        }
+                        result[i] = function.apply(args);
+                    }
+                    sp++;
+                    break;
+                }
+                default:
+                    throw new IllegalStateException("Bad instruction at " + (pc - 1));
+            }
+        }
+    }
+
+    private static void builtin(int id, double[] a, int n) {
+        if (id == Builtins.SQRT) {
+            sqrt(a, n);
+        } else if (id == Builtins.ABS) {
+            abs(a, n);
+        } else {
+            for (int i = 0; i < n; i++) {
+                a[i] = Builtins.apply(id, a[i]);
+            }
+        }
+    }
+
+    // 下面每个都是：有 Vector API 用 SIMD，没有就是普通循环（VECTOR 是常量，JIT 只留一边）
+
+    private static void add(double[] a, double[] b, int n) {
+        if (VECTOR) {
+            VectorKernels.add(a, b, n);
+            return;
+        }
+        for (int i = 0; i < n; i++) {
+            a[i] = a[i] + b[i];
+        }
+    }
+
+    private static void subtract(double[] a, double[] b, int n) {
+        if (VECTOR) {
+            VectorKernels.subtract(a, b, n);
+            return;
+        }
+        for (int i = 0; i < n; i++) {
+            a[i] = a[i] - b[i];
+        }
+    }
+
+    private static void multiply(double[] a, double[] b, int n) {
+        if (VECTOR) {
+            VectorKernels.multiply(a, b, n);
+            return;
+        }
+        for (int i = 0; i < n; i++) {
+            a[i] = a[i] * b[i];
+        }
+    }
+
+    private static void divide(double[] a, double[] b, int n) {
+        if (VECTOR) {
+            VectorKernels.divide(a, b, n);
+            return;
+        }
+        for (int i = 0; i < n; i++) {
+            a[i] = a[i] / b[i];
+        }
+    }
+
+    // pow 逐个算（没有 SIMD 版本）
+    private static void power(double[] a, double[] b, int n) {
+        for (int i = 0; i < n; i++) {
+            a[i] = Math.pow(a[i], b[i]);
+        }
+    }
+
+    private static boolean hasZero(double[] a, int n) {
+        if (VECTOR) {
+            return VectorKernels.hasZero(a, n);
+        }
+        for (int i = 0; i < n; i++) {
+            if (a[i] == 0d) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void negate(double[] a, int n) {
+        if (VECTOR) {
+            VectorKernels.negate(a, n);
+            return;
+        }
+        for (int i = 0; i < n; i++) {
+            a[i] = -a[i];
+        }
+    }
+
+    private static void square(double[] a, int n) {
+        if (VECTOR) {
+            VectorKernels.square(a, n);
+            return;
+        }
+        for (int i = 0; i < n; i++) {
+            a[i] = a[i] * a[i];
+        }
+    }
+
+    private static void cube(double[] a, int n) {
+        if (VECTOR) {
+            VectorKernels.cube(a, n);
+            return;
+        }
+        for (int i = 0; i < n; i++) {
+            double x = a[i];
+            a[i] = x * x * x;
+        }
+    }
+
+    private static void reciprocal(double[] a, int n) {
+        if (VECTOR) {
+            VectorKernels.reciprocal(a, n);
+            return;
+        }
+        for (int i = 0; i < n; i++) {
+            a[i] = 1d / a[i];
+        }
+    }
+
+    private static void sqrt(double[] a, int n) {
+        if (VECTOR) {
+            VectorKernels.sqrt(a, n);
+            return;
+        }
+        for (int i = 0; i < n; i++) {
+            a[i] = Math.sqrt(a[i]);
+        }
+    }
+
+    private static void abs(double[] a, int n) {
+        if (VECTOR) {
+            VectorKernels.abs(a, n);
+            return;
+        }
+        for (int i = 0; i < n; i++) {
+            a[i] = Math.abs(a[i]);
+        }
+    }
+}
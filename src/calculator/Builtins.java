@@ -0,0 +1,128 @@
+package calculator;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// 内置函数表：和 exp4j 自带的函数一一对应，名字、参数个数、算法都一样
+// 用编号而不是对象来表示，这样编译出来的 Program 里就是一个整数，求值时一个 switch 就搞定
+final class Builtins {
+
+    static final int SIN = 0;
+    static final int COS = 1;
+    static final int TAN = 2;
+    static final int COT = 3;
+    static final int ASIN = 4;
+    static final int ACOS = 5;
+    static final int ATAN = 6;
+    static final int SINH = 7;
+    static final int COSH = 8;
+    static final int TANH = 9;
+    static final int LOG = 10;
+    static final int LOG2 = 11;
+    static final int LOG10 = 12;
+    static final int LOG1P = 13;
+    static final int ABS = 14;
+    static final int CBRT = 15;
+    static final int CEIL = 16;
+    static final int FLOOR = 17;
+    static final int SQRT = 18;
+    static final int EXP = 19;
+    static final int EXPM1 = 20;
+    static final int SIGNUM = 21;
+    static final int POW = 22;     // 唯一一个两个参数的
+
+    private static final String[] NAMES = {
+            "sin", "cos", "tan", "cot", "asin", "acos", "atan", "sinh", "cosh", "tanh",
+            "log", "log2", "log10", "log1p", "abs", "cbrt", "ceil", "floor", "sqrt", "exp",
+            "expm1", "signum", "pow"
+    };
+
+    private static final Map<String, Integer> BY_NAME = new HashMap<>();
+
+    static {
+        for (int i = 0; i < NAMES.length; i++) {
+            BY_NAME.put(NAMES[i], i);
+        }
+    }
+
+    private Builtins() {
+    }
+
+    // 按名字查编号，没有就返回 -1
+    static int lookup(String name) {
+        Integer id = BY_NAME.get(name);
+        return id == null ? -1 : id;
+    }
+
+    static String name(int id) {
+        return NAMES[id];
+    }
+
+    static int arity(int id) {
+        return id == POW ? 2 : 1;
+    }
+
+    // 单参数函数求值
+    static double apply(int id, double x) {
+        switch (id) {
+            case SIN:
+                return Math.sin(x);
+            case COS:
+                return Math.cos(x);
+            case TAN:
+                return Math.tan(x);
+            case COT: {
+                double tan = Math.tan(x);
+                if (tan == 0d) {
+                    throw new ArithmeticException("Division by zero in cotangent!");
+                }
+                return 1d / tan;
+            }
+            case ASIN:
+                return Math.asin(x);
+            case ACOS:
+                return Math.acos(x);
+            case ATAN:
+                return Math.atan(x);
+            case SINH:
+                return Math.sinh(x);
+            case COSH:
+                return Math.cosh(x);
+            case TANH:
+                return Math.tanh(x);
+            case LOG:
+                return Math.log(x);
+            case LOG2:
+                return Math.log(x) / Math.log(2d);
+            case LOG10:
+                return Math.log10(x);
+            case LOG1P:
+                return Math.log1p(x);
+            case ABS:
+                return Math.abs(x);
+            case CBRT:
+                return Math.cbrt(x);
+            case CEIL:
+                return Math.ceil(x);
+            case FLOOR:
+                return Math.floor(x);
+            case SQRT:
+                return Math.sqrt(x);
+            case EXP:
+                return Math.exp(x);
+            case EXPM1:
+                return Math.expm1(x);
+            case SIGNUM:
+                // 和 exp4j 一样：NaN 和 -0 都算 0
+                if (x > 0) {
+                    return 1;
+                } else if (x < 0) {
+                    return -1;
+                } else {
+                    return 0;
+                }
+            default:
+                throw new IllegalArgumentException("Not a one-argument builtin: " + id);
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package calculator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// 计算历史：每次按“=”算出来的（表达式、角度模式、结果、时间）追加到文件里，下次打开还在
+// 两个文件，都按 1MB 一段映射进内存，用到哪段才映射哪段，启动时不用把整个文件读到堆上：
+//   history.dat  记录本身：表达式和结果的 UTF-8 字节，一条挨一条（一条不会跨段，放不下就从下一段开头写）
+//   history.idx  索引：开头一个文件头，后面每条 32 字节定长，第 i 条直接算出位置，几百万条也是一下就取到
+// 索引里还存了表达式的前 8 个字节，按前缀搜索时先只比这 8 个字节，大部分条目不用去读记录本身
+// 追加的顺序是先写记录、再写索引、最后才改文件头里的条数，程序中途崩掉最多丢最后一条，不会读到写了一半的
+// 同一份历史同时只能被一个进程打开（开两个计算器的话，第二个打开会失败，没有历史但照常能用）
+public class CalculationHistory implements Closeable {
+
+    public static final int MAX_RECORD_BYTES = 65535;  // 表达式 + 结果超过这么长就不记了
+
+    private static final int SEGMENT_SHIFT = 20;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;  // 每段 1MB，文件也是按段变长的
+    private static final int ENTRY_SIZE = 32;                    // 索引每条多大（第 0 条的位置放文件头）
+    private static final int MAGIC = 0x43484953;                 // "CHIS"
+    private static final int VERSION = 1;
+
+    // 索引条目里各字段的位置
+    private static final int DATA_OFFSET = 0;       // long：记录在 history.dat 里的位置
+    private static final int TIMESTAMP = 8;         // long：什么时候算的（毫秒）
+    private static final int PREFIX = 16;           // long：表达式的前 8 个字节（大端，不够补 0）
+    private static final int EXPRESSION_LENGTH = 24; // int：表达式多少字节
+    private static final int RESULT_LENGTH = 28;    // short：结果多少字节（当无符号数用）
+    private static final int FLAGS = 30;            // short：下面两个标志
+
+    private static final int RADIANS = 1;
+    private static final int PRECISE = 2;
+
+    // 文件头里的字段（索引文件最开头）
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_VERSION = 4;
+    private static final int HEADER_COUNT = 8;
+
+    // 一条历史
+    public static final class Entry {
+        public final long index;          // 第几条，0 是最早的
+        public final String expression;
+        public final String result;       // 当时显示出来的结果
+        public final boolean radians;
+        public final boolean precise;     // 是不是高精度模式算的
+        public final long timestamp;      // System.currentTimeMillis()
+
+        Entry(long index, String expression, String result, boolean radians, boolean precise, long timestamp) {
+            this.index = index;
+            this.expression = expression;
+            this.result = result;
+            this.radians = radians;
+            this.precise = precise;
+            this.timestamp = timestamp;
+        }
+
+        @Override
+        public String toString() {
+            return expression + " = " + result;
+        }
+    }
+
+    // 按段映射的一个文件：段用到了才映射，文件不够长的话映射时会自动变长
+    private static final class SegmentedFile {
+        final FileChannel channel;
+        MappedByteBuffer[] segments = new MappedByteBuffer[16];
+
+        SegmentedFile(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        // position 所在的那一段（只用绝对位置的读写，不碰 buffer 的 position）
+        MappedByteBuffer segment(long position) throws IOException {
+            int index = (int) (position >>> SEGMENT_SHIFT);
+            if (index >= segments.length) {
+                segments = Arrays.copyOf(segments, Math.max(segments.length * 2, index + 1));
+            }
+            MappedByteBuffer segment = segments[index];
+            if (segment == null) {
+                segment = channel.map(FileChannel.MapMode.READ_WRITE, (long) index << SEGMENT_SHIFT, SEGMENT_SIZE);
+                segments[index] = segment;
+            }
+            return segment;
+        }
+
+        void close() throws IOException {
+            segments = null;  // 映射要等 GC 才真正释放，这里只能把引用丢掉
+            channel.close();
+        }
+    }
+
+    private final SegmentedFile data;
+    private final SegmentedFile index;
+    private final FileLock lock;
+    private long count;     // 有多少条
+    private long dataEnd;   // 下一条记录从哪里开始写
+
+    // 历史默认放在用户目录下
+    public static Path defaultDirectory() {
+        return Paths.get(System.getProperty("user.home"), ".scientific-calculator");
+    }
+
+    // 打开（没有就新建）directory 下的历史文件
+    public static CalculationHistory open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        FileChannel indexChannel = null;
+        FileChannel dataChannel = null;
+        try {
+            indexChannel = FileChannel.open(directory.resolve("history.idx"),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            FileLock lock;
+            try {
+                lock = indexChannel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                lock = null;  // 同一个进程里已经打开过了
+            }
+            if (lock == null) {
+                throw new IOException("History is in use by another calculator: " + directory);
+            }
+            dataChannel = FileChannel.open(directory.resolve("history.dat"),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            return new CalculationHistory(new SegmentedFile(dataChannel), new SegmentedFile(indexChannel), lock);
+        } catch (IOException | RuntimeException e) {
+            if (dataChannel != null) dataChannel.close();
+            if (indexChannel != null) indexChannel.close();  // 锁跟着一起放掉
+            throw e;
+        }
+    }
+
+    private CalculationHistory(SegmentedFile data, SegmentedFile index, FileLock lock) throws IOException {
+        this.data = data;
+        this.index = index;
+        this.lock = lock;
+
+        long indexSize = index.channel.size();
+        MappedByteBuffer header = index.segment(0);
+        if (indexSize == 0) {
+            header.putInt(HEADER_MAGIC, MAGIC);
+            header.putInt(HEADER_VERSION, VERSION);
+            header.putLong(HEADER_COUNT, 0);
+            return;
+        }
+        if (header.getInt(HEADER_MAGIC) != MAGIC || header.getInt(HEADER_VERSION) != VERSION) {
+            throw new IOException("Not a calculator history file");
+        }
+        // 条数不会超过索引文件放得下的（文件被截断过的话按实际的算）
+        count = Math.max(0, Math.min(header.getLong(HEADER_COUNT), indexSize / ENTRY_SIZE - 1));
+        if (count > 0) {
+            long last = entryPosition(count - 1);
+            MappedByteBuffer segment = index.segment(last);
+            int offset = offsetIn(last);
+            dataEnd = segment.getLong(offset + DATA_OFFSET) + segment.getInt(offset + EXPRESSION_LENGTH)
+                    + (segment.getShort(offset + RESULT_LENGTH) & 0xFFFF);
+        }
+    }
+
+    public synchronized long size() {
+        return count;
+    }
+
+    // 记一条，返回它是第几条；太长的不记，返回 -1
+    public synchronized long append(String expression, String result, boolean radians, boolean precise, long timestamp)
+            throws IOException {
+        byte[] expressionBytes = expression.getBytes(StandardCharsets.UTF_8);
+        byte[] resultBytes = result.getBytes(StandardCharsets.UTF_8);
+        int length = expressionBytes.length + resultBytes.length;
+        if (length > MAX_RECORD_BYTES) {
+            return -1;
+        }
+
+        // 先写记录：这一段剩下的放不下，就从下一段开头写
+        long position = dataEnd;
+        if (offsetIn(position) + length > SEGMENT_SIZE) {
+            position = ((position >>> SEGMENT_SHIFT) + 1) << SEGMENT_SHIFT;
+        }
+        MappedByteBuffer segment = data.segment(position);
+        segment.put(offsetIn(position), expressionBytes);
+        segment.put(offsetIn(position) + expressionBytes.length, resultBytes);
+
+        // 再写索引
+        long entry = entryPosition(count);
+        MappedByteBuffer indexSegment = index.segment(entry);
+        int offset = offsetIn(entry);
+        indexSegment.putLong(offset + DATA_OFFSET, position);
+        indexSegment.putLong(offset + TIMESTAMP, timestamp);
+        indexSegment.putLong(offset + PREFIX, prefixKey(expressionBytes, expressionBytes.length));
+        indexSegment.putInt(offset + EXPRESSION_LENGTH, expressionBytes.length);
+        indexSegment.putShort(offset + RESULT_LENGTH, (short) resultBytes.length);
+        indexSegment.putShort(offset + FLAGS, (short) ((radians ? RADIANS : 0) | (precise ? PRECISE : 0)));
+
+        // 最后才改条数，这之前崩掉的话这一条就当没写过
+        index.segment(0).putLong(HEADER_COUNT, count + 1);
+        dataEnd = position + length;
+        return count++;
+    }
+
+    // 取第 i 条（0 是最早的）
+    public synchronized Entry get(long i) throws IOException {
+        if (i < 0 || i >= count) {
+            throw new IndexOutOfBoundsException("History entry " + i + " out of range [0, " + count + ")");
+        }
+        long entry = entryPosition(i);
+        MappedByteBuffer segment = index.segment(entry);
+        int offset = offsetIn(entry);
+        long position = segment.getLong(offset + DATA_OFFSET);
+        int expressionLength = segment.getInt(offset + EXPRESSION_LENGTH);
+        int resultLength = segment.getShort(offset + RESULT_LENGTH) & 0xFFFF;
+        int flags = segment.getShort(offset + FLAGS);
+
+        byte[] bytes = new byte[expressionLength + resultLength];
+        data.segment(position).get(offsetIn(position), bytes);
+        return new Entry(i, new String(bytes, 0, expressionLength, StandardCharsets.UTF_8),
+                new String(bytes, expressionLength, resultLength, StandardCharsets.UTF_8),
+                (flags & RADIANS) != 0, (flags & PRECISE) != 0, segment.getLong(offset + TIMESTAMP));
+    }
+
+    // 找表达式以 prefix 开头的，从最新的往前找，最多 limit 条；prefix 是空的就是最近的 limit 条
+    public synchronized List<Entry> search(String prefix, int limit) throws IOException {
+        byte[] query = prefix.getBytes(StandardCharsets.UTF_8);
+        int keyLength = Math.min(query.length, 8);
+        long key = prefixKey(query, keyLength);
+        long mask = keyLength == 0 ? 0 : -1L << ((8 - keyLength) * 8);  // 只比前 keyLength 个字节
+        byte[] rest = query.length > 8 ? new byte[query.length - 8] : null;
+
+        List<Entry> found = new ArrayList<>();
+        for (long i = count - 1; i >= 0 && found.size() < limit; i--) {
+            long entry = entryPosition(i);
+            MappedByteBuffer segment = index.segment(entry);
+            int offset = offsetIn(entry);
+            if ((segment.getLong(offset + PREFIX) & mask) != key) {
+                continue;
+            }
+            if (rest != null) {
+                // 前 8 个字节对上了，查询又比 8 个字节长，才去读记录比后面的
+                if (segment.getInt(offset + EXPRESSION_LENGTH) < query.length) {
+                    continue;
+                }
+                long position = segment.getLong(offset + DATA_OFFSET) + 8;
+                data.segment(position).get(offsetIn(position), rest);
+                if (!Arrays.equals(rest, 0, rest.length, query, 8, query.length)) {
+                    continue;
+                }
+            }
+            found.add(get(i));
+        }
+        return found;
+    }
+
+    // 清空历史：只是把条数清零，文件不缩（以后的记录接着用这些空间）
+    public synchronized void clear() throws IOException {
+        index.segment(0).putLong(HEADER_COUNT, 0);
+        count = 0;
+        dataEnd = 0;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (lock.isValid()) {
+            lock.release();
+        }
+        data.close();
+        index.close();
+    }
+
+    // 第 i 条在索引文件里的位置（前面空出一条的位置放文件头）
+    private static long entryPosition(long i) {
+        return (i + 1) * ENTRY_SIZE;
+    }
+
+    private static int offsetIn(long position) {
+        return (int) (position & (SEGMENT_SIZE - 1));
+    }
+
+    // 前 length（不超过 8）个字节拼成一个 long，第一个字节放最高位，后面补 0
+    // 这样比前缀就是比高位：UTF-8 里除了 \0 没有 0 字节，短的表达式补的 0 不会和查询对上
+    private static long prefixKey(byte[] bytes, int length) {
+        long key = 0;
+        for (int i = 0; i < 8; i++) {
+            key = key << 8 | (i < length ? bytes[i] & 0xFF : 0);
+        }
+        return key;
+    }
+}
@@ -3,10 +3,22 @@ package calculator;
 // 程序入口
 public class CalculatorApp {
     public static void main(String[] args) {
-        // 创建一个计算器窗口
-        ScientificCalculator calculator = new ScientificCalculator();
+        // 带 --batch 参数就走批处理，不打开窗口（也不会加载 Swing）
+        if (args.length > 0 && args[0].equals("--batch")) {
+            System.exit(BatchRunner.runCommandLine(args));
+        }
 
-        // 显示窗口
-        calculator.setVisible(true);
+        // --serve 启动本机的 HTTP 求值服务，也不打开窗口；启动成功后由服务的线程撑着进程
+        if (args.length > 0 && args[0].equals("--serve")) {
+            int status = CalculatorServer.runCommandLine(args);
+            if (status != 0) {
+                System.exit(status);
+            }
+            return;
+        }
+
+        // 在事件分发线程上创建计算器窗口并显示（Swing 的组件只能在 EDT 上碰）
+        // 构造函数只建第一帧要画的，菜单项、历史记录、预热这些等窗口出来以后再补
+        javax.swing.SwingUtilities.invokeLater(() -> new ScientificCalculator().setVisible(true));
     }
 }
@@ -0,0 +1,463 @@
+package calculator;
+
+import net.objecthunter.exp4j.function.Function;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+// 计算引擎：所有求值、格式化、存储器的逻辑都放在这里，不依赖 Swing
+// 界面只负责拼表达式和显示，真正的计算都交给它，所以也可以在无界面的程序里直接用
+// 这个类是线程安全的，多个线程可以共用同一个实例
+public class CalculatorEngine {
+
+    // 表达式没用到寄存器时传这个（全是 0，只是凑够长度，不会被读到）
+    private static final double[] UNUSED_REGISTERS = new double[MemoryRegisters.COUNT];
+
+    // 格式化用的字符缓冲区，每个线程各用各的，反复使用（ResultFormatter 本身没有状态）
+    private static final ThreadLocal<char[]> FORMAT_BUFFER =
+            ThreadLocal.withInitial(() -> new char[ResultFormatter.MAX_LENGTH]);
+
+    private final ExpressionCache expressionCache;  // 编译好的表达式缓存
+    private final EvaluationMetrics metrics;        // 耗时、命中率、出错原因的统计（默认关着）
+    private final Map<String, Function> radianFunctions;  // 弧度制下的自定义函数（解析时用；用户函数会增删）
+    private final Map<String, Function> degreeFunctions;  // 角度制下的：多了一套按角度算的三角函数
+    private final UserFunctions userFunctions;            // 从定义文件读进来的用户函数，放在上面两张表里
+    private final MemoryRegisters registers = new MemoryRegisters();  // 存储器：M 和 M1 ~ M9，表达式里可以直接用
+    private final ResultMemo resultMemo = new ResultMemo(ResultMemo.DEFAULT_MAX_SIZE);  // 纯子表达式的值，编译时按结构查
+
+    public CalculatorEngine() {
+        this(new ExpressionCache());
+    }
+
+    public CalculatorEngine(ExpressionCache expressionCache) {
+        this.expressionCache = expressionCache;
+        this.metrics = new EvaluationMetrics(expressionCache);
+
+        // 自定义函数都没有状态，所有表达式共用同一份
+        Map<String, Function> functions = new ConcurrentHashMap<>();
+        register(functions, new CustomFunctions.CbrtFunction());
+        this.radianFunctions = new ConcurrentHashMap<>(functions);
+
+        // 角度制：同名的三角函数覆盖掉内置的弧度版本
+        register(functions, new CustomFunctions.SinDegrees());
+        register(functions, new CustomFunctions.CosDegrees());
+        register(functions, new CustomFunctions.TanDegrees());
+        register(functions, new CustomFunctions.CotDegrees());
+        register(functions, new CustomFunctions.AsinDegrees());
+        register(functions, new CustomFunctions.AcosDegrees());
+        register(functions, new CustomFunctions.AtanDegrees());
+        this.degreeFunctions = functions;
+        this.userFunctions = new UserFunctions(radianFunctions, degreeFunctions);
+    }
+
+    private static void register(Map<String, Function> functions, Function function) {
+        functions.put(function.getName(), function);
+    }
+
+    // 按“=”时的计算（角度制也一样，三角函数在编译时就换成了按角度算的版本）
+    public double calculate(String expressionStr, boolean isRadians) {
+        return evaluate(expressionStr, isRadians);
+    }
+
+    // 表达式求值（支持 cbrt 等自定义函数），isRadians = false 时三角函数按角度算
+    public double evaluate(String expressionStr, boolean isRadians) {
+        // 要统计或者 JFR 在录，就走计时的版本；平时这里只多了两个布尔判断
+        EvaluationEvent event = new EvaluationEvent();
+        if (metrics.isEnabled() || event.isEnabled()) {
+            return evaluateTimed(expressionStr, isRadians, event);
+        }
+        // 先查缓存，只有没命中的时候才真正去解析
+        Program program = expressionCache.get(expressionStr, isRadians, this::compileProgram);
+        return program.evaluate(registerValues(program)); // 最终返回结果
+    }
+
+    // 和上面一样，但把解析、求值分别计时，出错的原因也记下来（异常照样往外抛）
+    private double evaluateTimed(String expressionStr, boolean isRadians, EvaluationEvent event) {
+        event.begin();
+        TimedCompiler compiler = new TimedCompiler();
+        boolean compiled = false;
+        long evaluationStart = 0;
+        double result = Double.NaN;
+        int cause = EvaluationMetrics.NONE;
+        try {
+            Program program = expressionCache.get(expressionStr, isRadians, compiler);
+            compiled = true;
+            evaluationStart = System.nanoTime();
+            result = program.evaluate(registerValues(program));
+            cause = EvaluationMetrics.classify(result);
+            return result;
+        } catch (Throwable t) {
+            cause = EvaluationMetrics.classify(t);
+            throw t;
+        } finally {
+            // 解析阶段就出错的，没有求值时间
+            long evaluationNanos = compiled ? System.nanoTime() - evaluationStart : 0;
+            if (metrics.isEnabled()) {
+                if (compiler.nanos >= 0) {
+                    metrics.recordParse(compiler.nanos);
+                }
+                metrics.recordEvaluation(evaluationNanos, cause);
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.expression = expressionStr;
+                event.radians = isRadians;
+                event.cacheHit = compiler.nanos < 0;
+                event.parseTime = Math.max(compiler.nanos, 0);
+                event.evaluationTime = evaluationNanos;
+                event.result = result;
+                event.error = EvaluationMetrics.describe(cause);
+                event.commit();
+            }
+        }
+    }
+
+    // 计时用的编译器：只有缓存没命中才会被调到，顺便记下解析 + 编译花了多久
+    private final class TimedCompiler implements ExpressionCache.Compiler {
+        long nanos = -1;    // 还是 -1 就说明缓存命中了
+
+        @Override
+        public Program compile(String expressionStr, boolean isRadians) {
+            long start = System.nanoTime();
+            try {
+                return compileProgram(expressionStr, isRadians);
+            } finally {
+                nanos = System.nanoTime() - start;
+            }
+        }
+    }
+
+    // 把表达式字符串编译成 Program（只在缓存没命中时调用），编译前先做一遍常量折叠等优化
+    // 常量 e、pi 由解析器直接识别成数值，不再做字符串替换（以前会把 exp、ceil 里的 e 也换掉）
+    // 寄存器名当变量编译进去，值在每次求值时才取，所以寄存器变了缓存也不用作废
+    // 纯的子表达式（角度制的 sin(30) 这种优化器不敢提前算的）先到 resultMemo 里换成算好的数
+    private Program compileProgram(String expressionStr, boolean isRadians) {
+        Node tree = ExpressionParser.parse(expressionStr, MemoryRegisters.NAMES, functionsFor(isRadians));
+        tree = resultMemo.fold(tree, isRadians);
+        return Program.compile(Optimizer.optimize(tree), MemoryRegisters.COUNT);
+    }
+
+    // 预热用的表达式：用到大部分内置函数、自定义函数（角度制下的三角函数）、各种运算
+    private static final String[] PREWARM_EXPRESSIONS = {
+            "sin(30)*2^3 + sqrt(16)/4 - log10(100)%7 + cbrt(8) - M",
+            "-(cos(1)+tan(0.5))^2 * exp(log(3)) / abs(-2.5) + atan(1)",
+    };
+
+    // 启动时在后台调一次：解析、优化、编译、求值、格式化、预览整条链路走一遍，类都加载好，第一次按“=”就不用等了
+    // 不经过表达式缓存、不计入统计，也不改存储器
+    public void prewarm() {
+        new EvaluationEvent().isEnabled();
+        char[] buffer = FORMAT_BUFFER.get();
+        for (String expressionStr : PREWARM_EXPRESSIONS) {
+            for (boolean isRadians : new boolean[]{true, false}) {
+                Program program = compileProgram(expressionStr, isRadians);
+                ResultFormatter.formatDisplay(program.evaluate(UNUSED_REGISTERS), buffer, 0);
+                LivePreview preview = newLivePreview(isRadians);
+                preview.setText(expressionStr);
+                preview.getPreview();
+            }
+        }
+    }
+
+    // 用到寄存器才去读它们的当前值（绝大多数表达式用不到，不用每次都把 10 个 DoubleAdder 加一遍）
+    private double[] registerValues(Program program) {
+        return program.usesVariables ? registers.values() : UNUSED_REGISTERS;
+    }
+
+    private Map<String, Function> functionsFor(boolean isRadians) {
+        return isRadians ? radianFunctions : degreeFunctions;
+    }
+
+    // 用户函数定义文件的默认位置：~/.scientific-calculator/functions.txt
+    public static Path defaultFunctionsFile() {
+        return CalculationHistory.defaultDirectory().resolve(UserFunctions.FILE_NAME);
+    }
+
+    // 按定义（一行一个，比如 "hyp(a, b) = sqrt(a^2 + b^2)"）重新设置全部用户函数，返回写错的行
+    // 只改了函数体的话缓存里的表达式照常用（直接用上新的函数体）；函数名、参数个数变了才清一次缓存
+    public List<String> defineFunctions(List<String> definitions) {
+        List<String> errors = new ArrayList<>();
+        if (userFunctions.define(definitions, errors)) {
+            expressionCache.clear();
+        }
+        return errors;
+    }
+
+    // 读定义文件，文件不存在就是没有用户函数
+    public List<String> loadFunctions(Path file) throws IOException {
+        List<String> definitions;
+        try {
+            definitions = Files.readAllLines(file, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            definitions = Collections.emptyList();
+        }
+        return defineFunctions(definitions);
+    }
+
+    // 先读一遍定义文件，之后文件一改就重新读（后台线程上），每次读完把写错的行交给 onReload
+    // 返回的 Closeable 关掉就不再盯着
+    public Closeable watchFunctions(Path file, Consumer<List<String>> onReload) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Closeable watcher = UserFunctions.watch(file, () -> {
+            try {
+                onReload.accept(loadFunctions(file));
+            } catch (IOException e) {
+                onReload.accept(Collections.singletonList(e.toString()));
+            }
+        });
+        onReload.accept(loadFunctions(file));
+        return watcher;
+    }
+
+    public List<String> getFunctionNames() {
+        return userFunctions.names();
+    }
+
+    // 高精度计算：用 BigDecimal 算到 digits 位有效数字，比 calculate 慢，给要精确数字的场合用（0.1+0.2 就是 0.3）
+    // 结果不是有限的数（NaN、无穷大），或者抵消得一位都算不准（sin(pi)），就返回 null，调用方可以改用 calculate
+    public BigDecimal calculatePrecise(String expressionStr, boolean isRadians, int digits) {
+        if (digits <= 0) {
+            throw new IllegalArgumentException("digits must be positive");
+        }
+        // 不做优化：Optimizer 是按 double 折叠常量的，会把精度丢掉
+        Node tree = ExpressionParser.parse(expressionStr, MemoryRegisters.NAMES, functionsFor(isRadians));
+        try {
+            return PreciseEvaluator.evaluate(tree, registers.values(), digits);
+        } catch (PreciseEvaluator.OutOfRangeException e) {
+            return null;
+        }
+    }
+
+    public BigDecimal calculatePrecise(String expressionStr, boolean isRadians) {
+        return calculatePrecise(expressionStr, isRadians, PreciseEvaluator.DEFAULT_DIGITS);
+    }
+
+    // 高精度结果的显示：去掉末尾的 0，特别大或特别小才用科学计数法（解析器认识 1.5E+30 这种写法）
+    public String formatPrecise(BigDecimal value) {
+        if (value.signum() == 0) {
+            return "0";
+        }
+        BigDecimal stripped = value.stripTrailingZeros();
+        int exponent = stripped.precision() - stripped.scale() - 1;
+        return exponent >= -10 && exponent < 21 ? stripped.toPlainString() : stripped.toString();
+    }
+
+    // 边输入边预览用的：一个输入框一个，角度模式换了就重新建一个
+    public LivePreview newLivePreview(boolean isRadians) {
+        return new LivePreview(functionsFor(isRadians), registers);
+    }
+
+    // 编译带变量的表达式（比如 "x^2 + y"），之后可以代入不同的值反复计算，不用再解析
+    public CompiledExpression compile(String expressionStr, boolean isRadians, String... variableNames) {
+        Node tree = ExpressionParser.parse(expressionStr, variableNames, functionsFor(isRadians));
+        tree = Optimizer.optimize(resultMemo.fold(tree, isRadians));
+        Program program = Program.compile(tree, variableNames.length);
+        return new CompiledExpression(expressionStr, isRadians, variableNames, program);
+    }
+
+    // 数值微积分（表达式里的变量是 x）：表达式只编译一次，之后都在编译好的结果上代入，算法见 Calculus
+    // ∫[a, b] f(x) dx
+    public double integrate(String expressionStr, double a, double b, boolean isRadians) {
+        return Calculus.integrate(compile(expressionStr, isRadians, Calculus.VARIABLE), a, b);
+    }
+
+    // f'(x)
+    public double derive(String expressionStr, double x, boolean isRadians) {
+        return Calculus.derive(compile(expressionStr, isRadians, Calculus.VARIABLE), x);
+    }
+
+    // f(x) = 0 在 [lo, hi] 里的根，两端的函数值要异号
+    public double solve(String expressionStr, double lo, double hi, boolean isRadians) {
+        return Calculus.solve(compile(expressionStr, isRadians, Calculus.VARIABLE), lo, hi);
+    }
+
+    // 带方括号的就是矩阵表达式，要用 calculateMatrix 算
+    public static boolean isMatrixExpression(String expressionStr) {
+        return expressionStr.indexOf('[') >= 0;
+    }
+
+    // 矩阵表达式（语法见 MatrixEvaluator）：结果是矩阵，1×1 的就是一个数；寄存器也能用
+    public Matrix calculateMatrix(String expressionStr, boolean isRadians) {
+        return calculateMatrix(expressionStr, isRadians, Collections.emptyMap());
+    }
+
+    // 同上，表达式里还能用 variables 里的矩阵（比如 "inv(A) * b"），大矩阵不用拼成字符串；和寄存器重名的话这里的优先
+    public Matrix calculateMatrix(String expressionStr, boolean isRadians, Map<String, Matrix> variables) {
+        String[] names = new String[variables.size() + MemoryRegisters.COUNT];
+        Matrix[] values = new Matrix[names.length];
+        int i = 0;
+        for (Map.Entry<String, Matrix> variable : variables.entrySet()) {
+            names[i] = variable.getKey();
+            values[i++] = variable.getValue();
+        }
+        double[] registerValues = registers.values();
+        for (int register = 0; register < MemoryRegisters.COUNT; register++) {
+            names[i] = MemoryRegisters.NAMES[register];
+            values[i++] = Matrix.scalar(registerValues[register]);
+        }
+        return MatrixEvaluator.evaluate(expressionStr, names, values, functionsFor(isRadians));
+    }
+
+    // 矩阵的显示和输入的写法一样（[1, 2] 是列向量，[[1, 2], [3, 4]] 按行），拿回去可以接着算；1×1 的就是一个数
+    public String format(Matrix value) {
+        if (value.isScalar()) {
+            return format(value.scalarValue());
+        }
+        char[] buffer = FORMAT_BUFFER.get();
+        boolean column = value.getColumns() == 1;
+        StringBuilder text = new StringBuilder();
+        text.append('[');
+        for (int row = 0; row < value.getRows(); row++) {
+            if (row > 0) {
+                text.append(", ");
+            }
+            if (!column) {
+                text.append('[');
+            }
+            for (int col = 0; col < value.getColumns(); col++) {
+                if (col > 0) {
+                    text.append(", ");
+                }
+                text.append(buffer, 0, ResultFormatter.formatDisplay(value.get(row, col), buffer, 0));
+            }
+            if (!column) {
+                text.append(']');
+            }
+        }
+        return text.append(']').toString();
+    }
+
+    // 把结果格式化成显示用的文本（最多 10 位小数，避免显示太多小数位）
+    public String format(double value) {
+        char[] buffer = FORMAT_BUFFER.get();
+        return new String(buffer, 0, format(value, buffer, 0));
+    }
+
+    // 同上，但直接写进调用方的缓冲区（至少 ResultFormatter.MAX_LENGTH 大），返回写完之后的位置，不创建 String
+    public int format(double value, char[] buffer, int offset) {
+        if (!metrics.isEnabled()) {
+            return ResultFormatter.formatDisplay(value, buffer, offset);
+        }
+        long start = System.nanoTime();
+        int end = ResultFormatter.formatDisplay(value, buffer, offset);
+        metrics.recordFormat(System.nanoTime() - start);
+        return end;
+    }
+
+    // 百分比：把表达式最后一个数字换成百分比值，返回新的表达式；没法处理就返回 null
+    public String applyPercentage(String expressionStr, boolean isRadians) {
+        // 先定位最后一个数字的位置（从后往前找）
+        int lastDigitPos = -1;
+        for (int i = expressionStr.length() - 1; i >= 0; i--) {
+            char c = expressionStr.charAt(i);
+            if ((c >= '0' && c <= '9') || c == '.') {
+                lastDigitPos = i;
+            } else if (lastDigitPos != -1) {
+                break;
+            }
+        }
+
+        if (lastDigitPos == -1) return null; // 找不到就跳出
+
+        // 然后向前找这个数字的开头
+        int startPos = lastDigitPos;
+        while (startPos > 0) {
+            char c = expressionStr.charAt(startPos - 1);
+            if ((c >= '0' && c <= '9') || c == '.') {
+                startPos--;
+            } else {
+                break;
+            }
+        }
+
+        // 先简单地除以 100
+        double number = Double.parseDouble(expressionStr.substring(startPos, lastDigitPos + 1));
+        double percentage = number / 100.0;
+
+        // 如果前面是个加减乘除，再对它取百分比（比如 200 + 10% 就变成 200 + 20）
+        if (startPos > 0) {
+            char lastOp = expressionStr.charAt(startPos - 1);
+            if (lastOp == '+' || lastOp == '-' || lastOp == '*' || lastOp == '/') {
+                String beforeOpStr = expressionStr.substring(0, startPos - 1);
+                if (!beforeOpStr.isEmpty()) {
+                    try {
+                        double beforeValue = evaluate(beforeOpStr, isRadians);
+                        percentage = beforeValue * percentage;
+                    } catch (Exception e) {
+                        // 出错就不处理，直接按默认逻辑用
+                    }
+                }
+            }
+        }
+
+        // 把原来的数字换成百分比值（写全部有效数字，还要接着算的，不能按显示的 10 位小数截掉）
+        char[] buffer = FORMAT_BUFFER.get();
+        int length = ResultFormatter.formatShortest(percentage, buffer, 0);
+        return new StringBuilder(startPos + length)
+                .append(expressionStr, 0, startPos)
+                .append(buffer, 0, length)
+                .toString();
+    }
+
+    // 倒数 1/x，0 没有倒数
+    public double reciprocal(double value) {
+        if (value == 0) {
+            throw new ArithmeticException("Division by zero");
+        }
+        return 1.0 / value;
+    }
+
+    // 取相反数 ±
+    public double negate(double value) {
+        return -value;
+    }
+
+    // 清空内存 MC
+    public void memoryClear() {
+        registers.clear(MemoryRegisters.MAIN);
+    }
+
+    // 读取内存 MR
+    public double memoryRecall() {
+        return registers.get(MemoryRegisters.MAIN);
+    }
+
+    // 把值存到内存 MS
+    public void memoryStore(double value) {
+        registers.store(MemoryRegisters.MAIN, value);
+    }
+
+    // 加到内存 M+（不加锁，多个线程可以同时加）
+    public void memoryAdd(double value) {
+        registers.add(MemoryRegisters.MAIN, value);
+    }
+
+    // 从内存中减去 M-
+    public void memorySubtract(double value) {
+        registers.subtract(MemoryRegisters.MAIN, value);
+    }
+
+    // 其他寄存器（M1 ~ M9）都在这里，按编号读写
+    public MemoryRegisters getRegisters() {
+        return registers;
+    }
+
+    public ExpressionCache getExpressionCache() {
+        return expressionCache;
+    }
+
+    public EvaluationMetrics getMetrics() {
+        return metrics;
+    }
+}
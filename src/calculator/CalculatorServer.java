@@ -0,0 +1,701 @@
+package calculator;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// 本机的 HTTP/JSON 求值服务（--serve），让别的进程也能用计算器的求值逻辑
+//   POST /evaluate  {"expression": "1+2", "radians": true}   -> {"expression": "1+2", "value": 3, "result": "3"}
+//   POST /batch     {"expressions": ["1+2", "1/0"], "radians": true} -> {"results": [{...}, {"expression": "1/0", "error": "..."}]}
+// 也可以直接用 GET /evaluate?expression=1%2B2&radians=false，或者 text/plain 的请求体（批量时一行一个）
+// 每个请求一个虚拟线程；表达式编译结果走 CalculatorEngine 的缓存
+// 同一时刻有好几个请求在算同一个表达式，只真正算一次，其他的等它的结果
+// 等着算的表达式太多（积压太深）就直接回 503，让客户端过一会儿再试，而不是越排越慢
+public class CalculatorServer {
+
+    public static final int DEFAULT_PORT = 8080;
+    public static final int DEFAULT_MAX_PENDING = 4096;   // 默认最多同时有多少个表达式在等着算
+    private static final int CACHE_SIZE = 4096;           // 服务用的缓存比界面大一些
+    private static final int MAX_BODY_BYTES = 1 << 20;    // 请求体最大 1MB
+    private static final String JSON = "application/json; charset=utf-8";
+
+    private final CalculatorEngine engine;
+    private final int maxPending;
+    private final AtomicInteger pending = new AtomicInteger();  // 已经收下、还没算完的表达式个数
+
+    // 正在算的表达式（key 和缓存的一样：规范化的文本 + 角度模式），后来的同样的请求直接等这个结果
+    private final ConcurrentHashMap<String, CompletableFuture<Result>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder evaluations = new LongAdder();   // 真正算了几次
+    private final LongAdder coalesced = new LongAdder();     // 几次是搭别人的车
+    private final LongAdder rejected = new LongAdder();      // 因为积压太深拒绝了几个请求
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    // 一个表达式的结果：算出来了就是 value + 显示文本，出错了就是 error
+    static final class Result {
+        final String expression;
+        final double value;
+        final String text;
+        final String error;
+
+        private Result(String expression, double value, String text, String error) {
+            this.expression = expression;
+            this.value = value;
+            this.text = text;
+            this.error = error;
+        }
+    }
+
+    // 请求本身有问题：格式不对（JSON 写错、缺字段）是 400，太大是 413
+    private static final class BadRequestException extends Exception {
+        final int status;
+
+        BadRequestException(String message) {
+            this(400, message);
+        }
+
+        BadRequestException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    public CalculatorServer() {
+        this(new CalculatorEngine(new ExpressionCache(CACHE_SIZE, ExpressionCache.DEFAULT_IDLE_NANOS)), DEFAULT_MAX_PENDING);
+    }
+
+    public CalculatorServer(CalculatorEngine engine, int maxPending) {
+        if (maxPending <= 0) {
+            throw new IllegalArgumentException("maxPending must be positive");
+        }
+        this.engine = engine;
+        this.maxPending = maxPending;
+    }
+
+    // 命令行入口：--serve [--port N] [--host 地址] [--max-pending N]，默认只监听本机
+    public static int runCommandLine(String[] args) {
+        String host = "127.0.0.1";
+        int port = DEFAULT_PORT;
+        int maxPending = DEFAULT_MAX_PENDING;
+        Path functions = CalculatorEngine.defaultFunctionsFile();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            try {
+                if (arg.equals("--serve")) {
+                    continue;
+                } else if (arg.equals("--port") && i + 1 < args.length) {
+                    port = Integer.parseInt(args[++i]);
+                } else if (arg.equals("--host") && i + 1 < args.length) {
+                    host = args[++i];
+                } else if (arg.equals("--max-pending") && i + 1 < args.length) {
+                    maxPending = Integer.parseInt(args[++i]);
+                } else if (arg.equals("--functions") && i + 1 < args.length) {
+                    functions = Paths.get(args[++i]);
+                } else {
+                    return usage();
+                }
+            } catch (NumberFormatException e) {
+                return usage();
+            }
+        }
+        if (port < 0 || port > 65535 || maxPending <= 0) {
+            return usage();
+        }
+
+        CalculatorEngine engine = new CalculatorEngine(new ExpressionCache(CACHE_SIZE, ExpressionCache.DEFAULT_IDLE_NANOS));
+        engine.getMetrics().register("server");
+        CalculatorServer server = new CalculatorServer(engine, maxPending);
+        try {
+            // 函数文件改了直接生效，不用重启服务
+            Path file = functions;
+            engine.watchFunctions(file, errors -> {
+                for (String error : errors) {
+                    System.err.println(file.getFileName() + ": " + error);
+                }
+            });
+            server.start(new InetSocketAddress(host, port));
+        } catch (IOException e) {
+            System.err.println("Server failed: " + e.getMessage());
+            return 1;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+        System.err.println("Listening on http://" + host + ":" + server.getPort());
+        return 0;
+    }
+
+    private static int usage() {
+        System.err.println("Usage: --serve [--port N] [--host address] [--max-pending N] [--functions FILE]");
+        return 2;
+    }
+
+    public synchronized void start(InetSocketAddress address) throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("Server already started");
+        }
+        server = HttpServer.create(address, 0);
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/evaluate", exchange -> handle(exchange, false));
+        server.createContext("/batch", exchange -> handle(exchange, true));
+        server.start();
+    }
+
+    public synchronized void stop() {
+        if (server == null) {
+            return;
+        }
+        server.stop(0);
+        executor.shutdownNow();
+        server = null;
+        executor = null;
+    }
+
+    // 实际监听的端口（端口给 0 的时候是系统挑的）
+    public synchronized int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public long getEvaluationCount() {
+        return evaluations.sum();
+    }
+
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    // ---------------- 请求处理 ----------------
+
+    private void handle(HttpExchange exchange, boolean batch) throws IOException {
+        try (exchange) {
+            String method = exchange.getRequestMethod();
+            if (!method.equals("POST") && !(method.equals("GET") && !batch)) {
+                exchange.getResponseHeaders().set("Allow", batch ? "POST" : "GET, POST");
+                send(exchange, 405, errorJson("Method not allowed"));
+                return;
+            }
+            try {
+                if (batch) {
+                    handleBatch(exchange);
+                } else {
+                    handleEvaluate(exchange);
+                }
+            } catch (BadRequestException e) {
+                send(exchange, e.status, errorJson(e.getMessage()));
+            }
+        }
+    }
+
+    private void handleEvaluate(HttpExchange exchange) throws IOException, BadRequestException {
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        boolean isRadians = radians(query, true);
+        String expression = query.get("expression");
+        if (exchange.getRequestMethod().equals("POST")) {
+            String body = readBody(exchange);
+            if (isJson(body)) {
+                Map<String, Object> request = asObject(JsonReader.parse(body));
+                expression = asString(request.get("expression"), "expression");
+                isRadians = asBoolean(request.get("radians"), isRadians);
+            } else {
+                expression = body.strip();
+            }
+        }
+        if (expression == null) {
+            throw new BadRequestException("Missing expression");
+        }
+
+        if (!acquire(1)) {
+            sendOverloaded(exchange);
+            return;
+        }
+        Result result;
+        try {
+            result = evaluate(expression, isRadians);
+        } finally {
+            pending.addAndGet(-1);
+        }
+        StringBuilder json = new StringBuilder(64);
+        appendResult(json, result, new char[ResultFormatter.MAX_LENGTH]);
+        send(exchange, result.error == null ? 200 : 422, json.toString());
+    }
+
+    private void handleBatch(HttpExchange exchange) throws IOException, BadRequestException {
+        boolean isRadians = radians(parseQuery(exchange.getRequestURI().getRawQuery()), true);
+        String body = readBody(exchange);
+        List<String> expressions = new ArrayList<>();
+        if (isJson(body)) {
+            Map<String, Object> request = asObject(JsonReader.parse(body));
+            Object list = request.get("expressions");
+            if (!(list instanceof List)) {
+                throw new BadRequestException("\"expressions\" must be an array");
+            }
+            for (Object item : (List<?>) list) {
+                expressions.add(asString(item, "expressions[]"));
+            }
+            isRadians = asBoolean(request.get("radians"), isRadians);
+        } else {
+            // 纯文本：一行一个，空行跳过
+            for (String line : body.split("\r?\n")) {
+                if (!line.isBlank()) {
+                    expressions.add(line);
+                }
+            }
+        }
+
+        int count = expressions.size();
+        if (count > maxPending) {
+            throw new BadRequestException(413, "Too many expressions in one batch (max " + maxPending + ")");
+        }
+        if (!acquire(count)) {
+            sendOverloaded(exchange);
+            return;
+        }
+        char[] buffer = new char[ResultFormatter.MAX_LENGTH];
+        StringBuilder json = new StringBuilder(32 + count * 48);
+        json.append("{\"results\":[");
+        int done = 0;
+        try {
+            for (; done < count; done++) {
+                if (done > 0) {
+                    json.append(',');
+                }
+                appendResult(json, evaluate(expressions.get(done), isRadians), buffer);
+                pending.decrementAndGet();   // 算完一个就放出一个名额
+            }
+        } finally {
+            pending.addAndGet(done - count);   // 中途出异常的话，没算的名额也要还回去
+        }
+        json.append("]}");
+        send(exchange, 200, json.toString());
+    }
+
+    // 收下 n 个表达式；积压已经太深就不收
+    private boolean acquire(int n) {
+        if (pending.addAndGet(n) > maxPending) {
+            pending.addAndGet(-n);
+            rejected.increment();
+            return false;
+        }
+        return true;
+    }
+
+    private static void sendOverloaded(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        send(exchange, 503, errorJson("Server is busy, try again later"));
+    }
+
+    // ---------------- 求值（合并相同的请求）----------------
+
+    // 和界面上按“=”一样：calculate 再 format；出错的话 error 里是原因
+    Result evaluate(String expression, boolean isRadians) {
+        String key = ExpressionCache.key(expression, isRadians);
+        CompletableFuture<Result> mine = new CompletableFuture<>();
+        CompletableFuture<Result> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            coalesced.increment();
+            Result shared = running.join();
+            return shared.expression.equals(expression) ? shared
+                    : new Result(expression, shared.value, shared.text, shared.error);
+        }
+        try {
+            Result result = compute(expression, isRadians);
+            mine.complete(result);
+            return result;
+        } catch (Throwable t) {
+            mine.completeExceptionally(t);
+            throw t;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    private Result compute(String expression, boolean isRadians) {
+        evaluations.increment();
+        try {
+            double value = engine.calculate(expression, isRadians);
+            return new Result(expression, value, engine.format(value), null);
+        } catch (RuntimeException e) {
+            String message = e.getMessage();
+            return new Result(expression, Double.NaN, null, message != null ? message : e.getClass().getSimpleName());
+        } catch (StackOverflowError e) {
+            // 几十万项连在一起的表达式，语法树太深，递归的优化/编译会爆栈；只算这一个表达式出错，服务照常
+            return new Result(expression, Double.NaN, null, "Expression is too long");
+        }
+    }
+
+    // ---------------- JSON ----------------
+
+    private static void appendResult(StringBuilder json, Result result, char[] buffer) {
+        json.append("{\"expression\":");
+        appendString(json, result.expression);
+        if (result.error != null) {
+            json.append(",\"error\":");
+            appendString(json, result.error);
+        } else {
+            // JSON 里没有 NaN 和无穷大，value 写 null，result 里还是显示文本
+            json.append(",\"value\":");
+            if (Double.isFinite(result.value)) {
+                json.append(buffer, 0, ResultFormatter.formatShortest(result.value, buffer, 0));
+            } else {
+                json.append("null");
+            }
+            json.append(",\"result\":");
+            appendString(json, result.text);
+        }
+        json.append('}');
+    }
+
+    private static String errorJson(String message) {
+        StringBuilder json = new StringBuilder("{\"error\":");
+        appendString(json, message);
+        return json.append('}').toString();
+    }
+
+    private static void appendString(StringBuilder json, String s) {
+        json.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+
+    private static boolean isJson(String body) {
+        for (int i = 0; i < body.length(); i++) {
+            char c = body.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                return c == '{';
+            }
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> asObject(Object value) throws BadRequestException {
+        if (!(value instanceof Map)) {
+            throw new BadRequestException("Request body must be a JSON object");
+        }
+        return (Map<String, Object>) value;
+    }
+
+    private static String asString(Object value, String field) throws BadRequestException {
+        if (!(value instanceof String)) {
+            throw new BadRequestException("\"" + field + "\" must be a string");
+        }
+        return (String) value;
+    }
+
+    private static boolean asBoolean(Object value, boolean defaultValue) throws BadRequestException {
+        if (value == null) {
+            return defaultValue;
+        }
+        if (!(value instanceof Boolean)) {
+            throw new BadRequestException("\"radians\" must be true or false");
+        }
+        return (Boolean) value;
+    }
+
+    // 只认请求里用得到的 JSON：对象、数组、字符串、true/false/null、数字
+    // 对象、数组最多套 MAX_DEPTH 层（递归下降的，[[[[... 套几万层会把栈撑爆）
+    private static final class JsonReader {
+        private static final int MAX_DEPTH = 64;
+
+        private final String text;
+        private int pos;
+        private int depth;
+
+        private JsonReader(String text) {
+            this.text = text;
+        }
+
+        static Object parse(String text) throws BadRequestException {
+            JsonReader reader = new JsonReader(text);
+            Object value = reader.value();
+            reader.skipWhitespace();
+            if (reader.pos != text.length()) {
+                throw reader.error("Unexpected trailing characters");
+            }
+            return value;
+        }
+
+        private Object value() throws BadRequestException {
+            skipWhitespace();
+            if (pos >= text.length()) {
+                throw error("Unexpected end of JSON");
+            }
+            char c = text.charAt(pos);
+            switch (c) {
+                case '{':
+                case '[': {
+                    if (++depth > MAX_DEPTH) {
+                        throw error("JSON is nested too deeply");
+                    }
+                    Object nested = c == '{' ? object() : array();
+                    depth--;
+                    return nested;
+                }
+                case '"':
+                    return string();
+                case 't':
+                    return literal("true", Boolean.TRUE);
+                case 'f':
+                    return literal("false", Boolean.FALSE);
+                case 'n':
+                    return literal("null", null);
+                default:
+                    return number();
+            }
+        }
+
+        private Map<String, Object> object() throws BadRequestException {
+            Map<String, Object> map = new HashMap<>();
+            pos++;
+            skipWhitespace();
+            if (peek('}')) {
+                pos++;
+                return map;
+            }
+            while (true) {
+                skipWhitespace();
+                if (!peek('"')) {
+                    throw error("Expected a field name");
+                }
+                String name = string();
+                skipWhitespace();
+                expect(':');
+                map.put(name, value());
+                skipWhitespace();
+                if (peek(',')) {
+                    pos++;
+                } else {
+                    expect('}');
+                    return map;
+                }
+            }
+        }
+
+        private List<Object> array() throws BadRequestException {
+            List<Object> list = new ArrayList<>();
+            pos++;
+            skipWhitespace();
+            if (peek(']')) {
+                pos++;
+                return list;
+            }
+            while (true) {
+                list.add(value());
+                skipWhitespace();
+                if (peek(',')) {
+                    pos++;
+                } else {
+                    expect(']');
+                    return list;
+                }
+            }
+        }
+
+        private String string() throws BadRequestException {
+            pos++;  // 开头的引号
+            StringBuilder sb = new StringBuilder();
+            while (pos < text.length()) {
+                char c = text.charAt(pos++);
+                if (c == '"') {
+                    return sb.toString();
+                }
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                if (pos >= text.length()) {
+                    break;
+                }
+                char escaped = text.charAt(pos++);
+                switch (escaped) {
+                    case '"':
+                    case '\\':
+                    case '/':
+                        sb.append(escaped);
+                        break;
+                    case 'b':
+                        sb.append('\b');
+                        break;
+                    case 'f':
+                        sb.append('\f');
+                        break;
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    case 'r':
+                        sb.append('\r');
+                        break;
+                    case 't':
+                        sb.append('\t');
+                        break;
+                    case 'u':
+                        if (pos + 4 > text.length()) {
+                            throw error("Invalid unicode escape");
+                        }
+                        try {
+                            sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw error("Invalid unicode escape");
+                        }
+                        pos += 4;
+                        break;
+                    default:
+                        throw error("Invalid escape");
+                }
+            }
+            throw error("Unterminated string");
+        }
+
+        private Object literal(String word, Object value) throws BadRequestException {
+            if (!text.startsWith(word, pos)) {
+                throw error("Unexpected token");
+            }
+            pos += word.length();
+            return value;
+        }
+
+        private Double number() throws BadRequestException {
+            int start = pos;
+            while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0) {
+                pos++;
+            }
+            try {
+                return Double.valueOf(text.substring(start, pos));
+            } catch (NumberFormatException e) {
+                throw error("Unexpected token");
+            }
+        }
+
+        private boolean peek(char c) {
+            return pos < text.length() && text.charAt(pos) == c;
+        }
+
+        private void expect(char c) throws BadRequestException {
+            if (!peek(c)) {
+                throw error("Expected '" + c + "'");
+            }
+            pos++;
+        }
+
+        private void skipWhitespace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private BadRequestException error(String message) {
+            return new BadRequestException("Invalid JSON at " + pos + ": " + message);
+        }
+    }
+
+    // ---------------- HTTP 细节 ----------------
+
+    private static String readBody(HttpExchange exchange) throws IOException, BadRequestException {
+        InputStream in = exchange.getRequestBody();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            if (out.size() + n > MAX_BODY_BYTES) {
+                throw new BadRequestException(413, "Request body too large (max " + MAX_BODY_BYTES + " bytes)");
+            }
+            out.write(buffer, 0, n);
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = eq >= 0 ? pair.substring(0, eq) : pair;
+            String value = eq >= 0 ? pair.substring(eq + 1) : "";
+            params.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    // ?radians=false 或者 ?degrees（=true）都表示角度制
+    private static boolean radians(Map<String, String> query, boolean defaultValue) throws BadRequestException {
+        String radians = query.get("radians");
+        String degrees = query.get("degrees");
+        if (radians != null) {
+            return parseFlag(radians, "radians");
+        }
+        if (degrees != null) {
+            return !(degrees.isEmpty() || parseFlag(degrees, "degrees"));
+        }
+        return defaultValue;
+    }
+
+    private static boolean parseFlag(String value, String name) throws BadRequestException {
+        if (value.equals("true")) {
+            return true;
+        }
+        if (value.equals("false")) {
+            return false;
+        }
+        throw new BadRequestException("\"" + name + "\" must be true or false");
+    }
+
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", JSON);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,406 @@
+package calculator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.stream.IntStream;
+
+// 数值微积分：定积分、导数、方程求根，都在编译好的单变量表达式（CompiledExpression）上算，表达式只解析一次
+//   integrate：自适应 Gauss-Kronrod（7 点 Gauss 嵌在 15 点 Kronrod 里，两个结果的差当误差估计），误差大的区间对半分；
+//              一开始就分成 MIN_INTERVALS 段，两头再往端点一段段对半分下去（exp(-x) 在 [0, 1e6] 上整个区间只算 15 个点，
+//              一个都落不到 0 附近，误差估计是 0，会直接返回 0）；哪个区间的节点上算出错（sin(x)/x 的节点正好是 0）就把它再分开
+//              每一轮要分的区间一起算：所有节点拼成一个数组走批量求值，节点多的时候分成几段丢给 ForkJoin 公共池并行
+//   derive：中心差分 + Richardson 外推（Ridders 的做法），步长一路缩小，取外推误差最小的那次
+//   solve：Brent 方法（二分保底，能用割线、反二次插值就用，收敛快又不会跑出区间），要求两端异号
+// 出错：表达式里除以 0 照常抛 ArithmeticException；积分不收敛、求根两端不异号也抛 ArithmeticException（带原因）
+// 结果不是有限的数（比如 sqrt(x) 在负数上积分）就直接返回 NaN / 无穷大，和普通求值一样
+// 都会看当前线程有没有被中断（界面上按 Esc、超时），中断了就抛 CancellationException 不算了
+public final class Calculus {
+
+    public static final String VARIABLE = "x";  // 引擎的几个方法都把 x 当变量
+
+    // 积分的精度：误差不超过 max(ABSOLUTE_TOLERANCE, RELATIVE_TOLERANCE * |积分值|)
+    private static final double RELATIVE_TOLERANCE = 1e-10;
+    private static final double ABSOLUTE_TOLERANCE = 1e-12;
+    private static final double GIVE_UP_TOLERANCE = 1e-6;      // 分到上限还没到精度：误差在这个相对范围内就算了，再大就报错
+    private static final int MAX_INTERVALS = 100_000;
+    private static final int PARALLEL_CHUNK = 2048;            // 一轮的节点超过这么多才并行，每段这么多个点
+    private static final int MIN_INTERVALS = 16;               // 开始时均匀分成这么多段
+    private static final int ENDPOINT_LEVELS = 20;             // 两头的一段再往端点对半分到总长的 2^-20
+
+    // 15 点 Kronrod 节点（对称，只列正半边，最后一个是中点）和权重，7 点 Gauss 用其中的奇数位节点（QUADPACK qk15）
+    private static final double[] XGK = {
+            0.991455371120812639206854697526329, 0.949107912342758524526189684047851,
+            0.864864423359769072789712788640926, 0.741531185599394439863864773280788,
+            0.586087235467691130294144845693013, 0.405845151377397166906606412076961,
+            0.207784955007898467600689403773245, 0d};
+    private static final double[] WGK = {
+            0.022935322010529224963732008058970, 0.063092092629978553290700663189204,
+            0.104790010322250183839876322541518, 0.140653259715525918745189590510238,
+            0.169004726639267902826583426598550, 0.190350578064785409913256402421014,
+            0.204432940075298892414161999234649, 0.209482141084727828012999174891714};
+    private static final double[] WG = {
+            0.129484966168869693270611432679082, 0.279705391489276667901467771423780,
+            0.381830050505118944950369775488975, 0.417959183673469387755102040816327};
+    private static final int NODES = 15;
+
+    // 求导：每次步长除以 STEP_SHRINK，最多 DERIVATIVE_STEPS 次；外推误差比最好的时候大 SAFE 倍就不往下了
+    private static final double STEP_SHRINK = 1.4;
+    private static final int DERIVATIVE_STEPS = 10;
+    private static final double SAFE = 2;
+    private static final double INITIAL_STEP = 0.01;    // 起始步长是 INITIAL_STEP * max(|x|, 1)
+    private static final int MIN_STEP_EXPONENT = 6;     // 起始步长最多再缩小 10^6 倍
+
+    private static final int MAX_ITERATIONS = 200;  // 求根
+
+    private Calculus() {
+    }
+
+    // 一个子区间和它上面的积分、误差估计
+    private static final class Interval {
+        final double a;
+        final double b;
+        double value;
+        double error;
+        ArithmeticException failure;    // 节点上算出错了（还没分开之前不算数）
+
+        Interval(double a, double b) {
+            this.a = a;
+            this.b = b;
+        }
+    }
+
+    // ∫[a, b] f(x) dx，a > b 时是负的
+    public static double integrate(CompiledExpression f, double a, double b) {
+        checkSingleVariable(f);
+        if (!Double.isFinite(a) || !Double.isFinite(b)) {
+            throw new IllegalArgumentException("Integration bounds must be finite");
+        }
+        if (a == b) {
+            return 0;
+        }
+        if (a > b) {
+            return -integrate(f, b, a);
+        }
+
+        List<Interval> intervals = initialIntervals(a, b);
+        List<Interval> pending = intervals;     // 这一轮新分出来、还没算的
+        double length = b - a;
+        while (true) {
+            checkInterrupted();
+            evaluate(f, pending);
+
+            double total = 0;
+            double error = 0;
+            for (Interval interval : intervals) {
+                if (interval.failure == null) {
+                    total += interval.value;
+                }
+                error += interval.error;
+            }
+            if (!Double.isFinite(total)) {
+                return total;
+            }
+            double tolerance = Math.max(ABSOLUTE_TOLERANCE, RELATIVE_TOLERANCE * Math.abs(total));
+            if (error <= tolerance) {
+                return total;
+            }
+
+            // 误差超过自己那一份（按长度分）的区间都对半分；总误差超了，至少有一个区间会超
+            List<Interval> next = new ArrayList<>(intervals.size() * 2);
+            pending = new ArrayList<>();
+            for (Interval interval : intervals) {
+                double mid = 0.5 * (interval.a + interval.b);
+                boolean splittable = mid > interval.a && mid < interval.b;
+                if (splittable && interval.error > tolerance * ((interval.b - interval.a) / length)) {
+                    Interval left = new Interval(interval.a, mid);
+                    Interval right = new Interval(mid, interval.b);
+                    next.add(left);
+                    next.add(right);
+                    pending.add(left);
+                    pending.add(right);
+                } else {
+                    next.add(interval);
+                }
+            }
+            if (pending.isEmpty() || next.size() > MAX_INTERVALS) {
+                // 分不下去了（奇点附近区间已经小到 double 分不开，或者区间太多）；还有区间算出错就报那个错
+                for (Interval interval : intervals) {
+                    if (interval.failure != null) {
+                        throw interval.failure;
+                    }
+                }
+                if (error <= GIVE_UP_TOLERANCE * Math.max(Math.abs(total), 1)) {
+                    return total;
+                }
+                throw new ArithmeticException("Integral does not converge");
+            }
+            intervals = next;
+        }
+    }
+
+    // 开始的分段：均匀分成 MIN_INTERVALS 段，头尾两段各自再往端点对半分（端点附近一段比一段短）
+    private static List<Interval> initialIntervals(double a, double b) {
+        double length = b - a;
+        double piece = length / MIN_INTERVALS;
+        List<Interval> intervals = new ArrayList<>();
+        double[] left = new double[ENDPOINT_LEVELS];    // a 往右数的分点，从近到远
+        int count = 0;
+        for (double width = length / (1 << ENDPOINT_LEVELS); width < piece; width *= 2) {
+            double x = a + width;
+            if (x > a && (count == 0 || x > left[count - 1])) {
+                left[count++] = x;
+            }
+        }
+        double start = a;
+        for (int i = 0; i < count; i++) {
+            intervals.add(new Interval(start, left[i]));
+            start = left[i];
+        }
+        for (int i = 1; i < MIN_INTERVALS; i++) {
+            double end = a + piece * i;
+            if (end > start && end < b) {
+                intervals.add(new Interval(start, end));
+                start = end;
+            }
+        }
+        // 右边和左边对称：b 往左的分点，从远到近
+        for (int i = count - 1; i >= 0; i--) {
+            double end = b - (left[i] - a);
+            if (end > start && end < b) {
+                intervals.add(new Interval(start, end));
+                start = end;
+            }
+        }
+        intervals.add(new Interval(start, b));
+        return intervals;
+    }
+
+    // 把这些区间的 15 个节点拼成一个数组一起算，再各自求 Gauss、Kronrod 两个结果
+    // 批量求值里有一个节点抛了 ArithmeticException（比如除以 0），就一个区间一个区间重算，出错的区间记下来留给下一轮分开
+    private static void evaluate(CompiledExpression f, List<Interval> intervals) {
+        int n = intervals.size() * NODES;
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        for (int i = 0; i < intervals.size(); i++) {
+            Interval interval = intervals.get(i);
+            double center = 0.5 * (interval.a + interval.b);
+            double half = 0.5 * (interval.b - interval.a);
+            int base = i * NODES;
+            xs[base] = center;
+            for (int j = 0; j < 7; j++) {
+                xs[base + 1 + 2 * j] = center - half * XGK[j];
+                xs[base + 2 + 2 * j] = center + half * XGK[j];
+            }
+        }
+
+        try {
+            evaluate(f, xs, ys);
+        } catch (ArithmeticException e) {
+            double[] out = new double[NODES];
+            for (int i = 0; i < intervals.size(); i++) {
+                try {
+                    f.evaluate(Arrays.copyOfRange(xs, i * NODES, (i + 1) * NODES), out);
+                    System.arraycopy(out, 0, ys, i * NODES, NODES);
+                } catch (ArithmeticException failure) {
+                    Interval interval = intervals.get(i);
+                    interval.failure = failure;
+                    interval.value = 0;
+                    interval.error = Double.POSITIVE_INFINITY;
+                }
+            }
+        }
+
+        for (int i = 0; i < intervals.size(); i++) {
+            Interval interval = intervals.get(i);
+            if (interval.failure != null) {
+                continue;
+            }
+            double half = 0.5 * (interval.b - interval.a);
+            int base = i * NODES;
+            double center = ys[base];
+            double kronrod = WGK[7] * center;
+            double gauss = WG[3] * center;
+            for (int j = 0; j < 7; j++) {
+                double sum = ys[base + 1 + 2 * j] + ys[base + 2 + 2 * j];
+                kronrod += WGK[j] * sum;
+                if ((j & 1) == 1) {
+                    gauss += WG[j >> 1] * sum;
+                }
+            }
+            interval.value = kronrod * half;
+            interval.error = Math.abs((kronrod - gauss) * half);   // 偏保守（实际误差通常小得多），宁可多分几次
+        }
+    }
+
+    private static void evaluate(CompiledExpression f, double[] xs, double[] ys) {
+        int n = xs.length;
+        if (n <= PARALLEL_CHUNK) {
+            f.evaluate(xs, ys);
+        } else {
+            int chunks = (n + PARALLEL_CHUNK - 1) / PARALLEL_CHUNK;
+            IntStream.range(0, chunks).parallel().forEach(c -> {
+                int from = c * PARALLEL_CHUNK;
+                int to = Math.min(n, from + PARALLEL_CHUNK);
+                double[] out = new double[to - from];
+                f.evaluate(Arrays.copyOfRange(xs, from, to), out);
+                System.arraycopy(out, 0, ys, from, out.length);
+            });
+        }
+    }
+
+    // f'(x)
+    public static double derive(CompiledExpression f, double x) {
+        checkSingleVariable(f);
+        double[] point = new double[1];
+        // 起始步长大一点外推才准（太小了一开始就被舍入误差吃掉）；跨出定义域了（log(x) 在 0.001 处两边差出来是 NaN、无穷大）就再缩小
+        double h = INITIAL_STEP * Math.max(Math.abs(x), 1);
+        double[][] table = new double[DERIVATIVE_STEPS][DERIVATIVE_STEPS];
+        table[0][0] = centralDifference(f, point, x, h);
+        for (int i = 0; i < MIN_STEP_EXPONENT && !Double.isFinite(table[0][0]); i++) {
+            h /= 10;
+            table[0][0] = centralDifference(f, point, x, h);
+        }
+        double best = table[0][0];
+        double bestError = Double.MAX_VALUE;
+        for (int i = 1; i < DERIVATIVE_STEPS; i++) {
+            h /= STEP_SHRINK;
+            table[0][i] = centralDifference(f, point, x, h);
+            double factor = STEP_SHRINK * STEP_SHRINK;
+            for (int j = 1; j <= i; j++) {
+                // 用上一列的两个值消掉误差里的 h² 项、h⁴ 项……
+                table[j][i] = (table[j - 1][i] * factor - table[j - 1][i - 1]) / (factor - 1);
+                factor *= STEP_SHRINK * STEP_SHRINK;
+                double error = Math.max(Math.abs(table[j][i] - table[j - 1][i]),
+                        Math.abs(table[j][i] - table[j - 1][i - 1]));
+                if (error <= bestError) {
+                    bestError = error;
+                    best = table[j][i];
+                }
+            }
+            // 步长再小舍入误差就上来了
+            if (Math.abs(table[i][i] - table[i - 1][i - 1]) >= SAFE * bestError) {
+                break;
+            }
+        }
+        return best;
+    }
+
+    private static double centralDifference(CompiledExpression f, double[] point, double x, double h) {
+        double step = (x + h) - x;   // 让 x ± step 都是精确的，分母和实际的间距一致
+        point[0] = x + step;
+        double right = f.evaluate(point);
+        point[0] = x - step;
+        double left = f.evaluate(point);
+        return (right - left) / (2 * step);
+    }
+
+    // f(x) = 0 在 [lo, hi] 里的一个根，f(lo)、f(hi) 要异号（有一个是 0 就直接返回它）
+    public static double solve(CompiledExpression f, double lo, double hi) {
+        checkSingleVariable(f);
+        if (!Double.isFinite(lo) || !Double.isFinite(hi)) {
+            throw new IllegalArgumentException("Search interval must be finite");
+        }
+        double[] point = new double[1];
+        double a = lo;
+        double b = hi;
+        double fa = value(f, point, a);
+        double fb = value(f, point, b);
+        if (fa == 0) {
+            return a;
+        }
+        if (fb == 0) {
+            return b;
+        }
+        if (!(fa < 0 && fb > 0 || fa > 0 && fb < 0)) {
+            throw new ArithmeticException("No sign change between " + lo + " and " + hi);
+        }
+
+        // b 是当前最好的估计，[b, c] 始终夹着根，a 是上一个 b
+        double resolution = Math.ulp(Math.max(Math.abs(lo), Math.abs(hi)));  // 根在 0 附近时不用逼到 1e-300
+        double c = b;
+        double fc = fb;
+        double d = 0;
+        double e = 0;
+        for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+            if (fb > 0 && fc > 0 || fb < 0 && fc < 0) {
+                c = a;
+                fc = fa;
+                d = b - a;
+                e = d;
+            }
+            if (Math.abs(fc) < Math.abs(fb)) {
+                a = b;
+                b = c;
+                c = a;
+                fa = fb;
+                fb = fc;
+                fc = fa;
+            }
+            double tolerance = 2 * Math.ulp(b) + resolution;
+            double half = 0.5 * (c - b);
+            if (Math.abs(half) <= tolerance || fb == 0) {
+                return b;
+            }
+            if (Math.abs(e) >= tolerance && Math.abs(fa) > Math.abs(fb)) {
+                // 试插值：a == c 时只有两个点，用割线；否则反二次插值
+                double s = fb / fa;
+                double p;
+                double q;
+                if (a == c) {
+                    p = 2 * half * s;
+                    q = 1 - s;
+                } else {
+                    double qa = fa / fc;
+                    double r = fb / fc;
+                    p = s * (2 * half * qa * (qa - r) - (b - a) * (r - 1));
+                    q = (qa - 1) * (r - 1) * (s - 1);
+                }
+                if (p > 0) {
+                    q = -q;
+                }
+                p = Math.abs(p);
+                // 插值点要落在区间里、并且比上上次的步子收得够快，不然改用二分
+                if (2 * p < Math.min(3 * half * q - Math.abs(tolerance * q), Math.abs(e * q))) {
+                    e = d;
+                    d = p / q;
+                } else {
+                    d = half;
+                    e = d;
+                }
+            } else {
+                d = half;
+                e = d;
+            }
+            a = b;
+            fa = fb;
+            b += Math.abs(d) > tolerance ? d : Math.copySign(tolerance, half);
+            fb = value(f, point, b);
+            checkInterrupted();
+        }
+        throw new ArithmeticException("Root finding did not converge");
+    }
+
+    private static double value(CompiledExpression f, double[] point, double x) {
+        point[0] = x;
+        double y = f.evaluate(point);
+        if (Double.isNaN(y)) {
+            throw new ArithmeticException("Function is undefined at " + x);
+        }
+        return y;
+    }
+
+    private static void checkSingleVariable(CompiledExpression f) {
+        if (f.getVariableNames().length != 1) {
+            throw new IllegalArgumentException("Expression has " + f.getVariableNames().length
+                    + " variables, expected 1");
+        }
+    }
+
+    private static void checkInterrupted() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package calculator;
+
+import java.util.Arrays;
+
+// 带变量的表达式：只解析一次，然后可以代入很多组不同的值去算（比如函数制表、参数扫描）
+// 变量的顺序就是编译时传进来的顺序，evaluate 的参数按这个顺序对应
+// 线程安全：编译结果不可变，求值用的栈每次调用自己准备，批量接口整批只准备一次
+// 逐点求值算够次数以后 Program 会换成生成的字节码（ExpressionJit），调用方不用管
+// 批量接口按块算（BlockEvaluator），加减乘除、整数次幂、开方走 SIMD，比逐点调 evaluate 快好几倍
+public class CompiledExpression {
+
+    private final String expressionStr;
+    private final String[] variableNames;
+    private final boolean isRadians;
+    private final Program program;
+
+    CompiledExpression(String expressionStr, boolean isRadians, String[] variableNames, Program program) {
+        this.expressionStr = expressionStr;
+        this.isRadians = isRadians;
+        this.variableNames = variableNames.clone();
+        this.program = program;
+    }
+
+    // 按变量顺序代入一组值求值
+    public double evaluate(double... values) {
+        if (values.length != variableNames.length) {
+            throw new IllegalArgumentException("Expected " + variableNames.length + " values but got " + values.length);
+        }
+        return program.evaluate(values);
+    }
+
+    // 单变量批量求值：out[i] = f(xs[i])，整批只准备一次栈，每个点都不分配内存
+    public void evaluate(double[] xs, double[] out) {
+        if (variableNames.length != 1) {
+            throw new IllegalArgumentException("Expression has " + variableNames.length + " variables, expected 1");
+        }
+        if (out.length < xs.length) {
+            throw new IllegalArgumentException("Output array is shorter than input");
+        }
+        BlockEvaluator.evaluate(program, new double[][]{xs}, out, xs.length);
+    }
+
+    // 多变量批量求值：columns[v][i] 是第 v 个变量在第 i 个点上的值，out[i] 是结果
+    public void evaluate(double[][] columns, double[] out) {
+        if (columns.length != variableNames.length) {
+            throw new IllegalArgumentException("Expected " + variableNames.length + " columns but got " + columns.length);
+        }
+        int n = out.length;
+        for (double[] column : columns) {
+            if (column.length < n) {
+                throw new IllegalArgumentException("Input column is shorter than output");
+            }
+        }
+        BlockEvaluator.evaluate(program, columns, out, n);
+    }
+
+    public String getExpression() {
+        return expressionStr;
+    }
+
+    public String[] getVariableNames() {
+        return variableNames.clone();
+    }
+
+    public boolean isRadians() {
+        return isRadians;
+    }
+
+    Program getProgram() {
+        return program;
+    }
+
+    @Override
+    public String toString() {
+        return expressionStr + " " + Arrays.toString(variableNames);
+    }
+}
@@ -2,18 +2,150 @@ package calculator;
 
 import net.objecthunter.exp4j.function.Function;
 
-// 自定义函数：三次根号，用在 exp4j 里
+import java.util.function.DoubleUnaryOperator;
+
+// 自定义函数：三次根号、角度制的三角函数，用 exp4j 的 Function 写法
 public class CustomFunctions {
 
+    // 单参数函数的基类：同时实现 DoubleUnaryOperator，计算引擎调用时不用再为参数建数组
+    public abstract static class UnaryFunction extends Function implements DoubleUnaryOperator {
+        protected UnaryFunction(String name) {
+            super(name, 1);
+        }
+
+        @Override
+        public double apply(double... args) {
+            return applyAsDouble(args[0]);
+        }
+    }
+
     // 自定义 cbrt 函数，支持 cbrt(x) 的写法
-    public static class CbrtFunction extends Function {
+    public static class CbrtFunction extends UnaryFunction {
         public CbrtFunction() {
-            super("cbrt", 1); // 函数名是 cbrt，接受 1 个参数
+            super("cbrt"); // 函数名是 cbrt，接受 1 个参数
         }
 
         @Override
-        public double apply(double... args) {
-            return Math.cbrt(args[0]); // 直接用 Java 自带的三次根函数
+        public double applyAsDouble(double x) {
+            return Math.cbrt(x); // 直接用 Java 自带的三次根函数
+        }
+    }
+
+    // ---------------- 角度制三角函数 ----------------
+    // 角度制下用这些替换同名的内置函数：sin/cos/tan/cot 的参数是角度，asin/acos/atan 返回角度
+    // 90 度的整数倍直接给精确值，所以 sin(180) 是 0 而不是 1.2e-16，tan(90) 没有定义就是 NaN
+
+    public static class SinDegrees extends UnaryFunction {
+        public SinDegrees() {
+            super("sin");
+        }
+
+        @Override
+        public double applyAsDouble(double degrees) {
+            return sinDegrees(degrees);
+        }
+    }
+
+    public static class CosDegrees extends UnaryFunction {
+        public CosDegrees() {
+            super("cos");
+        }
+
+        @Override
+        public double applyAsDouble(double degrees) {
+            return sinDegrees(degrees + 90);
+        }
+    }
+
+    public static class TanDegrees extends UnaryFunction {
+        public TanDegrees() {
+            super("tan");
+        }
+
+        @Override
+        public double applyAsDouble(double degrees) {
+            int quadrant = rightAngleQuadrant(degrees);
+            if (quadrant >= 0) {
+                return quadrant % 2 == 0 ? 0d : Double.NaN;
+            }
+            return Math.tan(Math.toRadians(degrees % 360));
+        }
+    }
+
+    public static class CotDegrees extends UnaryFunction {
+        public CotDegrees() {
+            super("cot");
+        }
+
+        @Override
+        public double applyAsDouble(double degrees) {
+            int quadrant = rightAngleQuadrant(degrees);
+            if (quadrant >= 0) {
+                if (quadrant % 2 == 0) {
+                    throw new ArithmeticException("Division by zero in cotangent!"); // 和内置 cot 一样
+                }
+                return 0d;
+            }
+            return 1d / Math.tan(Math.toRadians(degrees % 360));
+        }
+    }
+
+    public static class AsinDegrees extends UnaryFunction {
+        public AsinDegrees() {
+            super("asin");
+        }
+
+        @Override
+        public double applyAsDouble(double x) {
+            return Math.toDegrees(Math.asin(x));
+        }
+    }
+
+    public static class AcosDegrees extends UnaryFunction {
+        public AcosDegrees() {
+            super("acos");
+        }
+
+        @Override
+        public double applyAsDouble(double x) {
+            return Math.toDegrees(Math.acos(x));
+        }
+    }
+
+    public static class AtanDegrees extends UnaryFunction {
+        public AtanDegrees() {
+            super("atan");
+        }
+
+        @Override
+        public double applyAsDouble(double x) {
+            return Math.toDegrees(Math.atan(x));
+        }
+    }
+
+    // 角度制的 sin：先对 360 取余（取余是精确的），再换成弧度算
+    static double sinDegrees(double degrees) {
+        int quadrant = rightAngleQuadrant(degrees);
+        if (quadrant >= 0) {
+            switch (quadrant) {
+                case 1:
+                    return 1d;
+                case 3:
+                    return -1d;
+                default:
+                    return 0d;
+            }
+        }
+        return Math.sin(Math.toRadians(degrees % 360));
+    }
+
+    // 角度正好是 90 度的整数倍时，返回是第几个（0~3，0 度、90 度、180 度、270 度）；不是就返回 -1
+    private static int rightAngleQuadrant(double degrees) {
+        double reduced = degrees % 360; // NaN 和无穷大取余后是 NaN，下面的判断不会成立
+        if (reduced % 90 != 0) {
+            return -1;
         }
+        int quadrant = (int) (reduced / 90);
+        return quadrant < 0 ? quadrant + 4 : quadrant;
     }
 }
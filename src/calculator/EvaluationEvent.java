@@ -0,0 +1,44 @@
+package calculator;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+// JFR 自定义事件：每次求值一条，用 -XX:StartFlightRecording 或 jcmd JFR.start 录下来，在 JMC 里按表达式、耗时、出错原因看
+// 没在录的时候 isEnabled() 是 false，引擎直接走不计时的路（new 出来的事件对象会被 JIT 的逃逸分析消掉）
+// 不录调用栈：求值很快，栈比事件本身贵得多；事件太多的话可以在录制设置里给 calculator.Evaluation 加个 threshold
+@Name("calculator.Evaluation")
+@Label("Expression Evaluation")
+@Category("Calculator")
+@Description("One expression evaluated by CalculatorEngine")
+@StackTrace(false)
+final class EvaluationEvent extends jdk.jfr.Event {
+
+    @Label("Expression")
+    String expression;
+
+    @Label("Radians")
+    boolean radians;
+
+    @Label("Cache Hit")
+    boolean cacheHit;
+
+    @Label("Parse Time")
+    @Description("Parse, optimize and compile; zero on a cache hit")
+    @Timespan(Timespan.NANOSECONDS)
+    long parseTime;
+
+    @Label("Evaluation Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long evaluationTime;
+
+    @Label("Result")
+    double result;
+
+    @Label("Error")
+    @Description("Why the evaluation failed, empty when it succeeded")
+    String error;
+}
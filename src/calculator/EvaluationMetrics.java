@@ -0,0 +1,208 @@
+package calculator;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+// 求值的统计：解析、求值、格式化各花了多少时间，缓存命中率，出错次数按原因分开记
+// 每个 CalculatorEngine 一份；register 之后可以用 jconsole / VisualVM 在 calculator 下面看到（也能在那里开关）
+// 默认关着，关着的时候引擎走原来的路，连 System.nanoTime 都不调；用 -Dcalculator.metrics=true 启动就默认打开
+// 计数都用 LongAdder，多线程（服务、批量）一起加也不会抢同一个缓存行
+public final class EvaluationMetrics implements EvaluationMetricsMBean {
+
+    // 出错原因（ERROR_NAMES 按这个顺序）
+    public static final int NONE = -1;              // 没出错
+    public static final int SYNTAX = 0;             // 表达式写错了：括号不配对、不认识的函数……
+    public static final int DIVISION_BY_ZERO = 1;   // 除以 0（包括 cot(0)）
+    public static final int DOMAIN = 2;             // 超出定义域，结果是 NaN：sqrt(-1)、log(-1)、asin(2)
+    public static final int OVERFLOW = 3;           // 结果太大，成了无穷大
+    public static final int OTHER = 4;              // 其他异常（比如表达式太长爆栈）
+
+    private static final String[] ERROR_NAMES = {"Syntax error", "Division by zero", "Domain error", "Overflow", "Error"};
+
+    private final ExpressionCache expressionCache;  // 命中率直接读缓存自己的计数
+    private volatile boolean enabled = Boolean.getBoolean("calculator.metrics");
+
+    private final LongAdder evaluationCount = new LongAdder();
+    private final LongAdder evaluationNanos = new LongAdder();  // 只算真正求值（执行 Program）的时间
+    private final LongAdder parseCount = new LongAdder();       // 缓存没命中、真的去解析编译的次数
+    private final LongAdder parseNanos = new LongAdder();       // 解析 + 优化 + 编译
+    private final LongAdder formatCount = new LongAdder();
+    private final LongAdder formatNanos = new LongAdder();
+    private final LongAdder[] errorCounts = new LongAdder[ERROR_NAMES.length];
+
+    EvaluationMetrics(ExpressionCache expressionCache) {
+        this.expressionCache = expressionCache;
+        for (int i = 0; i < errorCounts.length; i++) {
+            errorCounts[i] = new LongAdder();
+        }
+    }
+
+    // 异常是哪一类原因（算出 NaN、无穷大不抛异常，用 classify(double)）
+    public static int classify(Throwable error) {
+        if (error instanceof IllegalArgumentException) {
+            return SYNTAX;  // 词法、语法分析出错都是这个（NumberFormatException 也是它的子类）
+        }
+        if (error instanceof ArithmeticException) {
+            String message = error.getMessage();
+            if (message != null && message.startsWith("Division by zero")) {
+                return DIVISION_BY_ZERO;
+            }
+        }
+        return OTHER;
+    }
+
+    // 算出来的结果算不算出错：NaN 是超出定义域，无穷大是溢出
+    public static int classify(double result) {
+        if (Double.isNaN(result)) {
+            return DOMAIN;
+        }
+        return Double.isInfinite(result) ? OVERFLOW : NONE;
+    }
+
+    // 给人看的原因（界面上的 "Error: Division by zero" 之类）
+    public static String describe(int cause) {
+        return cause == NONE ? null : ERROR_NAMES[cause];
+    }
+
+    // 注册到平台的 MBeanServer：calculator:type=EvaluationMetrics,name=<name>
+    // 同名的已经注册过（比如同一个进程里开了两个窗口）就换掉旧的
+    public void register(String name) {
+        try {
+            ObjectName objectName = new ObjectName("calculator:type=EvaluationMetrics,name=" + ObjectName.quote(name));
+            var server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register metrics MBean " + name, e);
+        }
+    }
+
+    void recordEvaluation(long nanos, int cause) {
+        evaluationCount.increment();
+        evaluationNanos.add(nanos);
+        if (cause != NONE) {
+            errorCounts[cause].increment();
+        }
+    }
+
+    void recordParse(long nanos) {
+        parseCount.increment();
+        parseNanos.add(nanos);
+    }
+
+    void recordFormat(long nanos) {
+        formatCount.increment();
+        formatNanos.add(nanos);
+    }
+
+    public long getErrorCount(int cause) {
+        return errorCounts[cause].sum();
+    }
+
+    // ---------------- MBean ----------------
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public long getEvaluationCount() {
+        return evaluationCount.sum();
+    }
+
+    @Override
+    public double getAverageEvaluationMicros() {
+        return average(evaluationNanos, evaluationCount);
+    }
+
+    @Override
+    public long getParseCount() {
+        return parseCount.sum();
+    }
+
+    @Override
+    public double getAverageParseMicros() {
+        return average(parseNanos, parseCount);
+    }
+
+    @Override
+    public long getFormatCount() {
+        return formatCount.sum();
+    }
+
+    @Override
+    public double getAverageFormatMicros() {
+        return average(formatNanos, formatCount);
+    }
+
+    @Override
+    public long getCacheHitCount() {
+        return expressionCache.getHitCount();
+    }
+
+    @Override
+    public long getCacheMissCount() {
+        return expressionCache.getMissCount();
+    }
+
+    @Override
+    public double getCacheHitRatio() {
+        long hits = expressionCache.getHitCount();
+        long total = hits + expressionCache.getMissCount();
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    @Override
+    public long getSyntaxErrorCount() {
+        return getErrorCount(SYNTAX);
+    }
+
+    @Override
+    public long getDivisionByZeroCount() {
+        return getErrorCount(DIVISION_BY_ZERO);
+    }
+
+    @Override
+    public long getDomainErrorCount() {
+        return getErrorCount(DOMAIN);
+    }
+
+    @Override
+    public long getOverflowCount() {
+        return getErrorCount(OVERFLOW);
+    }
+
+    @Override
+    public long getOtherErrorCount() {
+        return getErrorCount(OTHER);
+    }
+
+    // 清零（缓存的命中计数是缓存自己的，不动）
+    @Override
+    public void reset() {
+        evaluationCount.reset();
+        evaluationNanos.reset();
+        parseCount.reset();
+        parseNanos.reset();
+        formatCount.reset();
+        formatNanos.reset();
+        for (LongAdder count : errorCounts) {
+            count.reset();
+        }
+    }
+
+    private static double average(LongAdder nanos, LongAdder count) {
+        long n = count.sum();
+        return n == 0 ? 0.0 : nanos.sum() / 1000.0 / n;
+    }
+}
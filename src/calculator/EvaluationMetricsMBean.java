@@ -0,0 +1,40 @@
+package calculator;
+
+// EvaluationMetrics 在 JMX 里露出来的属性和操作（标准 MBean：名字必须是类名 + MBean）
+// 时间都是平均每次多少微秒
+public interface EvaluationMetricsMBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    long getEvaluationCount();
+
+    double getAverageEvaluationMicros();
+
+    long getParseCount();
+
+    double getAverageParseMicros();
+
+    long getFormatCount();
+
+    double getAverageFormatMicros();
+
+    long getCacheHitCount();
+
+    long getCacheMissCount();
+
+    double getCacheHitRatio();
+
+    long getSyntaxErrorCount();
+
+    long getDivisionByZeroCount();
+
+    long getDomainErrorCount();
+
+    long getOverflowCount();
+
+    long getOtherErrorCount();
+
+    void reset();
+}
@@ -0,0 +1,197 @@
+package calculator;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// 编译好的表达式缓存：同一个表达式只解析一次，后面直接拿来算
+// 按（规范化后的文本, 角度模式）做 key，容量满了按 LRU 淘汰，太久没用的也会被清掉
+// 内部按 key 的 hash 分成几段，每段单独加锁，多线程批处理时不会都抢同一把锁
+public class ExpressionCache {
+
+    public static final int DEFAULT_MAX_SIZE = 256;                          // 默认最多缓存多少个表达式
+    public static final long DEFAULT_IDLE_NANOS = TimeUnit.MINUTES.toNanos(10); // 默认空闲多久就淘汰
+    private static final int MAX_SEGMENTS = 16;                               // 最多分几段
+
+    private final Segment[] segments;
+    private final long idleNanos;
+
+    // 缓存没命中时用来编译表达式的（角度模式是编译结果的一部分，所以也传进去）
+    public interface Compiler {
+        Program compile(String expressionStr, boolean isRadians);
+    }
+
+    // 缓存里存的东西：编译结果 + 最后一次访问的时间
+    private static final class CachedEntry {
+        final Program program;
+        long lastAccess;
+
+        CachedEntry(Program program, long lastAccess) {
+            this.program = program;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    // 一段缓存：自己的 LRU 表、自己的计数，用自己的锁
+    private static final class Segment {
+        final int maxSize;
+
+        // accessOrder = true，最近用过的排在最后，最久没用的在最前面
+        final LinkedHashMap<String, CachedEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+        // 命中/未命中/淘汰计数
+        long hitCount;
+        long missCount;
+        long evictionCount;
+
+        Segment(int maxSize) {
+            this.maxSize = maxSize;
+        }
+    }
+
+    public ExpressionCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_IDLE_NANOS);
+    }
+
+    public ExpressionCache(int maxSize, long idleNanos) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        if (idleNanos <= 0) {
+            throw new IllegalArgumentException("idleNanos must be positive");
+        }
+        this.idleNanos = idleNanos;
+
+        // 段数取 2 的幂，容量平均分到每一段（总容量不超过 maxSize）
+        int segmentCount = Integer.highestOneBit(Math.min(MAX_SEGMENTS, maxSize));
+        segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            int segmentSize = maxSize / segmentCount + (i < maxSize % segmentCount ? 1 : 0);
+            segments[i] = new Segment(segmentSize);
+        }
+    }
+
+    // 取出编译好的表达式；没有的话才调用 compiler 去解析，并放进缓存
+    public Program get(String expressionStr, boolean isRadians, Compiler compiler) {
+        String key = key(expressionStr, isRadians);
+        Segment segment = segmentFor(key);
+
+        synchronized (segment) {
+            long now = System.nanoTime();
+            evictIdle(segment, now);
+
+            CachedEntry entry = segment.entries.get(key);
+            if (entry != null) {
+                segment.hitCount++;
+                entry.lastAccess = now;
+                return entry.program;
+            }
+
+            segment.missCount++;
+            Program program = compiler.compile(expressionStr, isRadians); // 解析出错会直接抛出去，不会进缓存
+            segment.entries.put(key, new CachedEntry(program, now));
+            if (segment.entries.size() > segment.maxSize) {
+                // 超出容量，把最久没用的那个踢掉
+                Iterator<CachedEntry> it = segment.entries.values().iterator();
+                it.next();
+                it.remove();
+                segment.evictionCount++;
+            }
+            return program;
+        }
+    }
+
+    private Segment segmentFor(String key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16); // 高位也参与进来，分得更散
+        return segments[h & (segments.length - 1)];
+    }
+
+    // 把空闲太久的表达式清掉（按访问顺序排的，所以从头扫到第一个没过期的就可以停了）
+    private void evictIdle(Segment segment, long now) {
+        Iterator<Map.Entry<String, CachedEntry>> it = segment.entries.entrySet().iterator();
+        while (it.hasNext()) {
+            CachedEntry entry = it.next().getValue();
+            if (now - entry.lastAccess < idleNanos) {
+                break;
+            }
+            it.remove();
+            segment.evictionCount++;
+        }
+    }
+
+    // 规范化：去掉多余的空白字符，再带上角度模式，避免弧度/角度的结果混在一起
+    // 夹在两个数字/字母中间的空白要留一个（"2 3" 和 "23" 不是一回事）
+    static String key(String expressionStr, boolean isRadians) {
+        StringBuilder sb = new StringBuilder(expressionStr.length() + 2);
+        sb.append(isRadians ? 'R' : 'D').append(':');
+        boolean pendingSpace = false;
+        for (int i = 0; i < expressionStr.length(); i++) {
+            char c = expressionStr.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = true;
+                continue;
+            }
+            if (pendingSpace && isWordChar(c) && isWordChar(sb.charAt(sb.length() - 1))) {
+                sb.append(' ');
+            }
+            pendingSpace = false;
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '.' || c == '_';
+    }
+
+    // 清空缓存（计数不清）
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.entries.clear();
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.entries.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHitCount() {
+        long count = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                count += segment.hitCount;
+            }
+        }
+        return count;
+    }
+
+    public long getMissCount() {
+        long count = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                count += segment.missCount;
+            }
+        }
+        return count;
+    }
+
+    public long getEvictionCount() {
+        long count = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                count += segment.evictionCount;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,522 @@
+package calculator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// 热点表达式的“即时编译”：一个 Program 算够了 THRESHOLD 次（Program.evaluate 里数着），就把它的语法树直接生成一个隐藏类，
+//   final class Expression implements ExpressionJit.Compiled {
+//       public double evaluate(double[] v) { return Math.sin(v[0]) * 3.0 + ...; }
+//   }
+// 之后都走这个类：没有指令分派、没有数组栈，HotSpot 把它当普通 Java 代码编译，Math 里的函数、常量都能内联
+// 自定义函数（cbrt、角度制三角函数、用户函数）放在生成类的 static final 字段里，隐藏类的 final 字段 JIT 当常量看，
+// 调用点知道确切的类型，也能一路内联进去
+// JDK 21 还没有 java.lang.classfile（22 以后才是预览），这里自己拼 class 文件；生成的方法都是直线代码（没有跳转），
+// 不需要 StackMapTable。除以 0 的检查放在 divide/mod 两个小方法里，内联以后和解释执行一样
+// 结果和解释执行一位不差（同样的运算、同样的顺序）；生成失败（比如表达式大到超过一个方法的长度限制）就一直解释执行
+// 隐藏类不挂在类加载器上，缓存淘汰了这个表达式，生成的类也跟着被回收
+final class ExpressionJit {
+
+    // 关掉用 -Dcalculator.jit=false；门槛用 -Dcalculator.jit.threshold=N 调
+    static final boolean ENABLED = !"false".equals(System.getProperty("calculator.jit"));
+    static final int THRESHOLD = Integer.getInteger("calculator.jit.threshold", 10_000);
+
+    // 生成的类实现这个接口
+    interface Compiled {
+        double evaluate(double[] variables);
+    }
+
+    private static final String CLASS_NAME = "calculator/ExpressionJit$Expression";
+    private static final String COMPILED = "calculator/ExpressionJit$Compiled";
+    private static final String SELF = "calculator/ExpressionJit";
+    private static final int MAX_CODE_LENGTH = 65535;
+
+    private ExpressionJit() {
+    }
+
+    // 生成出来的代码调这两个：和 Program 里的 DIV、MOD 一样，除数是 0 就报错
+    static double divide(double a, double b) {
+        if (b == 0d) {
+            throw new ArithmeticException("Division by zero!");
+        }
+        return a / b;
+    }
+
+    static double mod(double a, double b) {
+        if (b == 0d) {
+            throw new ArithmeticException("Division by zero!");
+        }
+        return a % b;
+    }
+
+    // 把编译好的语法树生成成一个类并加载；生成不了就返回 null
+    static Compiled compile(Node tree) {
+        try {
+            Generator generator = new Generator();
+            byte[] bytes = generator.generate(tree);
+            if (bytes == null) {
+                return null;
+            }
+            MethodHandles.Lookup lookup = MethodHandles.lookup()
+                    .defineHiddenClassWithClassData(bytes, generator.functions.toArray(), true);
+            return (Compiled) lookup.findConstructor(lookup.lookupClass(),
+                    MethodType.methodType(void.class)).invoke();
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+
+    // 拼 class 文件
+    private static final class Generator {
+        final List<Object> functions = new ArrayList<>();      // 第 i 个放在字段 f<i> 里
+        private final List<String> functionTypes = new ArrayList<>();
+        private final Map<Object, Integer> functionIndex = new IdentityHashMap<>();
+
+        private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+        private final DataOutputStream poolOut = new DataOutputStream(pool);
+        private final Map<String, Integer> poolIndex = new HashMap<>();
+        private int poolCount = 1;
+
+        private ByteArrayOutputStream code;
+        private DataOutputStream codeOut;
+        private int depth;          // 当前操作数栈有多少格（double 占两格）
+        private int maxDepth;
+
+        byte[] generate(Node tree) throws IOException {
+            // evaluate 先生成（过程中会登记用到的自定义函数），再生成构造方法和静态初始化
+            byte[] evaluate = method(() -> {
+                emit(tree);
+                op(0xaf);   // dreturn
+            });
+            int evaluateStack = maxDepth;
+            if (evaluate.length > MAX_CODE_LENGTH) {
+                return null;
+            }
+            byte[] init = method(() -> {
+                op(0x2a);   // aload_0
+                push(1);
+                invoke(0xb7, "java/lang/Object", "<init>", "()V", 1, 0);
+                op(0xb1);   // return
+            });
+            int initStack = maxDepth;
+            byte[] clinit = method(() -> {
+                // Object[] data = MethodHandles.classData(MethodHandles.lookup(), "_", Object[].class);
+                invoke(0xb8, "java/lang/invoke/MethodHandles", "lookup", "()Ljava/lang/invoke/MethodHandles$Lookup;", 0, 1);
+                ldc(8, string("_"));
+                push(1);
+                ldc(7, classRef("[Ljava/lang/Object;"));
+                push(1);
+                invoke(0xb8, "java/lang/invoke/MethodHandles", "classData",
+                        "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/Class;)Ljava/lang/Object;", 3, 1);
+                op(0xc0);   // checkcast
+                u2(classRef("[Ljava/lang/Object;"));
+                op(0x4b);   // astore_0
+                pop(1);
+                for (int i = 0; i < functions.size(); i++) {
+                    // f<i> = (类型) data[i];
+                    op(0x2a);   // aload_0
+                    push(1);
+                    intConstant(i);
+                    op(0x32);   // aaload
+                    pop(1);
+                    op(0xc0);
+                    u2(classRef(functionTypes.get(i)));
+                    op(0xb3);   // putstatic
+                    u2(member(9, CLASS_NAME, "f" + i, "L" + functionTypes.get(i) + ";"));
+                    pop(1);
+                }
+                op(0xb1);
+            });
+            int clinitStack = maxDepth;
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(out);
+            int thisClass = classRef(CLASS_NAME);
+            int superClass = classRef("java/lang/Object");
+            int compiledInterface = classRef(COMPILED);
+            int[] fieldNames = new int[functions.size()];
+            int[] fieldTypes = new int[functions.size()];
+            for (int i = 0; i < functions.size(); i++) {
+                fieldNames[i] = utf8("f" + i);
+                fieldTypes[i] = utf8("L" + functionTypes.get(i) + ";");
+            }
+            int codeName = utf8("Code");
+            int initName = utf8("<init>");
+            int clinitName = utf8("<clinit>");
+            int evaluateName = utf8("evaluate");
+            int voidType = utf8("()V");
+            int evaluateType = utf8("([D)D");
+
+            data.writeInt(0xCAFEBABE);
+            data.writeShort(0);
+            data.writeShort(65);                    // Java 21
+            data.writeShort(poolCount);
+            poolOut.flush();
+            pool.writeTo(data);
+            data.writeShort(0x0030);                // ACC_FINAL | ACC_SUPER
+            data.writeShort(thisClass);
+            data.writeShort(superClass);
+            data.writeShort(1);
+            data.writeShort(compiledInterface);
+            data.writeShort(functions.size());
+            for (int i = 0; i < functions.size(); i++) {
+                data.writeShort(0x001A);            // private static final
+                data.writeShort(fieldNames[i]);
+                data.writeShort(fieldTypes[i]);
+                data.writeShort(0);
+            }
+            data.writeShort(functions.isEmpty() ? 2 : 3);
+            writeMethod(data, 0x0001, initName, voidType, codeName, init, initStack, 1);
+            writeMethod(data, 0x0001, evaluateName, evaluateType, codeName, evaluate, evaluateStack, 2);
+            if (!functions.isEmpty()) {
+                writeMethod(data, 0x0008, clinitName, voidType, codeName, clinit, clinitStack, 1);
+            }
+            data.writeShort(0);                     // 类上没有属性
+            data.flush();
+            return out.toByteArray();
+        }
+
+        private interface Body {
+            void write() throws IOException;
+        }
+
+        private byte[] method(Body body) throws IOException {
+            code = new ByteArrayOutputStream();
+            codeOut = new DataOutputStream(code);
+            depth = 0;
+            maxDepth = 0;
+            body.write();
+            codeOut.flush();
+            return code.toByteArray();
+        }
+
+        private static void writeMethod(DataOutputStream data, int access, int name, int type, int codeName,
+                                        byte[] code, int maxStack, int maxLocals) throws IOException {
+            data.writeShort(access);
+            data.writeShort(name);
+            data.writeShort(type);
+            data.writeShort(1);
+            data.writeShort(codeName);
+            data.writeInt(2 + 2 + 4 + code.length + 2 + 2);
+            data.writeShort(maxStack);
+            data.writeShort(maxLocals);
+            data.writeInt(code.length);
+            data.write(code);
+            data.writeShort(0);                     // 异常表
+            data.writeShort(0);                     // Code 上的属性
+        }
+
+        // 生成的代码和 Program.Compiler 一一对应，运算的顺序一样，结果也就一样
+        private void emit(Node node) throws IOException {
+            if (node instanceof Node.Number) {
+                doubleConstant(((Node.Number) node).value);
+            } else if (node instanceof Node.Variable) {
+                op(0x2b);   // aload_1
+                push(1);
+                intConstant(((Node.Variable) node).index);
+                op(0x31);   // daload
+                pop(2);
+                push(2);
+            } else if (node instanceof Node.Negate) {
+                emit(((Node.Negate) node).operand);
+                op(0x77);   // dneg
+            } else if (node instanceof Node.Binary) {
+                Node.Binary binary = (Node.Binary) node;
+                emit(binary.left);
+                emit(binary.right);
+                switch (binary.operator) {
+                    case '+':
+                        op(0x63);   // dadd
+                        break;
+                    case '-':
+                        op(0x67);   // dsub
+                        break;
+                    case '*':
+                        op(0x6b);   // dmul
+                        break;
+                    case '/':
+                        invoke(0xb8, SELF, "divide", "(DD)D", 4, 2);
+                        break;
+                    case '%':
+                        invoke(0xb8, SELF, "mod", "(DD)D", 4, 2);
+                        break;
+                    case '^':
+                        invoke(0xb8, "java/lang/Math", "pow", "(DD)D", 4, 2);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown operator: " + binary.operator);
+                }
+                if (binary.operator == '+' || binary.operator == '-' || binary.operator == '*') {
+                    pop(2);
+                }
+            } else if (node instanceof Node.IntPower) {
+                Node.IntPower power = (Node.IntPower) node;
+                if (power.exponent == -1) {
+                    op(0x0f);   // dconst_1，1/x
+                    push(2);
+                    emit(power.base);
+                    op(0x6f);   // ddiv
+                    pop(2);
+                } else {
+                    emit(power.base);
+                    op(0x5c);   // dup2
+                    push(2);
+                    if (power.exponent == 3) {
+                        op(0x5c);
+                        push(2);
+                        op(0x6b);
+                        pop(2);
+                    }
+                    op(0x6b);
+                    pop(2);
+                }
+            } else if (node instanceof Node.BuiltinCall) {
+                Node.BuiltinCall call = (Node.BuiltinCall) node;
+                if (call.builtin == Builtins.POW) {
+                    emit(call.args[0]);
+                    emit(call.args[1]);
+                    invoke(0xb8, "java/lang/Math", "pow", "(DD)D", 4, 2);
+                    return;
+                }
+                String math = mathMethod(call.builtin);
+                if (math != null) {
+                    emit(call.args[0]);
+                    invoke(0xb8, "java/lang/Math", math, "(D)D", 2, 2);
+                } else {
+                    // cot、log2、signum 有自己的规则，照样调 Builtins.apply（编号是常量，内联以后只剩那一个分支）
+                    intConstant(call.builtin);
+                    emit(call.args[0]);
+                    invoke(0xb8, "calculator/Builtins", "apply", "(ID)D", 3, 2);
+                }
+            } else if (node instanceof Node.UnaryCall) {
+                Node.UnaryCall call = (Node.UnaryCall) node;
+                getFunction(call.function, "java/util/function/DoubleUnaryOperator");
+                emit(call.arg);
+                invoke(0xb9, "java/util/function/DoubleUnaryOperator", "applyAsDouble", "(D)D", 3, 2);
+            } else if (node instanceof Node.FunctionCall) {
+                // f.apply(new double[]{a, b, ...})
+                Node.FunctionCall call = (Node.FunctionCall) node;
+                getFunction(call.function, "net/objecthunter/exp4j/function/Function");
+                intConstant(call.args.length);
+                op(0xbc);   // newarray double
+                op(7);
+                for (int i = 0; i < call.args.length; i++) {
+                    op(0x59);   // dup
+                    push(1);
+                    intConstant(i);
+                    emit(call.args[i]);
+                    op(0x52);   // dastore
+                    pop(4);
+                }
+                invoke(0xb6, "net/objecthunter/exp4j/function/Function", "apply", "([D)D", 2, 2);
+            } else {
+                throw new IllegalArgumentException("Unknown node: " + node);
+            }
+        }
+
+        // 和 Math 里的同名函数完全一样的内置函数，直接调 Math
+        private static String mathMethod(int builtin) {
+            switch (builtin) {
+                case Builtins.SIN: return "sin";
+                case Builtins.COS: return "cos";
+                case Builtins.TAN: return "tan";
+                case Builtins.ASIN: return "asin";
+                case Builtins.ACOS: return "acos";
+                case Builtins.ATAN: return "atan";
+                case Builtins.SINH: return "sinh";
+                case Builtins.COSH: return "cosh";
+                case Builtins.TANH: return "tanh";
+                case Builtins.LOG: return "log";
+                case Builtins.LOG10: return "log10";
+                case Builtins.LOG1P: return "log1p";
+                case Builtins.ABS: return "abs";
+                case Builtins.CBRT: return "cbrt";
+                case Builtins.CEIL: return "ceil";
+                case Builtins.FLOOR: return "floor";
+                case Builtins.SQRT: return "sqrt";
+                case Builtins.EXP: return "exp";
+                case Builtins.EXPM1: return "expm1";
+                default: return null;
+            }
+        }
+
+        // 把自定义函数对象压栈：getstatic f<i>（字段的类型写接口就行，隐藏类的 static final 字段 JIT 当常量，知道是哪个对象）
+        private void getFunction(Object function, String type) throws IOException {
+            Integer index = functionIndex.get(function);
+            if (index == null) {
+                index = functions.size();
+                functions.add(function);
+                functionTypes.add(type);
+                functionIndex.put(function, index);
+            }
+            op(0xb2);   // getstatic
+            u2(member(9, CLASS_NAME, "f" + index, "L" + functionTypes.get(index) + ";"));
+            push(1);
+        }
+
+        private void doubleConstant(double value) throws IOException {
+            if (Double.doubleToRawLongBits(value) == 0L) {
+                op(0x0e);   // dconst_0（-0.0 不行，走常量池）
+            } else if (value == 1d) {
+                op(0x0f);   // dconst_1
+            } else {
+                op(0x14);   // ldc2_w
+                u2(doubleEntry(value));
+            }
+            push(2);
+        }
+
+        private void intConstant(int value) throws IOException {
+            if (value >= -1 && value <= 5) {
+                op(0x03 + value);               // iconst_<n>
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                op(0x10);                       // bipush
+                op(value & 0xff);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                op(0x11);                       // sipush
+                u2(value & 0xffff);
+            } else {
+                ldc(3, integerEntry(value));
+            }
+            push(1);
+        }
+
+        private void ldc(int tag, int index) throws IOException {
+            if (index < 256) {
+                op(0x12);
+                op(index);
+            } else {
+                op(0x13);
+                u2(index);
+            }
+        }
+
+        // 调用方法；argSlots/returnSlots 是参数、返回值占的栈格数（实例方法、接口方法的参数里要算上对象本身）
+        private void invoke(int opcode, String owner, String name, String type, int argSlots, int returnSlots)
+                throws IOException {
+            op(opcode);
+            u2(member(opcode == 0xb9 ? 11 : 10, owner, name, type));
+            if (opcode == 0xb9) {
+                op(argSlots);
+                op(0);
+            }
+            pop(argSlots);
+            push(returnSlots);
+        }
+
+        private void op(int b) throws IOException {
+            codeOut.writeByte(b);
+        }
+
+        private void u2(int value) throws IOException {
+            codeOut.writeShort(value);
+        }
+
+        private void push(int slots) {
+            depth += slots;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+
+        private void pop(int slots) {
+            depth -= slots;
+        }
+
+        // ---------------- 常量池 ----------------
+
+        private int utf8(String value) throws IOException {
+            Integer index = poolIndex.get("U" + value);
+            if (index != null) {
+                return index;
+            }
+            poolOut.writeByte(1);
+            poolOut.writeUTF(value);
+            return add("U" + value, 1);
+        }
+
+        private int classRef(String name) throws IOException {
+            Integer index = poolIndex.get("C" + name);
+            if (index != null) {
+                return index;
+            }
+            int nameIndex = utf8(name);
+            poolOut.writeByte(7);
+            poolOut.writeShort(nameIndex);
+            return add("C" + name, 1);
+        }
+
+        private int string(String value) throws IOException {
+            Integer index = poolIndex.get("S" + value);
+            if (index != null) {
+                return index;
+            }
+            int valueIndex = utf8(value);
+            poolOut.writeByte(8);
+            poolOut.writeShort(valueIndex);
+            return add("S" + value, 1);
+        }
+
+        private int integerEntry(int value) throws IOException {
+            Integer index = poolIndex.get("I" + value);
+            if (index != null) {
+                return index;
+            }
+            poolOut.writeByte(3);
+            poolOut.writeInt(value);
+            return add("I" + value, 1);
+        }
+
+        private int doubleEntry(double value) throws IOException {
+            String key = "D" + Double.doubleToRawLongBits(value);
+            Integer index = poolIndex.get(key);
+            if (index != null) {
+                return index;
+            }
+            poolOut.writeByte(6);
+            poolOut.writeDouble(value);
+            return add(key, 2);     // double 在常量池里占两个位置
+        }
+
+        // tag 9 字段、10 方法、11 接口方法
+        private int member(int tag, String owner, String name, String type) throws IOException {
+            String key = tag + owner + "." + name + type;
+            Integer index = poolIndex.get(key);
+            if (index != null) {
+                return index;
+            }
+            int ownerIndex = classRef(owner);
+            int nameAndType = nameAndType(name, type);
+            poolOut.writeByte(tag);
+            poolOut.writeShort(ownerIndex);
+            poolOut.writeShort(nameAndType);
+            return add(key, 1);
+        }
+
+        private int nameAndType(String name, String type) throws IOException {
+            String key = "N" + name + type;
+            Integer index = poolIndex.get(key);
+            if (index != null) {
+                return index;
+            }
+            int nameIndex = utf8(name);
+            int typeIndex = utf8(type);
+            poolOut.writeByte(12);
+            poolOut.writeShort(nameIndex);
+            poolOut.writeShort(typeIndex);
+            return add(key, 1);
+        }
+
+        private int add(String key, int size) {
+            int index = poolCount;
+            poolIndex.put(key, index);
+            poolCount += size;
+            return index;
+        }
+    }
+}
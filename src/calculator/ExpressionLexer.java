@@ -0,0 +1,223 @@
+package calculator;
+
+import net.objecthunter.exp4j.function.Function;
+
+import java.util.Map;
+
+// 表达式的词法分析：一次读一个词法单元（数字、名字、运算符、括号、逗号），ExpressionParser、LivePreview 和 MatrixEvaluator 共用
+// 方括号只有矩阵表达式用得到，另外两个碰到了照常报 Unexpected '['
+// 另外记下读每个词法单元时看过的最远位置（scanEnd），LivePreview 靠它判断文本改了以后哪些词法单元还能接着用
+final class ExpressionLexer {
+
+    // 词法单元的种类
+    static final int END = 0;
+    static final int NUMBER = 1;
+    static final int NAME = 2;
+    static final int OPERATOR = 3;
+    static final int OPEN = 4;
+    static final int CLOSE = 5;
+    static final int COMMA = 6;
+    static final int OPEN_BRACKET = 7;
+    static final int CLOSE_BRACKET = 8;
+
+    private final CharSequence text;    // LivePreview 传进来的是会变的 StringBuilder，所以长度每次现取
+    private final String[] variables;
+    private final Map<String, Function> functions;
+
+    // 当前词法单元
+    int pos;            // 下一个要读的字符位置
+    int type;
+    int tokenStart;
+    double number;      // type == NUMBER 时的值
+    String numberText;  // type == NUMBER 时的原文
+    String name;        // type == NAME 时的名字
+    char operator;      // type == OPERATOR 时的符号
+    int previousType;   // 上一个词法单元的种类（判断隐式乘法用）
+    int scanEnd;        // 读当前词法单元看过的字符都在 scanEnd 前面；看到了文本末尾就是 length + 1
+
+    ExpressionLexer(CharSequence text, String[] variables, Map<String, Function> functions) {
+        this.text = text;
+        this.variables = variables;
+        this.functions = functions;
+    }
+
+    // 从某个词法单元后面接着读：pos 是它结束的位置，type 是它的种类
+    void reset(int pos, int type) {
+        this.pos = pos;
+        this.type = type;
+    }
+
+    // 读下一个词法单元
+    void next() {
+        previousType = type;
+        scanEnd = pos;
+        while (has(pos) && Character.isWhitespace(text.charAt(pos))) {
+            pos++;
+        }
+        tokenStart = pos;
+        if (!has(pos)) {
+            type = END;
+            return;
+        }
+
+        char c = text.charAt(pos);
+        if ((c >= '0' && c <= '9') || c == '.') {
+            readNumber();
+        } else if (isNameStart(c)) {
+            readName();
+        } else if (c == '(') {
+            pos++;
+            type = OPEN;
+        } else if (c == ')') {
+            pos++;
+            type = CLOSE;
+        } else if (c == ',') {
+            pos++;
+            type = COMMA;
+        } else if (c == '[') {
+            pos++;
+            type = OPEN_BRACKET;
+        } else if (c == ']') {
+            pos++;
+            type = CLOSE_BRACKET;
+        } else if (c == '+' || c == '-' || c == '*' || c == '/' || c == '%' || c == '^') {
+            pos++;
+            type = OPERATOR;
+            operator = c;
+        } else {
+            throw error("Unable to parse char '" + c + "' (Code:" + (int) c + ")");
+        }
+    }
+
+    // 第 i 个字符存在吗（顺便记进 scanEnd：看过了这个位置，或者看到了末尾）
+    private boolean has(int i) {
+        int length = text.length();
+        if (i < length) {
+            if (i >= scanEnd) {
+                scanEnd = i + 1;
+            }
+            return true;
+        }
+        scanEnd = length + 1;
+        return false;
+    }
+
+    // 数字：123、1.5、.5、5.、1.5e3、2E-4（e 后面必须跟数字才算科学计数法，不然 2e 就是 2 乘 e）
+    private void readNumber() {
+        int start = pos;
+        boolean seenPoint = false;
+        while (has(pos)) {
+            char c = text.charAt(pos);
+            if (c >= '0' && c <= '9') {
+                pos++;
+            } else if (c == '.') {
+                if (seenPoint) {
+                    throw error("Invalid number: multiple points");
+                }
+                seenPoint = true;
+                pos++;
+            } else {
+                break;
+            }
+        }
+        if (pos - start == 1 && text.charAt(start) == '.') {
+            throw error("Invalid number: '.'");
+        }
+
+        if (has(pos) && (text.charAt(pos) == 'e' || text.charAt(pos) == 'E')) {
+            int exponent = pos + 1;
+            if (has(exponent) && (text.charAt(exponent) == '+' || text.charAt(exponent) == '-')) {
+                exponent++;
+            }
+            if (has(exponent) && isDigit(text.charAt(exponent))) {
+                pos = exponent;
+                while (has(pos) && isDigit(text.charAt(pos))) {
+                    pos++;
+                }
+            }
+        }
+
+        type = NUMBER;
+        numberText = text.subSequence(start, pos).toString();
+        number = Double.parseDouble(numberText);
+    }
+
+    // 名字：字母或下划线开头；整段不认识的话，取最长的一个认识的前缀（所以 pi2、pie、2sinx 都能拆开）
+    private void readName() {
+        int end = pos + 1;
+        while (has(end) && isNamePart(text.charAt(end))) {
+            end++;
+        }
+
+        for (int candidate = end; candidate > pos; candidate--) {
+            String id = text.subSequence(pos, candidate).toString();
+            if (isKnownName(id)) {
+                type = NAME;
+                name = id;
+                pos = candidate;
+                return;
+            }
+        }
+        throw error("Unknown function or variable '" + text.subSequence(pos, end) + "'");
+    }
+
+    private boolean isKnownName(String id) {
+        return indexOf(variables, id) >= 0
+                || !Double.isNaN(constantValue(id))
+                || functions.containsKey(id)
+                || Builtins.lookup(id) >= 0;
+    }
+
+    // 内置常量，不是常量就返回 NaN
+    static double constantValue(String id) {
+        switch (id) {
+            case "pi":
+            case "π":
+                return Math.PI;
+            case "e":
+                return Math.E;
+            case "φ":
+                return 1.61803398874d;
+            default:
+                return Double.NaN;
+        }
+    }
+
+    static int indexOf(String[] names, String id) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(id)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isNameStart(char c) {
+        return Character.isLetter(c) || c == '_';
+    }
+
+    private static boolean isNamePart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    String describeToken() {
+        switch (type) {
+            case END:
+                return "end of expression";
+            case CLOSE:
+                return "')'";
+            case COMMA:
+                return "','";
+            default:
+                return "'" + text.subSequence(tokenStart, pos) + "'";
+        }
+    }
+
+    IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at [" + tokenStart + "] in expression '" + text + "'");
+    }
+}
@@ -0,0 +1,226 @@
+package calculator;
+
+import net.objecthunter.exp4j.function.Function;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleUnaryOperator;
+
+import static calculator.ExpressionLexer.CLOSE;
+import static calculator.ExpressionLexer.COMMA;
+import static calculator.ExpressionLexer.END;
+import static calculator.ExpressionLexer.NAME;
+import static calculator.ExpressionLexer.NUMBER;
+import static calculator.ExpressionLexer.OPEN;
+import static calculator.ExpressionLexer.OPERATOR;
+
+// 表达式解析器：一边读词法单元一边递归下降，直接得到语法树，中间不生成新的字符串
+// 语法和 exp4j 保持一致：+ - * / % ^、一元正负号、隐式乘法（2pi、3(4)）、常量 pi/π/e/φ、内置函数和自定义函数
+// 出错统一抛 IllegalArgumentException，消息里带上出错的位置
+final class ExpressionParser {
+
+    static final int MAX_DEPTH = 512;   // 括号/函数最多嵌套多少层，防止栈溢出
+
+    private final ExpressionLexer lexer;
+    private final String[] variables;
+    private final Map<String, Function> functions;
+
+    private int type;           // 当前词法单元的种类（lexer.type 的副本，下面用得太多）
+    private int depth;
+
+    private ExpressionParser(String text, String[] variables, Map<String, Function> functions) {
+        this.lexer = new ExpressionLexer(text, variables, functions);
+        this.variables = variables;
+        this.functions = functions;
+    }
+
+    // 解析入口：variables 是允许出现的变量名（按顺序编号），functions 是自定义函数
+    static Node parse(String text, String[] variables, Map<String, Function> functions) {
+        ExpressionParser parser = new ExpressionParser(text, variables, functions);
+        parser.next();
+        if (parser.type == END) {
+            throw new IllegalArgumentException("Expression can not be empty");
+        }
+        Node node = parser.parseAdditive();
+        if (parser.type != END) {
+            throw parser.error("Unexpected " + parser.describeToken());
+        }
+        return node;
+    }
+
+    static Node parse(String text) {
+        return parse(text, new String[0], Collections.emptyMap());
+    }
+
+    // ---------------- 语法分析 ----------------
+
+    // 加减法（最低优先级，左结合）
+    private Node parseAdditive() {
+        Node left = parseMultiplicative();
+        while (type == OPERATOR && (lexer.operator == '+' || lexer.operator == '-')) {
+            char op = lexer.operator;
+            next();
+            left = new Node.Binary(op, left, parseMultiplicative());
+        }
+        return left;
+    }
+
+    // 乘除取模，外加隐式乘法（2pi、(1+2)(3+4)、3sin(x)）
+    private Node parseMultiplicative() {
+        Node left = parseUnary();
+        while (true) {
+            if (type == OPERATOR && (lexer.operator == '*' || lexer.operator == '/' || lexer.operator == '%')) {
+                char op = lexer.operator;
+                next();
+                left = new Node.Binary(op, left, parseUnary());
+            } else if (startsImplicitMultiplication()) {
+                left = new Node.Binary('*', left, parseUnary());
+            } else {
+                return left;
+            }
+        }
+    }
+
+    // 下一个词能直接接在值后面当乘数吗（两个数字挨着，比如 "2 3"，不算）
+    private boolean startsImplicitMultiplication() {
+        if (type == NAME || type == OPEN) {
+            return true;
+        }
+        return type == NUMBER && lexer.previousType != NUMBER;
+    }
+
+    // 一元正负号，优先级比乘方低：-2^2 = -4，但 2^-2 也能写
+    private Node parseUnary() {
+        if (type == OPERATOR && (lexer.operator == '-' || lexer.operator == '+')) {
+            char op = lexer.operator;
+            enter();
+            next();
+            Node operand = parseUnary();
+            leave();
+            return op == '-' ? new Node.Negate(operand) : operand;
+        }
+        return parsePower();
+    }
+
+    // 乘方，右结合：2^3^2 = 2^9
+    private Node parsePower() {
+        Node base = parsePrimary();
+        if (type == OPERATOR && lexer.operator == '^') {
+            enter();
+            next();
+            Node exponent = parseUnary();
+            leave();
+            return new Node.Binary('^', base, exponent);
+        }
+        return base;
+    }
+
+    // 数字、常量、变量、函数调用、括号
+    private Node parsePrimary() {
+        switch (type) {
+            case NUMBER: {
+                Node number = new Node.Number(lexer.number, lexer.numberText);
+                next();
+                return number;
+            }
+            case NAME:
+                return parseName();
+            case OPEN: {
+                enter();
+                next();
+                Node inner = parseAdditive();
+                expect(CLOSE, "Mismatched parentheses detected. Please check the expression");
+                leave();
+                return inner;
+            }
+            case END:
+                throw error("Unexpected end of expression");
+            default:
+                throw error("Unexpected " + describeToken());
+        }
+    }
+
+    // 名字：变量、常量或者函数
+    private Node parseName() {
+        String id = lexer.name;
+        int start = lexer.tokenStart;
+
+        int variable = ExpressionLexer.indexOf(variables, id);
+        if (variable >= 0) {
+            next();
+            return new Node.Variable(id, variable);
+        }
+
+        double constant = ExpressionLexer.constantValue(id);
+        if (!Double.isNaN(constant)) {
+            next();
+            return new Node.Number(constant, id);
+        }
+
+        // 剩下的只能是函数了：自定义函数优先（和 exp4j 一样可以覆盖内置函数）
+        Function custom = functions.get(id);
+        int builtin = custom == null ? Builtins.lookup(id) : -1;
+        int arity = custom != null ? custom.getNumArguments() : Builtins.arity(builtin);
+
+        next();
+        enter();
+        expect(OPEN, "Expected '(' after function '" + id + "'");
+        List<Node> args = new ArrayList<>(arity);
+        if (type != CLOSE) {
+            args.add(parseAdditive());
+            while (type == COMMA) {
+                next();
+                args.add(parseAdditive());
+            }
+        }
+        expect(CLOSE, "Mismatched parentheses detected. Please check the expression");
+        leave();
+
+        if (args.size() != arity) {
+            throw new IllegalArgumentException("Invalid number of arguments available for '" + id
+                    + "' function at [" + start + "]");
+        }
+        Node[] argArray = args.toArray(new Node[0]);
+        if (custom == null) {
+            return new Node.BuiltinCall(id, builtin, argArray);
+        }
+        if (arity == 1 && custom instanceof DoubleUnaryOperator) {
+            return new Node.UnaryCall(id, (DoubleUnaryOperator) custom, argArray[0]);
+        }
+        return new Node.FunctionCall(custom, argArray);
+    }
+
+    private void expect(int expectedType, String message) {
+        if (type != expectedType) {
+            throw error(message);
+        }
+        next();
+    }
+
+    private void enter() {
+        if (++depth > MAX_DEPTH) {
+            throw error("Expression is nested too deeply");
+        }
+    }
+
+    private void leave() {
+        depth--;
+    }
+
+    // ---------------- 词法单元（ExpressionLexer 负责读） ----------------
+
+    private void next() {
+        lexer.next();
+        type = lexer.type;
+    }
+
+    private String describeToken() {
+        return lexer.describeToken();
+    }
+
+    private IllegalArgumentException error(String message) {
+        return lexer.error(message);
+    }
+}
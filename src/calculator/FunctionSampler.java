@@ -0,0 +1,260 @@
+package calculator;
+
+import java.util.Arrays;
+
+// 画函数图像用的自适应采样：给一个单变量表达式 f(x)，按当前的缩放比例（一个像素多宽、多高）在可见区间上取点
+// 平的地方每 GRID_PX 个像素一个点；中点偏离直线超过半个像素就对半分下去，陡的地方、跳变（tan、1/x）、
+// 定义域的边界（sqrt、log）会一直细分到 1/64 像素，所以断开的地方能找准，陡的地方也不会画成折线
+// 点都存在几个 double[] 里（按 x 排好序），每个区间还记着它是在多细的比例下验收过的：
+//   平移：比例没变，已有的区间都不用再算，只采新露出来的那一段
+//   放大：只有变粗了的区间要再验一次（每个区间求一次中点），缩小：已有的点都够细，直接用
+// 两头都在屏幕上面（或者都在下面）的区间不细分也不验收，每次 cover 再看一眼（不用求值），上下拖进来了再细分
+// 求值出错（除以 0）的点当成 NaN，图像在那里断开
+// 范围要是有限的；放大到一个像素比 ulp 还窄时，网格点至少隔一个 ulp 往前走（不会原地打转），点数还是不超过宽度 / GRID_PX
+// 不是线程安全的：一个图像窗口一个，只在 EDT 上用
+public final class FunctionSampler {
+
+    private static final double GRID_PX = 8;            // 新区间先每 8 个像素取一个点；再平的地方点也不会比这更稀
+    private static final double MIN_PX = 1.0 / 64;      // 跳变、定义域边界最细找到 1/64 像素
+    private static final double JUMP_PX = 2;            // 不到一个像素宽却跨了这么多像素高：要再分下去看看是陡还是断
+    private static final int MAX_DEPTH = 40;            // 对半分最多分这么多层
+    private static final int MAX_SAMPLES = 1 << 18;     // 来回缩放攒下的点太多了，就扔掉重采
+    private static final double SCALE_SLACK = 1 + 1e-9;
+
+    private final Program program;
+    private final double[] stack;
+    private final double[] variable = new double[1];
+
+    // 采好的点：xs 从小到大；acceptedDx/Dy[i] 是 i 到 i+1 这个区间在什么比例下验收过（NaN 是还没验过）
+    private double[] xs = new double[0];
+    private double[] ys = new double[0];
+    private double[] acceptedDx = new double[0];
+    private double[] acceptedDy = new double[0];
+    private int size;
+
+    // cover 时往这里面写新的一份，写完和上面的交换
+    private double[] nextXs = new double[1024];
+    private double[] nextYs = new double[1024];
+    private double[] nextDx = new double[1024];
+    private double[] nextDy = new double[1024];
+    private int nextSize;
+
+    private double dx = Double.NaN;     // 最近一次 cover 的比例：一个像素多宽
+    private double dy = Double.NaN;     // 一个像素多高
+    private double yMin;                // 最近一次 cover 的纵向可见范围
+    private double yMax;
+    private long evaluations;           // 一共求了几次值
+
+    public FunctionSampler(CompiledExpression expression) {
+        if (expression.getVariableNames().length != 1) {
+            throw new IllegalArgumentException("Expression must have exactly one variable");
+        }
+        this.program = expression.getProgram();
+        this.stack = new double[program.getMaxStack()];
+    }
+
+    // 保证可见范围 [xMin, xMax] × [yMin, yMax] 画在 width × height 像素上时点够细；返回这次新求了几个点
+    public long cover(double xMin, double xMax, double yMin, double yMax, int width, int height) {
+        if (!(xMax > xMin) || !(yMax > yMin) || width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Empty range or size");
+        }
+        if (!Double.isFinite(xMax - xMin) || !Double.isFinite(yMax - yMin)) {
+            throw new IllegalArgumentException("Range is too large");
+        }
+        long before = evaluations;
+        this.dx = (xMax - xMin) / width;
+        this.dy = (yMax - yMin) / height;
+        this.yMin = yMin;
+        this.yMax = yMax;
+        if (size > MAX_SAMPLES) {
+            size = 0;
+        }
+
+        // 屏幕两边各留一屏的点（往回拖的时候不用重算），再远的扔掉
+        double keepMin = xMin - (xMax - xMin);
+        double keepMax = xMax + (xMax - xMin);
+        int from = 0;
+        while (from < size && xs[from] < keepMin) {
+            from++;
+        }
+        int to = size;
+        while (to > from && xs[to - 1] > keepMax) {
+            to--;
+        }
+
+        // 先把锚点排好：左边新露出来的网格点、留下来的旧点、右边新露出来的网格点
+        double step = GRID_PX * dx;
+        nextSize = 0;
+        if (from == to) {
+            for (double x = xMin - step; ; x = Math.max(x + step, Math.nextUp(x))) {   // 步长比 ulp(x) 还小时加上去 x 不动
+                anchor(x, evaluate(x), Double.NaN, Double.NaN);
+                if (x > xMax) break;
+            }
+        } else {
+            double first = xs[from];
+            if (first > xMin) {
+                int count = (int) Math.ceil((first - xMin) / step);
+                for (int k = count; k >= 1; k--) {
+                    double x = first - k * step;
+                    anchor(x, evaluate(x), Double.NaN, Double.NaN);
+                }
+            }
+            for (int i = from; i < to; i++) {
+                // 最后一个留下来的点后面接的是新网格点，这个区间还没验过
+                boolean last = i == to - 1;
+                anchor(xs[i], ys[i], last ? Double.NaN : acceptedDx[i], last ? Double.NaN : acceptedDy[i]);
+            }
+            double end = xs[to - 1];
+            if (end < xMax) {
+                int count = (int) Math.ceil((xMax - end) / step);
+                for (int k = 1; k <= count; k++) {
+                    double x = end + k * step;
+                    anchor(x, evaluate(x), Double.NaN, Double.NaN);
+                }
+            }
+        }
+
+        // 再把可见范围里不够细的区间细分（锚点拷到 xs 那边当输入，输出写回 next*）
+        swap();
+        nextSize = 0;
+        for (int i = 0; i < size; i++) {
+            anchor(xs[i], ys[i], acceptedDx[i], acceptedDy[i]);
+            if (i + 1 < size && xs[i + 1] > xMin && xs[i] < xMax && !accepted(i)) {
+                refine(xs[i], ys[i], xs[i + 1], ys[i + 1], 0);
+            }
+        }
+        swap();
+        return evaluations - before;
+    }
+
+    // 前一个点已经写进去了，这里负责 (x0, x1) 之间的点，并给最后写进去的点标上区间的验收比例
+    private void refine(double x0, double y0, double x1, double y1, int depth) {
+        double widthPx = (x1 - x0) / dx;
+        if (widthPx <= GRID_PX && ((y0 > yMax && y1 > yMax) || (y0 < yMin && y1 < yMin))) {
+            // 整段在屏幕外面：先不管，也不算验收过（下次上下拖进来了还得细分）
+            nextDx[nextSize - 1] = Double.NaN;
+            nextDy[nextSize - 1] = Double.NaN;
+            return;
+        }
+        boolean finite0 = Double.isFinite(y0);
+        boolean finite1 = Double.isFinite(y1);
+        // 一边有值一边没有（定义域的边界）、或者一个像素内跨了好几个像素高：可疑，要分到更细
+        boolean suspicious = finite0 != finite1 || (finite0 && Math.abs(y1 - y0) > JUMP_PX * dy);
+        if (depth >= MAX_DEPTH || widthPx <= MIN_PX || (widthPx <= 1 && !suspicious)) {
+            markAccepted();
+            return;
+        }
+
+        double xm = 0.5 * (x0 + x1);
+        if (xm <= x0 || xm >= x1) {
+            markAccepted();     // 两个点已经是相邻的 double，分不开了
+            return;
+        }
+        double ym = evaluate(xm);
+        boolean good;
+        if (finite0 && finite1 && Double.isFinite(ym)) {
+            // 中点离直线不到半个像素就算直的
+            // 网格点是一步步加出来的，间隔可能比 GRID_PX 宽一点点，留点余量，不然平的地方也会多分一层
+            good = Math.abs(ym - 0.5 * (y0 + y1)) <= 0.5 * dy && widthPx <= GRID_PX * SCALE_SLACK;
+        } else {
+            // 三个点都没有值（整段在定义域外）就不往下分了
+            good = !finite0 && !finite1 && !Double.isFinite(ym) && widthPx <= GRID_PX * SCALE_SLACK;
+        }
+        if (good) {
+            markAccepted();
+            anchor(xm, ym, dx, dy);
+            return;
+        }
+        refine(x0, y0, xm, ym, depth + 1);
+        anchor(xm, ym, Double.NaN, Double.NaN);
+        refine(xm, ym, x1, y1, depth + 1);
+    }
+
+    // 区间 i 在现在的比例下还算不算验收过（比例只会越粗越好验，所以比当时粗或者一样就行）
+    // 平移以后用 (xMax - xMin) / 宽度 重新算出来的比例可能差最后一两位，留一点余量
+    private boolean accepted(int i) {
+        return acceptedDx[i] <= dx * SCALE_SLACK && acceptedDy[i] <= dy * SCALE_SLACK;  // NaN 比较都是 false
+    }
+
+    private void markAccepted() {
+        nextDx[nextSize - 1] = dx;
+        nextDy[nextSize - 1] = dy;
+    }
+
+    private void anchor(double x, double y, double okDx, double okDy) {
+        if (nextSize == nextXs.length) {
+            int capacity = Math.max(1024, nextSize * 2);
+            nextXs = Arrays.copyOf(nextXs, capacity);
+            nextYs = Arrays.copyOf(nextYs, capacity);
+            nextDx = Arrays.copyOf(nextDx, capacity);
+            nextDy = Arrays.copyOf(nextDy, capacity);
+        }
+        nextXs[nextSize] = x;
+        nextYs[nextSize] = y;
+        nextDx[nextSize] = okDx;
+        nextDy[nextSize] = okDy;
+        nextSize++;
+    }
+
+    private void swap() {
+        double[] t = xs; xs = nextXs; nextXs = t;
+        t = ys; ys = nextYs; nextYs = t;
+        t = acceptedDx; acceptedDx = nextDx; nextDx = t;
+        t = acceptedDy; acceptedDy = nextDy; nextDy = t;
+        size = nextSize;
+    }
+
+    // 算一个点，出错（除以 0）就是 NaN
+    double evaluate(double x) {
+        evaluations++;
+        variable[0] = x;
+        try {
+            return program.evaluate(variable, stack);
+        } catch (ArithmeticException e) {
+            return Double.NaN;
+        }
+    }
+
+    // 第 i 个点和下一个点之间要不要连线：有一边没值、或者细分到底了还是跨了一大截（跳变）就断开
+    public boolean connected(int i) {
+        double y0 = ys[i];
+        double y1 = ys[i + 1];
+        if (!Double.isFinite(y0) || !Double.isFinite(y1)) {
+            return false;
+        }
+        return !(xs[i + 1] - xs[i] < 2 * MIN_PX * dx && Math.abs(y1 - y0) > JUMP_PX * dy);
+    }
+
+    // 表格用：从 from 开始每隔 step 一个点，填满 xs，结果写进 ys（要多长自己定）
+    // 整批按块算（BlockEvaluator）；中间有除以 0 的点，就退回一个一个算，那些点是 NaN
+    public void tabulate(double from, double step, double[] xs, double[] ys) {
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] = from + i * step;    // 用乘法不用累加，步长是 0.1 这种也不会越走越偏
+        }
+        evaluations += xs.length;
+        try {
+            BlockEvaluator.evaluate(program, new double[][]{xs}, ys, xs.length);
+        } catch (ArithmeticException e) {
+            for (int i = 0; i < xs.length; i++) {
+                ys[i] = evaluate(xs[i]);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // 采好的点（直接给内部数组，只读；下一次 cover 之后就不算数了）
+    public double[] getXs() {
+        return xs;
+    }
+
+    public double[] getYs() {
+        return ys;
+    }
+
+    public long getEvaluationCount() {
+        return evaluations;
+    }
+}
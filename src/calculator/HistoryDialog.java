@@ -0,0 +1,161 @@
+package calculator;
+
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.*;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+
+// 历史记录窗口：上面一个搜索框（按表达式开头搜），下面是列表，最新的在最上面
+// 不搜的时候列表直接对着历史文件，滚到哪一行才读哪一条，几百万条也不用先读进来
+// 双击或者回车就把那条表达式（连同当时的角度模式）放回计算器
+class HistoryDialog extends JDialog {
+
+    private static final int SEARCH_LIMIT = 1000;   // 搜索最多列出多少条
+
+    private final CalculationHistory history;
+    private final Consumer<CalculationHistory.Entry> onRecall;
+    private final JTextField searchField = new JTextField();
+    private final JList<CalculationHistory.Entry> list = new JList<>();
+    private final SimpleDateFormat timeFormat = new SimpleDateFormat("MM-dd HH:mm");
+
+    // 不搜的时候用的：第 row 行是倒数第 row + 1 条
+    private final class AllEntries extends AbstractListModel<CalculationHistory.Entry> {
+        private final int size = (int) Math.min(history.size(), Integer.MAX_VALUE);
+
+        @Override
+        public int getSize() {
+            return size;
+        }
+
+        @Override
+        public CalculationHistory.Entry getElementAt(int row) {
+            try {
+                return history.get(size - 1 - row);
+            } catch (IOException e) {
+                return null;
+            }
+        }
+    }
+
+    // 搜出来的结果
+    private static final class Found extends AbstractListModel<CalculationHistory.Entry> {
+        private final List<CalculationHistory.Entry> entries;
+
+        Found(List<CalculationHistory.Entry> entries) {
+            this.entries = entries;
+        }
+
+        @Override
+        public int getSize() {
+            return entries.size();
+        }
+
+        @Override
+        public CalculationHistory.Entry getElementAt(int row) {
+            return entries.get(row);
+        }
+    }
+
+    HistoryDialog(Frame owner, CalculationHistory history, Consumer<CalculationHistory.Entry> onRecall) {
+        super(owner, "历史记录", false);
+        this.history = history;
+        this.onRecall = onRecall;
+        setSize(420, 480);
+        setLocationRelativeTo(owner);
+
+        JPanel panel = new JPanel(new BorderLayout(5, 5));
+        panel.setBorder(new EmptyBorder(8, 8, 8, 8));
+
+        searchField.setFont(new Font(ScientificCalculator.fontUI, Font.PLAIN, 16));
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                refresh();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                refresh();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                refresh();
+            }
+        });
+        panel.add(searchField, BorderLayout.NORTH);
+
+        // 行高、行宽固定，JList 就不会为了算大小把每一行都读一遍
+        list.setFont(new Font(ScientificCalculator.fontUI, Font.PLAIN, 15));
+        list.setFixedCellHeight(24);
+        list.setFixedCellWidth(380);
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        list.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+                if (value instanceof CalculationHistory.Entry entry) {
+                    setText(entry + "    " + (entry.radians ? "" : "角度  ")
+                            + timeFormat.format(new Date(entry.timestamp)));
+                }
+                return this;
+            }
+        });
+        list.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) {
+                    recallSelected();
+                }
+            }
+        });
+        panel.add(new JScrollPane(list), BorderLayout.CENTER);
+
+        // 回车取回选中的那条（在搜索框里回车就取第一条），Esc 关掉
+        getRootPane().registerKeyboardAction(e -> recallSelected(),
+                KeyStroke.getKeyStroke(KeyEvent.VK_ENTER, 0), JComponent.WHEN_IN_FOCUSED_WINDOW);
+        getRootPane().registerKeyboardAction(e -> dispose(),
+                KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0), JComponent.WHEN_IN_FOCUSED_WINDOW);
+
+        add(panel);
+        refresh();
+    }
+
+    // 搜索框变了就重新列（索引是映射在内存里的，一百万条扫一遍也就几毫秒，直接在 EDT 上做）
+    private void refresh() {
+        String prefix = searchField.getText().trim();
+        if (prefix.isEmpty()) {
+            list.setModel(new AllEntries());
+        } else {
+            List<CalculationHistory.Entry> entries;
+            try {
+                entries = history.search(prefix, SEARCH_LIMIT);
+            } catch (IOException e) {
+                entries = Collections.emptyList();
+            }
+            list.setModel(new Found(entries));
+        }
+        if (list.getModel().getSize() > 0) {
+            list.setSelectedIndex(0);
+        }
+    }
+
+    private void recallSelected() {
+        CalculationHistory.Entry entry = list.getSelectedValue();
+        if (entry != null) {
+            onRecall.accept(entry);
+            dispose();
+        }
+    }
+}
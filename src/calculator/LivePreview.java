@@ -0,0 +1,452 @@
+package calculator;
+
+import net.objecthunter.exp4j.function.Function;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleUnaryOperator;
+
+import static calculator.ExpressionLexer.CLOSE;
+import static calculator.ExpressionLexer.COMMA;
+import static calculator.ExpressionLexer.END;
+import static calculator.ExpressionLexer.NAME;
+import static calculator.ExpressionLexer.NUMBER;
+import static calculator.ExpressionLexer.OPEN;
+import static calculator.ExpressionLexer.OPERATOR;
+
+// 边输入边预览：表达式每改一下，就把当前的结果先算出来（还没按“=”）
+// 语法和 ExpressionParser 完全一样，只是换成运算符优先级（调度场）的写法，一个词法单元一个词法单元往前推，边读边算：
+// 每读完一个词法单元就留一份状态（值栈和运算符栈都是不可变的链表，新旧状态共用大部分节点），
+// 文本改了只退回到受影响的那个词法单元重新读，所以每次按键的开销只和改动的长度有关，和表达式有多长无关
+// 括号没关完也能预览（当成后面补齐了）；写到一半（结尾是运算符）或者算不出来就没有预览
+// 不是线程安全的，一个输入框用一个
+public final class LivePreview {
+
+    // 运算符栈里的几种东西
+    private static final int BINARY = 0;
+    private static final int UNARY = 1;
+    private static final int PAREN = 2;
+    private static final int CALL = 3;
+
+    // 优先级：一元正负号比乘方低、比乘除高（-2^2 = -4）
+    private static final int ADDITIVE = 1;
+    private static final int MULTIPLICATIVE = 2;
+    private static final int PREFIX = 3;
+    private static final int POWER = 4;
+
+    private static final State START = new State(null, null, true, null, 0);
+
+    private final StringBuilder text = new StringBuilder();
+    private final ExpressionLexer lexer;
+    private final Map<String, Function> functions;
+    private final MemoryRegisters registers;    // 表达式里的 M、M1 这些取的是这里的值（预览时的值）
+    private final List<Checkpoint> checkpoints = new ArrayList<>();   // 每个读完的词法单元一个
+    private Double preview;
+
+    // 正在推进的状态（从某个 State 里取出来，改完再存回一个新的 State）
+    private Value values;
+    private Frame ops;
+    private boolean expectOperand;
+    private Frame pendingFunction;
+    private int depth;
+
+    LivePreview(Map<String, Function> functions, MemoryRegisters registers) {
+        this.functions = functions;
+        this.registers = registers;
+        this.lexer = new ExpressionLexer(text, MemoryRegisters.NAMES, functions);
+    }
+
+    // 在末尾追加（按键输入走这里）
+    public void append(CharSequence s) {
+        int unchanged = text.length();
+        text.append(s);
+        refresh(unchanged);
+    }
+
+    // 删掉最后一个字符
+    public void backspace() {
+        if (text.length() > 0) {
+            text.setLength(text.length() - 1);
+            refresh(text.length());
+        }
+    }
+
+    // 整个换掉（粘贴、清空、取反这些）：前面相同的部分照样不用重新读
+    public void setText(CharSequence s) {
+        int unchanged = 0;
+        int limit = Math.min(text.length(), s.length());
+        while (unchanged < limit && text.charAt(unchanged) == s.charAt(unchanged)) {
+            unchanged++;
+        }
+        text.setLength(unchanged);
+        text.append(s, unchanged, s.length());
+        refresh(unchanged);
+    }
+
+    public String getText() {
+        return text.toString();
+    }
+
+    // 当前表达式的预览结果，没有就是 null
+    public Double getPreview() {
+        return preview;
+    }
+
+    // 前 unchanged 个字符没变：看过后面字符（或者看到过末尾）的词法单元都作废，从最后一个还有效的接着读
+    private void refresh(int unchanged) {
+        int valid = checkpoints.size();
+        while (valid > 0 && checkpoints.get(valid - 1).scanEnd > unchanged) {
+            valid--;
+        }
+        checkpoints.subList(valid, checkpoints.size()).clear();
+
+        Checkpoint last = valid == 0 ? null : checkpoints.get(valid - 1);
+        State state = last == null ? START : last.state;
+        if (state != null) {
+            lexer.reset(last == null ? 0 : last.end, last == null ? END : last.type);
+            int scanEnd = last == null ? 0 : last.scanEnd;
+            while (state != null) {
+                try {
+                    lexer.next();
+                    if (lexer.type == END) {
+                        break;
+                    }
+                    load(state);
+                    consume();
+                    state = save();
+                } catch (RuntimeException e) {
+                    // 语法错误、除以零、自定义函数自己抛的异常：从这里往后都算不出来了
+                    state = null;
+                }
+                // scanEnd 取到目前为止最大的，这样从后往前退的时候碰到第一个有效的就可以停
+                scanEnd = Math.max(scanEnd, lexer.scanEnd);
+                checkpoints.add(new Checkpoint(lexer.pos, lexer.type, scanEnd, state));
+            }
+        }
+        preview = state == null ? null : finish(state);
+    }
+
+    // ---------------- 调度场 ----------------
+
+    // 处理当前这个词法单元
+    private void consume() {
+        if (pendingFunction != null) {
+            if (lexer.type != OPEN) {
+                throw lexer.error("Expected '(' after function '" + pendingFunction.name + "'");
+            }
+            ops = pendingFunction;
+            pendingFunction = null;
+            expectOperand = true;
+            return;
+        }
+
+        if (expectOperand) {
+            operand();
+            return;
+        }
+
+        switch (lexer.type) {
+            case OPERATOR:
+                binary(lexer.operator);
+                return;
+            case NUMBER:
+            case NAME:
+            case OPEN:
+                if (lexer.type == NUMBER && lexer.previousType == NUMBER) {
+                    throw lexer.error("Unexpected " + lexer.describeToken());  // "2 3" 不算隐式乘法
+                }
+                binary('*');    // 2pi、3(4)、(1+2)sin(x)
+                operand();
+                return;
+            case CLOSE:
+                reduce(0, false);
+                if (ops == null) {
+                    throw lexer.error("Unexpected " + lexer.describeToken());
+                }
+                if (ops.kind == PAREN) {
+                    pop();
+                } else {
+                    call(ops.argCount + 1);
+                }
+                return;
+            case COMMA:
+                reduce(0, false);
+                if (ops == null || ops.kind != CALL) {
+                    throw lexer.error("Unexpected " + lexer.describeToken());
+                }
+                ops = ops.withArgCount(ops.argCount + 1);
+                expectOperand = true;
+                return;
+            default:
+                throw lexer.error("Unexpected " + lexer.describeToken());
+        }
+    }
+
+    // 这里该出现一个值：数字、常量、函数名、左括号，或者一元正负号
+    private void operand() {
+        switch (lexer.type) {
+            case NUMBER:
+                push(lexer.number);
+                return;
+            case NAME: {
+                double constant = ExpressionLexer.constantValue(lexer.name);
+                if (!Double.isNaN(constant)) {
+                    push(constant);
+                    return;
+                }
+                int register = MemoryRegisters.indexOf(lexer.name);
+                if (register >= 0) {
+                    push(registers.get(register));
+                    return;
+                }
+                // 自定义函数优先（和 ExpressionParser 一样可以覆盖内置函数）
+                Function custom = functions.get(lexer.name);
+                int builtin = custom == null ? Builtins.lookup(lexer.name) : -1;
+                int arity = custom != null ? custom.getNumArguments() : Builtins.arity(builtin);
+                enter();
+                pendingFunction = new Frame(CALL, ' ', 0, lexer.name, builtin, custom, arity, 0, lexer.tokenStart, ops);
+                return;
+            }
+            case OPEN:
+                enter();
+                ops = new Frame(PAREN, ' ', 0, null, -1, null, 0, 0, lexer.tokenStart, ops);
+                return;
+            case OPERATOR:
+                if (lexer.operator == '-' || lexer.operator == '+') {
+                    enter();
+                    ops = new Frame(UNARY, lexer.operator, PREFIX, null, -1, null, 0, 0, lexer.tokenStart, ops);
+                    return;
+                }
+                break;
+            case CLOSE:
+                if (ops != null && ops.kind == CALL && ops.argCount == 0) {
+                    call(0);    // 没有参数的函数 f()
+                    return;
+                }
+                break;
+            default:
+                break;
+        }
+        throw lexer.error("Unexpected " + lexer.describeToken());
+    }
+
+    // 二元运算符：先把栈里优先级更高（左结合的话相等也算）的算掉，再压进去
+    private void binary(char operator) {
+        int precedence = precedence(operator);
+        boolean rightAssociative = operator == '^';
+        reduce(precedence, rightAssociative);
+        if (rightAssociative) {
+            enter();    // 指数和 ExpressionParser 一样算一层嵌套
+        }
+        ops = new Frame(BINARY, operator, precedence, null, -1, null, 0, 0, lexer.tokenStart, ops);
+        expectOperand = true;
+    }
+
+    private void reduce(int precedence, boolean rightAssociative) {
+        while (ops != null && (ops.kind == BINARY || ops.kind == UNARY)
+                && (ops.precedence > precedence || (ops.precedence == precedence && !rightAssociative))) {
+            Frame frame = pop();
+            if (frame.kind == UNARY) {
+                if (frame.operator == '-') {
+                    values = new Value(-values.value, values.next);
+                }
+            } else {
+                double right = values.value;
+                Value rest = values.next;
+                values = new Value(apply(frame.operator, rest.value, right), rest.next);
+            }
+        }
+    }
+
+    // 栈顶的函数收到了 count 个参数，调用它
+    private void call(int count) {
+        Frame frame = ops;
+        if (count != frame.arity) {
+            throw new IllegalArgumentException("Invalid number of arguments available for '" + frame.name
+                    + "' function at [" + frame.start + "]");
+        }
+        double[] args = new double[count];
+        for (int i = count - 1; i >= 0; i--) {
+            args[i] = values.value;
+            values = values.next;
+        }
+        pop();
+
+        double result;
+        if (frame.custom == null) {
+            result = count == 1 ? Builtins.apply(frame.builtin, args[0]) : Math.pow(args[0], args[1]);
+        } else if (count == 1 && frame.custom instanceof DoubleUnaryOperator) {
+            result = ((DoubleUnaryOperator) frame.custom).applyAsDouble(args[0]);
+        } else {
+            result = frame.custom.apply(args);
+        }
+        push(result);
+    }
+
+    // 读到末尾了：没关的括号、函数都当成补齐了，把栈里剩下的全算掉
+    private Double finish(State state) {
+        if (state.expectOperand || state.pendingFunction != null) {
+            return null;
+        }
+        load(state);
+        try {
+            while (true) {
+                reduce(0, false);
+                if (ops == null) {
+                    return values.value;
+                }
+                if (ops.kind == PAREN) {
+                    pop();
+                } else {
+                    call(ops.argCount + 1);
+                }
+            }
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    // 和 Program 里的指令一样算
+    private static double apply(char operator, double left, double right) {
+        switch (operator) {
+            case '+':
+                return left + right;
+            case '-':
+                return left - right;
+            case '*':
+                return left * right;
+            case '/':
+            case '%':
+                if (right == 0d) {
+                    throw new ArithmeticException("Division by zero!");
+                }
+                return operator == '/' ? left / right : left % right;
+            case '^':
+                return Math.pow(left, right);
+            default:
+                throw new IllegalArgumentException("Unknown operator: " + operator);
+        }
+    }
+
+    private static int precedence(char operator) {
+        switch (operator) {
+            case '+':
+            case '-':
+                return ADDITIVE;
+            case '^':
+                return POWER;
+            default:
+                return MULTIPLICATIVE;
+        }
+    }
+
+    private void push(double value) {
+        values = new Value(value, values);
+        expectOperand = false;
+    }
+
+    private Frame pop() {
+        Frame frame = ops;
+        ops = frame.next;
+        if (frame.kind != BINARY || frame.operator == '^') {
+            depth--;
+        }
+        return frame;
+    }
+
+    private void enter() {
+        if (++depth > ExpressionParser.MAX_DEPTH) {
+            throw lexer.error("Expression is nested too deeply");
+        }
+    }
+
+    private void load(State state) {
+        values = state.values;
+        ops = state.ops;
+        expectOperand = state.expectOperand;
+        pendingFunction = state.pendingFunction;
+        depth = state.depth;
+    }
+
+    private State save() {
+        return new State(values, ops, expectOperand, pendingFunction, depth);
+    }
+
+    // ---------------- 不可变的状态 ----------------
+
+    // 读完某个词法单元后的状态；出错以后就是 null
+    private static final class State {
+        final Value values;
+        final Frame ops;
+        final boolean expectOperand;    // 下一个该是值（而不是运算符）
+        final Frame pendingFunction;    // 刚读到函数名，在等它的左括号
+        final int depth;
+
+        State(Value values, Frame ops, boolean expectOperand, Frame pendingFunction, int depth) {
+            this.values = values;
+            this.ops = ops;
+            this.expectOperand = expectOperand;
+            this.pendingFunction = pendingFunction;
+            this.depth = depth;
+        }
+    }
+
+    // 值栈
+    private static final class Value {
+        final double value;
+        final Value next;
+
+        Value(double value, Value next) {
+            this.value = value;
+            this.next = next;
+        }
+    }
+
+    // 运算符栈：运算符、左括号、函数调用
+    private static final class Frame {
+        final int kind;
+        final char operator;
+        final int precedence;
+        final String name;          // 函数名
+        final int builtin;          // 内置函数编号（自定义函数是 -1）
+        final Function custom;
+        final int arity;
+        final int argCount;         // 函数已经读完了几个参数
+        final int start;            // 在文本里的位置（报错用）
+        final Frame next;
+
+        Frame(int kind, char operator, int precedence, String name, int builtin, Function custom,
+              int arity, int argCount, int start, Frame next) {
+            this.kind = kind;
+            this.operator = operator;
+            this.precedence = precedence;
+            this.name = name;
+            this.builtin = builtin;
+            this.custom = custom;
+            this.arity = arity;
+            this.argCount = argCount;
+            this.start = start;
+            this.next = next;
+        }
+
+        Frame withArgCount(int argCount) {
+            return new Frame(kind, operator, precedence, name, builtin, custom, arity, argCount, start, next);
+        }
+    }
+
+    // 读完一个词法单元的位置：end 是它结束的地方，scanEnd 是到它为止看过的最远位置
+    private static final class Checkpoint {
+        final int end;
+        final int type;
+        final int scanEnd;
+        final State state;
+
+        Checkpoint(int end, int type, int scanEnd, State state) {
+            this.end = end;
+            this.type = type;
+            this.scanEnd = scanEnd;
+            this.state = state;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package calculator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// 按行读大文件：一段一段地把文件映射进内存（默认每段 64MB），逐行切出来
+// 堆上只留一行的缓冲区，所以几个 GB 的文件也不会把内存撑爆
+public class MappedLineReader implements Closeable {
+
+    public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;  // 每次映射多大
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final int windowSize;
+
+    private MappedByteBuffer window;   // 当前映射的这一段
+    private long windowStart;          // 这一段在文件里的起始位置
+    private byte[] lineBuffer = new byte[256];  // 当前行的字节（不够会扩容，最多到最长的那一行）
+
+    public MappedLineReader(Path file) throws IOException {
+        this(file, DEFAULT_WINDOW_SIZE);
+    }
+
+    public MappedLineReader(Path file, int windowSize) throws IOException {
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("windowSize must be positive");
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.fileSize = channel.size();
+        this.windowSize = windowSize;
+        this.windowStart = 0;
+    }
+
+    // 读下一行（UTF-8，不带换行符，\r\n 也会处理），读完了返回 null
+    public String readLine() throws IOException {
+        int length = 0;
+
+        while (true) {
+            if (window == null || !window.hasRemaining()) {
+                if (!nextWindow()) {
+                    break; // 文件读完了
+                }
+            }
+
+            byte b = window.get();
+            if (b == '\n') {
+                return decode(length);
+            }
+            if (length == lineBuffer.length) {
+                lineBuffer = Arrays.copyOf(lineBuffer, lineBuffer.length * 2);
+            }
+            lineBuffer[length++] = b;
+        }
+
+        // 最后一行没有换行符的情况
+        return length > 0 ? decode(length) : null;
+    }
+
+    // 映射下一段，没有了就返回 false
+    private boolean nextWindow() throws IOException {
+        long next = window == null ? 0 : windowStart + window.capacity();
+        if (next >= fileSize) {
+            return false;
+        }
+        long size = Math.min(windowSize, fileSize - next);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, next, size);
+        windowStart = next;
+        return true;
+    }
+
+    // 把一行字节转成字符串（顺手去掉 Windows 的 \r）
+    private String decode(int length) {
+        if (length > 0 && lineBuffer[length - 1] == '\r') {
+            length--;
+        }
+        return new String(lineBuffer, 0, length, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+}
@@ -0,0 +1,432 @@
+package calculator;
+
+import java.util.Arrays;
+import java.util.function.DoubleUnaryOperator;
+import java.util.stream.IntStream;
+
+// 矩阵（向量就是 n×1 的矩阵，一个数就是 1×1 的）：按行存在一个 double[] 里，a[i][j] 是 data[i * columns + j]
+// 不可变，运算都返回新的矩阵，可以在线程之间随便传
+// 大的运算拆开丢给 ForkJoin 公共池：乘法、转置按块分给线程，LU 分解每一步消元按行分，求解、求逆按右边的列分
+// 乘法分块（BLOCK × BLOCK 的小块，A、B、C 的三块一起放得进 L1/L2），小块里按 i-k-j 的顺序走，最里层是连续的一行
+// 出错：形状对不上、不是方阵抛 IllegalArgumentException；奇异矩阵（主元真是 0）求逆、求解抛 ArithmeticException
+// 里面有 NaN 的（或者消元消出 NaN 的，比如 ∞ - ∞）不算奇异：和算数一样，行列式是 NaN，求逆、求解的结果全是 NaN
+public final class Matrix {
+
+    private static final int BLOCK = 64;                    // 分块的边长（64×64 个 double 是 32KB）
+    private static final long PARALLEL_WORK = 1L << 18;     // 乘加次数超过这么多才并行，小矩阵分线程反而慢
+    private static final int PARALLEL_COLUMNS = 64;         // 求解时每个线程分到的右边的列数
+
+    private final int rows;
+    private final int columns;
+    private final double[] data;
+
+    // 不复制，data 交给这个矩阵（包里自己建的数组才这么用）
+    Matrix(int rows, int columns, double[] data) {
+        if (rows <= 0 || columns <= 0) {
+            throw new IllegalArgumentException("Matrix must have at least one row and one column");
+        }
+        if ((long) rows * columns != data.length) {
+            throw new IllegalArgumentException("Matrix data has " + data.length + " values, expected " + rows + "x" + columns);
+        }
+        this.rows = rows;
+        this.columns = columns;
+        this.data = data;
+    }
+
+    // 按行给出全部元素（复制一份）
+    public static Matrix of(int rows, int columns, double... values) {
+        return new Matrix(rows, columns, values.clone());
+    }
+
+    // 列向量
+    public static Matrix vector(double... values) {
+        return of(values.length, 1, values);
+    }
+
+    public static Matrix scalar(double value) {
+        return new Matrix(1, 1, new double[]{value});
+    }
+
+    public static Matrix identity(int n) {
+        double[] data = new double[checkedSize(n, n)];
+        for (int i = 0; i < n; i++) {
+            data[i * n + i] = 1;
+        }
+        return new Matrix(n, n, data);
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public double get(int row, int column) {
+        if (row < 0 || row >= rows || column < 0 || column >= columns) {
+            throw new IndexOutOfBoundsException("(" + row + ", " + column + ") outside " + shape());
+        }
+        return data[row * columns + column];
+    }
+
+    // 按行排好的全部元素（复制一份）
+    public double[] toArray() {
+        return data.clone();
+    }
+
+    public boolean isScalar() {
+        return rows == 1 && columns == 1;
+    }
+
+    // 1×1 的矩阵当一个数用
+    public double scalarValue() {
+        if (!isScalar()) {
+            throw new IllegalArgumentException("Expected a number but got a " + shape() + " matrix");
+        }
+        return data[0];
+    }
+
+    String shape() {
+        return rows + "x" + columns;
+    }
+
+    // ---------------- 逐个元素的运算 ----------------
+
+    public Matrix add(Matrix other) {
+        checkSameShape(other, "+");
+        double[] result = new double[data.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = data[i] + other.data[i];
+        }
+        return new Matrix(rows, columns, result);
+    }
+
+    public Matrix subtract(Matrix other) {
+        checkSameShape(other, "-");
+        double[] result = new double[data.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = data[i] - other.data[i];
+        }
+        return new Matrix(rows, columns, result);
+    }
+
+    public Matrix scale(double factor) {
+        double[] result = new double[data.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = data[i] * factor;
+        }
+        return new Matrix(rows, columns, result);
+    }
+
+    public Matrix map(DoubleUnaryOperator function) {
+        double[] result = new double[data.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = function.applyAsDouble(data[i]);
+        }
+        return new Matrix(rows, columns, result);
+    }
+
+    private void checkSameShape(Matrix other, String operation) {
+        if (rows != other.rows || columns != other.columns) {
+            throw new IllegalArgumentException("Matrix dimensions do not match: " + shape() + " " + operation + " " + other.shape());
+        }
+    }
+
+    // ---------------- 乘法、转置 ----------------
+
+    // 矩阵乘法 this × other
+    public Matrix multiply(Matrix other) {
+        if (columns != other.rows) {
+            throw new IllegalArgumentException("Matrix dimensions do not match: " + shape() + " * " + other.shape());
+        }
+        int n = other.columns;
+        double[] result = new double[checkedSize(rows, n)];
+        int rowBlocks = (rows + BLOCK - 1) / BLOCK;
+        if ((long) rows * columns * n < PARALLEL_WORK || rowBlocks == 1) {
+            for (int block = 0; block < rowBlocks; block++) {
+                multiplyRows(other, result, block * BLOCK);
+            }
+        } else {
+            // 每个线程算 C 的一条（BLOCK 行），各写各的，不用同步
+            IntStream.range(0, rowBlocks).parallel().forEach(block -> multiplyRows(other, result, block * BLOCK));
+        }
+        return new Matrix(rows, n, result);
+    }
+
+    // C 的 [rowStart, rowStart + BLOCK) 行：k、j 方向也分块，A 的一小块、B 的一小块反复用的时候都还在缓存里
+    private void multiplyRows(Matrix other, double[] result, int rowStart) {
+        int rowEnd = Math.min(rows, rowStart + BLOCK);
+        int n = other.columns;
+        double[] b = other.data;
+        for (int kk = 0; kk < columns; kk += BLOCK) {
+            int kEnd = Math.min(columns, kk + BLOCK);
+            for (int jj = 0; jj < n; jj += BLOCK) {
+                int jEnd = Math.min(n, jj + BLOCK);
+                for (int i = rowStart; i < rowEnd; i++) {
+                    int cRow = i * n;
+                    int aRow = i * columns;
+                    for (int k = kk; k < kEnd; k++) {
+                        double a = data[aRow + k];
+                        int bRow = k * n;
+                        for (int j = jj; j < jEnd; j++) {
+                            result[cRow + j] += a * b[bRow + j];
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    public Matrix transpose() {
+        double[] result = new double[data.length];
+        int rowBlocks = (rows + BLOCK - 1) / BLOCK;
+        if (data.length < PARALLEL_WORK || rowBlocks == 1) {
+            for (int block = 0; block < rowBlocks; block++) {
+                transposeRows(result, block * BLOCK);
+            }
+        } else {
+            IntStream.range(0, rowBlocks).parallel().forEach(block -> transposeRows(result, block * BLOCK));
+        }
+        return new Matrix(columns, rows, result);
+    }
+
+    // 按小块转置：一块读进来、写出去都在缓存里，不会每写一个元素就跳一整行
+    private void transposeRows(double[] result, int rowStart) {
+        int rowEnd = Math.min(rows, rowStart + BLOCK);
+        for (int jj = 0; jj < columns; jj += BLOCK) {
+            int jEnd = Math.min(columns, jj + BLOCK);
+            for (int i = rowStart; i < rowEnd; i++) {
+                for (int j = jj; j < jEnd; j++) {
+                    result[j * rows + i] = data[i * columns + j];
+                }
+            }
+        }
+    }
+
+    // 整数次幂：反复平方；0 次是单位矩阵，负的先求逆
+    public Matrix power(int exponent) {
+        checkSquare("^");
+        Matrix base = exponent < 0 ? inverse() : this;
+        long remaining = Math.abs((long) exponent);
+        Matrix result = identity(rows);
+        while (remaining > 0) {
+            if ((remaining & 1) != 0) {
+                result = result.multiply(base);
+            }
+            remaining >>= 1;
+            if (remaining > 0) {
+                base = base.multiply(base);
+            }
+        }
+        return result;
+    }
+
+    public double trace() {
+        checkSquare("trace");
+        double sum = 0;
+        for (int i = 0; i < rows; i++) {
+            sum += data[i * columns + i];
+        }
+        return sum;
+    }
+
+    // ---------------- LU 分解：行列式、求逆、解方程 ----------------
+
+    public double determinant() {
+        checkSquare("det");
+        LU lu = new LU(this);
+        if (lu.notANumber) {
+            return Double.NaN;
+        }
+        if (lu.singular) {
+            return 0;
+        }
+        double det = lu.sign;
+        int n = rows;
+        for (int i = 0; i < n; i++) {
+            det *= lu.factors[i * n + i];
+        }
+        return det;
+    }
+
+    public Matrix inverse() {
+        checkSquare("inv");
+        return new LU(this).solve(identity(rows));
+    }
+
+    // 解 this × X = right（right 可以有好几列，一列一个方程组）
+    public Matrix solve(Matrix right) {
+        checkSquare("solve");
+        if (right.rows != rows) {
+            throw new IllegalArgumentException("Matrix dimensions do not match: " + shape() + " \\ " + right.shape());
+        }
+        return new LU(this).solve(right);
+    }
+
+    private void checkSquare(String operation) {
+        if (rows != columns) {
+            throw new IllegalArgumentException(operation + " needs a square matrix, got " + shape());
+        }
+    }
+
+    // PA = LU，部分选主元；L（对角线是 1，不存）和 U 存在同一个数组里，还是按行存
+    // 每一步消元是把主元行的倍数从下面每一行里减掉，一行一行连续地扫；剩下的行多就分给几个线程
+    private static final class LU {
+        final double[] factors;
+        final int[] permutation;    // 分解后的第 i 行是原来的第 permutation[i] 行
+        final int n;
+        int sign = 1;               // 行交换的次数是奇数就是 -1
+        boolean singular;
+        boolean notANumber;         // 消元的时候碰到了 NaN，分解没法做完
+
+        LU(Matrix matrix) {
+            n = matrix.rows;
+            factors = matrix.data.clone();
+            permutation = new int[n];
+            for (int i = 0; i < n; i++) {
+                permutation[i] = i;
+            }
+            for (int k = 0; k < n; k++) {
+                int pivot = k;
+                double max = 0;
+                for (int i = k; i < n; i++) {
+                    double value = Math.abs(factors[i * n + k]);
+                    if (value > max) {
+                        max = value;
+                        pivot = i;
+                    } else if (Double.isNaN(value)) {
+                        notANumber = true;
+                        return;
+                    }
+                }
+                if (max == 0) {
+                    singular = true;
+                    return;
+                }
+                if (pivot != k) {
+                    swapRows(pivot, k);
+                }
+
+                int step = k;
+                if ((long) (n - k) * (n - k) < PARALLEL_WORK) {
+                    for (int i = k + 1; i < n; i++) {
+                        eliminate(step, i);
+                    }
+                } else {
+                    IntStream.range(k + 1, n).parallel().forEach(i -> eliminate(step, i));
+                }
+            }
+        }
+
+        private void swapRows(int a, int b) {
+            double[] row = Arrays.copyOfRange(factors, a * n, a * n + n);
+            System.arraycopy(factors, b * n, factors, a * n, n);
+            System.arraycopy(row, 0, factors, b * n, n);
+            int p = permutation[a];
+            permutation[a] = permutation[b];
+            permutation[b] = p;
+            sign = -sign;
+        }
+
+        // 第 i 行减掉第 k 行的 l 倍，l 存在第 i 行第 k 列（L 的那个位置）
+        private void eliminate(int k, int i) {
+            int rowK = k * n;
+            int rowI = i * n;
+            double l = factors[rowI + k] / factors[rowK + k];
+            factors[rowI + k] = l;
+            if (l != 0) {
+                for (int j = k + 1; j < n; j++) {
+                    factors[rowI + j] -= l * factors[rowK + j];
+                }
+            }
+        }
+
+        // 先按 permutation 排好右边，再前代（L）、回代（U）；右边列多的话按列分给几个线程
+        Matrix solve(Matrix right) {
+            int m = right.columns;
+            if (notANumber) {
+                double[] nan = new double[n * m];
+                Arrays.fill(nan, Double.NaN);
+                return new Matrix(n, m, nan);
+            }
+            if (singular) {
+                throw new ArithmeticException("Matrix is singular");
+            }
+            double[] x = new double[n * m];
+            for (int i = 0; i < n; i++) {
+                System.arraycopy(right.data, permutation[i] * m, x, i * m, m);
+            }
+            int chunks = (m + PARALLEL_COLUMNS - 1) / PARALLEL_COLUMNS;
+            if ((long) n * n * m < PARALLEL_WORK || chunks == 1) {
+                substitute(x, m, 0, m);
+            } else {
+                IntStream.range(0, chunks).parallel().forEach(c ->
+                        substitute(x, m, c * PARALLEL_COLUMNS, Math.min(m, (c + 1) * PARALLEL_COLUMNS)));
+            }
+            return new Matrix(n, m, x);
+        }
+
+        // 对 [from, to) 这几列做前代、回代；按行减，最里层是一行里连续的几列
+        private void substitute(double[] x, int m, int from, int to) {
+            for (int i = 1; i < n; i++) {
+                int rowI = i * m;
+                for (int k = 0; k < i; k++) {
+                    double l = factors[i * n + k];
+                    if (l != 0) {
+                        int rowK = k * m;
+                        for (int j = from; j < to; j++) {
+                            x[rowI + j] -= l * x[rowK + j];
+                        }
+                    }
+                }
+            }
+            for (int i = n - 1; i >= 0; i--) {
+                int rowI = i * m;
+                for (int k = i + 1; k < n; k++) {
+                    double u = factors[i * n + k];
+                    if (u != 0) {
+                        int rowK = k * m;
+                        for (int j = from; j < to; j++) {
+                            x[rowI + j] -= u * x[rowK + j];
+                        }
+                    }
+                }
+                double diagonal = factors[i * n + i];
+                for (int j = from; j < to; j++) {
+                    x[rowI + j] /= diagonal;
+                }
+            }
+        }
+    }
+
+    private static int checkedSize(int rows, int columns) {
+        if (rows <= 0 || columns <= 0) {
+            throw new IllegalArgumentException("Matrix must have at least one row and one column");
+        }
+        long size = (long) rows * columns;
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Matrix is too large: " + rows + "x" + columns);
+        }
+        return (int) size;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Matrix)) {
+            return false;
+        }
+        Matrix other = (Matrix) o;
+        return rows == other.rows && columns == other.columns && Arrays.equals(data, other.data);
+    }
+
+    @Override
+    public int hashCode() {
+        return (rows * 31 + columns) * 31 + Arrays.hashCode(data);
+    }
+
+    @Override
+    public String toString() {
+        return "Matrix " + shape() + " " + Arrays.toString(data);
+    }
+}
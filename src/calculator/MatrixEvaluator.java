@@ -0,0 +1,350 @@
+package calculator;
+
+import net.objecthunter.exp4j.function.Function;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleUnaryOperator;
+
+import static calculator.ExpressionLexer.CLOSE;
+import static calculator.ExpressionLexer.CLOSE_BRACKET;
+import static calculator.ExpressionLexer.COMMA;
+import static calculator.ExpressionLexer.END;
+import static calculator.ExpressionLexer.NAME;
+import static calculator.ExpressionLexer.NUMBER;
+import static calculator.ExpressionLexer.OPEN;
+import static calculator.ExpressionLexer.OPEN_BRACKET;
+import static calculator.ExpressionLexer.OPERATOR;
+
+// 矩阵表达式：语法和 ExpressionParser 一样（运算符、优先级、隐式乘法、常量、函数），多了方括号写的矩阵，值都是 Matrix（一个数就是 1×1 的）
+//   [1, 2, 3] 是列向量，[[1, 2], [3, 4]] 一个方括号一行；元素可以是任意算出来是一个数的表达式（[[cos(pi/3), 1], [M1, 2]]）
+//   + - 两边形状要一样；* 是矩阵乘法（有一边是数就是数乘）；/ 只能除以数；% 只能两边都是数；A^n 是方阵的整数次幂
+//   det、inv、transpose、trace、solve(A, b) 是矩阵函数；别的函数（sin、sqrt、用户函数……）一个参数的逐个元素算，多个参数的只收数
+// 边读边算，不生成语法树也不进缓存：矩阵表达式的时间几乎都花在矩阵运算上，解析那一点可以不计
+// 数和数之间的运算和 Program 一样（除以 0 照样抛 "Division by zero!"）；语法错误、形状不对抛 IllegalArgumentException
+final class MatrixEvaluator {
+
+    private static final String[] MATRIX_FUNCTIONS = {"det", "inv", "transpose", "trace", "solve"};
+
+    private final ExpressionLexer lexer;
+    private final String[] names;       // 矩阵函数的名字在前面，后面是变量（交给词法分析，它只管认不认识）
+    private final Matrix[] values;      // 变量的值，和 names 里矩阵函数后面的部分一一对应
+    private final Map<String, Function> functions;
+
+    private int type;           // 当前词法单元的种类（lexer.type 的副本）
+    private int depth;
+
+    private MatrixEvaluator(String text, String[] variables, Matrix[] values, Map<String, Function> functions) {
+        this.names = new String[MATRIX_FUNCTIONS.length + variables.length];
+        System.arraycopy(MATRIX_FUNCTIONS, 0, names, 0, MATRIX_FUNCTIONS.length);
+        System.arraycopy(variables, 0, names, MATRIX_FUNCTIONS.length, variables.length);
+        this.values = values;
+        this.functions = functions;
+        this.lexer = new ExpressionLexer(text, names, functions);
+    }
+
+    // 求值入口：variables 是表达式里能用的变量名（前面的优先），values 是对应的值
+    static Matrix evaluate(String text, String[] variables, Matrix[] values, Map<String, Function> functions) {
+        MatrixEvaluator evaluator = new MatrixEvaluator(text, variables, values, functions);
+        evaluator.next();
+        if (evaluator.type == END) {
+            throw new IllegalArgumentException("Expression can not be empty");
+        }
+        Matrix result = evaluator.parseAdditive();
+        if (evaluator.type != END) {
+            throw evaluator.error("Unexpected " + evaluator.lexer.describeToken());
+        }
+        return result;
+    }
+
+    // ---------------- 语法分析（顺便就算了） ----------------
+
+    // 加减法（最低优先级，左结合）
+    private Matrix parseAdditive() {
+        Matrix left = parseMultiplicative();
+        while (type == OPERATOR && (lexer.operator == '+' || lexer.operator == '-')) {
+            char op = lexer.operator;
+            next();
+            Matrix right = parseMultiplicative();
+            if (left.isScalar() && right.isScalar()) {
+                double a = left.scalarValue();
+                double b = right.scalarValue();
+                left = Matrix.scalar(op == '+' ? a + b : a - b);
+            } else {
+                left = op == '+' ? left.add(right) : left.subtract(right);
+            }
+        }
+        return left;
+    }
+
+    // 乘除取模，外加隐式乘法（2[1, 2]、A B 这种挨着写的）
+    private Matrix parseMultiplicative() {
+        Matrix left = parseUnary();
+        while (true) {
+            if (type == OPERATOR && (lexer.operator == '*' || lexer.operator == '/' || lexer.operator == '%')) {
+                char op = lexer.operator;
+                next();
+                left = apply(op, left, parseUnary());
+            } else if (startsImplicitMultiplication()) {
+                left = apply('*', left, parseUnary());
+            } else {
+                return left;
+            }
+        }
+    }
+
+    private boolean startsImplicitMultiplication() {
+        if (type == NAME || type == OPEN || type == OPEN_BRACKET) {
+            return true;
+        }
+        return type == NUMBER && lexer.previousType != NUMBER;
+    }
+
+    private Matrix apply(char op, Matrix left, Matrix right) {
+        if (op == '*') {
+            if (left.isScalar()) {
+                return right.isScalar() ? Matrix.scalar(left.scalarValue() * right.scalarValue()) : right.scale(left.scalarValue());
+            }
+            return right.isScalar() ? left.scale(right.scalarValue()) : left.multiply(right);
+        }
+        double divisor = scalar(right, op == '/' ? "Can only divide a matrix by a number" : "'%' needs numbers");
+        if (divisor == 0d) {
+            throw new ArithmeticException("Division by zero!");
+        }
+        if (op == '%') {
+            return Matrix.scalar(scalar(left, "'%' needs numbers") % divisor);
+        }
+        return left.map(value -> value / divisor);
+    }
+
+    // 一元正负号，优先级比乘方低
+    private Matrix parseUnary() {
+        if (type == OPERATOR && (lexer.operator == '-' || lexer.operator == '+')) {
+            char op = lexer.operator;
+            enter();
+            next();
+            Matrix operand = parseUnary();
+            leave();
+            return op == '-' ? operand.map(value -> -value) : operand;
+        }
+        return parsePower();
+    }
+
+    // 乘方，右结合；矩阵只能是整数次幂
+    private Matrix parsePower() {
+        Matrix base = parsePrimary();
+        if (type == OPERATOR && lexer.operator == '^') {
+            enter();
+            next();
+            double exponent = scalar(parseUnary(), "Exponent must be a number");
+            leave();
+            if (base.isScalar()) {
+                return Matrix.scalar(Math.pow(base.scalarValue(), exponent));
+            }
+            if (exponent != Math.rint(exponent) || Math.abs(exponent) > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Matrix power needs an integer exponent, got " + exponent);
+            }
+            return base.power((int) exponent);
+        }
+        return base;
+    }
+
+    // 数字、常量、变量、函数调用、括号、方括号
+    private Matrix parsePrimary() {
+        switch (type) {
+            case NUMBER: {
+                Matrix number = Matrix.scalar(lexer.number);
+                next();
+                return number;
+            }
+            case NAME:
+                return parseName();
+            case OPEN: {
+                enter();
+                next();
+                Matrix inner = parseAdditive();
+                expect(CLOSE, "Mismatched parentheses detected. Please check the expression");
+                leave();
+                return inner;
+            }
+            case OPEN_BRACKET:
+                return parseLiteral();
+            case END:
+                throw error("Unexpected end of expression");
+            default:
+                throw error("Unexpected " + lexer.describeToken());
+        }
+    }
+
+    // [1, 2, 3] 是列向量；[[1, 2], [3, 4]] 一行一个方括号，每行一样长
+    private Matrix parseLiteral() {
+        enter();
+        next();
+        if (type != OPEN_BRACKET) {
+            double[] column = parseElements();
+            leave();
+            return new Matrix(column.length, 1, column);
+        }
+        List<double[]> rows = new ArrayList<>();
+        while (true) {
+            expect(OPEN_BRACKET, "Expected '[' to start a matrix row");
+            double[] row = parseElements();
+            if (!rows.isEmpty() && row.length != rows.get(0).length) {
+                throw error("Matrix rows must have the same length");
+            }
+            rows.add(row);
+            if (type != COMMA) {
+                break;
+            }
+            next();
+        }
+        expect(CLOSE_BRACKET, "Mismatched brackets detected. Please check the expression");
+        leave();
+
+        int columns = rows.get(0).length;
+        double[] data = new double[rows.size() * columns];
+        for (int i = 0; i < rows.size(); i++) {
+            System.arraycopy(rows.get(i), 0, data, i * columns, columns);
+        }
+        return new Matrix(rows.size(), columns, data);
+    }
+
+    // 逗号隔开的一串数，读到 ]（] 也读掉）
+    private double[] parseElements() {
+        if (type == CLOSE_BRACKET) {
+            throw error("Matrix can not be empty");
+        }
+        double[] elements = new double[4];
+        int count = 0;
+        while (true) {
+            if (count == elements.length) {
+                elements = Arrays.copyOf(elements, count * 2);
+            }
+            elements[count++] = scalar(parseAdditive(), "Matrix elements must be numbers");
+            if (type != COMMA) {
+                break;
+            }
+            next();
+        }
+        expect(CLOSE_BRACKET, "Mismatched brackets detected. Please check the expression");
+        return Arrays.copyOf(elements, count);
+    }
+
+    // 名字：变量、常量或者函数（矩阵函数、自定义函数、内置函数）
+    private Matrix parseName() {
+        String id = lexer.name;
+        int start = lexer.tokenStart;
+
+        int index = ExpressionLexer.indexOf(names, id);
+        if (index >= MATRIX_FUNCTIONS.length) {
+            next();
+            return values[index - MATRIX_FUNCTIONS.length];
+        }
+
+        double constant = ExpressionLexer.constantValue(id);
+        if (!Double.isNaN(constant)) {
+            next();
+            return Matrix.scalar(constant);
+        }
+
+        next();
+        enter();
+        expect(OPEN, "Expected '(' after function '" + id + "'");
+        List<Matrix> args = new ArrayList<>();
+        if (type != CLOSE) {
+            args.add(parseAdditive());
+            while (type == COMMA) {
+                next();
+                args.add(parseAdditive());
+            }
+        }
+        expect(CLOSE, "Mismatched parentheses detected. Please check the expression");
+        leave();
+
+        if (index >= 0) {
+            return callMatrixFunction(id, args, start);
+        }
+
+        // 自定义函数优先（角度制的三角函数就是这样替换掉内置的）
+        Function custom = functions.get(id);
+        int builtin = custom == null ? Builtins.lookup(id) : -1;
+        int arity = custom != null ? custom.getNumArguments() : Builtins.arity(builtin);
+        checkArity(id, args, arity, start);
+        if (arity == 1) {
+            DoubleUnaryOperator function;
+            if (custom == null) {
+                function = value -> Builtins.apply(builtin, value);
+            } else if (custom instanceof DoubleUnaryOperator) {
+                function = (DoubleUnaryOperator) custom;
+            } else {
+                function = value -> custom.apply(value);
+            }
+            return args.get(0).map(function);
+        }
+        double[] scalars = new double[arity];
+        for (int i = 0; i < arity; i++) {
+            scalars[i] = scalar(args.get(i), "Function '" + id + "' needs numbers");
+        }
+        return Matrix.scalar(custom == null ? Math.pow(scalars[0], scalars[1]) : custom.apply(scalars));
+    }
+
+    private Matrix callMatrixFunction(String id, List<Matrix> args, int start) {
+        checkArity(id, args, id.equals("solve") ? 2 : 1, start);
+        Matrix matrix = args.get(0);
+        switch (id) {
+            case "det":
+                return Matrix.scalar(matrix.determinant());
+            case "inv":
+                return matrix.inverse();
+            case "transpose":
+                return matrix.transpose();
+            case "trace":
+                return Matrix.scalar(matrix.trace());
+            default:
+                return matrix.solve(args.get(1));
+        }
+    }
+
+    private static void checkArity(String id, List<Matrix> args, int arity, int start) {
+        if (args.size() != arity) {
+            throw new IllegalArgumentException("Invalid number of arguments available for '" + id
+                    + "' function at [" + start + "]");
+        }
+    }
+
+    // 这里只能是一个数（1×1 的矩阵）
+    private double scalar(Matrix value, String message) {
+        if (!value.isScalar()) {
+            throw error(message + ", got a " + value.shape() + " matrix");
+        }
+        return value.scalarValue();
+    }
+
+    private void expect(int expectedType, String message) {
+        if (type != expectedType) {
+            throw error(message);
+        }
+        next();
+    }
+
+    private void enter() {
+        if (++depth > ExpressionParser.MAX_DEPTH) {
+            throw error("Expression is nested too deeply");
+        }
+    }
+
+    private void leave() {
+        depth--;
+    }
+
+    private void next() {
+        lexer.next();
+        type = lexer.type;
+    }
+
+    private IllegalArgumentException error(String message) {
+        return lexer.error(message);
+    }
+}
@@ -0,0 +1,73 @@
+package calculator;
+
+import java.util.concurrent.atomic.DoubleAdder;
+
+// 存储器：10 个寄存器，M（就是原来的那个存储器，MS/M+/M-/MR 用的）和 M1 ~ M9
+// 表达式里可以直接写寄存器的名字当变量用，比如 "M1*2+M"
+// 每个寄存器是一个 DoubleAdder：批处理、服务多线程一起往里加（M+ 式的累加）不用加锁，也不会抢同一个缓存行
+// 注意两点：
+//   1. store / clear 是“清零再加”，和别的线程正在做的 add 之间不是原子的（那一刻加进来的可能算进去也可能丢），
+//      多线程累加的时候先存好初值再开始加
+//   2. 并发累加时各线程的部分和最后才合起来，加的顺序不固定，浮点舍入可能和单线程按顺序加差最后一位
+public final class MemoryRegisters {
+
+    public static final int COUNT = 10;
+    public static final int MAIN = 0;   // M：界面上那个存储器
+
+    // 寄存器名字（下标就是寄存器编号），解析表达式时当成变量名
+    static final String[] NAMES = {"M", "M1", "M2", "M3", "M4", "M5", "M6", "M7", "M8", "M9"};
+
+    private final DoubleAdder[] registers = new DoubleAdder[COUNT];
+
+    public MemoryRegisters() {
+        for (int i = 0; i < COUNT; i++) {
+            registers[i] = new DoubleAdder();
+        }
+    }
+
+    // 名字对应的编号，不是寄存器名就返回 -1
+    public static int indexOf(String name) {
+        return ExpressionLexer.indexOf(NAMES, name);
+    }
+
+    public static String nameOf(int register) {
+        return NAMES[register];
+    }
+
+    public double get(int register) {
+        return registers[register].sum();
+    }
+
+    public void store(int register, double value) {
+        DoubleAdder adder = registers[register];
+        adder.reset();
+        adder.add(value);
+    }
+
+    public void add(int register, double value) {
+        registers[register].add(value);
+    }
+
+    public void subtract(int register, double value) {
+        registers[register].add(-value);
+    }
+
+    public void clear(int register) {
+        registers[register].reset();
+    }
+
+    public void clearAll() {
+        for (DoubleAdder register : registers) {
+            register.reset();
+        }
+    }
+
+    // 所有寄存器当前的值，按编号排（表达式求值时当变量值传进去）
+    public double[] values() {
+        double[] values = new double[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            values[i] = registers[i].sum();
+        }
+        return values;
+    }
+}
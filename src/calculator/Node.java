@@ -0,0 +1,153 @@
+package calculator;
+
+import java.util.function.DoubleUnaryOperator;
+
+// 表达式的语法树节点：解析器产出这个，再编译成 Program 去算
+// 节点都是不可变的，可以放心地在多个线程、多个编译结果之间共享
+abstract class Node {
+
+    // 数字常量（pi、e 这些常量解析时就换成数值了）
+    static final class Number extends Node {
+        final double value;
+        final String source;    // 原文：数字字面量或者常量名（高精度求值要用）；优化时算出来的是 null
+
+        Number(double value) {
+            this(value, null);
+        }
+
+        Number(double value, String source) {
+            this.value = value;
+            this.source = source;
+        }
+
+        @Override
+        public String toString() {
+            return Double.toString(value);
+        }
+    }
+
+    // 变量，index 是它在变量表里的位置
+    static final class Variable extends Node {
+        final String name;
+        final int index;
+
+        Variable(String name, int index) {
+            this.name = name;
+            this.index = index;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    // 一元运算，目前只有取负
+    static final class Negate extends Node {
+        final Node operand;
+
+        Negate(Node operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        public String toString() {
+            return "-(" + operand + ")";
+        }
+    }
+
+    // 二元运算：+ - * / % ^
+    static final class Binary extends Node {
+        final char operator;
+        final Node left;
+        final Node right;
+
+        Binary(char operator, Node left, Node right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + left + operator + right + ")";
+        }
+    }
+
+    // 小整数次幂（优化后才会出现）：2 次、3 次直接连乘，-1 次就是取倒数
+    static final class IntPower extends Node {
+        final Node base;
+        final int exponent;   // 只会是 2、3、-1
+
+        IntPower(Node base, int exponent) {
+            this.base = base;
+            this.exponent = exponent;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + base + "^" + exponent + ")";
+        }
+    }
+
+    // 内置函数调用（sin、sqrt、log10 之类），builtin 是 Builtins 里的编号
+    static final class BuiltinCall extends Node {
+        final String name;
+        final int builtin;
+        final Node[] args;
+
+        BuiltinCall(String name, int builtin, Node[] args) {
+            this.name = name;
+            this.builtin = builtin;
+            this.args = args;
+        }
+
+        @Override
+        public String toString() {
+            return name + argsToString(args);
+        }
+    }
+
+    // 单参数的自定义函数（实现了 DoubleUnaryOperator 的，直接调，不用为参数建数组）
+    static final class UnaryCall extends Node {
+        final String name;
+        final DoubleUnaryOperator function;
+        final Node arg;
+
+        UnaryCall(String name, DoubleUnaryOperator function, Node arg) {
+            this.name = name;
+            this.function = function;
+            this.arg = arg;
+        }
+
+        @Override
+        public String toString() {
+            return name + "(" + arg + ")";
+        }
+    }
+
+    // 其他 exp4j 风格的自定义函数（参数打包成数组传进去）
+    static final class FunctionCall extends Node {
+        final net.objecthunter.exp4j.function.Function function;
+        final Node[] args;
+
+        FunctionCall(net.objecthunter.exp4j.function.Function function, Node[] args) {
+            this.function = function;
+            this.args = args;
+        }
+
+        @Override
+        public String toString() {
+            return function.getName() + argsToString(args);
+        }
+    }
+
+    private static String argsToString(Node[] args) {
+        StringBuilder sb = new StringBuilder("(");
+        for (int i = 0; i < args.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(args[i]);
+        }
+        return sb.append(')').toString();
+    }
+}
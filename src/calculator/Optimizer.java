@@ -0,0 +1,142 @@
+package calculator;
+
+// 编译前对语法树做一遍优化，按钮拼出来的表达式里有很多可以提前算好的结构：
+// - 常量子树直接算成一个数（比如 log(2.0)、-(3)、2*pi）
+// - x^2、x^3 换成连乘，x^(-1) 换成 1/x，x^1 就是 x
+// - 除以 2 的幂换成乘以它的倒数（x/2 就是 x*0.5，倒数是精确的，结果一位不差）；
+//   别的常量不换：x/49 和 x*(1/49) 会差最后一位，floor(M/49) 就可能从 1 变成 0，和预览、高精度对不上
+// - -(-x) 就是 x，x*1、x/1 就是 x
+// 除法、取负、乘 1 这些变换结果一位不差；x^3 换成连乘可能和 Math.pow 差最后一位的舍入；也不会把可能出错的子树扔掉；
+// 会出错的常量（比如 1/0）不提前算，留到求值时照常报错
+final class Optimizer {
+
+    private Optimizer() {
+    }
+
+    static Node optimize(Node node) {
+        if (node instanceof Node.Negate) {
+            return negate(optimize(((Node.Negate) node).operand));
+        }
+        if (node instanceof Node.Binary) {
+            Node.Binary binary = (Node.Binary) node;
+            return binary(binary.operator, optimize(binary.left), optimize(binary.right));
+        }
+        if (node instanceof Node.IntPower) {
+            Node.IntPower power = (Node.IntPower) node;
+            return fold(new Node.IntPower(optimize(power.base), power.exponent));
+        }
+        if (node instanceof Node.BuiltinCall) {
+            Node.BuiltinCall call = (Node.BuiltinCall) node;
+            Node[] args = optimizeAll(call.args);
+            return fold(new Node.BuiltinCall(call.name, call.builtin, args));
+        }
+        if (node instanceof Node.UnaryCall) {
+            // 自定义函数不一定是纯函数，只优化参数，不提前算
+            Node.UnaryCall call = (Node.UnaryCall) node;
+            return new Node.UnaryCall(call.name, call.function, optimize(call.arg));
+        }
+        if (node instanceof Node.FunctionCall) {
+            Node.FunctionCall call = (Node.FunctionCall) node;
+            return new Node.FunctionCall(call.function, optimizeAll(call.args));
+        }
+        return node; // 数字、变量本身就是最简的
+    }
+
+    private static Node[] optimizeAll(Node[] nodes) {
+        Node[] result = new Node[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            result[i] = optimize(nodes[i]);
+        }
+        return result;
+    }
+
+    private static Node negate(Node operand) {
+        if (operand instanceof Node.Negate) {
+            return ((Node.Negate) operand).operand; // -(-x) = x
+        }
+        return fold(new Node.Negate(operand));
+    }
+
+    private static Node binary(char operator, Node left, Node right) {
+        if (operator == '^' && isConstant(right)) {
+            double exponent = value(right);
+            if (exponent == 1) {
+                return left;
+            }
+            if (exponent == 2 || exponent == 3 || exponent == -1) {
+                return fold(new Node.IntPower(left, (int) exponent));
+            }
+        }
+
+        if ((operator == '*' || operator == '/') && isConstant(right) && value(right) == 1) {
+            return left;
+        }
+        if (operator == '*' && isConstant(left) && value(left) == 1) {
+            return right;
+        }
+
+        if (operator == '/' && isConstant(right) && !isConstant(left)) {
+            // 除以 2 的幂换成乘以倒数：倒数也是 2 的幂（不是次正规数）才精确；0、无穷大、NaN 都不动
+            double divisor = value(right);
+            if (isExactReciprocal(divisor)) {
+                return new Node.Binary('*', left, new Node.Number(1d / divisor));
+            }
+        }
+
+        return fold(new Node.Binary(operator, left, right));
+    }
+
+    // 1/divisor 没有舍入：divisor 是 2 的幂，而且倒数还是正规数
+    private static boolean isExactReciprocal(double divisor) {
+        if (divisor == 0 || !Double.isFinite(divisor)) {
+            return false;
+        }
+        double magnitude = Math.abs(divisor);
+        if (magnitude != Math.scalb(1d, Math.getExponent(magnitude)) || Math.getExponent(magnitude) == Double.MIN_EXPONENT - 1) {
+            return false;   // 尾数不是 0（不是 2 的幂），或者本身是次正规数
+        }
+        return Math.getExponent(1d / magnitude) >= Double.MIN_EXPONENT;
+    }
+
+    // 所有子节点都是常量的话就直接算出来；算的时候出错（比如除以 0）就保持原样
+    private static Node fold(Node node) {
+        if (!allConstant(node)) {
+            return node;
+        }
+        try {
+            return new Node.Number(Program.compile(node, 0).evaluate(Program.NO_VARIABLES));
+        } catch (ArithmeticException e) {
+            return node;
+        }
+    }
+
+    private static boolean allConstant(Node node) {
+        if (node instanceof Node.Negate) {
+            return isConstant(((Node.Negate) node).operand);
+        }
+        if (node instanceof Node.Binary) {
+            Node.Binary binary = (Node.Binary) node;
+            return isConstant(binary.left) && isConstant(binary.right);
+        }
+        if (node instanceof Node.IntPower) {
+            return isConstant(((Node.IntPower) node).base);
+        }
+        if (node instanceof Node.BuiltinCall) {
+            for (Node arg : ((Node.BuiltinCall) node).args) {
+                if (!isConstant(arg)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isConstant(Node node) {
+        return node instanceof Node.Number;
+    }
+
+    private static double value(Node node) {
+        return ((Node.Number) node).value;
+    }
+}
@@ -0,0 +1,163 @@
+package calculator;
+
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+
+// 函数图像 / 函数表窗口：上面输入 f(x)（变量就是 x），下面两页
+//   图像：PlotPanel，拖动平移、滚轮缩放、双击复位
+//   表格：给起点、终点、步长，一次算好放进两个 double[]，表格滚到哪一行才把那一行格式化成字符串
+// 角度模式用打开窗口时计算器的设置
+class PlotDialog extends JDialog {
+
+    private static final int MAX_ROWS = 1_000_000;  // 表格最多这么多行
+
+    private final CalculatorEngine engine;
+    private final boolean radians;
+    private final JTextField expressionField = new JTextField();
+    private final JTextField fromField = new JTextField("-10", 6);
+    private final JTextField toField = new JTextField("10", 6);
+    private final JTextField stepField = new JTextField("0.5", 6);
+    private final JLabel statusLabel = new JLabel(" ");
+    private final PlotPanel plotPanel = new PlotPanel();
+    private final ValueTable tableModel = new ValueTable();
+
+    private FunctionSampler sampler;
+
+    // 表格的数据就是两个数组，字符串现用现格式化
+    private final class ValueTable extends AbstractTableModel {
+        private double[] xs = new double[0];
+        private double[] ys = new double[0];
+
+        void setValues(double[] xs, double[] ys) {
+            this.xs = xs;
+            this.ys = ys;
+            fireTableDataChanged();
+        }
+
+        @Override
+        public int getRowCount() {
+            return xs.length;
+        }
+
+        @Override
+        public int getColumnCount() {
+            return 2;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return column == 0 ? "x" : "f(x)";
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            double value = column == 0 ? xs[row] : ys[row];
+            return Double.isNaN(value) ? "—" : engine.format(value);
+        }
+    }
+
+    PlotDialog(Frame owner, CalculatorEngine engine, boolean radians, String expression) {
+        super(owner, "函数图像 / 表格" + (radians ? "" : "（角度）"), false);
+        this.engine = engine;
+        this.radians = radians;
+        setSize(680, 560);
+        setLocationRelativeTo(owner);
+
+        JPanel panel = new JPanel(new BorderLayout(5, 5));
+        panel.setBorder(new EmptyBorder(8, 8, 8, 8));
+
+        JPanel top = new JPanel(new BorderLayout(5, 5));
+        JLabel prompt = new JLabel("f(x) =");
+        prompt.setFont(new Font(ScientificCalculator.fontUI, Font.PLAIN, 16));
+        expressionField.setFont(new Font(ScientificCalculator.fontUI, Font.PLAIN, 16));
+        expressionField.setText(expression);
+        expressionField.addActionListener(e -> apply());
+        JButton plotButton = new JButton("画图");
+        plotButton.addActionListener(e -> apply());
+        top.add(prompt, BorderLayout.WEST);
+        top.add(expressionField, BorderLayout.CENTER);
+        top.add(plotButton, BorderLayout.EAST);
+        panel.add(top, BorderLayout.NORTH);
+
+        JTabbedPane tabs = new JTabbedPane();
+        tabs.addTab("图像", plotPanel);
+        tabs.addTab("表格", createTablePage());
+        panel.add(tabs, BorderLayout.CENTER);
+
+        statusLabel.setForeground(Color.GRAY);
+        panel.add(statusLabel, BorderLayout.SOUTH);
+
+        setContentPane(panel);
+        getRootPane().registerKeyboardAction(e -> dispose(),
+                KeyStroke.getKeyStroke("ESCAPE"), JComponent.WHEN_IN_FOCUSED_WINDOW);
+
+        // 窗口摆好（面板有了大小）以后再画第一张图
+        SwingUtilities.invokeLater(this::apply);
+    }
+
+    private JPanel createTablePage() {
+        JPanel page = new JPanel(new BorderLayout(5, 5));
+        JPanel range = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        range.add(new JLabel("从"));
+        range.add(fromField);
+        range.add(new JLabel("到"));
+        range.add(toField);
+        range.add(new JLabel("步长"));
+        range.add(stepField);
+        JButton tabulateButton = new JButton("生成");
+        tabulateButton.addActionListener(e -> tabulate());
+        range.add(tabulateButton);
+        page.add(range, BorderLayout.NORTH);
+
+        JTable table = new JTable(tableModel);
+        table.setFont(new Font(ScientificCalculator.fontUI, Font.PLAIN, 14));
+        table.setRowHeight(22);
+        page.add(new JScrollPane(table), BorderLayout.CENTER);
+        return page;
+    }
+
+    // 编译输入的表达式，图像和表格都换成新的
+    private void apply() {
+        String expression = expressionField.getText().trim();
+        try {
+            sampler = new FunctionSampler(engine.compile(expression, radians, "x"));
+        } catch (IllegalArgumentException | ArithmeticException e) {
+            statusLabel.setText("Error: " + e.getMessage());
+            return;
+        }
+        plotPanel.setSampler(sampler);
+        tabulate();
+    }
+
+    private void tabulate() {
+        if (sampler == null) {
+            return;
+        }
+        double from, to, step;
+        try {
+            from = Double.parseDouble(fromField.getText().trim());
+            to = Double.parseDouble(toField.getText().trim());
+            step = Double.parseDouble(stepField.getText().trim());
+        } catch (NumberFormatException e) {
+            statusLabel.setText("Error: 起点、终点、步长要填数字");
+            return;
+        }
+        if (!(step > 0) || !(to >= from) || !Double.isFinite(to - from)) {
+            statusLabel.setText("Error: 步长要大于 0，终点不能小于起点");
+            return;
+        }
+        // 留一点余量，(1 - 0) / 0.1 算出来是 9.999999999999998 也能取到终点
+        double rows = Math.floor((to - from) / step * (1 + 1e-12)) + 1;
+        if (rows > MAX_ROWS) {
+            statusLabel.setText("Error: 行数太多（最多 " + MAX_ROWS + " 行），把步长调大一点");
+            return;
+        }
+        double[] xs = new double[(int) rows];
+        double[] ys = new double[xs.length];
+        sampler.tabulate(from, step, xs, ys);
+        tableModel.setValues(xs, ys);
+        statusLabel.setText(xs.length + " 行");
+    }
+}
@@ -0,0 +1,378 @@
+package calculator;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+// 函数图像：画在一张缓存的 BufferedImage 上，重绘窗口时直接贴图
+// 拖动（平移）的时候按整像素挪：旧图整张挪过去，只在新露出来的那一条上补画，采样也只补那一段
+// 滚轮缩放、改大小才整张重画（采样器里已经有的点照样用，不会整条曲线重算）
+// 双击回到默认范围
+class PlotPanel extends JComponent {
+
+    private static final double DEFAULT_HALF_WIDTH = 10;   // 默认 x 从 -10 到 10
+    private static final double ZOOM_STEP = 1.25;          // 滚轮转一格缩放多少
+    private static final double MAX_SPAN = 1e300;          // 缩小到这么宽就不再缩了（再宽相减就溢出成无穷大）
+    private static final double MIN_ULPS_PER_PX = 4;       // 放大到一个像素只有几个 ulp 宽就不再放大了（再大相邻的像素就是同一个 double）
+    private static final int MAX_GRID_LINES = 1000;
+    private static final Color GRID_COLOR = new Color(235, 235, 235);
+    private static final Color AXIS_COLOR = new Color(150, 150, 150);
+    private static final Color CURVE_COLOR = new Color(30, 90, 200);
+
+    private FunctionSampler sampler;        // null 就只画坐标
+    private double xMin, xMax, yMin, yMax;  // 现在的可见范围
+
+    // 缓存的图，以及它是按什么范围画的
+    private BufferedImage image;
+    private double imageXMin, imageYMax, imageDx, imageDy;
+
+    private Point dragStart;
+    private Point mouse;                    // 鼠标在哪（画坐标读数用）
+    private final char[] labelBuffer = new char[ResultFormatter.MAX_LENGTH];
+
+    PlotPanel() {
+        setPreferredSize(new Dimension(600, 450));
+        setBackground(Color.WHITE);
+        setOpaque(true);
+        resetView();
+
+        MouseAdapter mouseHandler = new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                dragStart = e.getPoint();
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                // 按整像素平移，旧图才能原样挪过去
+                int px = e.getX() - dragStart.x;
+                int py = e.getY() - dragStart.y;
+                dragStart = e.getPoint();
+                mouse = e.getPoint();
+                double dx = pixelWidth();
+                double dy = pixelHeight();
+                setRange(xMin - px * dx, xMax - px * dx, yMin + py * dy, yMax + py * dy);
+                repaint();
+            }
+
+            @Override
+            public void mouseMoved(MouseEvent e) {
+                mouse = e.getPoint();
+                repaint();
+            }
+
+            @Override
+            public void mouseExited(MouseEvent e) {
+                mouse = null;
+                repaint();
+            }
+
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                double factor = Math.pow(ZOOM_STEP, e.getPreciseWheelRotation());
+                double cx = toX(e.getX());
+                double cy = toY(e.getY());
+                setRange(cx - (cx - xMin) * factor, cx + (xMax - cx) * factor,
+                        cy - (cy - yMin) * factor, cy + (yMax - cy) * factor);
+                repaint();
+            }
+
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) {
+                    resetView();
+                    fitY();
+                    repaint();
+                }
+            }
+        };
+        addMouseListener(mouseHandler);
+        addMouseMotionListener(mouseHandler);
+        addMouseWheelListener(mouseHandler);
+    }
+
+    // 换一条曲线：范围回到默认，纵向按曲线自己的范围放
+    void setSampler(FunctionSampler sampler) {
+        this.sampler = sampler;
+        image = null;
+        resetView();
+        fitY();
+        repaint();
+    }
+
+    private void resetView() {
+        xMin = -DEFAULT_HALF_WIDTH;
+        xMax = DEFAULT_HALF_WIDTH;
+        double halfHeight = DEFAULT_HALF_WIDTH * Math.max(1, getHeight()) / Math.max(1, getWidth());
+        yMin = -halfHeight;
+        yMax = halfHeight;
+    }
+
+    // 纵向范围取可见部分的 y 值去掉两头 5% 以后的范围，再留点边（tan 这种冲到无穷的不会把图压扁）
+    private void fitY() {
+        if (sampler == null) {
+            return;
+        }
+        int width = Math.max(getWidth(), 1);
+        int height = Math.max(getHeight(), 1);
+        sampler.cover(xMin, xMax, yMin, yMax, width, height);
+        double[] xs = sampler.getXs();
+        double[] ys = sampler.getYs();
+        double[] visible = new double[sampler.size()];
+        int count = 0;
+        for (int i = 0; i < sampler.size(); i++) {
+            if (xs[i] >= xMin && xs[i] <= xMax && Double.isFinite(ys[i])) {
+                visible[count++] = ys[i];
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+        Arrays.sort(visible, 0, count);
+        double low = visible[(int) (count * 0.05)];
+        double high = visible[(int) (count * 0.95)];
+        double margin = Math.max((high - low) * 0.15, Math.max(Math.abs(high), 1) * 1e-9);
+        if (high - low < 1e-12) {
+            margin = Math.max(Math.abs(high) * 0.5, 1);   // 常数：上下各留一些
+        }
+        if (usableRange(low - margin, high + margin, height)) {
+            yMin = low - margin;
+            yMax = high + margin;
+        }
+    }
+
+    // 缩放、平移都从这里改范围：超出能画的范围（见 usableRange）就不动，滚轮再转也放大/缩小不下去了
+    private void setRange(double newXMin, double newXMax, double newYMin, double newYMax) {
+        if (usableRange(newXMin, newXMax, Math.max(getWidth(), 1))
+                && usableRange(newYMin, newYMax, Math.max(getHeight(), 1))) {
+            xMin = newXMin;
+            xMax = newXMax;
+            yMin = newYMin;
+            yMax = newYMax;
+        }
+    }
+
+    // 两头和宽度都是有限的数，宽度不超过 MAX_SPAN，一个像素至少 MIN_ULPS_PER_PX 个 ulp 宽
+    private static boolean usableRange(double min, double max, int pixels) {
+        double span = max - min;
+        if (!Double.isFinite(min) || !Double.isFinite(max) || !(span <= MAX_SPAN)) {
+            return false;
+        }
+        return span >= MIN_ULPS_PER_PX * Math.ulp(Math.max(Math.abs(min), Math.abs(max))) * pixels;
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        int width = getWidth();
+        int height = getHeight();
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        updateImage(width, height);
+        g.drawImage(image, 0, 0, null);
+        drawReadout((Graphics2D) g);
+    }
+
+    // 让缓存的图跟上现在的范围：比例没变就挪图补边，变了就整张重画
+    private void updateImage(int width, int height) {
+        double dx = pixelWidth();
+        double dy = pixelHeight();
+        if (sampler != null) {
+            sampler.cover(xMin, xMax, yMin, yMax, width, height);   // 只有新露出来的、变粗了的地方才会真的去算
+        }
+        boolean sameScale = image != null && image.getWidth() == width && image.getHeight() == height
+                && dx == imageDx && dy == imageDy;
+        if (!sameScale) {
+            image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            render(new Rectangle(0, 0, width, height));
+        } else {
+            int shiftX = (int) Math.round((imageXMin - xMin) / dx);
+            int shiftY = (int) Math.round((yMax - imageYMax) / dy);
+            if (shiftX == 0 && shiftY == 0) {
+                return;
+            }
+            BufferedImage shifted = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = shifted.createGraphics();
+            g.drawImage(image, shiftX, shiftY, null);
+            g.dispose();
+            image = shifted;
+            // 左右露出来的一条、上下露出来的一条
+            if (shiftX > 0) render(new Rectangle(0, 0, Math.min(shiftX, width), height));
+            if (shiftX < 0) render(new Rectangle(Math.max(width + shiftX, 0), 0, -shiftX, height));
+            if (shiftY > 0) render(new Rectangle(0, 0, width, Math.min(shiftY, height)));
+            if (shiftY < 0) render(new Rectangle(0, Math.max(height + shiftY, 0), width, -shiftY));
+        }
+        imageXMin = xMin;
+        imageYMax = yMax;
+        imageDx = dx;
+        imageDy = dy;
+    }
+
+    // 在缓存的图上画 area 这一块：底色、网格、坐标轴、曲线
+    private void render(Rectangle area) {
+        Graphics2D g = image.createGraphics();
+        g.setClip(area);
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setColor(Color.WHITE);
+        g.fill(area);
+        drawGrid(g);
+        if (sampler != null) {
+            drawCurve(g, area);
+        }
+        g.dispose();
+    }
+
+    private void drawGrid(Graphics2D g) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        double stepX = niceStep((xMax - xMin) / 8);
+        double stepY = niceStep((yMax - yMin) / 8);
+
+        double[] gridXs = ticks(xMin, xMax, stepX);
+        double[] gridYs = ticks(yMin, yMax, stepY);
+        g.setColor(GRID_COLOR);
+        for (double x : gridXs) {
+            int px = toPixelX(x);
+            g.drawLine(px, 0, px, height);
+        }
+        for (double y : gridYs) {
+            int py = toPixelY(y);
+            g.drawLine(0, py, width, py);
+        }
+
+        // 坐标轴在屏幕外就贴着边画，刻度数字总能看到
+        int axisY = Math.max(0, Math.min(height - 1, toPixelY(0)));
+        int axisX = Math.max(0, Math.min(width - 1, toPixelX(0)));
+        g.setColor(AXIS_COLOR);
+        g.drawLine(0, axisY, width, axisY);
+        g.drawLine(axisX, 0, axisX, height);
+
+        g.setFont(new Font(ScientificCalculator.fontUI, Font.PLAIN, 11));
+        FontMetrics metrics = g.getFontMetrics();
+        for (double x : gridXs) {
+            if (Math.abs(x) < stepX / 2) continue;
+            String label = label(x);
+            int labelY = axisY + metrics.getAscent() + 2 > height ? axisY - 3 : axisY + metrics.getAscent() + 2;
+            g.drawString(label, toPixelX(x) - metrics.stringWidth(label) / 2, labelY);
+        }
+        for (double y : gridYs) {
+            if (Math.abs(y) < stepY / 2) continue;
+            String label = label(y);
+            int labelX = axisX + 4 + metrics.stringWidth(label) > width ? axisX - 4 - metrics.stringWidth(label) : axisX + 4;
+            g.drawString(label, labelX, toPixelY(y) + metrics.getAscent() / 2);
+        }
+    }
+
+    // 只画和 area 有交集的那些线段（xs 是排好序的，二分找起点）
+    private void drawCurve(Graphics2D g, Rectangle area) {
+        double[] xs = sampler.getXs();
+        double[] ys = sampler.getYs();
+        int size = sampler.size();
+        int from = Arrays.binarySearch(xs, 0, size, toX(area.x - 1));
+        from = Math.max(0, (from < 0 ? -from - 1 : from) - 1);
+        double last = toX(area.x + area.width + 1);
+
+        g.setColor(CURVE_COLOR);
+        g.setStroke(new BasicStroke(1.6f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+        java.awt.geom.Path2D.Double path = new java.awt.geom.Path2D.Double();
+        boolean open = false;
+        double limit = 4.0 * (yMax - yMin);   // 离屏幕太远的点夹一下，免得坐标溢出
+        for (int i = from; i + 1 < size && xs[i] <= last; i++) {
+            if (!sampler.connected(i)) {
+                open = false;
+                continue;
+            }
+            double y0 = clamp(ys[i], yMin - limit, yMax + limit);
+            double y1 = clamp(ys[i + 1], yMin - limit, yMax + limit);
+            if (!open) {
+                path.moveTo(toPixelXExact(xs[i]), toPixelYExact(y0));
+                open = true;
+            }
+            path.lineTo(toPixelXExact(xs[i + 1]), toPixelYExact(y1));
+        }
+        g.draw(path);
+    }
+
+    // 鼠标所在位置的 x 和 f(x)，画在左上角（不进缓存的图）
+    private void drawReadout(Graphics2D g) {
+        if (mouse == null || sampler == null) {
+            return;
+        }
+        double x = toX(mouse.x);
+        double y = sampler.evaluate(x);
+        String text = "x = " + label(x) + "    y = " + (Double.isFinite(y) ? label(y) : "—");
+        g.setFont(new Font(ScientificCalculator.fontUI, Font.PLAIN, 12));
+        FontMetrics metrics = g.getFontMetrics();
+        g.setColor(new Color(255, 255, 255, 220));
+        g.fillRect(4, 4, metrics.stringWidth(text) + 8, metrics.getHeight() + 4);
+        g.setColor(Color.DARK_GRAY);
+        g.drawString(text, 8, 6 + metrics.getAscent());
+    }
+
+    private String label(double value) {
+        // 有效数字够看就行，去掉 0.30000000000000004 这种尾巴
+        double rounded = Double.parseDouble(String.format("%.6g", value));
+        return new String(labelBuffer, 0, ResultFormatter.formatShortest(rounded, labelBuffer, 0));
+    }
+
+    // 1、2、5 乘 10 的幂里，不小于 rough 的最小的那个
+    // [min, max] 里 step 的整数倍（第 k 条用乘法算，不累加）；步长小到加上去 x 不动了、或者线太多，就不画
+    private static double[] ticks(double min, double max, double step) {
+        double first = Math.ceil(min / step);
+        if (!Double.isFinite(first) || !(step > 0) || first * step + step == first * step) {
+            return new double[0];
+        }
+        double[] ticks = new double[MAX_GRID_LINES];
+        int count = 0;
+        for (double x = first * step; x <= max && count < MAX_GRID_LINES; x = (first + count) * step) {
+            ticks[count++] = x;
+        }
+        return Arrays.copyOf(ticks, count);
+    }
+
+    private static double niceStep(double rough) {
+        double power = Math.pow(10, Math.floor(Math.log10(rough)));
+        double fraction = rough / power;
+        return (fraction <= 1 ? 1 : fraction <= 2 ? 2 : fraction <= 5 ? 5 : 10) * power;
+    }
+
+    private static double clamp(double value, double low, double high) {
+        return Math.max(low, Math.min(high, value));
+    }
+
+    private double pixelWidth() {
+        return (xMax - xMin) / Math.max(getWidth(), 1);
+    }
+
+    private double pixelHeight() {
+        return (yMax - yMin) / Math.max(getHeight(), 1);
+    }
+
+    private double toX(int px) {
+        return xMin + px * pixelWidth();
+    }
+
+    private double toY(int py) {
+        return yMax - py * pixelHeight();
+    }
+
+    private double toPixelXExact(double x) {
+        return (x - xMin) / pixelWidth();
+    }
+
+    private double toPixelYExact(double y) {
+        return (yMax - y) / pixelHeight();
+    }
+
+    private int toPixelX(double x) {
+        return (int) Math.round(toPixelXExact(x));
+    }
+
+    private int toPixelY(double y) {
+        return (int) Math.round(toPixelYExact(y));
+    }
+}
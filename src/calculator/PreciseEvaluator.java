@@ -0,0 +1,836 @@
+package calculator;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.concurrent.CancellationException;
+import java.util.function.DoubleUnaryOperator;
+
+// 高精度求值：直接在语法树上用 BigDecimal 算（不走 Optimizer，它是按 double 折叠常量的）
+// 先用只比目标多几位的精度算一遍，同时记下每个中间结果丢了几位有效数字：
+// 相减抵消、三角函数取模、exp 放大误差、接近 1 的对数……丢得比预留的多，才把精度提上去整个重算
+// 所以大多数表达式一遍就够了，只有真正抵消的时候才会慢
+// 所有内置函数、cbrt 和角度制三角函数都有高精度版本；其他自定义函数只能按 double 算，结果最多 15 位
+// 级数每加一项、每提一次精度都看一眼线程有没有被中断（界面上超时、取消），中断了就抛 CancellationException，不占着线程接着算
+final class PreciseEvaluator {
+
+    static final int DEFAULT_DIGITS = 20;           // 默认要多少位有效数字
+    private static final int GUARD_DIGITS = 5;      // 每一轮比要的多算几位，吸收舍入误差
+    private static final int MAX_PRECISION = 240;   // 最多提到这么多位；再不够说明结果抵消成了噪声（比如 sin(pi)）
+    private static final int DOUBLE_DIGITS = 15;    // 按 double 算的自定义函数，结果最多这么多位可信
+
+    private static final BigDecimal TWO = BigDecimal.valueOf(2);
+    private static final BigDecimal HALF = new BigDecimal("0.5");
+    private static final BigDecimal TENTH = new BigDecimal("0.1");
+    private static final BigDecimal FULL_TURN = BigDecimal.valueOf(360);
+    private static final BigDecimal HALF_TURN = BigDecimal.valueOf(180);
+    private static final BigDecimal RIGHT_ANGLE = BigDecimal.valueOf(90);
+    private static final BigDecimal FOUR = BigDecimal.valueOf(4);
+    private static final BigDecimal PHI = new BigDecimal("1.61803398874");        // 和 ExpressionLexer 里的一样
+    private static final BigDecimal EXP_LIMIT = BigDecimal.valueOf(1_000_000_000L); // exp 的参数再大，结果 BigDecimal 也放不下
+    private static final BigDecimal MAX_INT_EXPONENT = BigDecimal.valueOf(999_999_999L); // BigDecimal.pow 能接受的最大整数次方
+
+    private static volatile BigDecimal cachedPi;    // 算过的最高精度的 π，要低精度的直接舍入
+    private static volatile BigDecimal cachedE;     // e 也一样
+
+    // 结果在 double 里是 NaN 或者无穷大（或者大到 BigDecimal 也放不下），或者怎么提精度都算不准，调用方改回用 double 算
+    static final class OutOfRangeException extends ArithmeticException {
+        OutOfRangeException(String message) {
+            super(message);
+        }
+    }
+
+    private final MathContext mc;       // 这一轮的精度，每个节点的结果都舍入到这个精度
+    private final MathContext work;     // 函数内部多算几位
+    private int lost;                   // 刚算完的那个节点比 mc 少了几位可信数字（相当于 eval 的第二个返回值）
+    private int digitLimit = Integer.MAX_VALUE;  // 用了只能按 double 算的函数，结果就只有这么多位可信
+    private final double[] variables;   // 变量的值（存储器寄存器），按 Node.Variable 的编号取
+
+    // 三角函数取模的结果：x = quadrant·π/2 + reduced（相当于 reduce 的返回值）
+    private BigDecimal reduced;
+    private int quadrant;
+
+    private PreciseEvaluator(int precision, double[] variables) {
+        this.variables = variables;
+        this.mc = new MathContext(precision, RoundingMode.HALF_EVEN);
+        this.work = new MathContext(precision + GUARD_DIGITS, RoundingMode.HALF_EVEN);
+    }
+
+    // 求值，结果舍入到 digits 位有效数字
+    static BigDecimal evaluate(Node tree, int digits) {
+        return evaluate(tree, Program.NO_VARIABLES, digits);
+    }
+
+    // 带变量的：变量的值按它的最短十进制写法算（和把这个数直接写进表达式一样），当作精确的
+    static BigDecimal evaluate(Node tree, double[] variables, int digits) {
+        int precision = digits + 2 * GUARD_DIGITS;     // 第一轮多留一些，常见的一两位误差放大不用重算
+        while (true) {
+            checkInterrupted();
+            PreciseEvaluator evaluator = new PreciseEvaluator(precision, variables);
+            BigDecimal result;
+            try {
+                result = evaluator.eval(tree);
+            } catch (ArithmeticException e) {
+                // BigDecimal 自己的指数溢出（结果太大或太小）也算超出范围
+                String message = e.getMessage();
+                if (!(e instanceof OutOfRangeException) && message != null
+                        && (message.startsWith("Overflow") || message.startsWith("Underflow"))) {
+                    throw new OutOfRangeException(message);
+                }
+                throw e;
+            }
+
+            int wanted = Math.min(digits, evaluator.digitLimit);
+            int needed = wanted + evaluator.lost + GUARD_DIGITS;
+            if (needed <= precision) {
+                return result.round(new MathContext(wanted, RoundingMode.HALF_EVEN));
+            }
+            if (precision >= MAX_PRECISION) {
+                // 提到最高精度还是不够：还剩几位可信就给几位，一位都不剩（sin(pi)、tan(pi/2)）就只能交回给 double
+                int reliable = precision - evaluator.lost - GUARD_DIGITS;
+                if (reliable <= 0) {
+                    throw new OutOfRangeException("Result is lost in rounding noise");
+                }
+                return result.round(new MathContext(Math.min(wanted, reliable), RoundingMode.HALF_EVEN));
+            }
+            precision = Math.min(MAX_PRECISION, Math.max(needed, precision * 2));
+        }
+    }
+
+    // ---------------- 语法树 ----------------
+
+    private BigDecimal eval(Node node) {
+        if (node instanceof Node.Number) {
+            lost = 0;
+            return number((Node.Number) node);
+        }
+        if (node instanceof Node.Negate) {
+            return eval(((Node.Negate) node).operand).negate();
+        }
+        if (node instanceof Node.Binary) {
+            Node.Binary binary = (Node.Binary) node;
+            BigDecimal left = eval(binary.left);
+            int leftLost = lost;
+            BigDecimal right = eval(binary.right);
+            int rightLost = lost;
+            return binary(binary.operator, left, leftLost, right, rightLost);
+        }
+        if (node instanceof Node.IntPower) {
+            Node.IntPower power = (Node.IntPower) node;
+            BigDecimal base = eval(power.base);
+            return power(base, lost, BigDecimal.valueOf(power.exponent), 0);
+        }
+        if (node instanceof Node.BuiltinCall) {
+            Node.BuiltinCall call = (Node.BuiltinCall) node;
+            BigDecimal x = eval(call.args[0]);
+            if (call.builtin == Builtins.POW) {
+                int xLost = lost;
+                BigDecimal y = eval(call.args[1]);
+                return power(x, xLost, y, lost);
+            }
+            return builtin(call.builtin, x, lost);
+        }
+        if (node instanceof Node.UnaryCall) {
+            Node.UnaryCall call = (Node.UnaryCall) node;
+            BigDecimal x = eval(call.arg);
+            return custom(call.function, x, lost);
+        }
+        if (node instanceof Node.FunctionCall) {
+            Node.FunctionCall call = (Node.FunctionCall) node;
+            double[] args = new double[call.args.length];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = eval(call.args[i]).doubleValue();
+            }
+            return fromDouble(call.function.apply(args));
+        }
+        if (node instanceof Node.Variable) {
+            double value = variables[((Node.Variable) node).index];
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                throw new OutOfRangeException(Double.toString(value));
+            }
+            lost = 0;
+            return BigDecimal.valueOf(value).round(mc);
+        }
+        throw new IllegalArgumentException("Unknown node: " + node);
+    }
+
+    // 数字直接用原文（0.1 就是精确的 0.1），常量按当前精度算
+    private BigDecimal number(Node.Number number) {
+        if (number.source == null) {
+            return fromDouble(number.value);
+        }
+        switch (number.source) {
+            case "pi":
+            case "π":
+                return pi(mc.getPrecision());
+            case "e":
+                return e(mc.getPrecision());
+            case "φ":
+                return PHI;
+            default:
+                return new BigDecimal(number.source).round(mc);
+        }
+    }
+
+    private BigDecimal binary(char operator, BigDecimal left, int leftLost, BigDecimal right, int rightLost) {
+        switch (operator) {
+            case '+':
+                return sum(left, leftLost, right, rightLost, left.add(right, mc));
+            case '-':
+                return sum(left, leftLost, right, rightLost, left.subtract(right, mc));
+            case '*':
+                lost = Math.max(leftLost, rightLost);
+                return left.multiply(right, mc);
+            case '/':
+                if (right.signum() == 0) {
+                    throw new ArithmeticException("Division by zero!");
+                }
+                lost = Math.max(leftLost, rightLost);
+                BigDecimal quotient = left.divide(right, mc);
+                if (uncertain(left, leftLost) || uncertain(right, rightLost)) {
+                    quotient = padded(quotient);
+                }
+                return quotient;
+            case '%':
+                return remainder(left, leftLost, right, rightLost);
+            case '^':
+                return power(left, leftLost, right, rightLost);
+            default:
+                throw new IllegalArgumentException("Unknown operator: " + operator);
+        }
+    }
+
+    // 加减（取余也算）：操作数本来就不精确的话，结果比它小几个数量级，就丢了几位；完全抵消成 0 就全丢了
+    private BigDecimal sum(BigDecimal a, int aLost, BigDecimal b, int bLost, BigDecimal result) {
+        lost = Math.max(cancellation(a, aLost, result), cancellation(b, bLost, result));
+        return result;
+    }
+
+    private int cancellation(BigDecimal operand, int operandLost, BigDecimal result) {
+        if (operand.signum() == 0) {
+            return operandLost;     // 算出来的 0 要是不可信（比如取余取成了噪声），量级都不知道，丢的位数原样传下去
+        }
+        if (!uncertain(operand, operandLost)) {
+            return 0;
+        }
+        if (result.signum() == 0) {
+            return mc.getPrecision();
+        }
+        return Math.max(0, operandLost + exponent(operand) - exponent(result));
+    }
+
+    // 取余：商的整数部分是精确算的，所以被除数比除数大太多（大到这一轮的精度都装不下商）就没有意义了
+    // 另外余数在跳变的地方（接近 0 或接近除数）时，操作数的一点误差就能让结果从一头跳到另一头
+    private BigDecimal remainder(BigDecimal left, int leftLost, BigDecimal right, int rightLost) {
+        if (right.signum() == 0) {
+            throw new ArithmeticException("Division by zero!");
+        }
+        if (left.signum() == 0) {
+            lost = 0;
+            return left;
+        }
+        if (left.abs().compareTo(right.abs()) < 0) {
+            lost = leftLost;
+            return left;            // 不用除：除数很大时 BigDecimal 对齐小数位会造出特别长的数
+        }
+        if (exponent(left) - exponent(right) > MAX_PRECISION) {
+            throw new OutOfRangeException("Quotient is too large");
+        }
+        BigDecimal result = left.remainder(right).round(mc);
+        lost = 0;
+        if (uncertain(left, leftLost) || uncertain(right, rightLost)) {
+            // 除数的误差会被商放大，所以两边的误差折算到余数上都差不多是 |left| 的相对误差
+            int operandLost = Math.max(leftLost, rightLost);
+            BigDecimal distance = result.abs().min(right.abs().subtract(result.abs()));
+            if (result.signum() == 0 || nearJump(left, operandLost, distance)) {
+                lost = mc.getPrecision();
+            } else {
+                lost = Math.max(0, operandLost + exponent(left) - exponent(result));
+            }
+        }
+        return result;
+    }
+
+    // 取整：x 不精确又正好贴着整数，向上还是向下就说不准了
+    private BigDecimal round(BigDecimal x, int xLost, RoundingMode mode) {
+        BigDecimal result = x.setScale(0, mode);
+        lost = 0;
+        if (uncertain(x, xLost)) {
+            BigDecimal down = x.subtract(x.setScale(0, RoundingMode.FLOOR));
+            BigDecimal distance = down.min(BigDecimal.ONE.subtract(down));
+            if (nearJump(x, xLost, distance)) {
+                lost = mc.getPrecision();
+            }
+        }
+        return result;
+    }
+
+    // value 的误差有没有可能跨过 distance 那么远（误差按最后几位不可信来估，多留两位余量）
+    private boolean nearJump(BigDecimal value, int valueLost, BigDecimal distance) {
+        BigDecimal error = BigDecimal.ONE.scaleByPowerOfTen(exponent(value) + valueLost - mc.getPrecision() + 2);
+        return distance.compareTo(error) <= 0;
+    }
+
+    // 乘方：整数次方直接用 BigDecimal.pow（误差放大 n 倍），其他的用 exp(y·ln x)
+    private BigDecimal power(BigDecimal x, int xLost, BigDecimal y, int yLost) {
+        if (isInteger(y) && y.abs().compareTo(MAX_INT_EXPONENT) <= 0) {
+            int n = y.intValueExact();
+            if (x.signum() == 0 && n < 0) {
+                throw new OutOfRangeException("Infinity");   // 0 的负数次方
+            }
+            lost = uncertain(x, xLost) && n != 0 ? xLost + digitsOf(n) : 0;
+            return x.pow(n, mc);
+        }
+        if (x.signum() == 0) {
+            if (y.signum() > 0) {
+                lost = 0;
+                return BigDecimal.ZERO;
+            }
+            throw new OutOfRangeException("Infinity");
+        }
+        if (x.signum() < 0) {
+            throw new OutOfRangeException("NaN");    // 负数的非整数次方
+        }
+        BigDecimal logX = ln(x, xLost);
+        int logLost = lost;
+        return exp(logX.multiply(y, mc), Math.max(logLost, yLost));
+    }
+
+    private BigDecimal builtin(int builtin, BigDecimal x, int xLost) {
+        switch (builtin) {
+            case Builtins.SIN:
+            case Builtins.COS:
+            case Builtins.TAN:
+            case Builtins.COT:
+                return trig(builtin, x, xLost);
+            case Builtins.ASIN:
+                return asin(x, xLost);
+            case Builtins.ACOS:
+                return acos(x, xLost);
+            case Builtins.ATAN:
+                lost = xLost;
+                return atanSeries(x, work).round(mc);
+            case Builtins.SINH:
+            case Builtins.COSH:
+            case Builtins.TANH:
+                return hyperbolic(builtin, x, xLost);
+            case Builtins.LOG:
+                return ln(x, xLost);
+            case Builtins.LOG2:
+                return ln(x, xLost).divide(lnNewton(TWO, work.getPrecision()), mc);
+            case Builtins.LOG10:
+                return ln(x, xLost).divide(lnNewton(BigDecimal.TEN, work.getPrecision()), mc);
+            case Builtins.LOG1P:
+                return log1p(x, xLost);
+            case Builtins.ABS:
+                lost = xLost;
+                return x.abs();
+            case Builtins.CBRT:
+                return cbrt(x, xLost);
+            case Builtins.CEIL:
+                return round(x, xLost, RoundingMode.CEILING);
+            case Builtins.FLOOR:
+                return round(x, xLost, RoundingMode.FLOOR);
+            case Builtins.SQRT:
+                if (x.signum() < 0) {
+                    throw new OutOfRangeException("NaN");
+                }
+                lost = xLost;
+                BigDecimal root = x.sqrt(mc);
+                // 开不尽的时候 sqrt 会把尾零去掉（sqrt(1+1e-20) 看起来像 1.000000000000000000005），补回来免得被当成精确值
+                return root.multiply(root).compareTo(x) == 0 ? root : padded(root);
+            case Builtins.EXP:
+                return exp(x, xLost);
+            case Builtins.EXPM1:
+                return expm1(x, xLost);
+            case Builtins.SIGNUM:
+                lost = 0;
+                return BigDecimal.valueOf(x.signum());
+            default:
+                throw new IllegalArgumentException("Not a one-argument builtin: " + builtin);
+        }
+    }
+
+    // 认识的自定义函数（cbrt、角度制三角函数）按高精度算，其他的只能按 double
+    private BigDecimal custom(DoubleUnaryOperator function, BigDecimal x, int xLost) {
+        if (function instanceof CustomFunctions.CbrtFunction) {
+            return cbrt(x, xLost);
+        }
+        if (function instanceof CustomFunctions.SinDegrees) {
+            return trigDegrees(Builtins.SIN, x, xLost);
+        }
+        if (function instanceof CustomFunctions.CosDegrees) {
+            return trigDegrees(Builtins.COS, x, xLost);
+        }
+        if (function instanceof CustomFunctions.TanDegrees) {
+            return trigDegrees(Builtins.TAN, x, xLost);
+        }
+        if (function instanceof CustomFunctions.CotDegrees) {
+            return trigDegrees(Builtins.COT, x, xLost);
+        }
+        if (function instanceof CustomFunctions.AsinDegrees) {
+            return toDegrees(asin(x, xLost));
+        }
+        if (function instanceof CustomFunctions.AcosDegrees) {
+            return toDegrees(acos(x, xLost));
+        }
+        if (function instanceof CustomFunctions.AtanDegrees) {
+            lost = xLost;
+            return toDegrees(atanSeries(x, work));
+        }
+        return fromDouble(function.applyAsDouble(x.doubleValue()));
+    }
+
+    // double 算出来的值：最多 15 位可信
+    private BigDecimal fromDouble(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new OutOfRangeException(Double.toString(value));
+        }
+        digitLimit = Math.min(digitLimit, DOUBLE_DIGITS);
+        lost = 0;
+        return BigDecimal.valueOf(value);
+    }
+
+    // ---------------- 指数、对数 ----------------
+
+    // exp 的相对误差约等于参数的绝对误差，所以参数有多大就丢多少位
+    private BigDecimal exp(BigDecimal x, int xLost) {
+        lost = uncertain(x, xLost) ? Math.max(0, xLost + exponent(x) + 1) : 0;
+        if (x.signum() == 0) {
+            lost = 0;
+            return BigDecimal.ONE;
+        }
+        checkExpRange(x);
+        return expSeries(x, work).round(mc);
+    }
+
+    // ln 把误差缩小 |ln x| 倍：结果很小（x 接近 1）的时候反而会放大
+    private BigDecimal ln(BigDecimal x, int xLost) {
+        if (x.signum() <= 0) {
+            throw new OutOfRangeException(x.signum() == 0 ? "-Infinity" : "NaN");
+        }
+        BigDecimal y = lnNewton(x, work.getPrecision());
+        if (y.signum() == 0) {
+            lost = 0;
+            return y;
+        }
+        if (exponent(y) < 0) {
+            // x 接近 1，ln x 很小：内部多算几位，保证结果的相对精度
+            y = lnNewton(x, work.getPrecision() - exponent(y));
+        }
+        lost = uncertain(x, xLost) ? Math.max(0, xLost - exponent(y)) : 0;
+        return y.round(mc);
+    }
+
+    private BigDecimal log1p(BigDecimal x, int xLost) {
+        if (x.compareTo(BigDecimal.ONE.negate()) <= 0) {
+            throw new OutOfRangeException(x.compareTo(BigDecimal.ONE.negate()) == 0 ? "-Infinity" : "NaN");
+        }
+        if (x.signum() != 0 && exponent(x) < -2 * work.getPrecision()) {
+            lost = xLost;
+            return x.round(mc);     // ln(1+x) = x - x²/2 + ...，后面的项已经小到看不见了
+        }
+        BigDecimal onePlus = BigDecimal.ONE.add(x);     // 精确加的，接近 1 时 ln 自己会多算几位
+        BigDecimal result = ln(onePlus, 0);
+        // 误差放大倍数是 x / ((1 + x)·ln(1 + x))
+        lost = uncertain(x, xLost) && result.signum() != 0
+                ? Math.max(0, xLost + exponent(x) - exponent(onePlus) - exponent(result)) : 0;
+        return result;
+    }
+
+    private BigDecimal expm1(BigDecimal x, int xLost) {
+        // |x| 小的时候 expm1(x) ≈ x，相对误差原样保留；大的时候和 exp 一样被 |x| 放大
+        lost = uncertain(x, xLost) ? xLost + Math.max(0, exponent(x) + 1) : 0;
+        if (x.signum() == 0) {
+            return BigDecimal.ZERO;
+        }
+        checkExpRange(x);
+        if (exponent(x) < 0) {
+            // |x| < 1：直接用级数 x + x²/2! + ...，不从 exp(x) 里减 1（会抵消掉）
+            BigDecimal term = x;
+            BigDecimal sum = x;
+            for (int n = 2; ; n++) {
+                term = term.multiply(x, work).divide(BigDecimal.valueOf(n), work);
+                if (negligible(term, sum, work)) {
+                    return sum.round(mc);
+                }
+                sum = sum.add(term, work);
+            }
+        }
+        return expSeries(x, work).subtract(BigDecimal.ONE, work).round(mc);
+    }
+
+    private BigDecimal cbrt(BigDecimal x, int xLost) {
+        lost = xLost;
+        if (x.signum() == 0) {
+            return BigDecimal.ZERO;
+        }
+        BigDecimal third = lnNewton(x.abs(), work.getPrecision()).divide(BigDecimal.valueOf(3), work);
+        BigDecimal root = expSeries(third, work);
+        return (x.signum() < 0 ? root.negate() : root).round(mc);
+    }
+
+    private BigDecimal hyperbolic(int builtin, BigDecimal x, int xLost) {
+        if (x.signum() == 0) {
+            lost = 0;
+            return builtin == Builtins.COSH ? BigDecimal.ONE : BigDecimal.ZERO;
+        }
+        // sinh、cosh 的误差随 |x| 放大，tanh 不会；|x| 小的时候 sinh(x) ≈ x，相对误差也不会变小
+        if (builtin == Builtins.TANH || !uncertain(x, xLost)) {
+            lost = xLost;
+        } else if (builtin == Builtins.SINH) {
+            lost = xLost + Math.max(0, exponent(x) + 1);
+        } else {
+            lost = Math.max(0, xLost + exponent(x) + 1);
+        }
+        checkExpRange(x);
+        BigDecimal ex = expSeries(x, work);
+        BigDecimal inverse = BigDecimal.ONE.divide(ex, work);
+        BigDecimal sinh;
+        if (exponent(x) < 0) {
+            // |x| < 1：e^x - e^-x 会抵消，用级数 x + x³/3! + ...
+            BigDecimal x2 = x.multiply(x, work);
+            BigDecimal term = x;
+            sinh = x;
+            for (int n = 1; ; n++) {
+                term = term.multiply(x2, work).divide(BigDecimal.valueOf((2L * n) * (2L * n + 1)), work);
+                if (negligible(term, sinh, work)) {
+                    break;
+                }
+                sinh = sinh.add(term, work);
+            }
+        } else {
+            sinh = ex.subtract(inverse, work).multiply(HALF);
+        }
+        BigDecimal cosh = ex.add(inverse, work).multiply(HALF);
+        switch (builtin) {
+            case Builtins.SINH:
+                return sinh.round(mc);
+            case Builtins.COSH:
+                return cosh.round(mc);
+            default:
+                return sinh.divide(cosh, mc);
+        }
+    }
+
+    private static void checkExpRange(BigDecimal x) {
+        if (x.abs().compareTo(EXP_LIMIT) > 0) {
+            throw new OutOfRangeException(x.signum() > 0 ? "Infinity" : "0");
+        }
+    }
+
+    // exp 的泰勒级数：先把 x 折半到很小再展开，展开完平方回去（每平方一次多留一点余量）
+    // 折到 2^-√p 左右，级数的项数和平方的次数都是 √p 量级，比只折到 0.5 要少算很多项
+    private static BigDecimal expSeries(BigDecimal x, MathContext context) {
+        int halvings = 0;
+        double magnitude = Math.abs(x.doubleValue());   // |x| 不超过 EXP_LIMIT，double 放得下
+        double target = Math.scalb(1.0, -(int) Math.sqrt(context.getPrecision()));
+        while (magnitude >= target) {
+            magnitude /= 2;
+            halvings++;
+        }
+        MathContext mc = new MathContext(context.getPrecision() + halvings / 3 + 2, RoundingMode.HALF_EVEN);
+        BigDecimal r = halvings == 0 ? x : x.divide(TWO.pow(halvings), mc);
+
+        BigDecimal sum = BigDecimal.ONE;
+        BigDecimal term = BigDecimal.ONE;
+        for (int n = 1; ; n++) {
+            term = term.multiply(r, mc).divide(BigDecimal.valueOf(n), mc);
+            if (negligible(term, sum, mc)) {
+                break;
+            }
+            sum = sum.add(term, mc);
+        }
+        for (int i = 0; i < halvings; i++) {
+            sum = sum.multiply(sum, mc);
+        }
+        return sum.round(context);
+    }
+
+    // 自然对数：用 Halley 迭代解 exp(y) = x，从 double 的近似值出发，每迭代一次有效位数翻三倍
+    private static BigDecimal lnNewton(BigDecimal x, int precision) {
+        if (x.compareTo(BigDecimal.ONE) == 0) {
+            return BigDecimal.ZERO;
+        }
+        MathContext mc = new MathContext(precision + 3, RoundingMode.HALF_EVEN);
+        int exponent = exponent(x);
+        double mantissa = x.movePointLeft(exponent).doubleValue();      // 1 <= mantissa < 10，x 再大再小都不会溢出
+        BigDecimal y = new BigDecimal(Math.log(mantissa) + exponent * Math.log(10), mc);
+        for (int i = 0; i < 10; i++) {
+            BigDecimal ey = expSeries(y, mc);
+            BigDecimal correction = TWO.multiply(x.subtract(ey, mc)).divide(x.add(ey, mc), mc);
+            y = y.add(correction, mc);
+            // 三次收敛：这次的修正量已经小于目标精度的三分之一，再迭代一次也没有变化了
+            if (correction.signum() == 0 || exponent(correction) < Math.max(0, exponent(y)) - precision / 3 - 2) {
+                break;
+            }
+        }
+        return y.round(new MathContext(precision, RoundingMode.HALF_EVEN));
+    }
+
+    // ---------------- 三角函数 ----------------
+
+    private BigDecimal trig(int builtin, BigDecimal x, int xLost) {
+        if (x.signum() == 0) {
+            lost = 0;
+            switch (builtin) {
+                case Builtins.COS:
+                    return BigDecimal.ONE;
+                case Builtins.COT:
+                    throw new ArithmeticException("Division by zero in cotangent!");
+                default:
+                    return BigDecimal.ZERO;
+            }
+        }
+        reduce(x, xLost);
+        BigDecimal sin = sinSeries(reduced);
+        BigDecimal cos = cosSeries(reduced);
+        boolean odd = quadrant % 2 == 1;
+        // x 不是 0 结果就不会是精确值，但级数截断后可能正好很短（cos(1e-10) 是 0.999999999999999999995），补上尾零
+        switch (builtin) {
+            case Builtins.SIN:
+                return padded(signed(odd ? cos : sin, quadrant >= 2).round(mc));
+            case Builtins.COS:
+                return padded(signed(odd ? sin : cos, quadrant == 1 || quadrant == 2).round(mc));
+            case Builtins.TAN:
+                return padded(odd ? cos.negate().divide(sin, mc) : sin.divide(cos, mc));
+            default:
+                if (!odd && sin.signum() == 0) {
+                    throw new ArithmeticException("Division by zero in cotangent!");
+                }
+                return padded(odd ? sin.negate().divide(cos, mc) : cos.divide(sin, mc));
+        }
+    }
+
+    // 取模：x = k·π/2 + r，|r| <= π/4；π 按 x 的整数位数多算几位，所以 x 很大（1e22）也能取准
+    // x 本身不精确的话，r 比 x 小几个数量级就丢了几位（sin(pi) 这种只能靠提高精度）
+    // 要多算的位数跟着 x 的整数位数涨，整数位比 MAX_PRECISION 还多就不算了（sin(1e5000) 要算几十秒），交给 double 算
+    private void reduce(BigDecimal x, int xLost) {
+        if (exponent(x) > MAX_PRECISION) {
+            throw new OutOfRangeException("Argument is too large to reduce");
+        }
+        MathContext mc = new MathContext(work.getPrecision() + Math.max(0, exponent(x) + 1), RoundingMode.HALF_EVEN);
+        BigDecimal halfPi = pi(mc.getPrecision()).multiply(HALF);
+        BigDecimal k = x.divide(halfPi, mc).setScale(0, RoundingMode.HALF_EVEN);
+        reduced = k.signum() == 0 ? x : x.subtract(k.multiply(halfPi), mc);
+        quadrant = k.remainder(FOUR).intValue();
+        if (quadrant < 0) {
+            quadrant += 4;
+        }
+        lost = uncertain(x, xLost) && reduced.signum() != 0
+                ? Math.max(0, xLost + exponent(x) - exponent(reduced)) : 0;
+    }
+
+    // 角度制：先对 360 取余（精确），90 度的整数倍直接给精确值（和 CustomFunctions 里的一样），其他的换成弧度
+    private BigDecimal trigDegrees(int builtin, BigDecimal degrees, int degreesLost) {
+        if (exponent(degrees) > MAX_PRECISION) {
+            throw new OutOfRangeException("Argument is too large to reduce");   // 和 reduce 一样
+        }
+        BigDecimal angle = degrees.remainder(FULL_TURN);
+        int angleLost = uncertain(degrees, degreesLost) && angle.signum() != 0
+                ? Math.max(0, degreesLost + exponent(degrees) - exponent(angle)) : degreesLost;
+        if (angle.remainder(RIGHT_ANGLE).signum() == 0) {
+            int q = angle.divide(RIGHT_ANGLE).intValue();
+            if (q < 0) {
+                q += 4;
+            }
+            lost = 0;
+            switch (builtin) {
+                case Builtins.SIN:
+                    return q == 1 ? BigDecimal.ONE : q == 3 ? BigDecimal.ONE.negate() : BigDecimal.ZERO;
+                case Builtins.COS:
+                    return q == 0 ? BigDecimal.ONE : q == 2 ? BigDecimal.ONE.negate() : BigDecimal.ZERO;
+                case Builtins.TAN:
+                    if (q % 2 == 1) {
+                        throw new OutOfRangeException("NaN");
+                    }
+                    return BigDecimal.ZERO;
+                default:
+                    if (q % 2 == 0) {
+                        throw new ArithmeticException("Division by zero in cotangent!");
+                    }
+                    return BigDecimal.ZERO;
+            }
+        }
+        BigDecimal radians = angle.multiply(pi(work.getPrecision()), work).divide(HALF_TURN, mc);
+        return trig(builtin, radians, angleLost);
+    }
+
+    private BigDecimal sinSeries(BigDecimal r) {
+        if (r.signum() == 0) {
+            return BigDecimal.ZERO;
+        }
+        BigDecimal r2 = r.multiply(r, work);
+        BigDecimal term = r;
+        BigDecimal sum = r;
+        for (int n = 1; ; n++) {
+            term = term.multiply(r2, work).divide(BigDecimal.valueOf((2L * n) * (2L * n + 1)), work).negate();
+            if (negligible(term, sum, work)) {
+                return sum;
+            }
+            sum = sum.add(term, work);
+        }
+    }
+
+    private BigDecimal cosSeries(BigDecimal r) {
+        BigDecimal r2 = r.multiply(r, work);
+        BigDecimal term = BigDecimal.ONE;
+        BigDecimal sum = BigDecimal.ONE;
+        for (int n = 1; ; n++) {
+            term = term.multiply(r2, work).divide(BigDecimal.valueOf((2L * n - 1) * (2L * n)), work).negate();
+            if (negligible(term, sum, work)) {
+                return sum;
+            }
+            sum = sum.add(term, work);
+        }
+    }
+
+    // asin(x) = atan(x / sqrt(1 - x²))；1 - x² 精确算，x 不精确的话接近 ±1 时会丢位
+    private BigDecimal asin(BigDecimal x, int xLost) {
+        if (x.abs().compareTo(BigDecimal.ONE) > 0) {
+            throw new OutOfRangeException("NaN");
+        }
+        BigDecimal oneMinusSquare = BigDecimal.ONE.subtract(x.multiply(x));
+        if (oneMinusSquare.signum() == 0) {
+            lost = 0;
+            BigDecimal halfPi = pi(mc.getPrecision() + 1).multiply(HALF).round(mc);
+            return x.signum() < 0 ? halfPi.negate() : halfPi;
+        }
+        lost = uncertain(x, xLost) ? xLost + Math.max(0, (1 - exponent(oneMinusSquare)) / 2) : 0;
+        return atanSeries(x.divide(oneMinusSquare.sqrt(work), work), work).round(mc);
+    }
+
+    // acos(x) = 2·atan(sqrt((1 - x) / (1 + x)))，不用 π/2 - asin(x)（x 接近 1 时会抵消）
+    private BigDecimal acos(BigDecimal x, int xLost) {
+        if (x.abs().compareTo(BigDecimal.ONE) > 0) {
+            throw new OutOfRangeException("NaN");
+        }
+        BigDecimal oneMinus = BigDecimal.ONE.subtract(x);
+        BigDecimal onePlus = BigDecimal.ONE.add(x);
+        if (onePlus.signum() == 0) {
+            lost = 0;
+            return pi(mc.getPrecision());
+        }
+        if (oneMinus.signum() == 0) {
+            lost = 0;
+            return BigDecimal.ZERO;
+        }
+        lost = uncertain(x, xLost) ? xLost + Math.max(0, -exponent(oneMinus)) : 0;
+        BigDecimal t = oneMinus.divide(onePlus, work).sqrt(work);
+        return atanSeries(t, work).multiply(TWO).round(mc);
+    }
+
+    // atan：|x| > 1 时用 π/2 - atan(1/x)，再用半角公式把参数缩到 0.1 以下，最后泰勒级数
+    private static BigDecimal atanSeries(BigDecimal x, MathContext mc) {
+        if (x.signum() == 0) {
+            return BigDecimal.ZERO;
+        }
+        if (x.abs().compareTo(BigDecimal.ONE) > 0) {
+            BigDecimal halfPi = pi(mc.getPrecision()).multiply(HALF);
+            BigDecimal inner = atanSeries(BigDecimal.ONE.divide(x, mc), mc);
+            return (x.signum() > 0 ? halfPi : halfPi.negate()).subtract(inner, mc);
+        }
+        int doublings = 0;
+        BigDecimal a = x;
+        while (a.abs().compareTo(TENTH) > 0) {
+            // atan(a) = 2·atan(a / (1 + sqrt(1 + a²)))
+            a = a.divide(BigDecimal.ONE.add(BigDecimal.ONE.add(a.multiply(a, mc)).sqrt(mc)), mc);
+            doublings++;
+        }
+        BigDecimal a2 = a.multiply(a, mc);
+        BigDecimal power = a;
+        BigDecimal sum = a;
+        for (int n = 1; ; n++) {
+            power = power.multiply(a2, mc).negate();
+            BigDecimal term = power.divide(BigDecimal.valueOf(2L * n + 1), mc);
+            if (negligible(term, sum, mc)) {
+                break;
+            }
+            sum = sum.add(term, mc);
+        }
+        return sum.multiply(TWO.pow(doublings));
+    }
+
+    private BigDecimal toDegrees(BigDecimal radians) {
+        return radians.multiply(HALF_TURN).divide(pi(work.getPrecision()), mc);
+    }
+
+    // π：Machin 公式 π = 16·atan(1/5) - 4·atan(1/239)
+    private static BigDecimal pi(int precision) {
+        BigDecimal pi = cachedPi;
+        if (pi == null || pi.precision() < precision) {
+            MathContext mc = new MathContext(precision + 10, RoundingMode.HALF_EVEN);
+            pi = atanInverse(5, mc).multiply(BigDecimal.valueOf(16))
+                    .subtract(atanInverse(239, mc).multiply(FOUR), mc);
+            cachedPi = pi;  // 几个线程同时算也没关系，结果是一样的
+        }
+        return pi.round(new MathContext(precision, RoundingMode.HALF_EVEN));
+    }
+
+    private static BigDecimal e(int precision) {
+        BigDecimal e = cachedE;
+        if (e == null || e.precision() < precision) {
+            e = expSeries(BigDecimal.ONE, new MathContext(precision + 10, RoundingMode.HALF_EVEN));
+            cachedE = e;
+        }
+        return e.round(new MathContext(precision, RoundingMode.HALF_EVEN));
+    }
+
+    // atan(1/n) = 1/n - 1/(3n³) + 1/(5n⁵) - ...
+    private static BigDecimal atanInverse(int n, MathContext mc) {
+        BigDecimal n2 = BigDecimal.valueOf((long) n * n);
+        BigDecimal power = BigDecimal.ONE.divide(BigDecimal.valueOf(n), mc);
+        BigDecimal sum = power;
+        for (int k = 1; ; k++) {
+            power = power.divide(n2, mc);
+            BigDecimal term = power.divide(BigDecimal.valueOf(2L * k + 1), mc);
+            if (negligible(term, sum, mc)) {
+                return sum;
+            }
+            sum = k % 2 == 0 ? sum.add(term, mc) : sum.subtract(term, mc);
+        }
+    }
+
+    // ---------------- 工具 ----------------
+
+    // 这个值的最后一位可能不准：舍入过（位数占满了精度），或者是从丢过位的值算出来的
+    private boolean uncertain(BigDecimal value, int valueLost) {
+        return valueLost > 0 || value.precision() >= mc.getPrecision();
+    }
+
+    // 不精确的数正好除尽了，位数会变短，看起来像精确值；补上尾零到满精度，后面还能认出来
+    private BigDecimal padded(BigDecimal value) {
+        int missing = mc.getPrecision() - value.precision();
+        return missing > 0 ? value.setScale(value.scale() + missing) : value;
+    }
+
+    // 级数的这一项比和的最后一位还小，可以停了（所有级数的循环每一项都会走到这里，顺便看看有没有被中断）
+    private static boolean negligible(BigDecimal term, BigDecimal sum, MathContext mc) {
+        checkInterrupted();
+        return term.signum() == 0 || exponent(term) < exponent(sum) - mc.getPrecision() - 1;
+    }
+
+    private static void checkInterrupted() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException();
+        }
+    }
+
+    // 十进制的数量级：123 是 2，0.05 是 -2（0 不要传进来）
+    private static int exponent(BigDecimal value) {
+        return value.precision() - value.scale() - 1;
+    }
+
+    private static boolean isInteger(BigDecimal value) {
+        return value.signum() == 0 || value.scale() <= 0 || value.stripTrailingZeros().scale() <= 0;
+    }
+
+    // 乘 n 次方误差放大 n 倍，也就是多丢 log10(n) 位
+    private static int digitsOf(int n) {
+        return (int) Math.ceil(Math.log10(Math.abs((double) n)));
+    }
+
+    private static BigDecimal signed(BigDecimal value, boolean negative) {
+        return negative ? value.negate() : value;
+    }
+}
@@ -0,0 +1,326 @@
+package calculator;
+
+import net.objecthunter.exp4j.function.Function;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.DoubleUnaryOperator;
+
+// 编译好的表达式：把语法树压平成一串后缀指令（类似字节码），求值时就在一个 double 数组栈上跑一遍
+// 编译一次可以反复算，多个线程可以同时用（唯一会变的是下面的分层编译状态，只影响快慢不影响结果）
+// 分层：先解释执行；同一个 Program 算够 ExpressionJit.THRESHOLD 次，生成一个隐藏类（ExpressionJit），之后都走它
+// 求值时只需要一个栈数组：evaluate(variables) 每次新建一个（很小），
+// 批量计算时用 evaluate(variables, stack) 自己传一个进来复用，就完全不分配内存了
+public final class Program {
+
+    // 指令（有操作数的指令，操作数紧跟在后面）
+    static final int CONST = 0;         // CONST i：把 constants[i] 压栈
+    static final int VAR = 1;           // VAR i：把第 i 个变量压栈
+    static final int ADD = 2;
+    static final int SUB = 3;
+    static final int MUL = 4;
+    static final int DIV = 5;
+    static final int MOD = 6;
+    static final int POW = 7;
+    static final int NEG = 8;
+    static final int BUILTIN = 9;       // BUILTIN id：单参数内置函数
+    static final int BUILTIN2 = 10;     // BUILTIN2 id：两个参数的内置函数（pow）
+    static final int UNARY_CALL = 11;   // UNARY_CALL i：调用 unaryFunctions[i]
+    static final int CALL = 12;         // CALL i：调用 functions[i]，参数个数看函数自己
+    static final int SQUARE = 13;       // x*x
+    static final int CUBE = 14;         // x*x*x
+    static final int RECIP = 15;        // 1/x（和 x^(-1) 一样，0 的时候得到无穷大，不报错）
+
+    final int[] code;
+    final double[] constants;
+    final DoubleUnaryOperator[] unaryFunctions;
+    final Function[] functions;
+    final int maxStack;          // 求值时栈最深到多少
+    final int variableCount;
+    final boolean usesVariables; // 有没有用到变量（没用到的话，调用方可以不去准备变量的值）
+    final Node tree;             // 编译前的语法树（优化、调试用）
+
+    static final double[] NO_VARIABLES = new double[0];
+
+    private int invocations;                            // 解释执行了多少次（几个线程一起加丢几次无所谓）
+    private boolean tiered;                             // 已经试过生成了（生成不了就一直解释执行）
+    private volatile ExpressionJit.Compiled compiled;   // 生成好的类
+
+    private Program(int[] code, double[] constants, DoubleUnaryOperator[] unaryFunctions, Function[] functions,
+                    int maxStack, int variableCount, boolean usesVariables, Node tree) {
+        this.code = code;
+        this.constants = constants;
+        this.unaryFunctions = unaryFunctions;
+        this.functions = functions;
+        this.maxStack = maxStack;
+        this.variableCount = variableCount;
+        this.usesVariables = usesVariables;
+        this.tree = tree;
+    }
+
+    // 把语法树编译成指令
+    static Program compile(Node tree, int variableCount) {
+        Compiler compiler = new Compiler();
+        compiler.emit(tree);
+        return new Program(compiler.code(), compiler.constants(),
+                compiler.unaryFunctions.toArray(new DoubleUnaryOperator[0]),
+                compiler.functions.toArray(new Function[0]),
+                compiler.maxStack, variableCount, compiler.usesVariables, tree);
+    }
+
+    // 求值（没有变量的表达式传空数组就行）
+    public double evaluate(double... variables) {
+        ExpressionJit.Compiled compiled = this.compiled;
+        if (compiled != null) {
+            checkVariables(variables);
+            return compiled.evaluate(variables);    // 不用栈，也就不用分配
+        }
+        return evaluate(variables, new double[maxStack]);
+    }
+
+    // 求值，栈数组由调用方提供（长度至少 getMaxStack()），可以反复复用
+    public double evaluate(double[] variables, double[] stack) {
+        checkVariables(variables);
+        ExpressionJit.Compiled compiled = this.compiled;
+        if (compiled != null) {
+            return compiled.evaluate(variables);
+        }
+        if (ExpressionJit.ENABLED && !tiered && ++invocations >= ExpressionJit.THRESHOLD) {
+            tierUp();
+        }
+        final int[] code = this.code;
+        int sp = 0;
+        int pc = 0;
+        while (pc < code.length) {
+            switch (code[pc++]) {
+                case CONST:
+                    stack[sp++] = constants[code[pc++]];
+                    break;
+                case VAR:
+                    stack[sp++] = variables[code[pc++]];
+                    break;
+                case ADD:
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] + stack[sp];
+                    break;
+                case SUB:
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] - stack[sp];
+                    break;
+                case MUL:
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] * stack[sp];
+                    break;
+                case DIV:
+                    sp--;
+                    if (stack[sp] == 0d) {
+                        throw new ArithmeticException("Division by zero!");
+                    }
+                    stack[sp - 1] = stack[sp - 1] / stack[sp];
+                    break;
+                case MOD:
+                    sp--;
+                    if (stack[sp] == 0d) {
+                        throw new ArithmeticException("Division by zero!");
+                    }
+                    stack[sp - 1] = stack[sp - 1] % stack[sp];
+                    break;
+                case POW:
+                    sp--;
+                    stack[sp - 1] = Math.pow(stack[sp - 1], stack[sp]);
+                    break;
+                case NEG:
+                    stack[sp - 1] = -stack[sp - 1];
+                    break;
+                case SQUARE: {
+                    double x = stack[sp - 1];
+                    stack[sp - 1] = x * x;
+                    break;
+                }
+                case CUBE: {
+                    double x = stack[sp - 1];
+                    stack[sp - 1] = x * x * x;
+                    break;
+                }
+                case RECIP:
+                    stack[sp - 1] = 1d / stack[sp - 1];
+                    break;
+                case BUILTIN:
+                    stack[sp - 1] = Builtins.apply(code[pc++], stack[sp - 1]);
+                    break;
+                case BUILTIN2:
+                    pc++; // 目前只有 pow
+                    sp--;
+                    stack[sp - 1] = Math.pow(stack[sp - 1], stack[sp]);
+                    break;
+                case UNARY_CALL:
+                    stack[sp - 1] = unaryFunctions[code[pc++]].applyAsDouble(stack[sp - 1]);
+                    break;
+                case CALL: {
+                    Function function = functions[code[pc++]];
+                    int n = function.getNumArguments();
+                    double[] args = new double[n];
+                    sp -= n;
+                    System.arraycopy(stack, sp, args, 0, n);
+                    stack[sp++] = function.apply(args);
+                    break;
+                }
+                default:
+                    throw new IllegalStateException("Bad instruction at " + (pc - 1));
+            }
+        }
+        return stack[0];
+    }
+
+    private void checkVariables(double[] variables) {
+        if (variables.length < variableCount) {
+            throw new IllegalArgumentException("Expected " + variableCount + " variables but got " + variables.length);
+        }
+    }
+
+    // 生成只做一次；这一次调用还是解释执行，下一次开始走生成的类
+    private synchronized void tierUp() {
+        if (!tiered) {
+            compiled = ExpressionJit.compile(tree);
+            tiered = true;
+        }
+    }
+
+    public int getMaxStack() {
+        return maxStack;
+    }
+
+    public int getVariableCount() {
+        return variableCount;
+    }
+
+    @Override
+    public String toString() {
+        return tree.toString();
+    }
+
+    // 语法树 -> 指令，顺便算一下最深的栈
+    private static final class Compiler {
+        private int[] code = new int[32];
+        private int length;
+        private double[] constants = new double[8];
+        private int constantCount;
+        final List<DoubleUnaryOperator> unaryFunctions = new ArrayList<>();
+        final List<Function> functions = new ArrayList<>();
+        private int depth;
+        int maxStack;
+        boolean usesVariables;
+
+        void emit(Node node) {
+            if (node instanceof Node.Number) {
+                op(CONST, constant(((Node.Number) node).value));
+                push();
+            } else if (node instanceof Node.Variable) {
+                op(VAR, ((Node.Variable) node).index);
+                push();
+                usesVariables = true;
+            } else if (node instanceof Node.Negate) {
+                emit(((Node.Negate) node).operand);
+                op(NEG);
+            } else if (node instanceof Node.Binary) {
+                Node.Binary binary = (Node.Binary) node;
+                emit(binary.left);
+                emit(binary.right);
+                op(binaryOp(binary.operator));
+                depth--;
+            } else if (node instanceof Node.IntPower) {
+                Node.IntPower power = (Node.IntPower) node;
+                emit(power.base);
+                op(power.exponent == 2 ? SQUARE : power.exponent == 3 ? CUBE : RECIP);
+            } else if (node instanceof Node.BuiltinCall) {
+                Node.BuiltinCall call = (Node.BuiltinCall) node;
+                for (Node arg : call.args) {
+                    emit(arg);
+                }
+                op(call.args.length == 1 ? BUILTIN : BUILTIN2, call.builtin);
+                depth -= call.args.length - 1;
+            } else if (node instanceof Node.UnaryCall) {
+                Node.UnaryCall call = (Node.UnaryCall) node;
+                emit(call.arg);
+                op(UNARY_CALL, index(unaryFunctions, call.function));
+            } else if (node instanceof Node.FunctionCall) {
+                Node.FunctionCall call = (Node.FunctionCall) node;
+                for (Node arg : call.args) {
+                    emit(arg);
+                }
+                op(CALL, index(functions, call.function));
+                depth -= call.args.length;
+                push();
+            } else {
+                throw new IllegalArgumentException("Unknown node: " + node);
+            }
+        }
+
+        private static int binaryOp(char operator) {
+            switch (operator) {
+                case '+':
+                    return ADD;
+                case '-':
+                    return SUB;
+                case '*':
+                    return MUL;
+                case '/':
+                    return DIV;
+                case '%':
+                    return MOD;
+                case '^':
+                    return POW;
+                default:
+                    throw new IllegalArgumentException("Unknown operator: " + operator);
+            }
+        }
+
+        private void push() {
+            depth++;
+            maxStack = Math.max(maxStack, depth);
+        }
+
+        private void op(int opcode) {
+            if (length == code.length) {
+                code = Arrays.copyOf(code, length * 2);
+            }
+            code[length++] = opcode;
+        }
+
+        private void op(int opcode, int operand) {
+            op(opcode);
+            op(operand);
+        }
+
+        private int constant(double value) {
+            for (int i = 0; i < constantCount; i++) {
+                if (Double.compare(constants[i], value) == 0) {
+                    return i;
+                }
+            }
+            if (constantCount == constants.length) {
+                constants = Arrays.copyOf(constants, constantCount * 2);
+            }
+            constants[constantCount] = value;
+            return constantCount++;
+        }
+
+        private static <T> int index(List<T> list, T item) {
+            int i = list.indexOf(item);
+            if (i < 0) {
+                list.add(item);
+                i = list.size() - 1;
+            }
+            return i;
+        }
+
+        int[] code() {
+            return Arrays.copyOf(code, length);
+        }
+
+        double[] constants() {
+            return Arrays.copyOf(constants, constantCount);
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package calculator;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.text.DecimalFormatSymbols;
+
+// double 转文本，直接写进调用方给的 char 数组，不经过 DecimalFormat、也不创建 String
+// 先用 Schubfach 算法求出最短的、能原样读回来的十进制数字（和 JDK 19 以后的 Double.toString 一样），再按格式写出来：
+//   formatDisplay：显示用，和以前的 DecimalFormat("#.##########") 一样（最多 10 位小数，HALF_EVEN，去掉末尾的 0，不用科学计数法）
+//   formatShortest：要再拼回表达式里的（比如百分比），全部有效数字，太大太小用 1.5E-7 这种写法
+// 只有静态方法、没有可变的共享状态，多线程随便用；除了舍入正好卡在一半的少数情况，整个过程不分配对象
+// 和 DecimalFormat 唯一的区别在 1e16 以上的大数：它用的是老的 dtoa，有时会多出几位不准的数字
+// （1e23 它显示成 99999999999999990000000，这里是 1 后面 23 个 0）
+public final class ResultFormatter {
+
+    public static final int DISPLAY_FRACTION_DIGITS = 10;  // 显示时最多几位小数
+
+    // 显示 DecimalFormat 那些跟语言环境有关的符号（小数点、负号、NaN、无穷大），和原来的效果保持一致
+    private static final DecimalFormatSymbols SYMBOLS = DecimalFormatSymbols.getInstance();
+    private static final char DECIMAL_SEPARATOR = SYMBOLS.getDecimalSeparator();
+    private static final char MINUS_SIGN = SYMBOLS.getMinusSign();
+    private static final char ZERO_DIGIT = SYMBOLS.getZeroDigit();
+    private static final String NAN = SYMBOLS.getNaN();
+    private static final String INFINITY = SYMBOLS.getInfinity();
+
+    // 缓冲区至少要这么大：负号 + 最多 309 位整数 + 小数点 + 10 位小数（NaN、无穷大的符号也放得下）
+    public static final int MAX_LENGTH = Math.max(1 + 309 + 1 + DISPLAY_FRACTION_DIGITS,
+            1 + Math.max(NAN.length(), INFINITY.length()));
+
+    // ---------------- Schubfach 用到的常量（double：53 位精度，11 位指数）----------------
+    private static final int P = 53;
+    private static final int Q_MIN = -1074;             // 最小的二进制指数（次正规数）
+    private static final int K_MIN = flog10pow2(Q_MIN); // -324
+    private static final int K_MAX = flog10pow2(971);   // 292
+    private static final long C_MIN = 1L << (P - 1);
+    private static final long T_MASK = C_MIN - 1;
+    private static final int BQ_MASK = 0x7FF;
+    private static final long C_TINY = 3;               // 尾数比这个小的次正规数，多乘一个 10 再算，保证有两位数字
+    private static final long MASK_63 = (1L << 63) - 1;
+
+    // 10^-k 的 126 位近似值 g（向上取整），拆成高 63 位和低 63 位；类加载时用 BigInteger 算一次
+    private static final long[] G = powersOfTen();
+
+    private static final long[] POW10 = new long[19];
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
+    private ResultFormatter() {
+    }
+
+    // 显示用的格式，写到 buffer[offset..]，返回写完之后的位置
+    public static int formatDisplay(double value, char[] buffer, int offset) {
+        return format(value, buffer, offset, true);
+    }
+
+    // 完整的最短格式（能原样读回来），返回写完之后的位置
+    public static int formatShortest(double value, char[] buffer, int offset) {
+        return format(value, buffer, offset, false);
+    }
+
+    private static int format(double value, char[] buffer, int offset, boolean display) {
+        long bits = Double.doubleToRawLongBits(value);
+        long t = bits & T_MASK;
+        int bq = (int) (bits >>> (P - 1)) & BQ_MASK;
+        if (bq == BQ_MASK) {
+            if (t != 0) {
+                return display ? write(NAN, buffer, offset) : write("NaN", buffer, offset);
+            }
+            if (bits < 0) {
+                buffer[offset++] = display ? MINUS_SIGN : '-';
+            }
+            return display ? write(INFINITY, buffer, offset) : write("Infinity", buffer, offset);
+        }
+        // 负号原样保留，所以 -0.0 和舍入成 0 的负数显示 "-0"（DecimalFormat 也是这样）
+        if (bits < 0) {
+            buffer[offset++] = display ? MINUS_SIGN : '-';
+        }
+        if (bq != 0) {
+            int mq = -Q_MIN + 1 - bq;
+            long c = C_MIN | t;
+            // 本身就是不太大的整数，不用算
+            if (0 < mq && mq < P) {
+                long f = c >> mq;
+                if (f << mq == c) {
+                    return write(f, 0, value, buffer, offset, display);
+                }
+            }
+            return toDecimal(-mq, c, 0, value, buffer, offset, display);
+        }
+        if (t != 0) {
+            return t < C_TINY
+                    ? toDecimal(Q_MIN, 10 * t, -1, value, buffer, offset, display)
+                    : toDecimal(Q_MIN, t, 0, value, buffer, offset, display);
+        }
+        return write(0, 0, value, buffer, offset, display);
+    }
+
+    // Schubfach：v = c·2^q，在 v 的舍入区间里找位数最少的十进制数 f·10^e，有两个就取离 v 近的
+    private static int toDecimal(int q, long c, int dk, double value, char[] buffer, int offset, boolean display) {
+        int out = (int) c & 0x1;
+        long cb = c << 2;
+        long cbr = cb + 2;
+        long cbl;
+        int k;
+        if (c != C_MIN || q == Q_MIN) {
+            cbl = cb - 2;
+            k = flog10pow2(q);
+        } else {
+            // 正好是 2 的整数次方：下面的区间只有上面的一半
+            cbl = cb - 1;
+            k = flog10threeQuartersPow2(q);
+        }
+        int h = q + flog2pow10(-k) + 2;
+
+        int index = (k - K_MIN) << 1;
+        long g1 = G[index];
+        long g0 = G[index + 1];
+
+        long vb = rop(g1, g0, cb << h);
+        long vbl = rop(g1, g0, cbl << h);
+        long vbr = rop(g1, g0, cbr << h);
+
+        long s = vb >> 2;
+        if (s >= 100) {
+            // 先试试少一位数字行不行（s' = floor(s / 10)）
+            long sp10 = 10 * Math.multiplyHigh(s, 115_292_150_460_684_698L << 4);
+            long tp10 = sp10 + 10;
+            boolean upin = vbl + out <= sp10 << 2;
+            boolean wpin = (tp10 << 2) + out <= vbr;
+            if (upin != wpin) {
+                return write(upin ? sp10 : tp10, k, value, buffer, offset, display);
+            }
+        }
+
+        long t = s + 1;
+        boolean uin = vbl + out <= s << 2;
+        boolean win = (t << 2) + out <= vbr;
+        if (uin != win) {
+            return write(uin ? s : t, k + dk, value, buffer, offset, display);
+        }
+        // s 和 s+1 都在区间里：取离 v 近的，一样近取偶数
+        long cmp = vb - (s + t << 1);
+        return write(cmp < 0 || cmp == 0 && (s & 0x1) == 0 ? s : t, k + dk, value, buffer, offset, display);
+    }
+
+    // 126 位的 g 乘 cp，取高位，最低位表示有没有被截掉的部分（round to odd）
+    private static long rop(long g1, long g0, long cp) {
+        long x1 = Math.multiplyHigh(g0, cp);
+        long y0 = g1 * cp;
+        long y1 = Math.multiplyHigh(g1, cp);
+        long z = (y0 >>> 1) + x1;
+        long vbp = y1 + (z >>> 63);
+        return vbp | (z & MASK_63) + MASK_63 >>> 63;
+    }
+
+    // ---------------- 写字符 ----------------
+
+    // 最短的数字是 f·10^e，按格式写出来
+    private static int write(long f, int e, double value, char[] buffer, int offset, boolean display) {
+        if (f != 0) {
+            while (f % 10 == 0) {
+                f /= 10;
+                e++;
+            }
+        }
+        if (!display) {
+            return writeShortest(f, e, buffer, offset);
+        }
+        if (e < -DISPLAY_FRACTION_DIGITS) {
+            int drop = -DISPLAY_FRACTION_DIGITS - e;
+            f = roundHalfEven(f, e, drop, value);
+            e = -DISPLAY_FRACTION_DIGITS;
+            if (f == 0) {
+                e = 0;
+            }
+            while (e < 0 && f % 10 == 0) {
+                f /= 10;
+                e++;
+            }
+        }
+        return writePlain(f, e, buffer, offset, ZERO_DIGIT, DECIMAL_SEPARATOR);
+    }
+
+    // 去掉最后 drop 位，HALF_EVEN；正好是一半的时候和 DecimalFormat 一样，看最短数字是往上还是往下舍入出来的
+    private static long roundHalfEven(long f, int e, int drop, double value) {
+        if (drop >= POW10.length - 1) {
+            return 0;       // f 最多 17 位，去掉 18 位以上一定不到一半
+        }
+        long p = POW10[drop];
+        long q = f / p;
+        long rem = f - q * p;
+        long half = p >> 1;
+        if (rem > half) {
+            return q + 1;
+        }
+        if (rem < half) {
+            return q;
+        }
+        if (q == 0) {
+            return 0;           // 5e-11 这种一位都留不下的，DecimalFormat 当成正好一半、舍到偶数 0，这里也一样
+        }
+        int cmp = BigDecimal.valueOf(f, -e).compareTo(new BigDecimal(Math.abs(value)));
+        if (cmp > 0) {
+            return q;           // 最短数字本来就是往上舍入的，真实值不到一半
+        }
+        if (cmp < 0) {
+            return q + 1;
+        }
+        return (q & 1) == 0 ? q : q + 1;
+    }
+
+    // 不用科学计数法：整数部分、小数点、小数部分，小于 1 的前面补 0.
+    private static int writePlain(long f, int e, char[] buffer, int offset, char zero, char separator) {
+        if (f == 0) {
+            buffer[offset++] = zero;
+            return offset;
+        }
+        int length = digitCount(f);
+        int integerDigits = length + e;
+        if (e >= 0) {
+            offset = writeDigits(f, length, buffer, offset, zero);
+            for (int i = 0; i < e; i++) {
+                buffer[offset++] = zero;
+            }
+            return offset;
+        }
+        if (integerDigits <= 0) {
+            buffer[offset++] = zero;
+            buffer[offset++] = separator;
+            for (int i = integerDigits; i < 0; i++) {
+                buffer[offset++] = zero;
+            }
+            return writeDigits(f, length, buffer, offset, zero);
+        }
+        // 先把数字连着写出来，再把小数部分往后挪一格，腾出小数点的位置
+        int end = writeDigits(f, length, buffer, offset, zero);
+        int point = offset + integerDigits;
+        System.arraycopy(buffer, point, buffer, point + 1, end - point);
+        buffer[point] = separator;
+        return end + 1;
+    }
+
+    // 最短格式：0.001 ~ 1e7 之间直接写，其他的写成 d.dddE±n（解析器认识这种写法）
+    private static int writeShortest(long f, int e, char[] buffer, int offset) {
+        if (f == 0) {
+            buffer[offset++] = '0';
+            return offset;
+        }
+        int length = digitCount(f);
+        int exponent = length + e - 1;      // 科学计数法的指数
+        if (exponent >= -3 && exponent < 7) {
+            return writePlain(f, e, buffer, offset, '0', '.');
+        }
+        int end = writeDigits(f, length, buffer, offset, '0');
+        if (length > 1) {
+            System.arraycopy(buffer, offset + 1, buffer, offset + 2, length - 1);
+            buffer[offset + 1] = '.';
+            end++;
+        }
+        buffer[end++] = 'E';
+        if (exponent < 0) {
+            buffer[end++] = '-';
+            exponent = -exponent;
+        }
+        return writeDigits(exponent, digitCount(exponent), buffer, end, '0');
+    }
+
+    // 把 f 的 length 位数字写进去（从后往前写）
+    private static int writeDigits(long f, int length, char[] buffer, int offset, char zero) {
+        int end = offset + length;
+        for (int i = end - 1; i >= offset; i--) {
+            buffer[i] = (char) (zero + (int) (f % 10));
+            f /= 10;
+        }
+        return end;
+    }
+
+    private static int write(String s, char[] buffer, int offset) {
+        s.getChars(0, s.length(), buffer, offset);
+        return offset + s.length();
+    }
+
+    private static int digitCount(long f) {
+        int length = 1;
+        while (length < POW10.length && f >= POW10[length]) {
+            length++;
+        }
+        return length;
+    }
+
+    // ---------------- 对数的整数近似（定点数乘法，在用到的范围内是精确的）----------------
+
+    // floor(e·log10(2))
+    private static int flog10pow2(int e) {
+        return (int) (e * 661_971_961_083L >> 41);
+    }
+
+    // floor(log10(3/4·2^e))
+    private static int flog10threeQuartersPow2(int e) {
+        return (int) (e * 661_971_961_083L + -274_743_187_321L >> 41);
+    }
+
+    // floor(e·log2(10))
+    private static int flog2pow10(int e) {
+        return (int) (e * 913_124_641_741L >> 38);
+    }
+
+    // 10^-k = β·2^r，2^125 <= β < 2^126，g = floor(β) + 1，拆成两个 63 位存
+    private static long[] powersOfTen() {
+        long[] g = new long[(K_MAX - K_MIN + 1) * 2];
+        BigInteger mask = BigInteger.ONE.shiftLeft(63).subtract(BigInteger.ONE);
+        for (int k = K_MIN; k <= K_MAX; k++) {
+            int r = flog2pow10(-k) - 125;
+            BigInteger beta;
+            if (k <= 0) {
+                BigInteger power = BigInteger.TEN.pow(-k);
+                beta = r >= 0 ? power.shiftRight(r) : power.shiftLeft(-r);
+            } else {
+                beta = BigInteger.ONE.shiftLeft(-r).divide(BigInteger.TEN.pow(k));
+            }
+            beta = beta.add(BigInteger.ONE);
+            int index = (k - K_MIN) << 1;
+            g[index] = beta.shiftRight(63).longValueExact();
+            g[index + 1] = beta.and(mask).longValueExact();
+        }
+        return g;
+    }
+}
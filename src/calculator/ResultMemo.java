@@ -0,0 +1,383 @@
+package calculator;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// 纯子表达式的结果缓存：编译前把语法树里“纯”的子树（不含寄存器、变量，只用内置函数和 CustomFunctions 里那些没有状态的函数）
+// 按结构查一下，算过就直接换成数，没算过算一次记下来；同一个值在不同的表达式里只算一次
+// 比如角度制下的 sin(30)（解析出来是 CustomFunctions 的函数，优化器不敢提前算），"sin(30)+1"、"2*sin(30)" 共用一个结果
+// key 是结构（不是文本）+ 角度模式：数字按值比（"2"、"2.0"、"pi" 算出来一样就一样），函数按对象比，
+// 加法、乘法两边交换算同一个（IEEE 的加、乘满足交换律，结果一位不差），括号、空格本来就不在树里
+// 用户函数不算纯的：文件一改函数体就变了，而折叠好的结果会跟着编译结果留在 ExpressionCache 里
+// 算的时候出错的子树（1/0 之类）不折叠也不记，留到求值时照常报错
+// 容量满了按 LRU 淘汰；一把锁，只在编译（缓存没命中）的时候用到
+final class ResultMemo {
+
+    static final int DEFAULT_MAX_SIZE = 1024;
+    static final int MAX_KEY_NODES = 256;   // 比这大的子树不记，往下找小的
+
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private final int maxSize;
+    private final LinkedHashMap<Key, Double> values = new LinkedHashMap<>(16, 0.75f, true);
+
+    // 命中/未命中计数
+    private long hitCount;
+    private long missCount;
+
+    ResultMemo(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        this.maxSize = maxSize;
+    }
+
+    // 把 tree 里每一棵最大的纯子树换成它的值（已经是一个数的不动），返回新的树；没有能换的就原样返回
+    // 都不递归：粘贴进来的 1+1+…+1 解析出来是几万层深的左偏树。先从下往上把每个节点的纯不纯、大小、哈希算一遍记下来，
+    // 再从上往下找要换的子树，最后从下往上把换过的地方重新搭起来；节点多于 MAX_KEY_NODES 的子树不记（key 会拽着整棵树），往下找小的
+    Node fold(Node tree, boolean isRadians) {
+        if (tree instanceof Node.Number || tree instanceof Node.Variable) {
+            return tree;
+        }
+        List<Node> postOrder = postOrder(tree);
+        IdentityHashMap<Node, Summary> summaries = new IdentityHashMap<>();
+        for (Node node : postOrder) {
+            summaries.put(node, summarize(node, summaries));
+        }
+
+        IdentityHashMap<Node, Node> results = new IdentityHashMap<>();
+        ArrayDeque<Node> stack = new ArrayDeque<>();
+        stack.push(tree);
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            if (node instanceof Node.Number || node instanceof Node.Variable || results.containsKey(node)) {
+                continue;
+            }
+            Summary summary = summaries.get(node);
+            if (summary.pure && summary.size <= MAX_KEY_NODES) {
+                Double value = valueOf(node, summary.hash, isRadians);
+                results.put(node, value != null ? new Node.Number(value) : node);
+            } else {
+                for (Node child : children(node)) {
+                    stack.push(child);
+                }
+            }
+        }
+        if (results.isEmpty()) {
+            return tree;
+        }
+
+        for (Node node : postOrder) {
+            if (!results.containsKey(node)) {
+                results.put(node, rebuild(node, results));
+            }
+        }
+        return results.get(tree);
+    }
+
+    // 一个节点的纯不纯、节点数、结构哈希（子节点的已经在 summaries 里了）
+    private static final class Summary {
+        final boolean pure;
+        final int size;
+        final int hash;
+
+        Summary(boolean pure, int size, int hash) {
+            this.pure = pure;
+            this.size = size;
+            this.hash = hash;
+        }
+    }
+
+    // 后序：子节点都排在父节点前面（拿栈做，不递归）
+    private static List<Node> postOrder(Node tree) {
+        List<Node> order = new ArrayList<>();
+        IdentityHashMap<Node, Boolean> seen = new IdentityHashMap<>();
+        ArrayDeque<Node> stack = new ArrayDeque<>();
+        stack.push(tree);
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            if (seen.put(node, Boolean.TRUE) == null) {
+                order.add(node);
+                for (Node child : children(node)) {
+                    stack.push(child);
+                }
+            }
+        }
+        Collections.reverse(order);     // 先序倒过来，子节点就都在前面了
+        return order;
+    }
+
+    private static Node[] children(Node node) {
+        if (node instanceof Node.Negate) {
+            return new Node[]{((Node.Negate) node).operand};
+        }
+        if (node instanceof Node.Binary) {
+            Node.Binary binary = (Node.Binary) node;
+            return new Node[]{binary.left, binary.right};
+        }
+        if (node instanceof Node.IntPower) {
+            return new Node[]{((Node.IntPower) node).base};
+        }
+        if (node instanceof Node.BuiltinCall) {
+            return ((Node.BuiltinCall) node).args;
+        }
+        if (node instanceof Node.UnaryCall) {
+            return new Node[]{((Node.UnaryCall) node).arg};
+        }
+        if (node instanceof Node.FunctionCall) {
+            return ((Node.FunctionCall) node).args;
+        }
+        return NO_CHILDREN;
+    }
+
+    // 纯不纯：没有变量，函数要么是内置的，要么是 CustomFunctions 里没有状态的
+    // 哈希：数字按值，加法、乘法两边交换不变，函数按对象
+    private static Summary summarize(Node node, Map<Node, Summary> summaries) {
+        if (node instanceof Node.Number) {
+            return new Summary(true, 1, Double.hashCode(((Node.Number) node).value));
+        }
+        if (node instanceof Node.Variable) {
+            return new Summary(false, 1, 0x5A17 + ((Node.Variable) node).index);
+        }
+        Node[] children = children(node);
+        boolean pure = true;
+        if (node instanceof Node.UnaryCall) {
+            pure = ((Node.UnaryCall) node).function instanceof CustomFunctions.UnaryFunction;
+        } else if (node instanceof Node.FunctionCall) {
+            pure = ((Node.FunctionCall) node).function instanceof CustomFunctions.UnaryFunction;
+        }
+        long size = 1;
+        for (Node child : children) {
+            Summary summary = summaries.get(child);
+            pure &= summary.pure;
+            size += summary.size;
+        }
+        int sizeCapped = (int) Math.min(size, Integer.MAX_VALUE);
+
+        int hash;
+        if (node instanceof Node.Negate) {
+            hash = 31 * summaries.get(children[0]).hash + 1;
+        } else if (node instanceof Node.Binary) {
+            char operator = ((Node.Binary) node).operator;
+            int left = summaries.get(children[0]).hash;
+            int right = summaries.get(children[1]).hash;
+            // 两边交换哈希不变
+            hash = isCommutative(operator) ? operator * 961 + mix(left) + mix(right) : (operator * 31 + left) * 31 + right;
+        } else if (node instanceof Node.IntPower) {
+            hash = (summaries.get(children[0]).hash * 31 + ((Node.IntPower) node).exponent) * 31 + '^';
+        } else {
+            int seed;
+            if (node instanceof Node.BuiltinCall) {
+                seed = ((Node.BuiltinCall) node).builtin;
+            } else if (node instanceof Node.UnaryCall) {
+                seed = System.identityHashCode(((Node.UnaryCall) node).function);
+            } else {
+                seed = System.identityHashCode(((Node.FunctionCall) node).function);
+            }
+            hash = seed;
+            for (Node child : children) {
+                hash = hash * 31 + summaries.get(child).hash;
+            }
+        }
+        return new Summary(pure, sizeCapped, hash);
+    }
+
+    // 子节点换过的话建一个新节点，没换就是原来那个
+    private static Node rebuild(Node node, Map<Node, Node> results) {
+        if (node instanceof Node.Negate) {
+            Node operand = ((Node.Negate) node).operand;
+            Node folded = results.get(operand);
+            return folded == operand ? node : new Node.Negate(folded);
+        }
+        if (node instanceof Node.Binary) {
+            Node.Binary binary = (Node.Binary) node;
+            Node left = results.get(binary.left);
+            Node right = results.get(binary.right);
+            return left == binary.left && right == binary.right ? node : new Node.Binary(binary.operator, left, right);
+        }
+        if (node instanceof Node.IntPower) {
+            Node.IntPower power = (Node.IntPower) node;
+            Node base = results.get(power.base);
+            return base == power.base ? node : new Node.IntPower(base, power.exponent);
+        }
+        if (node instanceof Node.BuiltinCall) {
+            Node.BuiltinCall call = (Node.BuiltinCall) node;
+            Node[] args = rebuildAll(call.args, results);
+            return args == call.args ? node : new Node.BuiltinCall(call.name, call.builtin, args);
+        }
+        if (node instanceof Node.UnaryCall) {
+            Node.UnaryCall call = (Node.UnaryCall) node;
+            Node arg = results.get(call.arg);
+            return arg == call.arg ? node : new Node.UnaryCall(call.name, call.function, arg);
+        }
+        if (node instanceof Node.FunctionCall) {
+            Node.FunctionCall call = (Node.FunctionCall) node;
+            Node[] args = rebuildAll(call.args, results);
+            return args == call.args ? node : new Node.FunctionCall(call.function, args);
+        }
+        return node;
+    }
+
+    // 一个都没变就返回原数组
+    private static Node[] rebuildAll(Node[] nodes, Map<Node, Node> results) {
+        Node[] result = nodes;
+        for (int i = 0; i < nodes.length; i++) {
+            Node folded = results.get(nodes[i]);
+            if (folded != nodes[i]) {
+                if (result == nodes) {
+                    result = nodes.clone();
+                }
+                result[i] = folded;
+            }
+        }
+        return result;
+    }
+
+    // 查一棵纯子树的值，没有就算一次记下来；算出错返回 null
+    private Double valueOf(Node tree, int hash, boolean isRadians) {
+        Key key = new Key(tree, hash, isRadians);
+        synchronized (this) {
+            Double value = values.get(key);
+            if (value != null) {
+                hitCount++;
+                return value;
+            }
+            missCount++;
+        }
+        // 在锁外面算：别的线程同时算同一个也没关系，结果一样
+        double value;
+        try {
+            value = Program.compile(Optimizer.optimize(tree), 0).evaluate(Program.NO_VARIABLES);
+        } catch (ArithmeticException | IllegalArgumentException e) {
+            return null;
+        }
+        synchronized (this) {
+            values.put(key, value);
+            if (values.size() > maxSize) {
+                Iterator<Double> it = values.values().iterator();
+                it.next();
+                it.remove();
+            }
+        }
+        return value;
+    }
+
+    synchronized void clear() {
+        values.clear();
+    }
+
+    synchronized int size() {
+        return values.size();
+    }
+
+    synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    synchronized long getMissCount() {
+        return missCount;
+    }
+
+    // ---------------- 结构哈希 ----------------
+
+    // 一棵子树（不超过 MAX_KEY_NODES 个节点）+ 角度模式；哈希是 fold 里算好的
+    private static final class Key {
+        final Node tree;
+        final boolean isRadians;
+        final int hash;
+
+        Key(Node tree, int hash, boolean isRadians) {
+            this.tree = tree;
+            this.isRadians = isRadians;
+            this.hash = hash * 2 + (isRadians ? 1 : 0);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash && isRadians == other.isRadians && same(tree, other.tree);
+        }
+    }
+
+    // 打散一下，交换律那里直接相加的话 (a, b)、(a+1, b-1) 就撞了
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean isCommutative(char operator) {
+        return operator == '+' || operator == '*';
+    }
+
+    // 结构相同：和哈希的规则一致；只比 key 里的树，深度不超过 MAX_KEY_NODES，递归没问题
+    static boolean same(Node a, Node b) {
+        if (a == b) {
+            return true;
+        }
+        if (a.getClass() != b.getClass()) {
+            return false;
+        }
+        if (a instanceof Node.Number) {
+            return Double.doubleToLongBits(((Node.Number) a).value) == Double.doubleToLongBits(((Node.Number) b).value);
+        }
+        if (a instanceof Node.Variable) {
+            return ((Node.Variable) a).index == ((Node.Variable) b).index;
+        }
+        if (a instanceof Node.Negate) {
+            return same(((Node.Negate) a).operand, ((Node.Negate) b).operand);
+        }
+        if (a instanceof Node.Binary) {
+            Node.Binary x = (Node.Binary) a;
+            Node.Binary y = (Node.Binary) b;
+            if (x.operator != y.operator) {
+                return false;
+            }
+            return same(x.left, y.left) && same(x.right, y.right)
+                    || isCommutative(x.operator) && same(x.left, y.right) && same(x.right, y.left);
+        }
+        if (a instanceof Node.IntPower) {
+            Node.IntPower x = (Node.IntPower) a;
+            Node.IntPower y = (Node.IntPower) b;
+            return x.exponent == y.exponent && same(x.base, y.base);
+        }
+        if (a instanceof Node.BuiltinCall) {
+            Node.BuiltinCall x = (Node.BuiltinCall) a;
+            Node.BuiltinCall y = (Node.BuiltinCall) b;
+            return x.builtin == y.builtin && sameAll(x.args, y.args);
+        }
+        if (a instanceof Node.UnaryCall) {
+            Node.UnaryCall x = (Node.UnaryCall) a;
+            Node.UnaryCall y = (Node.UnaryCall) b;
+            return x.function == y.function && same(x.arg, y.arg);
+        }
+        Node.FunctionCall x = (Node.FunctionCall) a;
+        Node.FunctionCall y = (Node.FunctionCall) b;
+        return x.function == y.function && sameAll(x.args, y.args);
+    }
+
+    private static boolean sameAll(Node[] a, Node[] b) {
+        if (a.length != b.length) {
+            return false;
+        }
+        for (int i = 0; i < a.length; i++) {
+            if (!same(a[i], b[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,13 +1,17 @@
 package calculator;
 
-import net.objecthunter.exp4j.Expression;
-import net.objecthunter.exp4j.ExpressionBuilder;
-
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import java.awt.*;
 import java.awt.event.*;
-import java.text.DecimalFormat;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 public class ScientificCalculator extends JFrame {
@@ -17,27 +21,49 @@ public class ScientificCalculator extends JFrame {
 
     private JTextField displayField;                // 显示输入和结果
     private StringBuilder currentExpression = new StringBuilder();  // 当前表达式
-    private double memory = 0.0;                    // 存储器里的值
     private boolean startNewInput = false;          // 是否开始新一轮输入（比如按了 =）
     private boolean isRadians = true;               // 默认是弧度模式
-    private static final DecimalFormat formatter = new DecimalFormat("#.##########");  // 控制小数位数显示
+    private boolean isPrecise = false;              // 高精度模式（BigDecimal 算，默认关）
+    private final CalculatorEngine engine = new CalculatorEngine();  // 计算引擎（求值、格式化、存储器都在里面）
+    private LivePreview livePreview = engine.newLivePreview(true);   // 边输入边算的预览（跟着当前表达式走）
+    private JLabel previewLabel;                    // 显示框下面的预览结果
+    private CalculationHistory history;             // 计算历史：第一帧出来后在后台打开（打不开就一直是 null，照常能用，只是不记）
+
+    // 启动计时：-Dcalculator.startupTrace=true 打印第一帧画出来、后台启动工作做完各是 JVM 启动后多少毫秒，
+    // =exit 打印完就退出（量启动时间的脚本、生成 CDS 存档的训练运行用）
+    private static final String STARTUP_TRACE = System.getProperty("calculator.startupTrace");
+    private boolean firstFramePainted;
+
+    // 后台计算相关：表达式放到后台线程去算，界面不会卡住
+    private static final int EVALUATION_TIMEOUT_MS = 5000;  // 超过这么久就放弃
+    private static final int BUSY_INDICATOR_DELAY_MS = 200; // 算得快就不闪进度条了
+    private SwingWorker<?, Void> pendingEvaluation;         // 正在后台算的任务（只在 EDT 上读写）
+    private JProgressBar busyIndicator;                     // “正在计算”的进度条
+    private Timer busyIndicatorTimer;
+    private Timer evaluationTimeoutTimer;
 
     // 主面板区域
     private JPanel mainPanel;
     private JPanel displayPanel;
     private JPanel buttonPanel;
 
-    // 菜单栏按钮
+    // 菜单栏按钮（菜单项等第一帧画完才建）
+    private JMenu editMenu;
+    private JMenu viewMenu;
+    private JMenu toolsMenu;
     private JMenuItem copyMenuItem;
     private JMenuItem pasteMenuItem;
     private JMenuItem clearMenuItem;
+    private JMenuItem historyMenuItem;
     private JRadioButtonMenuItem radiansMenuItem;
     private JRadioButtonMenuItem degreesMenuItem;
+    private JCheckBoxMenuItem preciseMenuItem;
 
     // 构造函数，初始化窗口和各部分界面
+    // 构造函数里只建第一帧要画的东西（显示框、按钮、空的菜单栏），别的都放到 finishStartup 里，窗口先出来
     public ScientificCalculator() {
         setTitle("Scientific Calculator");
-        setSize(480, 600);
+        setSize(480, 650);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setLocationRelativeTo(null); // 居中显示
 
@@ -46,19 +72,69 @@ public class ScientificCalculator extends JFrame {
         mainPanel.setBorder(new EmptyBorder(10, 10, 10, 10));
         mainPanel.setBackground(new Color(240, 240, 240));
 
-        setupMenuBar();       // 顶部菜单栏
+        setupMenuBar();       // 顶部菜单栏（先只有三个菜单的标题）
         setupDisplayPanel();  // 上方显示区域
         setupButtonPanel();   // 中间按钮区域
 
         add(mainPanel);
+
+        // 窗口显示出来以后（排在第一次绘制的后面）再做剩下的
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowOpened(WindowEvent e) {
+                SwingUtilities.invokeLater(() -> finishStartup());
+            }
+        });
     }
 
-    // 构建菜单栏：包括 编辑（复制/粘贴/清空） 和 设置（角度/弧度）
+    // 第一帧之后：在 EDT 上补上菜单项，再开一个后台线程打开历史记录、注册 JMX、读自定义函数文件、预热求值
+    // 这几样加起来比建整个界面还慢（JMX 一项就要一两百毫秒），又都不是第一眼要看到的
+    private void finishStartup() {
+        populateMenus();
+        Thread thread = new Thread(() -> {
+            CalculationHistory opened = openHistory();
+            SwingUtilities.invokeLater(() -> {
+                history = opened;
+                historyMenuItem.setEnabled(opened != null);
+            });
+            engine.getMetrics().register("gui"); // 求值统计放到 JMX 里（jconsole 里 calculator 下面）
+            watchFunctions();                    // 自定义函数文件，改了马上生效
+            engine.prewarm();                    // 把求值的整条链路走一遍，第一次按“=”不用等类加载
+            if (STARTUP_TRACE != null) {
+                SwingUtilities.invokeLater(() -> {
+                    traceStartup("Startup finished");
+                    if (STARTUP_TRACE.equals("exit")) {
+                        System.exit(0);
+                    }
+                });
+            }
+        }, "calculator-startup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static void traceStartup(String what) {
+        long now = System.currentTimeMillis();
+        System.err.println(what + ": " + (now - ManagementFactory.getRuntimeMXBean().getStartTime())
+                + " ms after JVM start");
+    }
+
+    // 构建菜单栏：包括 编辑（复制/粘贴/清空）、设置（角度/弧度）和 工具（函数图像）
+    // 这里只放三个菜单（标题先占好位置，菜单栏不会后来再撑开），菜单项在 populateMenus 里建
     private void setupMenuBar() {
         JMenuBar menuBar = new JMenuBar();
+        editMenu = new JMenu("编辑(E)");
+        viewMenu = new JMenu("设置(S)");
+        toolsMenu = new JMenu("工具(T)");
+        menuBar.add(editMenu);
+        menuBar.add(viewMenu);
+        menuBar.add(toolsMenu);
+        setJMenuBar(menuBar);
+    }
 
+    // 菜单项：快捷键（Ctrl+C、Ctrl+H 这些）也是这时候才有
+    private void populateMenus() {
         // “编辑”菜单
-        JMenu editMenu = new JMenu("编辑(E)");
         copyMenuItem = new JMenuItem("复制");
         pasteMenuItem = new JMenuItem("粘贴");
         clearMenuItem = new JMenuItem("清空");
@@ -72,32 +148,50 @@ public class ScientificCalculator extends JFrame {
         pasteMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_V, InputEvent.CTRL_DOWN_MASK));
         clearMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_DELETE, 0));
 
+        // 历史记录：打不开历史文件（比如另一个计算器开着）就是灰的
+        historyMenuItem = new JMenuItem("历史记录...");
+        historyMenuItem.addActionListener(e -> showHistory());
+        historyMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_H, InputEvent.CTRL_DOWN_MASK));
+        historyMenuItem.setEnabled(false);  // 历史文件打开了才能用
+
         // 添加到菜单
         editMenu.add(copyMenuItem);
         editMenu.add(pasteMenuItem);
         editMenu.addSeparator();
         editMenu.add(clearMenuItem);
+        editMenu.addSeparator();
+        editMenu.add(historyMenuItem);
 
         // “设置”菜单：角度/弧度切换
-        JMenu viewMenu = new JMenu("设置(S)");
         ButtonGroup angleGroup = new ButtonGroup(); // 互斥按钮组
         radiansMenuItem = new JRadioButtonMenuItem("弧度制", true);
         degreesMenuItem = new JRadioButtonMenuItem("角度制", false);
 
         // 切换角度/弧度的事件
-        radiansMenuItem.addActionListener(e -> isRadians = true);
-        degreesMenuItem.addActionListener(e -> isRadians = false);
+        radiansMenuItem.addActionListener(e -> setRadians(true));
+        degreesMenuItem.addActionListener(e -> setRadians(false));
 
         angleGroup.add(radiansMenuItem);
         angleGroup.add(degreesMenuItem);
         viewMenu.add(radiansMenuItem);
         viewMenu.add(degreesMenuItem);
 
-        // 把两个菜单加到栏里
-        menuBar.add(editMenu);
-        menuBar.add(viewMenu);
-
-        setJMenuBar(menuBar);
+        // 高精度计算：按“=”时用 BigDecimal 算，结果保留 20 位有效数字
+        preciseMenuItem = new JCheckBoxMenuItem("高精度计算", false);
+        preciseMenuItem.addActionListener(e -> isPrecise = preciseMenuItem.isSelected());
+        viewMenu.addSeparator();
+        viewMenu.add(preciseMenuItem);
+
+        // “工具”菜单：函数图像/函数表
+        JMenuItem plotMenuItem = new JMenuItem("函数图像/表格...");
+        plotMenuItem.addActionListener(e -> showPlot());
+        plotMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_G, InputEvent.CTRL_DOWN_MASK));
+        JMenuItem functionsMenuItem = new JMenuItem("自定义函数...");
+        functionsMenuItem.addActionListener(e -> editFunctions());
+        toolsMenu.add(plotMenuItem);
+        toolsMenu.add(functionsMenuItem);
+
+        getJMenuBar().revalidate();
     }
 
     // 显示区域的 UI 设置（就是上面那个输入/输出框）
@@ -109,7 +203,18 @@ public class ScientificCalculator extends JFrame {
         displayPanel.setBackground(Color.WHITE);
 
         // 文本框用来显示表达式/结果，不可编辑
-        displayField = new JTextField();
+        displayField = new JTextField() {
+            @Override
+            protected void paintComponent(Graphics g) {
+                super.paintComponent(g);
+                if (!firstFramePainted) {
+                    firstFramePainted = true;
+                    if (STARTUP_TRACE != null) {
+                        traceStartup("First frame");
+                    }
+                }
+            }
+        };
         displayField.setFont(new Font(fontUI, Font.PLAIN, 24));
         displayField.setHorizontalAlignment(JTextField.RIGHT); // 靠右对齐更像计算器
         displayField.setEditable(false);
@@ -117,6 +222,38 @@ public class ScientificCalculator extends JFrame {
         displayField.setBackground(Color.WHITE);
 
         displayPanel.add(displayField, BorderLayout.CENTER);
+
+        // 显示框下面：一行小字显示预览结果，再下面是进度条（后台计算时才显示出来）
+        JPanel statusPanel = new JPanel(new BorderLayout());
+        statusPanel.setOpaque(false);
+
+        previewLabel = new JLabel(" ");
+        previewLabel.setFont(new Font(fontUI, Font.PLAIN, 14));
+        previewLabel.setForeground(Color.GRAY);
+        previewLabel.setHorizontalAlignment(SwingConstants.RIGHT);
+        statusPanel.add(previewLabel, BorderLayout.CENTER);
+
+        busyIndicator = new JProgressBar();
+        busyIndicator.setIndeterminate(true);
+        busyIndicator.setVisible(false);
+        busyIndicator.setPreferredSize(new Dimension(0, 4));
+        busyIndicator.setBorderPainted(false);
+        statusPanel.add(busyIndicator, BorderLayout.SOUTH);
+
+        displayPanel.add(statusPanel, BorderLayout.SOUTH);
+
+        busyIndicatorTimer = new Timer(BUSY_INDICATOR_DELAY_MS, e -> {
+            busyIndicator.setVisible(true);
+            setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        });
+        busyIndicatorTimer.setRepeats(false);
+        evaluationTimeoutTimer = new Timer(EVALUATION_TIMEOUT_MS, e -> onEvaluationTimeout());
+        evaluationTimeoutTimer.setRepeats(false);
+
+        // Esc 键取消正在进行的计算
+        getRootPane().registerKeyboardAction(e -> cancelEvaluation(),
+                KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0), JComponent.WHEN_IN_FOCUSED_WINDOW);
+
         mainPanel.add(displayPanel, BorderLayout.NORTH); // 顶部加入主面板
     }
 
@@ -169,9 +306,22 @@ public class ScientificCalculator extends JFrame {
         gbc.gridx = 4;
         addButton("logₙ", e -> appendCustomLogBase(), buttonPanel, createFunctionButtonStyle(), gbc);
 
-        // row 3: 三角函数 + 括号
+        // row 3: 数值微积分（弹窗填函数和区间）
         gbc.gridy = 3;
         gbc.gridx = 0;
+        gbc.gridwidth = 2;
+        addButton("∫", e -> showIntegrateDialog(), buttonPanel, createFunctionButtonStyle(), gbc);
+        gbc.gridwidth = 1;
+        gbc.gridx = 2;
+        addButton("d/dx", e -> showDeriveDialog(), buttonPanel, createFunctionButtonStyle(), gbc);
+        gbc.gridx = 3;
+        gbc.gridwidth = 2;
+        addButton("solve", e -> showSolveDialog(), buttonPanel, createFunctionButtonStyle(), gbc);
+        gbc.gridwidth = 1;
+
+        // row 4: 三角函数 + 括号
+        gbc.gridy = 4;
+        gbc.gridx = 0;
         addButton("sin", e -> appendTrigFunction("sin"), buttonPanel, createFunctionButtonStyle(), gbc);
         gbc.gridx = 1;
         addButton("cos", e -> appendTrigFunction("cos"), buttonPanel, createFunctionButtonStyle(), gbc);
@@ -182,8 +332,8 @@ public class ScientificCalculator extends JFrame {
         gbc.gridx = 4;
         addButton(")", e -> appendToExpression(")"), buttonPanel, createParenthesisButtonStyle(), gbc);
 
-        // row 4: 反三角函数 + 清除
-        gbc.gridy = 4;
+        // row 5: 反三角函数 + 清除
+        gbc.gridy = 5;
         gbc.gridx = 0;
         addButton("asin", e -> appendTrigFunction("asin"), buttonPanel, createFunctionButtonStyle(), gbc);
         gbc.gridx = 1;
@@ -195,8 +345,8 @@ public class ScientificCalculator extends JFrame {
         gbc.gridx = 4;
         addButton("⌫", e -> backspace(), buttonPanel, createClearButtonStyle(), gbc);
 
-        // row 5: 双曲函数 + 百分比
-        gbc.gridy = 5;
+        // row 6: 双曲函数 + 百分比
+        gbc.gridy = 6;
         gbc.gridx = 0;
         addButton("sinh", e -> appendToExpression("sinh("), buttonPanel, createFunctionButtonStyle(), gbc);
         gbc.gridx = 1;
@@ -208,8 +358,8 @@ public class ScientificCalculator extends JFrame {
         gbc.gridx = 4;
         addButton("%", e -> calculatePercentage(), buttonPanel, createOperatorButtonStyle(), gbc);
 
-        // row 6: 数字 7 8 9 π ÷
-        gbc.gridy = 6;
+        // row 7: 数字 7 8 9 π ÷
+        gbc.gridy = 7;
         gbc.gridx = 0;
         addButton("7", e -> appendToExpression("7"), buttonPanel, createNumberButtonStyle(), gbc);
         gbc.gridx = 1;
@@ -221,8 +371,8 @@ public class ScientificCalculator extends JFrame {
         gbc.gridx = 4;
         addButton("÷", e -> appendToExpression("/"), buttonPanel, createOperatorButtonStyle(), gbc);
 
-        // row 7: 4 5 6 e ×
-        gbc.gridy = 7;
+        // row 8: 4 5 6 e ×
+        gbc.gridy = 8;
         gbc.gridx = 0;
         addButton("4", e -> appendToExpression("4"), buttonPanel, createNumberButtonStyle(), gbc);
         gbc.gridx = 1;
@@ -234,8 +384,8 @@ public class ScientificCalculator extends JFrame {
         gbc.gridx = 4;
         addButton("×", e -> appendToExpression("*"), buttonPanel, createOperatorButtonStyle(), gbc);
 
-        // row 8: 1 2 3 ± -
-        gbc.gridy = 8;
+        // row 9: 1 2 3 ± -
+        gbc.gridy = 9;
         gbc.gridx = 0;
         addButton("1", e -> appendToExpression("1"), buttonPanel, createNumberButtonStyle(), gbc);
         gbc.gridx = 1;
@@ -247,8 +397,8 @@ public class ScientificCalculator extends JFrame {
         gbc.gridx = 4;
         addButton("-", e -> appendToExpression("-"), buttonPanel, createOperatorButtonStyle(), gbc);
 
-        // row 9: 0 . + =
-        gbc.gridy = 9;
+        // row 10: 0 . + =
+        gbc.gridy = 10;
         gbc.gridx = 0;
         gbc.gridwidth = 2; // “0” 占两个格子
         addButton("0", e -> appendToExpression("0"), buttonPanel, createNumberButtonStyle(), gbc);
@@ -266,7 +416,10 @@ public class ScientificCalculator extends JFrame {
     // 创建一个通用按钮（带事件 + 样式）
     private JButton createButton(String text, ActionListener listener, Function<JButton, JButton> styleFunction) {
         JButton button = new JButton(text);
-        button.addActionListener(listener);  // 按钮点击时触发事件
+        button.addActionListener(e -> {
+            cancelEvaluation();              // 用户接着按了别的键，之前没算完的就不要了
+            listener.actionPerformed(e);     // 按钮点击时触发事件
+        });
         return styleFunction.apply(button); // 应用样式
     }
 
@@ -351,32 +504,50 @@ public class ScientificCalculator extends JFrame {
         };
     }
 
+    // 表达式变了：刷新显示框和下面的预览（预览只重新读改动过的那一段）
+    private void showExpression() {
+        displayField.setText(currentExpression.toString());
+        livePreview.setText(currentExpression);
+        updatePreview();
+    }
+
+    // 预览结果：表达式没写完、算不出来，或者上面显示的已经是结果了，就空着
+    private void updatePreview() {
+        Double value = livePreview.getPreview();
+        previewLabel.setText(value == null || startNewInput ? " " : "= " + engine.format(value));
+    }
+
+    // 切换角度/弧度：预览要按新的模式重新算
+    private void setRadians(boolean radians) {
+        isRadians = radians;
+        livePreview = engine.newLivePreview(radians);
+        livePreview.setText(currentExpression);
+        updatePreview();
+    }
+
     // 通用的添加表达式内容（比如按下数字或运算符）
     private void appendToExpression(String value) {
         if (startNewInput) {
             // 如果是刚算完结果，开始新输入就先清空表达式
             currentExpression = new StringBuilder();
+            livePreview.setText("");
             startNewInput = false;
         }
         currentExpression.append(value); // 把值加进去
         displayField.setText(currentExpression.toString()); // 显示出来
+        livePreview.append(value); // 只是在末尾加了几个字，预览也只读新加的这一段
+        updatePreview();
     }
 
-    // 添加三角函数（要区分是弧度制还是角度制）
+    // 添加三角函数（弧度制和角度制拼法一样，按哪种算由计算时的模式决定）
     private void appendTrigFunction(String function) {
         if (startNewInput) {
             currentExpression = new StringBuilder();
             startNewInput = false;
         }
 
-        if (isRadians) {
-            // 默认直接拼 sin(...
-            currentExpression.append(function).append("(");
-        } else {
-            // 如果是角度，就多包一层 toRadians(...)
-            currentExpression.append(function).append("(toRadians(");
-        }
-        displayField.setText(currentExpression.toString());
+        currentExpression.append(function).append("(");
+        showExpression();
     }
 
     // 一些函数按钮（如 √、x²、x³）处理逻辑
@@ -426,7 +597,7 @@ public class ScientificCalculator extends JFrame {
             }
         }
 
-        displayField.setText(currentExpression.toString());
+        showExpression();
     }
 
     // 自定义底数对数 logₙ(x) = log(x)/log(n)
@@ -446,19 +617,12 @@ public class ScientificCalculator extends JFrame {
                     return;
                 }
 
-                // 把表达式模板拼好（先占个 x 位置）
-                currentExpression.append("(log(x)/log(").append(base).append("))");
-
                 // 继续弹窗询问 x 的值
                 String argPrompt = JOptionPane.showInputDialog(this, "Enter argument for logarithm:", "Logarithm Argument", JOptionPane.QUESTION_MESSAGE);
                 if (argPrompt != null && !argPrompt.isEmpty()) {
-                    // 替换 x 为输入的值
-                    String expr = currentExpression.toString().replace("x", argPrompt);
-                    currentExpression = new StringBuilder(expr);
-                    displayField.setText(currentExpression.toString());
-                } else {
-                    // 没填值就撤销
-                    currentExpression = new StringBuilder(displayField.getText());
+                    // 直接把参数拼进 log(x)/log(n)，不再对整个表达式做 x 的替换（以前会把 exp 之类的也换掉）
+                    currentExpression.append("(log(").append(argPrompt).append(")/log(").append(base).append("))");
+                    showExpression();
                 }
             } catch (NumberFormatException e) {
                 JOptionPane.showMessageDialog(this, "Please enter a valid number", "Invalid Input", JOptionPane.ERROR_MESSAGE);
@@ -468,9 +632,10 @@ public class ScientificCalculator extends JFrame {
 
     // 清空所有内容，表达式和显示框一起清
     private void clearDisplay() {
+        cancelEvaluation(); // 没算完的也一起丢掉
         currentExpression = new StringBuilder();
-        displayField.setText("");
         startNewInput = false;
+        showExpression();
     }
 
     // CE 按钮：只清当前输入部分，不清整个表达式
@@ -492,7 +657,7 @@ public class ScientificCalculator extends JFrame {
                 currentExpression = new StringBuilder();
             }
 
-            displayField.setText(currentExpression.toString());
+            showExpression();
         }
     }
 
@@ -501,80 +666,257 @@ public class ScientificCalculator extends JFrame {
         if (currentExpression.length() > 0) {
             currentExpression.deleteCharAt(currentExpression.length() - 1);
             displayField.setText(currentExpression.toString());
+            livePreview.backspace();
+            updatePreview();
         }
     }
 
     // 等号按下：计算表达式结果
     private void calculateResult() {
+        String expressionStr = currentExpression.toString();
+        boolean radians = isRadians;
+        boolean precise = isPrecise;
+
+        // 真正的计算交给引擎（角度制的处理也在里面），放到后台去算；带方括号的是矩阵（粘贴进来的），按矩阵算，不管高精度
+        evaluateInBackground(() -> CalculatorEngine.isMatrixExpression(expressionStr)
+                ? engine.format(engine.calculateMatrix(expressionStr, radians))
+                : precise ? calculatePrecise(expressionStr, radians)
+                : engine.format(engine.calculate(expressionStr, radians)), result -> {
+            displayResult(result);
+            recordHistory(expressionStr, result, radians, precise);
+        }, error -> {
+            // 出错就显示 Error 和原因，防止崩溃
+            displayField.setText(errorText(error));
+            startNewInput = true;
+            updatePreview();
+        });
+    }
+
+    // 打开用户目录下的历史文件，打不开就不记历史
+    private static CalculationHistory openHistory() {
         try {
-            String expressionStr = currentExpression.toString();
-
-            // 如果当前是角度制，并且用了 toRadians() 包裹
-            if (!isRadians && expressionStr.contains("toRadians(")) {
-                // 拿掉 toRadians( 和末尾的括号
-                expressionStr = expressionStr.replace("toRadians(", "");
-                expressionStr = expressionStr.substring(0, expressionStr.lastIndexOf(")"));
-
-                // 把度数转为弧度
-                double degrees = evaluateExpression(expressionStr);
-                double radians = Math.toRadians(degrees);
-
-                // 判断具体是哪个三角函数，再手动计算
-                String trigFunction = expressionStr.substring(0, expressionStr.indexOf("("));
-                switch (trigFunction) {
-                    case "sin":
-                        displayResult(Math.sin(radians));
-                        break;
-                    case "cos":
-                        displayResult(Math.cos(radians));
-                        break;
-                    case "tan":
-                        displayResult(Math.tan(radians));
-                        break;
-                    case "asin":
-                        displayResult(Math.asin(radians));
-                        break;
-                    case "acos":
-                        displayResult(Math.acos(radians));
-                        break;
-                    case "atan":
-                        displayResult(Math.atan(radians));
-                        break;
+            return CalculationHistory.open(CalculationHistory.defaultDirectory());
+        } catch (IOException e) {
+            System.err.println("History disabled: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // 读用户目录下的自定义函数文件，之后文件一改就重新读；写错的行打到标准错误
+    private void watchFunctions() {
+        try {
+            engine.watchFunctions(CalculatorEngine.defaultFunctionsFile(), errors -> SwingUtilities.invokeLater(() -> {
+                for (String error : errors) {
+                    System.err.println(UserFunctions.FILE_NAME + ": " + error);
                 }
-            } else {
-                // 普通模式，直接走表达式求值
-                double result = evaluateExpression(expressionStr);
-                displayResult(result);
+                setRadians(isRadians);  // 预览重新建一个，新定义的函数马上能预览
+            }));
+        } catch (IOException e) {
+            System.err.println("User functions disabled: " + e.getMessage());
+        }
+    }
+
+    // 用系统的编辑器打开自定义函数文件（还没有就先写个例子），保存了就自动生效
+    private void editFunctions() {
+        Path file = CalculatorEngine.defaultFunctionsFile();
+        try {
+            if (!Files.exists(file)) {
+                Files.writeString(file, "# 一行一个函数，保存后马上就能用，比如：\n# hyp(a, b) = sqrt(a^2 + b^2)\n");
             }
+            Desktop.getDesktop().edit(file.toFile());
+        } catch (IOException | UnsupportedOperationException e) {
+            JOptionPane.showMessageDialog(this, "请手动编辑 " + file, "自定义函数", JOptionPane.INFORMATION_MESSAGE);
+        }
+    }
 
-        } catch (Exception e) {
-            // 出错就显示 Error，防止崩溃
-            displayField.setText("Error");
-            startNewInput = true;
+    // 算出来的记进历史（光按了个“=”、表达式就是结果本身的不记）
+    private void recordHistory(String expressionStr, String result, boolean radians, boolean precise) {
+        if (history == null || expressionStr.equals(result)) {
+            return;
+        }
+        try {
+            history.append(expressionStr, result, radians, precise, System.currentTimeMillis());
+        } catch (IOException e) {
+            System.err.println("Cannot write history: " + e.getMessage());
+        }
+    }
+
+    // 历史记录窗口，选中的那条放回来接着编辑（角度模式也换成当时的）
+    private void showHistory() {
+        if (history == null) {
+            return;
+        }
+        new HistoryDialog(this, history, entry -> {
+            cancelEvaluation();
+            if (entry.radians != isRadians) {
+                (entry.radians ? radiansMenuItem : degreesMenuItem).setSelected(true);
+                setRadians(entry.radians);
+            }
+            currentExpression = new StringBuilder(entry.expression);
+            startNewInput = false;
+            showExpression();
+        }).setVisible(true);
+    }
+
+    // 函数图像窗口：当前输入里有单独的 x（不算 exp 里的那个）就拿它当 f(x)，没有就先给个 sin(x)
+    private void showPlot() {
+        String text = currentExpression.toString();
+        String expression = hasVariableX(text) ? text : "sin(x)";
+        new PlotDialog(this, engine, isRadians, expression).setVisible(true);
+    }
+
+    private static boolean hasVariableX(String text) {
+        return text.matches(".*(?<![A-Za-z])x(?![A-Za-z]).*");
+    }
+
+    // ∫ 按钮：∫[a, b] f(x) dx
+    private void showIntegrateDialog() {
+        showCalculusDialog("Integrate", new String[]{"a", "b"},
+                (function, values, radians) -> engine.integrate(function, values[0], values[1], radians));
+    }
+
+    // d/dx 按钮：f'(x)
+    private void showDeriveDialog() {
+        showCalculusDialog("Derivative", new String[]{"x"},
+                (function, values, radians) -> engine.derive(function, values[0], radians));
+    }
+
+    // solve 按钮：f(x) = 0 在 [lo, hi] 里的根
+    private void showSolveDialog() {
+        showCalculusDialog("Solve f(x) = 0", new String[]{"lo", "hi"},
+                (function, values, radians) -> engine.solve(function, values[0], values[1], radians));
+    }
+
+    private interface CalculusTask {
+        double apply(String function, double[] values, boolean radians);
+    }
+
+    // 弹窗填 f(x) 和端点（或求导的点），放到后台算，结果显示出来接着用
+    // 当前输入里有单独的 x 就拿它当 f(x)；端点也可以写表达式（pi/2 之类）
+    // 这种算式没法写成一行表达式，不记进历史
+    private void showCalculusDialog(String title, String[] valueNames, CalculusTask task) {
+        String text = currentExpression.toString();
+        JTextField functionField = new JTextField(hasVariableX(text) ? text : "", 20);
+        JTextField[] valueFields = new JTextField[valueNames.length];
+        JPanel panel = new JPanel(new GridLayout(0, 2, 5, 5));
+        panel.add(new JLabel("f(x) ="));
+        panel.add(functionField);
+        for (int i = 0; i < valueNames.length; i++) {
+            valueFields[i] = new JTextField(10);
+            panel.add(new JLabel(valueNames[i] + " ="));
+            panel.add(valueFields[i]);
+        }
+        if (JOptionPane.showConfirmDialog(this, panel, title, JOptionPane.OK_CANCEL_OPTION,
+                JOptionPane.PLAIN_MESSAGE) != JOptionPane.OK_OPTION) {
+            return;
+        }
+
+        String function = functionField.getText().trim();
+        String[] valueTexts = new String[valueFields.length];
+        for (int i = 0; i < valueFields.length; i++) {
+            valueTexts[i] = valueFields[i].getText().trim();
         }
+        boolean radians = isRadians;
+        evaluateInBackground(() -> {
+            double[] values = new double[valueTexts.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = engine.calculate(valueTexts[i], radians);
+            }
+            return task.apply(function, values, radians);
+        }, this::displayResult, error -> {
+            // 不收敛、两端不异号这些原因 errorText 认不出来，直接把异常里的话显示出来
+            boolean calculusError = error instanceof ArithmeticException
+                    && EvaluationMetrics.classify(error) == EvaluationMetrics.OTHER;
+            displayField.setText(calculusError ? "Error: " + error.getMessage() : errorText(error));
+            startNewInput = true;
+            updatePreview();
+        });
+    }
+
+    // 出错时显示的文字：认得出原因的写上原因（"Error: Division by zero"），其他的只写 Error
+    private static String errorText(Throwable error) {
+        int cause = EvaluationMetrics.classify(error);
+        return cause == EvaluationMetrics.OTHER ? "Error" : "Error: " + EvaluationMetrics.describe(cause);
+    }
+
+    // 在后台线程里跑一个计算，算完了回到 EDT 上调用 onSuccess；出错把异常交给 onError
+    // 同一时间只有一个计算，新的会把旧的取消掉
+    private <T> void evaluateInBackground(Callable<T> task, Consumer<T> onSuccess, Consumer<Throwable> onError) {
+        cancelEvaluation();
+
+        SwingWorker<T, Void> worker = new SwingWorker<T, Void>() {
+            @Override
+            protected T doInBackground() throws Exception {
+                return task.call();
+            }
+
+            @Override
+            protected void done() {
+                if (pendingEvaluation != this) {
+                    return; // 已经被取消或者被新的计算替换掉了，结果不要了
+                }
+                finishEvaluation();
+                try {
+                    onSuccess.accept(get());
+                } catch (ExecutionException e) {
+                    onError.accept(e.getCause());
+                } catch (InterruptedException e) {
+                    onError.accept(e);
+                }
+            }
+        };
+
+        pendingEvaluation = worker;
+        busyIndicatorTimer.restart();
+        evaluationTimeoutTimer.restart();
+        worker.execute();
     }
 
-    // 表达式求值（支持 cbrt 等自定义函数）
-    private double evaluateExpression(String expressionStr) {
-        // 替换常量 e 和 π
-        expressionStr = expressionStr.replace("e", String.valueOf(Math.E));
-        expressionStr = expressionStr.replace("pi", String.valueOf(Math.PI));
+    // 取消正在后台进行的计算（没有的话什么也不做）
+    // cancel(true) 会中断后台线程：会算很久的只有高精度、数值微积分，它们都会看中断标志，马上停下来把线程还回去
+    // （SwingWorker 只有 10 个线程，超时的计算要是接着跑，占满了以后再按“=”就只能排队）
+    private void cancelEvaluation() {
+        if (pendingEvaluation != null) {
+            SwingWorker<?, Void> worker = pendingEvaluation;
+            finishEvaluation();
+            worker.cancel(true);
+        }
+    }
 
+    // 计算结束（算完、取消或超时），把进度条收起来
+    private void finishEvaluation() {
+        pendingEvaluation = null;
+        busyIndicatorTimer.stop();
+        evaluationTimeoutTimer.stop();
+        busyIndicator.setVisible(false);
+        setCursor(Cursor.getDefaultCursor());
+    }
 
-        // 用 exp4j 来解析和计算表达式（支持我们自定义的 cbrt 函数）
-        Expression expression = new ExpressionBuilder(expressionStr)
-                .function(new CustomFunctions.CbrtFunction())
-                .build();
+    // 算太久了：取消掉，提示超时
+    private void onEvaluationTimeout() {
+        if (pendingEvaluation != null) {
+            cancelEvaluation();
+            displayField.setText("Error: Timeout");
+            startNewInput = true;
+            updatePreview();
+        }
+    }
 
-        return expression.evaluate(); // 最终返回结果
+    // 高精度模式的计算：结果是 NaN、无穷大这种 BigDecimal 表示不了的，退回按 double 算
+    private String calculatePrecise(String expressionStr, boolean radians) {
+        BigDecimal result = engine.calculatePrecise(expressionStr, radians);
+        return result != null ? engine.formatPrecise(result) : engine.format(engine.calculate(expressionStr, radians));
     }
 
     // 显示计算结果，并准备进入“新一轮输入”状态
     private void displayResult(double result) {
-        String resultStr = formatter.format(result); // 避免显示太多小数位
-        displayField.setText(resultStr);
+        displayResult(engine.format(result)); // 避免显示太多小数位
+    }
+
+    private void displayResult(String resultStr) {
         currentExpression = new StringBuilder(resultStr); // 把结果变成下一轮起点
         startNewInput = true;
+        showExpression();
     }
 
     // 百分比按钮的处理逻辑
@@ -585,63 +927,17 @@ public class ScientificCalculator extends JFrame {
         }
 
         String expressionStr = currentExpression.toString();
+        boolean radians = isRadians;
 
-        try {
-            // 先定位最后一个数字的位置（从后往前找）
-            int lastDigitPos = -1;
-            for (int i = expressionStr.length() - 1; i >= 0; i--) {
-                char c = expressionStr.charAt(i);
-                if ((c >= '0' && c <= '9') || c == '.') {
-                    lastDigitPos = i;
-                } else if (lastDigitPos != -1) {
-                    break;
-                }
-            }
-
-            if (lastDigitPos == -1) return; // 找不到就跳出
-
-            // 然后向前找这个数字的开头
-            int startPos = lastDigitPos;
-            while (startPos > 0) {
-                char c = expressionStr.charAt(startPos - 1);
-                if ((c >= '0' && c <= '9') || c == '.') {
-                    startPos--;
-                } else {
-                    break;
-                }
-            }
-
-            // 拆成：前半部分 + 数字部分
-            String numberStr = expressionStr.substring(startPos, lastDigitPos + 1);
-            String beforePart = startPos > 0 ? expressionStr.substring(0, startPos) : "";
-
-            // 先简单地除以 100
-            double number = Double.parseDouble(numberStr);
-            double percentage = number / 100.0;
-
-            // 如果前面是个加减乘除，再对它取百分比（比如 200 + 10% 就变成 200 + 20）
-            if (beforePart.length() > 0) {
-                char lastOp = beforePart.charAt(beforePart.length() - 1);
-                if (lastOp == '+' || lastOp == '-' || lastOp == '*' || lastOp == '/') {
-                    String beforeOpStr = beforePart.substring(0, beforePart.length() - 1);
-                    if (!beforeOpStr.isEmpty()) {
-                        try {
-                            double beforeValue = evaluateExpression(beforeOpStr);
-                            percentage = beforeValue * percentage;
-                        } catch (Exception e) {
-                            // 出错就不处理，直接按默认逻辑用
-                        }
-                    }
-                }
-            }
-
-            // 把原来的数字换成百分比值
-            currentExpression = new StringBuilder(beforePart).append(percentage);
-            displayField.setText(currentExpression.toString());
+        // 把最后一个数字换成百分比值（前半部分可能要求值，也放到后台）
+        evaluateInBackground(() -> engine.applyPercentage(expressionStr, radians), newExpression -> {
+            if (newExpression == null) return; // 找不到数字就跳出
 
-        } catch (Exception e) {
+            currentExpression = new StringBuilder(newExpression);
+            showExpression();
+        }, error -> {
             // 任意错误就啥也不做
-        }
+        });
     }
 
     // 计算倒数功能（1/x）
@@ -651,19 +947,16 @@ public class ScientificCalculator extends JFrame {
             String currentText = displayField.getText();
             try {
                 double value = Double.parseDouble(currentText);
-                if (value == 0) {
-                    displayField.setText("Error: Division by zero");
-                } else {
-                    double reciprocal = 1.0 / value;
-                    displayResult(reciprocal);
-                }
+                displayResult(engine.reciprocal(value));
+            } catch (ArithmeticException e) {
+                displayField.setText("Error: Division by zero");
             } catch (NumberFormatException e) {
                 displayField.setText("Error");
             }
         } else {
             // 如果是在输入中，就追加一个 “^(-1)” 代表 1/x
             currentExpression.append("^(-1)");
-            displayField.setText(currentExpression.toString());
+            showExpression();
         }
     }
 
@@ -674,20 +967,20 @@ public class ScientificCalculator extends JFrame {
             String currentText = displayField.getText();
             try {
                 double value = Double.parseDouble(currentText);
-                displayResult(-value);
+                displayResult(engine.negate(value));
             } catch (NumberFormatException e) {
                 displayField.setText("Error");
             }
         } else {
             // 如果是在编辑输入，就用 -(...) 包一层
             currentExpression.insert(0, "-(").append(")");
-            displayField.setText(currentExpression.toString());
+            showExpression();
         }
     }
 
     // 清空内存 MC
     private void memoryClear() {
-        memory = 0.0;
+        engine.memoryClear();
     }
 
     // 读取内存 MR
@@ -696,52 +989,37 @@ public class ScientificCalculator extends JFrame {
             currentExpression = new StringBuilder();
             startNewInput = false;
         }
-        currentExpression.append(formatter.format(memory));
-        displayField.setText(currentExpression.toString());
+        currentExpression.append(engine.format(engine.memoryRecall()));
+        showExpression();
     }
 
     // 把当前值存到内存 MS
     private void memoryStore() {
-        try {
-            String currentText = displayField.getText();
-            if (!currentText.isEmpty() && !currentText.equals("Error")) {
-                if (startNewInput) {
-                    memory = Double.parseDouble(currentText);
-                } else {
-                    memory = evaluateExpression(currentText);
-                }
-            }
-        } catch (Exception e) {
-            displayField.setText("Error");
-        }
+        updateMemory(engine::memoryStore);
     }
 
     // 当前值加到内存 M+
     private void memoryAdd() {
-        try {
-            String currentText = displayField.getText();
-            if (!currentText.isEmpty() && !currentText.equals("Error")) {
-                double value = startNewInput ? Double.parseDouble(currentText)
-                        : evaluateExpression(currentText);
-                memory += value;
-            }
-        } catch (Exception e) {
-            displayField.setText("Error");
-        }
+        updateMemory(engine::memoryAdd);
     }
 
     // 当前值从内存中减去 M-
     private void memorySubtract() {
-        try {
-            String currentText = displayField.getText();
-            if (!currentText.isEmpty() && !currentText.equals("Error")) {
-                double value = startNewInput ? Double.parseDouble(currentText)
-                        : evaluateExpression(currentText);
-                memory -= value;
-            }
-        } catch (Exception e) {
-            displayField.setText("Error");
+        updateMemory(engine::memorySubtract);
+    }
+
+    // MS / M+ / M- 共用：先在后台把显示框里的值算出来，再交给 memoryUpdate
+    private void updateMemory(Consumer<Double> memoryUpdate) {
+        String currentText = displayField.getText();
+        if (currentText.isEmpty() || currentText.startsWith("Error")) {
+            return;
         }
+
+        // 结果状态直接解析数字，输入状态就先把表达式算出来
+        boolean isResult = startNewInput;
+        boolean radians = isRadians;
+        evaluateInBackground(() -> isResult ? Double.parseDouble(currentText) : engine.evaluate(currentText, radians),
+                memoryUpdate, error -> displayField.setText(errorText(error)));
     }
 
     // 将显示框内容复制到剪贴板
@@ -756,10 +1034,12 @@ public class ScientificCalculator extends JFrame {
 
     // 从剪贴板粘贴到显示框，并尝试更新表达式
     private void pasteFromClipboard() {
+        cancelEvaluation();
         try {
             displayField.paste();  // 粘贴文本
             currentExpression = new StringBuilder(displayField.getText()); // 更新表达式
             startNewInput = false;
+            showExpression();
         } catch (Exception e) {
             displayField.setText("Error: Invalid paste");
         }
@@ -0,0 +1,246 @@
+package calculator;
+
+import net.objecthunter.exp4j.function.Function;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleUnaryOperator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// 用户自定义函数：定义文件里一行一个，比如
+//   hyp(a, b) = sqrt(a^2 + b^2)
+//   sq(x) = x^2          # “#” 后面是注释
+// 函数体和普通表达式的写法一样，可以调用前面几行定义过的函数（所以不会递归）
+// 每个函数按弧度制、角度制各编译一次（函数体里的 sin 跟着调用它的表达式的角度模式走），之后所有表达式共用
+// 文件改了重新 define 一遍：
+//   只改了函数体：原来的函数对象原地换上新的函数体，缓存里编译好的表达式拿的就是这个对象，不用重编
+//   新增、删掉、参数个数变了：define 返回 true，引擎清一次表达式缓存（删掉的函数对象再被调用就报错）
+// 写错的行跳过，错误信息交给调用方；那一行的函数就当没有定义
+final class UserFunctions {
+
+    static final String FILE_NAME = "functions.txt";
+
+    private static final Pattern DEFINITION = Pattern.compile(
+            "\\s*([A-Za-z_][A-Za-z0-9_]*)\\s*\\(([^)]*)\\)\\s*=(.*)");
+    private static final Pattern PARAMETER = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    // 一个用户函数（弧度、角度各一个对象）：名字和参数个数定下来就不变了，函数体可以换
+    static final class UserFunction extends Function implements DoubleUnaryOperator {
+        private volatile Program body;  // null 就是这个函数已经从文件里删掉了
+
+        // 每个线程一份求值用的栈（函数体里再调别的用户函数，用的是那个函数自己的，不会互相踩）
+        private final ThreadLocal<double[]> stack = ThreadLocal.withInitial(() -> new double[16]);
+        private final ThreadLocal<double[]> argument = ThreadLocal.withInitial(() -> new double[1]);
+
+        UserFunction(String name, int arity) {
+            super(name, arity);
+        }
+
+        @Override
+        public double apply(double... args) {
+            Program program = body();
+            return program.evaluate(args, stackFor(program));
+        }
+
+        // 单参数的走这里（编译成 UNARY_CALL），不用为参数建数组
+        @Override
+        public double applyAsDouble(double x) {
+            Program program = body();
+            double[] args = argument.get();
+            args[0] = x;
+            return program.evaluate(args, stackFor(program));
+        }
+
+        private Program body() {
+            Program program = body;
+            if (program == null) {
+                throw new IllegalArgumentException("Function '" + getName() + "' is no longer defined");
+            }
+            return program;
+        }
+
+        private double[] stackFor(Program program) {
+            double[] values = stack.get();
+            if (values.length < program.getMaxStack()) {
+                values = new double[program.getMaxStack()];
+                stack.set(values);
+            }
+            return values;
+        }
+    }
+
+    private final Map<String, Function> radianFunctions;   // 引擎的两张函数表，在这里直接增删
+    private final Map<String, Function> degreeFunctions;
+    private final Map<String, Function> radianBuiltins;    // 表里原来就有的（cbrt、角度制三角函数），函数体解析时用
+    private final Map<String, Function> degreeBuiltins;
+    private Map<String, UserFunction[]> defined = new LinkedHashMap<>();    // 名字 → {弧度版, 角度版}
+
+    // 两张表要是线程安全的（ConcurrentHashMap），表达式解析、预览随时会来查
+    UserFunctions(Map<String, Function> radianFunctions, Map<String, Function> degreeFunctions) {
+        this.radianFunctions = radianFunctions;
+        this.degreeFunctions = degreeFunctions;
+        this.radianBuiltins = new HashMap<>(radianFunctions);
+        this.degreeBuiltins = new HashMap<>(degreeFunctions);
+    }
+
+    // 按 lines 重新定义全部用户函数（不在里面的都删掉），写错的行把原因加进 errors
+    // 返回函数名或者参数个数有没有变（变了的话已经编译好的表达式要作废）
+    synchronized boolean define(List<String> lines, List<String> errors) {
+        Map<String, UserFunction[]> next = new LinkedHashMap<>();
+        Map<String, Program[]> bodies = new HashMap<>();
+        Map<String, Function> radianScope = new HashMap<>(radianBuiltins);
+        Map<String, Function> degreeScope = new HashMap<>(degreeBuiltins);
+
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                Matcher matcher = DEFINITION.matcher(line);
+                if (!matcher.matches()) {
+                    throw new IllegalArgumentException("Expected a definition like f(x) = x^2");
+                }
+                String name = matcher.group(1);
+                String[] parameters = parameters(matcher.group(2));
+                checkName(name, next);
+                Program radianBody = compile(matcher.group(3), parameters, radianScope);
+                Program degreeBody = compile(matcher.group(3), parameters, degreeScope);
+
+                // 名字和参数个数都没变就接着用原来的对象
+                UserFunction[] pair = defined.get(name);
+                if (pair == null || pair[0].getNumArguments() != parameters.length) {
+                    pair = new UserFunction[]{
+                            new UserFunction(name, parameters.length), new UserFunction(name, parameters.length)};
+                }
+                next.put(name, pair);
+                bodies.put(name, new Program[]{radianBody, degreeBody});
+                radianScope.put(name, pair[0]);
+                degreeScope.put(name, pair[1]);
+            } catch (IllegalArgumentException | ArithmeticException e) {
+                errors.add("Line " + (i + 1) + ": " + e.getMessage());
+            }
+        }
+
+        // 先换函数体、再往表里加新的、最后删掉没有了的
+        boolean changed = false;
+        for (Map.Entry<String, UserFunction[]> entry : next.entrySet()) {
+            UserFunction[] pair = entry.getValue();
+            Program[] body = bodies.get(entry.getKey());
+            pair[0].body = body[0];
+            pair[1].body = body[1];
+            if (defined.get(entry.getKey()) != pair) {
+                radianFunctions.put(entry.getKey(), pair[0]);
+                degreeFunctions.put(entry.getKey(), pair[1]);
+                changed = true;
+            }
+        }
+        for (Map.Entry<String, UserFunction[]> entry : defined.entrySet()) {
+            UserFunction[] pair = entry.getValue();
+            if (next.get(entry.getKey()) != pair) {
+                pair[0].body = null;
+                pair[1].body = null;
+                radianFunctions.remove(entry.getKey(), pair[0]);
+                degreeFunctions.remove(entry.getKey(), pair[1]);
+                changed = true;
+            }
+        }
+        defined = next;
+        return changed;
+    }
+
+    synchronized List<String> names() {
+        return new ArrayList<>(defined.keySet());
+    }
+
+    private String[] parameters(String text) {
+        if (text.isBlank()) {
+            return new String[0];
+        }
+        String[] parameters = text.split(",");
+        for (int i = 0; i < parameters.length; i++) {
+            String parameter = parameters[i].trim();
+            parameters[i] = parameter;
+            if (!PARAMETER.matcher(parameter).matches() || !Double.isNaN(ExpressionLexer.constantValue(parameter))
+                    || Builtins.lookup(parameter) >= 0 || radianBuiltins.containsKey(parameter)) {
+                throw new IllegalArgumentException("Bad parameter name '" + parameter + "'");
+            }
+            if (ExpressionLexer.indexOf(parameters, parameter) < i) {
+                throw new IllegalArgumentException("Duplicate parameter '" + parameter + "'");
+            }
+        }
+        return parameters;
+    }
+
+    // 不能和内置函数、常量、寄存器、同一个文件里前面的函数重名
+    private void checkName(String name, Map<String, UserFunction[]> next) {
+        if (Builtins.lookup(name) >= 0 || radianBuiltins.containsKey(name) || degreeBuiltins.containsKey(name)
+                || !Double.isNaN(ExpressionLexer.constantValue(name)) || MemoryRegisters.indexOf(name) >= 0) {
+            throw new IllegalArgumentException("'" + name + "' is a reserved name");
+        }
+        if (next.containsKey(name)) {
+            throw new IllegalArgumentException("Function '" + name + "' is already defined");
+        }
+    }
+
+    private static Program compile(String body, String[] parameters, Map<String, Function> scope) {
+        return Program.compile(Optimizer.optimize(ExpressionParser.parse(body, parameters, scope)), parameters.length);
+    }
+
+    // 盯着 file 所在的目录，file 被改、被新建、被删掉时调 onChange（在一个后台守护线程上）
+    // 编辑器保存时常常连着来好几个事件，等安静一小会儿再调，一次保存只重读一遍
+    static Closeable watch(Path file, Runnable onChange) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Path name = file.getFileName();
+        WatchService service = FileSystems.getDefault().newWatchService();
+        try {
+            directory.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+            service.close();
+            throw e;
+        }
+
+        Thread thread = new Thread(() -> {
+            try {
+                while (true) {
+                    WatchKey key = service.take();
+                    boolean changed = false;
+                    while (key != null) {
+                        for (WatchEvent<?> event : key.pollEvents()) {
+                            changed |= event.kind() == StandardWatchEventKinds.OVERFLOW || name.equals(event.context());
+                        }
+                        key.reset();
+                        key = service.poll(100, TimeUnit.MILLISECONDS);
+                    }
+                    if (changed) {
+                        onChange.run();
+                    }
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                // 关掉了
+            }
+        }, "function-file-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        return service;
+    }
+}
@@ -0,0 +1,145 @@
+package calculator;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// 分块求值（BlockEvaluator）的 SIMD 版本：一次算一整个向量寄存器宽的数（AVX2 是 4 个 double，AVX-512 是 8 个）
+// 只放逐个元素算、结果和标量一位不差的运算（加减乘除、取负、平方、立方、倒数、开方、绝对值，都是 IEEE 精确舍入的），
+// 超越函数（sin、log、pow 这些）向量版的结果和 Math 里的不保证一样，留给标量算
+// 用的是孵化中的 jdk.incubator.vector，运行时要加 --add-modules jdk.incubator.vector；
+// 没加的话这个类根本不会被加载，BlockEvaluator 用普通循环算
+final class VectorKernels {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    private VectorKernels() {
+    }
+
+    // 一个向量多少个 double（分块的大小取它的整数倍，最后一块以外都不会有零头）
+    static int lanes() {
+        return SPECIES.length();
+    }
+
+    // a[i] = a[i] + b[i]
+    static void add(double[] a, double[] b, int n) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, i).add(DoubleVector.fromArray(SPECIES, b, i)).intoArray(a, i);
+        }
+        for (; i < n; i++) {
+            a[i] = a[i] + b[i];
+        }
+    }
+
+    static void subtract(double[] a, double[] b, int n) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, i).sub(DoubleVector.fromArray(SPECIES, b, i)).intoArray(a, i);
+        }
+        for (; i < n; i++) {
+            a[i] = a[i] - b[i];
+        }
+    }
+
+    static void multiply(double[] a, double[] b, int n) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, i).mul(DoubleVector.fromArray(SPECIES, b, i)).intoArray(a, i);
+        }
+        for (; i < n; i++) {
+            a[i] = a[i] * b[i];
+        }
+    }
+
+    // 除数里有 0 的话由调用方先检查（hasZero），这里只管除
+    static void divide(double[] a, double[] b, int n) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, i).div(DoubleVector.fromArray(SPECIES, b, i)).intoArray(a, i);
+        }
+        for (; i < n; i++) {
+            a[i] = a[i] / b[i];
+        }
+    }
+
+    static boolean hasZero(double[] a, int n) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+            if (DoubleVector.fromArray(SPECIES, a, i).eq(0d).anyTrue()) {
+                return true;
+            }
+        }
+        for (; i < n; i++) {
+            if (a[i] == 0d) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static void negate(double[] a, int n) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, i).neg().intoArray(a, i);
+        }
+        for (; i < n; i++) {
+            a[i] = -a[i];
+        }
+    }
+
+    static void square(double[] a, int n) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+            DoubleVector x = DoubleVector.fromArray(SPECIES, a, i);
+            x.mul(x).intoArray(a, i);
+        }
+        for (; i < n; i++) {
+            a[i] = a[i] * a[i];
+        }
+    }
+
+    // 和标量一样按 (x*x)*x 的顺序乘，舍入也一样
+    static void cube(double[] a, int n) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+            DoubleVector x = DoubleVector.fromArray(SPECIES, a, i);
+            x.mul(x).mul(x).intoArray(a, i);
+        }
+        for (; i < n; i++) {
+            double x = a[i];
+            a[i] = x * x * x;
+        }
+    }
+
+    static void reciprocal(double[] a, int n) {
+        DoubleVector one = DoubleVector.broadcast(SPECIES, 1d);
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+            one.div(DoubleVector.fromArray(SPECIES, a, i)).intoArray(a, i);
+        }
+        for (; i < n; i++) {
+            a[i] = 1d / a[i];
+        }
+    }
+
+    static void sqrt(double[] a, int n) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, i).lanewise(VectorOperators.SQRT).intoArray(a, i);
+        }
+        for (; i < n; i++) {
+            a[i] = Math.sqrt(a[i]);
+        }
+    }
+
+    static void abs(double[] a, int n) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, i).abs().intoArray(a, i);
+        }
+        for (; i < n; i++) {
+            a[i] = Math.abs(a[i]);
+        }
+    }
+}
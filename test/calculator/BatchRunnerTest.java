@@ -0,0 +1,60 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// 批处理：输出和输入一行对一行（空行、出错的行也占一行），多线程和单线程结果一样
+class BatchRunnerTest {
+
+    static String run(BatchRunner runner, String input) throws IOException {
+        BufferedReader reader = new BufferedReader(new StringReader(input));
+        StringWriter out = new StringWriter();
+        runner.run(reader::readLine, out);
+        return out.toString();
+    }
+
+    @Test
+    void oneOutputLinePerInputLine() throws IOException {
+        String input = "1+2\n\n1/0\n2*(3\nsqrt(16)\n[[1, 2], [3, 4]] * [1, 1]\n";
+        String expected = "3\n\nError\nError\n4\n[3, 7]\n";
+        assertEquals(expected, run(new BatchRunner(new CalculatorEngine(), true), input));
+        assertEquals(expected, run(new BatchRunner(new CalculatorEngine(), true, 4), input));
+    }
+
+    @Test
+    void degreeMode() throws IOException {
+        assertEquals("0.5\n", run(new BatchRunner(new CalculatorEngine(), false), "sin(30)\n"));
+    }
+
+    @Test
+    void parallelKeepsOrderAcrossChunks() throws IOException {
+        StringBuilder input = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            input.append(i).append("*2\n");
+            expected.append(i * 2).append('\n');
+        }
+        assertEquals(expected.toString(), run(new BatchRunner(new CalculatorEngine(), true, 4), input.toString()));
+    }
+
+    @Test
+    void stackOverflowOnOneLineOnlyFailsThatLine() throws IOException {
+        // 10 万项连加：语法树太深，编译时爆栈，只有这一行是 Error
+        String deep = "1" + "+1".repeat(99_999);
+        StringBuilder input = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            String line = i == 1500 ? deep : i + "+1";
+            input.append(line).append('\n');
+            expected.append(i == 1500 ? "Error" : String.valueOf(i + 1)).append('\n');
+        }
+        assertEquals(expected.toString(), run(new BatchRunner(new CalculatorEngine(), true), input.toString()));
+        assertEquals(expected.toString(), run(new BatchRunner(new CalculatorEngine(), true, 4), input.toString()));
+    }
+}
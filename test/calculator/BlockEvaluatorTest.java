@@ -0,0 +1,167 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.ObjIntConsumer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// 分块求值、SIMD 运算：结果和逐点调 Program.evaluate（标量循环）一位不差，特殊值（±0、NaN、无穷大、非规格化数）也一样
+// （NaN 只看是不是 NaN：符号位、载荷跟着运算顺序和指令走，不算结果的一部分）
+class BlockEvaluatorTest {
+
+    private static final String[] EXPRESSIONS = {
+            "3*x^2 + y",
+            "x/y - y/3",
+            "-x*x*x + 1/x",
+            "sqrt(abs(x)) * abs(y)",
+            "pow(x, y) + x^y",
+            "x^2 + y^3 + x^(-1)",
+            "x % 3 + sin(x) - cos(y)",
+            "cbrt(x) * exp(y/100)",
+    };
+
+    private static final double[] SPECIAL = {0d, -0d, 1d, -1d, Double.NaN, Double.POSITIVE_INFINITY,
+            Double.NEGATIVE_INFINITY, Double.MIN_VALUE, -Double.MIN_NORMAL / 3, Double.MAX_VALUE, 0.5, -2.5};
+
+    // 1000 个点（不是 BLOCK 的整数倍），前面是特殊值两两组合，后面是随机数
+    private static double[][] columns() {
+        int n = 1000;
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        Random random = new Random(7);
+        for (int i = 0; i < n; i++) {
+            if (i < SPECIAL.length * SPECIAL.length) {
+                xs[i] = SPECIAL[i / SPECIAL.length];
+                ys[i] = SPECIAL[i % SPECIAL.length];
+            } else {
+                xs[i] = (random.nextDouble() - 0.5) * 200;
+                ys[i] = (random.nextDouble() - 0.5) * 20;
+            }
+        }
+        return new double[][]{xs, ys};
+    }
+
+    @Test
+    void vectorApiIsOnForTests() {
+        assertTrue(BlockEvaluator.VECTOR);  // pom 里给测试加了 --add-modules jdk.incubator.vector
+    }
+
+    @Test
+    void blocksMatchPointwiseEvaluation() {
+        CalculatorEngine engine = new CalculatorEngine();
+        double[][] columns = columns();
+        double[][] nonZero = {withoutZeros(columns[0]), withoutZeros(columns[1])};
+        for (boolean isRadians : new boolean[]{true, false}) {
+            for (String expression : EXPRESSIONS) {
+                CompiledExpression f = engine.compile(expression, isRadians, "x", "y");
+                double[] out = new double[columns[0].length];
+                try {
+                    f.evaluate(columns, out);
+                    assertSameAsPointwise(f, columns, out, expression);
+                } catch (ArithmeticException e) {
+                    // 有除以 0 的点：逐点算也得在某个点上抛；再拿没有 0 的输入比一遍
+                    assertThrows(ArithmeticException.class, () -> {
+                        for (int i = 0; i < out.length; i++) {
+                            f.evaluate(columns[0][i], columns[1][i]);
+                        }
+                    }, expression);
+                    f.evaluate(nonZero, out);
+                    assertSameAsPointwise(f, nonZero, out, expression);
+                }
+            }
+        }
+    }
+
+    private static void assertSameAsPointwise(CompiledExpression f, double[][] columns, double[] out, String expression) {
+        for (int i = 0; i < out.length; i++) {
+            double expected = f.evaluate(columns[0][i], columns[1][i]);
+            assertEquals(Double.doubleToLongBits(expected), Double.doubleToLongBits(out[i]),
+                    expression + " at (" + columns[0][i] + ", " + columns[1][i] + ")");
+        }
+    }
+
+    private static double[] withoutZeros(double[] column) {
+        double[] result = column.clone();
+        for (int i = 0; i < result.length; i++) {
+            if (result[i] == 0d) {
+                result[i] = 0.25;
+            }
+        }
+        return result;
+    }
+
+    @Test
+    void singleVariableAndDivisionByZero() {
+        CompiledExpression f = new CalculatorEngine().compile("1/(x-500)", true, "x");
+        double[] xs = new double[1000];
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] = i + 0.5;
+        }
+        double[] out = new double[xs.length];
+        f.evaluate(xs, out);
+        assertEquals(1 / (10.5 - 500), out[10]);
+        xs[777] = 500;
+        assertThrows(ArithmeticException.class, () -> f.evaluate(xs, out));
+    }
+
+    @Test
+    void vectorKernelsMatchScalarLoops() {
+        double[][] columns = columns();
+        int n = columns[0].length - 3;      // 尾巴不满一个向量
+        checkBinary(VectorKernels::add, (a, b) -> a + b, columns, n);
+        checkBinary(VectorKernels::subtract, (a, b) -> a - b, columns, n);
+        checkBinary(VectorKernels::multiply, (a, b) -> a * b, columns, n);
+        checkBinary(VectorKernels::divide, (a, b) -> a / b, columns, n);
+        checkUnary(VectorKernels::negate, a -> -a, columns[0], n);
+        checkUnary(VectorKernels::square, a -> a * a, columns[0], n);
+        checkUnary(VectorKernels::cube, a -> a * a * a, columns[0], n);
+        checkUnary(VectorKernels::reciprocal, a -> 1 / a, columns[0], n);
+        checkUnary(VectorKernels::sqrt, Math::sqrt, columns[0], n);
+        checkUnary(VectorKernels::abs, Math::abs, columns[0], n);
+
+        double[] noZero = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11};
+        assertEquals(false, VectorKernels.hasZero(noZero, noZero.length));
+        noZero[10] = -0d;
+        assertTrue(VectorKernels.hasZero(noZero, noZero.length));
+        assertEquals(false, VectorKernels.hasZero(noZero, 10));
+    }
+
+    private interface BinaryKernel {
+        void apply(double[] a, double[] b, int n);
+    }
+
+    private static void checkBinary(BinaryKernel kernel, DoubleBinaryOperator scalar, double[][] columns, int n) {
+        double[] a = columns[0].clone();
+        double[] expected = a.clone();
+        for (int i = 0; i < n; i++) {
+            expected[i] = scalar.applyAsDouble(a[i], columns[1][i]);
+        }
+        kernel.apply(a, columns[1], n);
+        assertArrayEquals(bits(expected), bits(a));
+    }
+
+    private static void checkUnary(ObjIntConsumer<double[]> kernel, DoubleUnaryOperator scalar, double[] column, int n) {
+        double[] a = column.clone();
+        double[] expected = a.clone();
+        for (int i = 0; i < n; i++) {
+            expected[i] = scalar.applyAsDouble(a[i]);
+        }
+        kernel.accept(a, n);
+        assertArrayEquals(bits(expected), bits(a));
+    }
+
+    private static long[] bits(double[] values) {
+        long[] bits = new long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bits[i] = Double.doubleToLongBits(values[i]);
+        }
+        return bits;
+    }
+}
@@ -0,0 +1,91 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// 计算历史：追加、关掉重开以后还在、前缀搜索（从新到旧）、清空、同一个目录不能开两次
+class CalculationHistoryTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void appendAndReopen() throws IOException {
+        try (CalculationHistory history = CalculationHistory.open(directory)) {
+            assertEquals(0, history.append("1+2", "3", true, false, 100));
+            assertEquals(1, history.append("sin(30)", "0.5", false, true, 200));
+            assertEquals(2, history.size());
+        }
+        try (CalculationHistory history = CalculationHistory.open(directory)) {
+            assertEquals(2, history.size());
+            CalculationHistory.Entry first = history.get(0);
+            assertEquals("1+2", first.expression);
+            assertEquals("3", first.result);
+            assertTrue(first.radians);
+            assertFalse(first.precise);
+            assertEquals(100, first.timestamp);
+            CalculationHistory.Entry second = history.get(1);
+            assertEquals("sin(30)", second.expression);
+            assertEquals("0.5", second.result);
+            assertFalse(second.radians);
+            assertTrue(second.precise);
+            assertEquals(200, second.timestamp);
+
+            assertEquals(2, history.append("√2", "1.4142135623730951", true, false, 300));
+        }
+        try (CalculationHistory history = CalculationHistory.open(directory)) {
+            assertEquals(3, history.size());
+            assertEquals("√2", history.get(2).expression);
+        }
+    }
+
+    @Test
+    void searchByPrefixNewestFirst() throws IOException {
+        try (CalculationHistory history = CalculationHistory.open(directory)) {
+            String[] expressions = {"1+2", "12*3", "sin(1)", "123456789+1", "123456789+2", "sin(2)", "π√2"};
+            for (int i = 0; i < expressions.length; i++) {
+                history.append(expressions[i], "r" + i, true, false, i);
+            }
+            assertEquals(List.of("sin(2)", "sin(1)"), expressionsOf(history.search("sin", 10)));
+            assertEquals(List.of("123456789+2", "123456789+1", "12*3"), expressionsOf(history.search("12", 10)));
+            assertEquals(List.of("123456789+1"), expressionsOf(history.search("123456789+1", 10)));   // 超过 8 个字节
+            assertEquals(List.of("π√2"), expressionsOf(history.search("π√", 10)));
+            assertEquals(List.of("π√2", "sin(2)"), expressionsOf(history.search("", 2)));
+            assertTrue(history.search("cos", 10).isEmpty());
+        }
+    }
+
+    @Test
+    void clearAndLock() throws IOException {
+        try (CalculationHistory history = CalculationHistory.open(directory)) {
+            history.append("1", "1", true, false, 1);
+            assertThrows(IOException.class, () -> CalculationHistory.open(directory));
+            history.clear();
+            assertEquals(0, history.size());
+            history.append("2", "2", true, false, 2);
+        }
+        try (CalculationHistory history = CalculationHistory.open(directory)) {
+            assertEquals(1, history.size());
+            assertEquals("2", history.get(0).expression);
+            assertThrows(IndexOutOfBoundsException.class, () -> history.get(1));
+        }
+    }
+
+    private static List<String> expressionsOf(List<CalculationHistory.Entry> entries) {
+        List<String> expressions = new ArrayList<>();
+        for (CalculationHistory.Entry entry : entries) {
+            expressions.add(entry.expression);
+        }
+        return expressions;
+    }
+}
@@ -0,0 +1,165 @@
+package calculator;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// 求值服务：真的起一个本机端口发 HTTP 请求；合并和限流要让某个表达式卡住，用一个会等信号的引擎
+class CalculatorServerTest {
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private CalculatorServer server;
+
+    // 算 "1+1" 的时候先报个到，再等放行
+    private static final class BlockingEngine extends CalculatorEngine {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public double calculate(String expressionStr, boolean isRadians) {
+            if (expressionStr.equals("1+1")) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return super.calculate(expressionStr, isRadians);
+        }
+    }
+
+    private void start(CalculatorEngine engine, int maxPending) throws IOException {
+        server = new CalculatorServer(engine, maxPending);
+        server.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    @AfterEach
+    void stop() {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    private HttpRequest post(String path, String body) {
+        return HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getPort() + path))
+                .POST(HttpRequest.BodyPublishers.ofString(body)).build();
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    @Test
+    void evaluatesJsonAndPlainText() throws Exception {
+        start(new CalculatorEngine(), 16);
+        HttpResponse<String> response = send(post("/evaluate", "{\"expression\": \"1+2\", \"radians\": true}"));
+        assertEquals(200, response.statusCode());
+        assertEquals("{\"expression\":\"1+2\",\"value\":3,\"result\":\"3\"}", response.body());
+
+        assertEquals("{\"expression\":\"sin(90)\",\"value\":1,\"result\":\"1\"}",
+                send(post("/evaluate", " {\"expression\":\"sin(90)\",\"radians\":false}")).body());
+        assertEquals("{\"expression\":\"2*3\",\"value\":6,\"result\":\"6\"}", send(post("/evaluate", "2*3\n")).body());
+        // 转义读进来再写回去，非 ASCII 的原样输出
+        String escaped = send(post("/evaluate", "{\"expression\":\"\\\"a\\\\b\\u00e9\\n\"}")).body();
+        assertTrue(escaped.startsWith("{\"expression\":\"\\\"a\\\\b\u00e9\\n\",\"error\":"), escaped);
+
+        HttpResponse<String> get = send(HttpRequest.newBuilder(
+                URI.create("http://127.0.0.1:" + server.getPort() + "/evaluate?expression=1%2B2&radians=false")).build());
+        assertEquals(200, get.statusCode());
+        assertTrue(get.body().contains("\"value\":3"), get.body());
+
+        HttpResponse<String> error = send(post("/evaluate", "{\"expression\": \"1/0\"}"));
+        assertEquals(422, error.statusCode());
+        assertTrue(error.body().contains("\"error\":"), error.body());
+    }
+
+    @Test
+    void evaluatesBatchInOrder() throws Exception {
+        start(new CalculatorEngine(), 16);
+        HttpResponse<String> response = send(post("/batch", "{\"expressions\": [\"1+2\", \"1/0\", \"2^10\"]}"));
+        assertEquals(200, response.statusCode());
+        String body = response.body();
+        assertTrue(body.startsWith("{\"results\":[{\"expression\":\"1+2\",\"value\":3,"), body);
+        assertTrue(body.indexOf("\"1/0\",\"error\"") > 0, body);
+        assertTrue(body.endsWith("{\"expression\":\"2^10\",\"value\":1024,\"result\":\"1024\"}]}"), body);
+
+        String plain = send(post("/batch", "1+1\n\n3*3\r\n")).body();
+        assertTrue(plain.contains("\"value\":2,") && plain.contains("\"value\":9,"), plain);
+    }
+
+    @Test
+    void rejectsBadRequests() throws Exception {
+        start(new CalculatorEngine(), 2);
+        assertEquals(400, send(post("/evaluate", "{\"expression\": 1+2}")).statusCode());
+        assertEquals(400, send(post("/evaluate", "{\"expression\": \"1+2\"")).statusCode());
+        assertEquals(400, send(post("/evaluate", "{\"expression\": 3}")).statusCode());
+        assertEquals(400, send(post("/evaluate", "{\"radians\": true}")).statusCode());
+        assertEquals(400, send(post("/batch", "{\"expressions\": \"1+2\"}")).statusCode());
+
+        HttpResponse<String> deep = send(post("/evaluate", "{\"x\":" + "[".repeat(100_000) + "]".repeat(100_000) + "}"));
+        assertEquals(400, deep.statusCode());
+        assertTrue(deep.body().contains("nested too deeply"), deep.body());
+
+        assertEquals(413, send(post("/batch", "{\"expressions\": [\"1\", \"2\", \"3\"]}")).statusCode());
+        assertEquals(405, send(HttpRequest.newBuilder(
+                URI.create("http://127.0.0.1:" + server.getPort() + "/batch")).build()).statusCode());
+        assertEquals(0, server.getEvaluationCount());
+    }
+
+    @Test
+    void coalescesConcurrentRequests() throws Exception {
+        BlockingEngine engine = new BlockingEngine();
+        start(engine, 64);
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            responses.add(client.sendAsync(post("/evaluate", "{\"expression\": \"1+1\"}"),
+                    HttpResponse.BodyHandlers.ofString()));
+        }
+        // 第一个卡在引擎里，其他七个都在等它的结果
+        while (server.getCoalescedCount() < 7) {
+            Thread.sleep(5);
+        }
+        engine.release.countDown();
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            assertEquals("{\"expression\":\"1+1\",\"value\":2,\"result\":\"2\"}", response.join().body());
+        }
+        assertEquals(1, server.getEvaluationCount());
+        assertEquals(7, server.getCoalescedCount());
+    }
+
+    @Test
+    void shedsLoadWhenBacklogIsFull() throws Exception {
+        BlockingEngine engine = new BlockingEngine();
+        start(engine, 1);
+        CompletableFuture<HttpResponse<String>> first = client.sendAsync(post("/evaluate", "1+1"),
+                HttpResponse.BodyHandlers.ofString());
+        engine.started.await();
+
+        HttpResponse<String> busy = send(post("/evaluate", "2+2"));
+        assertEquals(503, busy.statusCode());
+        assertEquals("1", busy.headers().firstValue("Retry-After").orElse(null));
+        assertEquals(503, send(post("/batch", "{\"expressions\": [\"3\"]}")).statusCode());
+        assertEquals(2, server.getRejectedCount());
+
+        engine.release.countDown();
+        assertEquals(200, first.join().statusCode());
+        // 名额还回来了
+        assertEquals(200, send(post("/evaluate", "2+2")).statusCode());
+        assertEquals(2, server.getRejectedCount());
+    }
+}
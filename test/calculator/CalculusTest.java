@@ -0,0 +1,57 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// 数值微积分：积分、导数、求根和已知的答案比
+class CalculusTest {
+
+    private final CalculatorEngine engine = new CalculatorEngine();
+
+    @Test
+    void integrate() {
+        assertEquals(2, engine.integrate("sin(x)", 0, Math.PI, true), 1e-12);
+        assertEquals(9, engine.integrate("x^2", 0, 3, true), 1e-12);
+        assertEquals(-1.5, engine.integrate("x", 2, 1, true), 1e-12);
+        assertEquals(Math.sqrt(Math.PI), engine.integrate("exp(-x^2)", -10, 10, true), 1e-12);
+        assertEquals(2, engine.integrate("1/sqrt(x)", 0, 1, true), 1e-8);
+        assertEquals(Math.PI / 2, engine.integrate("sqrt(1-x^2)", -1, 1, true), 1e-10);
+        assertEquals(0, engine.integrate("x", 5, 5, true));
+    }
+
+    @Test
+    void integrateFindsMassNearTheEndpoints() {
+        assertEquals(1, engine.integrate("exp(-x)", 0, 1e6, true), 1e-10);
+        assertEquals(1, engine.integrate("exp(x)", -1e6, 0, true), 1e-10);
+    }
+
+    @Test
+    void integrateSplitsAroundFailingNodes() {
+        // sin(t)/t，t = 0 正好落在 [5/16, 6/16] 那一段的中点上
+        double si = 0.9822514647228968;    // Si(0.65625) + Si(0.34375)
+        assertEquals(si, engine.integrate("sin(x-0.34375)/(x-0.34375)", 0, 1, true), 1e-12);
+        assertEquals(1.8921661407343662, engine.integrate("sin(x)/x", -1, 1, true), 1e-12);
+        assertThrows(ArithmeticException.class, () -> engine.integrate("1/(x-0.5)", 0, 1, true));
+    }
+
+    @Test
+    void derive() {
+        assertEquals(1, engine.derive("exp(x)", 0, true), 1e-14);
+        assertEquals(Math.cos(1), engine.derive("sin(x)", 1, true), 1e-13);
+        assertEquals(12, engine.derive("x^3", 2, true), 1e-12);
+        assertEquals(0.25, engine.derive("sqrt(x)", 4, true), 1e-12);
+        assertEquals(1e3, engine.derive("log(x)", 1e-3, true), 1e-9);
+        assertEquals(Math.PI / 180 * Math.cos(Math.PI / 6), engine.derive("sin(x)", 30, false), 1e-14);
+    }
+
+    @Test
+    void solve() {
+        assertEquals(Math.sqrt(2), engine.solve("x^2-2", 0, 2, true), 1e-15);
+        assertEquals(0.7390851332151607, engine.solve("cos(x)-x", 0, 1, true), 1e-15);
+        assertEquals(Math.PI, engine.solve("sin(x)", 3, 4, true), 1e-15);
+        assertEquals(0, engine.solve("x^3", -1, 2, true), 1e-15);
+        assertThrows(ArithmeticException.class, () -> engine.solve("x^2+1", -1, 1, true));
+    }
+}
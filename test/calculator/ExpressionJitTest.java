@@ -0,0 +1,61 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// 生成字节码以后的结果要和解释执行一位不差；pom 里给测试设了 -Dcalculator.jit.threshold=1：
+// 新编译的 Program 第一次求值是解释执行（顺便生成类），第二次起走生成的类
+class ExpressionJitTest {
+
+    private static final String[] EXPRESSIONS = {
+            "3*x^3 - 2*x^2 + x - 7",
+            "sqrt(abs(x))/(x+1000.5)",
+            "sin(x)*cos(x)+abs(x)^0.5",
+            "-x%7",
+            "cbrt(x)+pow(x,1.5)",
+            "((x+1)*(x-1)/(x*x+1))^4",
+            "signum(x)+log(abs(x)+1)+tan(x)",
+            "exp(x/100)+floor(x)+ceil(x)+tanh(x)+atan(x)",
+            "hyp(x, 2*x)+sq(x)",
+    };
+
+    @Test
+    void jitIsEnabledForTests() {
+        assertTrue(ExpressionJit.ENABLED);
+        assertEquals(1, ExpressionJit.THRESHOLD);
+    }
+
+    @Test
+    void compiledMatchesInterpreterBitForBit() {
+        CalculatorEngine engine = new CalculatorEngine();
+        engine.defineFunctions(java.util.List.of("hyp(a,b)=sqrt(a^2+b^2)", "sq(x)=x*x"));
+        for (boolean isRadians : new boolean[]{true, false}) {
+            for (String expression : EXPRESSIONS) {
+                Node tree = engine.compile(expression, isRadians, "x").getProgram().tree;
+                assertNotNull(ExpressionJit.compile(tree), expression);
+                for (int i = -500; i <= 500; i++) {
+                    double x = i * 0.0731 + 0.001;
+                    Program program = Program.compile(tree, 1);
+                    double[] variables = {x};
+                    double interpreted = program.evaluate(variables, new double[program.getMaxStack()]);
+                    double compiled = program.evaluate(variables);
+                    assertEquals(Double.doubleToRawLongBits(interpreted), Double.doubleToRawLongBits(compiled),
+                            expression + " at x = " + x + " (radians: " + isRadians + ")");
+                }
+            }
+        }
+    }
+
+    @Test
+    void compiledDivisionByZeroThrows() {
+        Node tree = new CalculatorEngine().compile("1/(x-1)", true, "x").getProgram().tree;
+        ExpressionJit.Compiled compiled = ExpressionJit.compile(tree);
+        assertNotNull(compiled);
+        ArithmeticException e = assertThrows(ArithmeticException.class, () -> compiled.evaluate(new double[]{1}));
+        assertEquals("Division by zero!", e.getMessage());
+    }
+}
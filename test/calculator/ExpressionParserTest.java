@@ -0,0 +1,81 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// 解析 + 编译 + 求值整条链路：优先级、结合性、隐式乘法、常量、函数、角度制，结果和直接用 Math 算的比
+class ExpressionParserTest {
+
+    private final CalculatorEngine engine = new CalculatorEngine();
+
+    private double radians(String expression) {
+        return engine.calculate(expression, true);
+    }
+
+    private double degrees(String expression) {
+        return engine.calculate(expression, false);
+    }
+
+    @Test
+    void precedenceAndAssociativity() {
+        assertEquals(7, radians("1+2*3"));
+        assertEquals(9, radians("(1+2)*3"));
+        assertEquals(2, radians("8/2/2"));
+        assertEquals(-4, radians("1-2-3"));
+        assertEquals(Math.pow(2, 9), radians("2^3^2"));      // 乘方右结合
+        assertEquals(-4, radians("-2^2"));                   // 负号比乘方低
+        assertEquals(0.25, radians("2^-2"));
+        assertEquals(2, radians("17%5"));
+        assertEquals(1, radians("--1"));
+    }
+
+    @Test
+    void implicitMultiplication() {
+        assertEquals(6, radians("2(3)"));
+        assertEquals(2 * Math.PI, radians("2pi"));
+        assertEquals(20, radians("(1+3)(2+3)"));
+        assertEquals(2 * Math.sqrt(16), radians("2sqrt(16)"));
+    }
+
+    @Test
+    void constantsAndFunctions() {
+        assertEquals(Math.PI, radians("pi"));
+        assertEquals(Math.PI, radians("π"));
+        assertEquals(Math.E, radians("e"));
+        assertEquals(Math.sin(1) + Math.cos(2), radians("sin(1)+cos(2)"));
+        assertEquals(Math.log10(1000), radians("log10(1000)"));
+        assertEquals(Math.sqrt(2), radians("sqrt(2)"));
+        assertEquals(Math.cbrt(27), radians("cbrt(27)"));
+        assertEquals(Math.abs(-3.5), radians("abs(-3.5)"));
+        assertEquals(Math.exp(1.5) * Math.log(7), radians("exp(1.5)*log(7)"));
+        assertEquals(1e-3 * 2.5e2, radians("1e-3*2.5e2"));
+    }
+
+    @Test
+    void degreeMode() {
+        assertEquals(0.5, degrees("sin(30)"), 1e-15);
+        assertEquals(0.5, degrees("cos(60)"), 1e-15);
+        assertEquals(1, degrees("tan(45)"), 1e-15);
+        assertEquals(Math.sin(30), radians("sin(30)"));
+    }
+
+    @Test
+    void errors() {
+        assertThrows(ArithmeticException.class, () -> radians("1/0"));
+        assertThrows(ArithmeticException.class, () -> radians("5%0"));
+        assertThrows(IllegalArgumentException.class, () -> radians("(1+2"));
+        assertThrows(IllegalArgumentException.class, () -> radians("1+"));
+        assertThrows(IllegalArgumentException.class, () -> radians("foo(2)"));
+        assertThrows(IllegalArgumentException.class, () -> radians(""));
+        assertThrows(IllegalArgumentException.class, () -> radians("(".repeat(100_000)));
+    }
+
+    @Test
+    void variables() {
+        CompiledExpression f = engine.compile("3*x^2 + y", true, "x", "y");
+        assertEquals(3 * 4 + 5, f.evaluate(2, 5));
+        assertEquals(3 * 0.25 - 1, f.evaluate(-0.5, -1));
+    }
+}
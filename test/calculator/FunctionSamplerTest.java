@@ -0,0 +1,155 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// 画图采样：点按 x 排好、盖住可见范围，直的地方点稀、跳变和定义域边界找得准，平移只算新露出来的，范围不对就报错
+class FunctionSamplerTest {
+
+    private static final int WIDTH = 800;
+    private static final int HEIGHT = 600;
+
+    private final CalculatorEngine engine = new CalculatorEngine();
+
+    private FunctionSampler sampler(String expression) {
+        return new FunctionSampler(engine.compile(expression, true, "x"));
+    }
+
+    // 点排好序、盖住 [xMin, xMax]、y 就是那一点的值
+    private static void assertWellFormed(FunctionSampler sampler, double xMin, double xMax) {
+        double[] xs = sampler.getXs();
+        double[] ys = sampler.getYs();
+        assertTrue(xs[0] <= xMin && xs[sampler.size() - 1] >= xMax);
+        for (int i = 0; i < sampler.size(); i++) {
+            if (i > 0) {
+                assertTrue(xs[i] > xs[i - 1], "not sorted at " + i);
+            }
+            assertEquals(Double.doubleToLongBits(sampler.evaluate(xs[i])), Double.doubleToLongBits(ys[i]));
+        }
+    }
+
+    @Test
+    void straightLineNeedsOnlyTheGrid() {
+        FunctionSampler sampler = sampler("2*x + 1");
+        long evaluations = sampler.cover(-10, 10, -30, 30, WIDTH, HEIGHT);
+        assertWellFormed(sampler, -10, 10);
+        // 每 8 个像素一个网格点，验收时求的中点也留着
+        assertTrue(sampler.size() <= 2 * (WIDTH / 8 + 2), "points: " + sampler.size());
+        assertEquals(sampler.size(), evaluations);
+        for (int i = 0; i + 1 < sampler.size(); i++) {
+            assertTrue(sampler.connected(i));
+        }
+    }
+
+    @Test
+    void curveStaysWithinHalfAPixel() {
+        FunctionSampler sampler = sampler("sin(x) * 10");
+        double xMin = -20;
+        double xMax = 20;
+        sampler.cover(xMin, xMax, -12, 12, WIDTH, HEIGHT);
+        assertWellFormed(sampler, xMin, xMax);
+        double dy = 24.0 / HEIGHT;
+        double[] xs = sampler.getXs();
+        double[] ys = sampler.getYs();
+        for (int i = 0; i + 1 < sampler.size(); i++) {
+            if (xs[i + 1] <= xMin || xs[i] >= xMax) {
+                continue;
+            }
+            // 中点离连线不超过一个像素（验收时看的就是中点，这里用真实的函数值）
+            double xm = 0.5 * (xs[i] + xs[i + 1]);
+            double error = Math.abs(10 * Math.sin(xm) - 0.5 * (ys[i] + ys[i + 1]));
+            assertTrue(error <= dy, "interval " + xs[i] + " .. " + xs[i + 1] + " is off by " + error / dy + " px");
+        }
+    }
+
+    @Test
+    void findsJumpsAndDomainEdges() {
+        double dx = 4.0 / WIDTH;
+        FunctionSampler reciprocal = sampler("1/x");
+        reciprocal.cover(-2.003, 1.997, -10, 10, WIDTH, HEIGHT);
+        double[] xs = reciprocal.getXs();
+        int breaks = 0;
+        for (int i = 0; i + 1 < reciprocal.size(); i++) {
+            double y0 = reciprocal.getYs()[i];
+            double y1 = reciprocal.getYs()[i + 1];
+            boolean offScreen = y0 > 10 && y1 > 10 || y0 < -10 && y1 < -10;     // 屏幕外面的不用管连不连
+            if (!reciprocal.connected(i) && !offScreen) {
+                breaks++;
+                assertTrue(xs[i] < 0 && xs[i + 1] >= 0 || xs[i] <= 0 && xs[i + 1] > 0, "break at " + xs[i]);
+                assertTrue(xs[i + 1] - xs[i] < dx / 32, "break is " + (xs[i + 1] - xs[i]) / dx + " px wide");
+            }
+        }
+        assertTrue(breaks >= 1);
+
+        FunctionSampler root = sampler("sqrt(x - 0.3)");
+        root.cover(-1.0, 3.0, -1, 2, WIDTH, HEIGHT);
+        double[] rootXs = root.getXs();
+        double[] rootYs = root.getYs();
+        int first = 0;
+        while (Double.isNaN(rootYs[first])) {
+            first++;
+        }
+        assertTrue(first > 0 && rootXs[first] - 0.3 < dx / 32 && rootXs[first - 1] < 0.3,
+                "domain starts at " + rootXs[first]);
+        assertFalse(root.connected(first - 1));
+    }
+
+    @Test
+    void panningOnlySamplesTheNewPart() {
+        FunctionSampler sampler = sampler("sin(x) + x^2 / 50");
+        long initial = sampler.cover(-10, 10, -3, 3, WIDTH, HEIGHT);
+        assertEquals(0, sampler.cover(-10, 10, -3, 3, WIDTH, HEIGHT));
+        // 往右拖 40 个像素
+        double shift = 40 * 20.0 / WIDTH;
+        long panned = sampler.cover(-10 + shift, 10 + shift, -3, 3, WIDTH, HEIGHT);
+        assertTrue(panned < initial / 5, "panned " + panned + " vs " + initial);
+        assertWellFormed(sampler, -10 + shift, 10 + shift);
+        // 缩小：已有的点都够细，只要补两边
+        long zoomedOut = sampler.cover(-20 + shift, 20 + shift, -6, 6, WIDTH, HEIGHT);
+        assertTrue(zoomedOut < initial, "zoomed out " + zoomedOut + " vs " + initial);
+        assertWellFormed(sampler, -20 + shift, 20 + shift);
+    }
+
+    @Test
+    void narrowerThanUlpStillTerminates() {
+        FunctionSampler sampler = sampler("x");
+        sampler.cover(1, 1 + 1e-13, 1, 1 + 1e-13, WIDTH, HEIGHT);
+        assertWellFormed(sampler, 1, 1 + 1e-13);
+        // 一个像素比 ulp 还窄：网格点按整数个 ulp 走，间隔会比 8 个像素宽一点，多分一层
+        assertTrue(sampler.size() <= 4 * (WIDTH / 8 + 2), "points: " + sampler.size());
+    }
+
+    @Test
+    void rejectsBadArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new FunctionSampler(engine.compile("x + y", true, "x", "y")));
+        FunctionSampler sampler = sampler("x");
+        assertThrows(IllegalArgumentException.class, () -> sampler.cover(1, 1, 0, 1, WIDTH, HEIGHT));
+        assertThrows(IllegalArgumentException.class, () -> sampler.cover(0, 1, 0, 1, 0, HEIGHT));
+        assertThrows(IllegalArgumentException.class, () -> sampler.cover(0, Double.NaN, 0, 1, WIDTH, HEIGHT));
+        assertThrows(IllegalArgumentException.class, () -> sampler.cover(-1e308, 1e308, 0, 1, WIDTH, HEIGHT));
+        assertThrows(IllegalArgumentException.class, () -> sampler.cover(0, 1, -1e308, 1e308, WIDTH, HEIGHT));
+        assertEquals(0, sampler.getEvaluationCount());
+    }
+
+    @Test
+    void tabulatesWithDivisionByZero() {
+        FunctionSampler sampler = sampler("1/x");
+        double[] xs = new double[5];
+        double[] ys = new double[5];
+        sampler.tabulate(-1, 0.5, xs, ys);
+        assertEquals(0, xs[2], 0);
+        assertTrue(Double.isNaN(ys[2]));
+        assertEquals(-1, ys[0], 0);
+        assertEquals(2, ys[3], 0);
+        assertEquals(1, ys[4], 0);
+
+        FunctionSampler square = sampler("x^2");
+        square.tabulate(0, 0.1, xs, ys);
+        assertEquals(0.30000000000000004, xs[3], 0);    // 0 + 3 * 0.1，不是累加出来的
+        assertEquals(xs[3] * xs[3], ys[3], 0);
+    }
+}
@@ -0,0 +1,90 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+// 边输入边预览：一个字一个字敲、退格、中间改，每一步的预览都要和整段重新算的一样
+class LivePreviewTest {
+
+    private static final String[] EXPRESSIONS = {
+            "1+2*3-4/5",
+            "-2^2+3^-1",
+            "2pi(1+3)sqrt(16)",
+            "sin(30)+cos(60)*tan(45)",
+            "log10(1000)-exp(1.5)%2",
+            "pow(2, 10)/cbrt(27)",
+            "((1+2)*(3+4))^2/7",
+            "M1*2+M",
+            "1e-3*2.5e2+.5",
+            "(1+2)3+4(5)",
+    };
+
+    // 整段算一次：括号没关完的当成后面补齐了；算不出来是 null
+    private static Double full(CalculatorEngine engine, String text, boolean isRadians) {
+        int open = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '(') {
+                open++;
+            } else if (text.charAt(i) == ')') {
+                open--;
+            }
+        }
+        try {
+            return engine.calculate(text + ")".repeat(Math.max(open, 0)), isRadians);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    @Test
+    void typingMatchesFullEvaluation() {
+        CalculatorEngine engine = new CalculatorEngine();
+        engine.memoryStore(4);
+        engine.getRegisters().store(MemoryRegisters.indexOf("M1"), 2.5);
+        for (boolean isRadians : new boolean[]{true, false}) {
+            for (String expression : EXPRESSIONS) {
+                LivePreview preview = engine.newLivePreview(isRadians);
+                for (int i = 1; i <= expression.length(); i++) {
+                    preview.append(expression.substring(i - 1, i));
+                    String prefix = expression.substring(0, i);
+                    assertEquals(full(engine, prefix, isRadians), preview.getPreview(), prefix);
+                }
+                // 再一个个删回去
+                for (int i = expression.length() - 1; i > 0; i--) {
+                    preview.backspace();
+                    String prefix = expression.substring(0, i);
+                    assertEquals(full(engine, prefix, isRadians), preview.getPreview(), prefix);
+                }
+            }
+        }
+    }
+
+    @Test
+    void editsInTheMiddle() {
+        CalculatorEngine engine = new CalculatorEngine();
+        LivePreview preview = engine.newLivePreview(true);
+        preview.setText("12+34*56");
+        assertEquals(12 + 34 * 56, preview.getPreview());
+        preview.setText("12-34*56");
+        assertEquals(12 - 34 * 56, preview.getPreview());
+        preview.setText("12-3*56");
+        assertEquals(12 - 3 * 56, preview.getPreview());
+        preview.setText("(12-3)*56");
+        assertEquals((12 - 3) * 56, preview.getPreview());
+        preview.setText("");
+        assertNull(preview.getPreview());
+    }
+
+    @Test
+    void noPreviewForIncompleteOrFailingInput() {
+        LivePreview preview = new CalculatorEngine().newLivePreview(true);
+        for (String text : new String[]{"1+", "sin", "1/0", "2 3", "foo(1)", "1+)"}) {
+            preview.setText(text);
+            assertNull(preview.getPreview(), text);
+        }
+        preview.setText("sqrt(2");
+        assertEquals(Math.sqrt(2), preview.getPreview());
+    }
+}
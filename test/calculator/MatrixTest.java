@@ -0,0 +1,90 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// 矩阵：乘法、行列式、求逆、解方程和已知的答案比，大矩阵的分块乘法和最直接的三重循环比，再加上表达式里的写法
+class MatrixTest {
+
+    private final CalculatorEngine engine = new CalculatorEngine();
+
+    private static void assertMatrix(Matrix expected, Matrix actual, double delta) {
+        assertEquals(expected.shape(), actual.shape());
+        for (int i = 0; i < expected.getRows(); i++) {
+            for (int j = 0; j < expected.getColumns(); j++) {
+                assertEquals(expected.get(i, j), actual.get(i, j), delta, "[" + i + "][" + j + "]");
+            }
+        }
+    }
+
+    @Test
+    void knownAnswers() {
+        Matrix a = Matrix.of(2, 2, 1, 2, 3, 4);
+        assertMatrix(Matrix.of(2, 2, 7, 10, 15, 22), a.multiply(a), 0);
+        assertEquals(-2, a.determinant(), 1e-15);
+        assertMatrix(Matrix.of(2, 2, -2, 1, 1.5, -0.5), a.inverse(), 1e-15);
+        assertMatrix(Matrix.vector(-4, 4.5), a.solve(Matrix.vector(5, 6)), 1e-14);
+        assertMatrix(Matrix.of(2, 2, 1, 3, 2, 4), a.transpose(), 0);
+        assertEquals(5, a.trace());
+        assertMatrix(Matrix.identity(2), a.multiply(a.inverse()), 1e-15);
+        assertMatrix(a.multiply(a).multiply(a), a.power(3), 0);
+
+        Matrix b = Matrix.of(3, 3, 2, -1, 0, -1, 2, -1, 0, -1, 2);
+        assertEquals(4, b.determinant(), 1e-14);
+        assertMatrix(Matrix.of(3, 3, 0.75, 0.5, 0.25, 0.5, 1, 0.5, 0.25, 0.5, 0.75), b.inverse(), 1e-15);
+    }
+
+    @Test
+    void largeMultiplyMatchesNaiveLoop() {
+        int n = 150;    // 不是 BLOCK 的整数倍，边上有不满的块
+        Random random = new Random(42);
+        double[] data = new double[n * n];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = random.nextDouble() - 0.5;
+        }
+        Matrix a = Matrix.of(n, n, data);
+        Matrix product = a.multiply(a);
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                double sum = 0;
+                for (int k = 0; k < n; k++) {
+                    sum += data[i * n + k] * data[k * n + j];
+                }
+                assertEquals(sum, product.get(i, j), 1e-12);
+            }
+        }
+        Matrix x = Matrix.vector(random.doubles(n).toArray());
+        assertMatrix(x, a.solve(a.multiply(x)), 1e-9);
+    }
+
+    @Test
+    void singularAndNaN() {
+        Matrix singular = Matrix.of(2, 2, 1, 2, 2, 4);
+        assertEquals(0, singular.determinant());
+        assertThrows(ArithmeticException.class, singular::inverse);
+
+        Matrix nan = Matrix.of(2, 2, 1, 2, Double.NaN, 3);
+        assertTrue(Double.isNaN(nan.determinant()));
+        assertTrue(Double.isNaN(nan.inverse().get(0, 0)));
+        assertTrue(Double.isNaN(nan.solve(Matrix.vector(1, 1)).get(1, 0)));
+    }
+
+    @Test
+    void expressions() {
+        assertEquals(-2, engine.calculateMatrix("det([[1, 2], [3, 4]])", true).scalarValue(), 1e-15);
+        assertMatrix(Matrix.vector(-4, 4.5), engine.calculateMatrix("solve([[1, 2], [3, 4]], [5, 6])", true), 1e-14);
+        assertMatrix(Matrix.vector(2, 4, 6), engine.calculateMatrix("2[1, 2, 3]", true), 0);
+        assertMatrix(Matrix.of(2, 2, 0.5, 0, 0, 0.5), engine.calculateMatrix("[[1, 0], [0, 1]] / 2", true), 0);
+        Matrix a = Matrix.of(2, 2, 4, 1, 2, 3);
+        Matrix b = Matrix.vector(1, 2);
+        assertMatrix(a.inverse().multiply(b), engine.calculateMatrix("inv(A) * b", true, Map.of("A", a, "b", b)), 1e-15);
+        assertThrows(IllegalArgumentException.class, () -> engine.calculateMatrix("[1, 2] + [1, 2, 3]", true));
+        assertThrows(IllegalArgumentException.class, () -> engine.calculateMatrix("[[1, 2], [3]]", true));
+    }
+}
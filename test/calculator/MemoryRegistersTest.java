@@ -0,0 +1,106 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// 存储器：单个寄存器的存、加、减、清，多线程一起加，表达式里当变量用，批处理里的 "M1 += ..."
+class MemoryRegistersTest {
+
+    private static final int M1 = MemoryRegisters.indexOf("M1");
+    private static final int M2 = MemoryRegisters.indexOf("M2");
+
+    @Test
+    void namesAndIndexes() {
+        assertEquals(MemoryRegisters.MAIN, MemoryRegisters.indexOf("M"));
+        assertEquals(9, MemoryRegisters.indexOf("M9"));
+        assertEquals(-1, MemoryRegisters.indexOf("M10"));
+        assertEquals(-1, MemoryRegisters.indexOf("x"));
+        for (int i = 0; i < MemoryRegisters.COUNT; i++) {
+            assertEquals(i, MemoryRegisters.indexOf(MemoryRegisters.nameOf(i)));
+        }
+    }
+
+    @Test
+    void storeAddSubtractClear() {
+        MemoryRegisters registers = new MemoryRegisters();
+        assertEquals(0, registers.get(M1), 0);
+        registers.store(M1, 5);
+        registers.add(M1, 2.5);
+        registers.subtract(M1, 1);
+        assertEquals(6.5, registers.get(M1), 0);
+        registers.store(M1, -3);                // 存是覆盖，不是累加
+        assertEquals(-3, registers.get(M1), 0);
+        registers.store(M2, 7);
+        registers.clear(M1);
+        assertEquals(0, registers.get(M1), 0);
+        assertEquals(7, registers.get(M2), 0);
+
+        double[] expected = new double[MemoryRegisters.COUNT];
+        expected[M2] = 7;
+        assertArrayEquals(expected, registers.values(), 0);
+        registers.clearAll();
+        assertArrayEquals(new double[MemoryRegisters.COUNT], registers.values(), 0);
+    }
+
+    @Test
+    void concurrentAddsAreNotLost() throws InterruptedException {
+        MemoryRegisters registers = new MemoryRegisters();
+        registers.store(M1, 1000);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 100_000; i++) {
+                    registers.add(M1, 1);
+                    registers.subtract(M2, 0.5);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // 整数和 0.5 的倍数加起来都是精确的，顺序不影响结果
+        assertEquals(801_000, registers.get(M1), 0);
+        assertEquals(-400_000, registers.get(M2), 0);
+    }
+
+    @Test
+    void registersAreVariablesInExpressions() {
+        CalculatorEngine engine = new CalculatorEngine();
+        engine.getRegisters().store(M1, 3);
+        engine.getRegisters().store(MemoryRegisters.MAIN, 0.5);
+        assertEquals(6.5, engine.calculate("M1*2+M", true), 0);
+        engine.getRegisters().add(M1, 1);       // 同一个表达式（已经在缓存里了）要用新的值
+        assertEquals(8.5, engine.calculate("M1*2+M", true), 0);
+    }
+
+    @Test
+    void batchAccumulatesIntoRegisters() throws IOException {
+        CalculatorEngine engine = new CalculatorEngine();
+        String input = "M1 = 10\nM1 += 2*3\nM1 -= 1\nM2 += M1\nM1 += 1/0\nM10 += 1\nM3 = det([[1, 2], [3, 4]])\n";
+        assertEquals("10\n6\n1\n15\nError\nError\n-2\n", BatchRunnerTest.run(new BatchRunner(engine, true), input));
+        assertEquals(15, engine.getRegisters().get(M1), 0);         // 出错的那行没动寄存器
+        assertEquals(15, engine.getRegisters().get(M2), 0);
+        assertEquals(-2, engine.getRegisters().get(MemoryRegisters.indexOf("M3")), 1e-12);
+    }
+
+    @Test
+    void parallelBatchSumsEveryLine() throws IOException {
+        CalculatorEngine engine = new CalculatorEngine();
+        StringBuilder input = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 1; i <= 10_000; i++) {
+            input.append("M1 += ").append(i).append('\n');
+            expected.append(i).append('\n');
+        }
+        assertEquals(expected.toString(), BatchRunnerTest.run(new BatchRunner(engine, true, 4), input.toString()));
+        assertEquals(10_000 * 10_001 / 2, engine.getRegisters().get(M1), 0);
+    }
+}
@@ -0,0 +1,77 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// 编译前的优化：常量折叠、小整数次幂；除法只有除以 2 的幂才换成乘法（别的常量换了会差最后一位）
+class OptimizerTest {
+
+    private static final String[] X = {"x"};
+
+    private static Node optimize(String text) {
+        return Optimizer.optimize(ExpressionParser.parse(text, X, Map.of()));
+    }
+
+    // 优化前后的结果一位不差
+    private static void assertSameResults(String text) {
+        Node tree = ExpressionParser.parse(text, X, Map.of());
+        Program plain = Program.compile(tree, 1);
+        Program optimized = Program.compile(Optimizer.optimize(tree), 1);
+        for (int i = -1000; i <= 1000; i++) {
+            double x = i * 0.731 + 0.01;
+            assertEquals(Double.doubleToLongBits(plain.evaluate(x)), Double.doubleToLongBits(optimized.evaluate(x)),
+                    text + " at x = " + x);
+        }
+    }
+
+    private static char operator(Node node) {
+        return assertInstanceOf(Node.Binary.class, node).operator;
+    }
+
+    @Test
+    void divisionByOtherConstantsStaysADivision() {
+        assertEquals('/', operator(optimize("x/49")));
+        assertEquals('/', operator(optimize("x/10")));
+        Node.Binary change = (Node.Binary) optimize("log(x)/log(7)");     // 换底公式：log(7) 折成数，但还是除法
+        assertEquals('/', change.operator);
+        assertEquals(Math.log(7), assertInstanceOf(Node.Number.class, change.right).value);
+        assertEquals(1d, Program.compile(optimize("x/49"), 1).evaluate(49));
+        assertSameResults("x/49");
+        assertSameResults("log(x)/log(7)");
+        assertSameResults("floor(x/0.1)");
+    }
+
+    @Test
+    void divisionByPowersOfTwoBecomesMultiplication() {
+        Node.Binary quarter = (Node.Binary) optimize("x/4");
+        assertEquals('*', quarter.operator);
+        assertEquals(0.25, assertInstanceOf(Node.Number.class, quarter.right).value);
+        assertEquals(-2, ((Node.Number) ((Node.Binary) optimize("x/-0.5")).right).value);
+        assertSameResults("x/4");
+        assertSameResults("x/-0.5");
+        assertSameResults("x/1024");
+        // 倒数是次正规数、除数是次正规数、0：都不换
+        assertEquals('/', operator(optimize("x/2^1023")));
+        assertEquals('/', operator(optimize("x/2^-1074")));
+        assertEquals('/', operator(optimize("x/0")));
+    }
+
+    @Test
+    void foldsConstantsAndSmallPowers() {
+        assertEquals(2 * Math.PI + Math.log(2), assertInstanceOf(Node.Number.class, optimize("2*pi+log(2)")).value);
+        assertEquals(2, assertInstanceOf(Node.IntPower.class, optimize("x^2")).exponent);
+        assertEquals(-1, assertInstanceOf(Node.IntPower.class, optimize("x^-1")).exponent);
+        Node x = optimize("x");
+        assertInstanceOf(Node.Variable.class, optimize("x^1"));
+        assertInstanceOf(Node.Variable.class, optimize("--x*1"));
+        assertSame(x, Optimizer.optimize(x));
+        // 会出错的常量不提前算，求值的时候照常报错
+        assertThrows(ArithmeticException.class, () -> Program.compile(optimize("1/0+x"), 1).evaluate(1));
+    }
+}
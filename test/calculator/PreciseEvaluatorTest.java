@@ -0,0 +1,93 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// 高精度求值：和已知的十进制答案比（double 算不对的那些），算不了的交回给 double（返回 null），中断了就停
+class PreciseEvaluatorTest {
+
+    private final CalculatorEngine engine = new CalculatorEngine();
+
+    private String precise(String expression, int digits) {
+        return engine.formatPrecise(engine.calculatePrecise(expression, true, digits));
+    }
+
+    @Test
+    void decimalArithmeticIsExact() {
+        assertEquals("0.3", precise("0.1+0.2", 20));
+        assertEquals("1", precise("1e30+1-1e30", 20));
+        assertEquals("0.0000000001", precise("1.0000000001-1", 20));
+        assertEquals("0.33333333333333333333", precise("1/3", 20));
+        assertEquals("2", precise("(0.1+0.2)*10-1", 20));
+    }
+
+    @Test
+    void functionsMatchKnownDigits() {
+        assertEquals("3.1415926535897932385", precise("pi", 20));
+        assertEquals("2.7182818284590452354", precise("e", 20));
+        assertEquals("2.7182818284590452354", precise("exp(1)", 20));
+        assertEquals("0.69314718055994530942", precise("log(2)", 20));
+        assertEquals("1.4142135623730950488", precise("sqrt(2)", 20));
+        assertEquals("0.84147098480789650665", precise("sin(1)", 20));
+        assertEquals("1.2599210498948731648", precise("cbrt(2)", 20));
+        assertEquals("3.14159265358979323846264338327950288419716939937510582097494",
+                precise("pi", 60));
+    }
+
+    @Test
+    void cancellationRaisesPrecision() {
+        // double 里 exp(1e-15)-1 只剩一两位对的，这里要全对
+        assertEquals("1.0000000000000005E-15", precise("exp(1e-15)-1", 20));
+        // cos、sqrt 的结果截断后正好很短，不能当成精确值
+        assertEquals("4.9999999999999999999958E-21", precise("1-cos(1e-10)", 23));
+        assertEquals("4.9999999999999999999875E-21", precise("sqrt(1+1e-20)-1", 23));
+        assertEquals("0", precise("sqrt(4)-2", 20));
+    }
+
+    @Test
+    void degreeModeIsExactAtSpecialAngles() {
+        assertEquals("0.5", engine.formatPrecise(engine.calculatePrecise("sin(30)", false)));
+        assertEquals("1", engine.formatPrecise(engine.calculatePrecise("tan(45)", false)));
+    }
+
+    @Test
+    void outOfRangeFallsBackToDouble() {
+        assertNull(engine.calculatePrecise("log(0)", true));
+        assertNull(engine.calculatePrecise("sqrt(-1)", true));
+        assertNull(engine.calculatePrecise("sin(pi)", true));       // 结果只是舍入噪声
+        assertThrows(ArithmeticException.class, () -> engine.calculatePrecise("1/0", true));
+        assertThrows(IllegalArgumentException.class, () -> engine.calculatePrecise("1", true, 0));
+    }
+
+    @Test
+    void usesRegisterValues() {
+        engine.getRegisters().store(MemoryRegisters.indexOf("M1"), 0.1);
+        assertEquals("0.3", precise("M1+0.2", 20));
+    }
+
+    @Test
+    void stopsWhenInterrupted() throws InterruptedException {
+        AtomicReference<Throwable> thrown = new AtomicReference<>();
+        Thread worker = new Thread(() -> {
+            Thread.currentThread().interrupt();
+            try {
+                engine.calculatePrecise("exp(1)", true, 5000);
+            } catch (Throwable e) {
+                thrown.set(e);
+            }
+        });
+        worker.start();
+        worker.join(10_000);
+        assertTrue(!worker.isAlive());
+        assertInstanceOf(CancellationException.class, thrown.get());
+    }
+}
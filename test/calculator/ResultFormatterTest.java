@@ -0,0 +1,86 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+
+import java.text.DecimalFormat;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// 结果转文本：显示的格式和原来的 DecimalFormat("#.##########") 一样（1e16 以下），最短格式能原样读回来
+class ResultFormatterTest {
+
+    private static String display(double value) {
+        char[] buffer = new char[ResultFormatter.MAX_LENGTH];
+        return new String(buffer, 0, ResultFormatter.formatDisplay(value, buffer, 0));
+    }
+
+    private static String shortest(double value) {
+        char[] buffer = new char[ResultFormatter.MAX_LENGTH];
+        return new String(buffer, 0, ResultFormatter.formatShortest(value, buffer, 0));
+    }
+
+    @Test
+    void displayMatchesDecimalFormat() {
+        DecimalFormat reference = new DecimalFormat("#.##########");
+        double[] special = {0d, -0d, 1d, -1d, 0.1, 0.1 + 0.2, 1d / 3, 2d / 3, -2d / 3, 0.5, 2.5, 1e-10, 4e-11, 5e-11, 6e-11,
+                -4e-11, 1.00000000005, 0.00000000015, 123456789.123456789, 9999999999.99999999, 1e15, 1e16 - 1,
+                Double.MIN_VALUE, -Double.MIN_VALUE, Double.MIN_NORMAL, Math.PI, Math.E, Double.NaN,
+                Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (double value : special) {
+            assertEquals(reference.format(value), display(value), "value " + value);
+        }
+        Random random = new Random(13);
+        for (int i = 0; i < 200_000; i++) {
+            double value;
+            switch (i % 4) {
+                case 0:
+                    value = random.nextDouble();
+                    break;
+                case 1:
+                    value = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(32) - 16);
+                    break;
+                case 2:
+                    value = random.nextInt(2_000_000) / 1000d - 1000;    // 正好几位小数的
+                    break;
+                default:
+                    value = Math.round(random.nextDouble() * 1e12) / 1e12 + 0.5e-10;    // 卡在第 10 位小数一半附近的
+                    break;
+            }
+            assertEquals(reference.format(value), display(value), "value " + value);
+        }
+    }
+
+    @Test
+    void largeValuesUseShortestDigits() {
+        assertEquals("100000000000000000000000", display(1e23));   // DecimalFormat 是 99999999999999990000000
+        assertEquals("12345678901234567000", display(12345678901234567890d));
+        assertEquals("-" + "1" + "0".repeat(308), display(-1e308));
+    }
+
+    @Test
+    void shortestRoundTrips() {
+        double[] values = {0.1, 0.3, 1e23, 1.5e-7, 123.0, -0.0, 5e-324, Double.MAX_VALUE, 1d / 3, 200, 2e22, 1e-5};
+        for (double value : values) {
+            assertEquals(value, Double.parseDouble(shortest(value)), shortest(value));
+        }
+        assertEquals("200", shortest(200));
+        assertEquals("0.1", shortest(0.1));
+        Random random = new Random(17);
+        for (int i = 0; i < 100_000; i++) {
+            double value = Double.longBitsToDouble(random.nextLong());
+            if (Double.isFinite(value)) {
+                assertEquals(value, Double.parseDouble(shortest(value)), shortest(value));
+            }
+        }
+    }
+
+    @Test
+    void writesAtOffsetThroughEngine() {
+        CalculatorEngine engine = new CalculatorEngine();
+        char[] buffer = new char[ResultFormatter.MAX_LENGTH + 5];
+        int end = engine.format(0.75, buffer, 5);
+        assertEquals("0.75", new String(buffer, 5, end - 5));
+        assertEquals("0.3333333333", engine.format(1d / 3));
+    }
+}
@@ -0,0 +1,85 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// 纯子表达式的结果缓存：按结构（不是文本）命中、加乘交换算同一个、不纯的和出错的不折叠、长链不爆栈、大子树不整棵记
+class ResultMemoTest {
+
+    private static final String[] X = {"x"};
+    private static final CustomFunctions.SinDegrees SIN_DEGREES = new CustomFunctions.SinDegrees();   // 函数按对象比，要用同一个
+
+    private static Node parse(String text) {
+        return ExpressionParser.parse(text, X, Map.of("sind", SIN_DEGREES));
+    }
+
+    @Test
+    void sharesValuesAcrossExpressions() {
+        ResultMemo memo = new ResultMemo(ResultMemo.DEFAULT_MAX_SIZE);
+        Node first = memo.fold(parse("sind(30)+x"), true);
+        assertEquals(1, memo.getMissCount());
+        assertEquals(SIN_DEGREES.apply(30), ((Node.Number) ((Node.Binary) first).left).value);
+
+        memo.fold(parse("x*sind(30.0)"), true);     // 数字按值比
+        assertEquals(1, memo.getHitCount());
+        memo.fold(parse("x*sind(15+15)"), true);    // 整棵 sind(15+15) 一起查，结构不一样
+        assertEquals(1, memo.getHitCount());
+        memo.fold(parse("2*sind(30)"), true);       // 整棵都是纯的，查的是 2*sind(30)
+        assertEquals(1, memo.getHitCount());
+
+        memo.fold(parse("sind(1)*sind(2)+x"), true);
+        memo.fold(parse("sind(2)*sind(1)-x"), true);    // 乘法两边交换算同一个
+        assertEquals(2, memo.getHitCount());
+
+        memo.fold(parse("sind(30)+x"), false);          // 角度模式不一样就不是同一个
+        assertEquals(2, memo.getHitCount());
+    }
+
+    @Test
+    void leavesImpureAndFailingTreesAlone() {
+        ResultMemo memo = new ResultMemo(ResultMemo.DEFAULT_MAX_SIZE);
+        Node impure = parse("x+1");
+        assertSame(impure, memo.fold(impure, true));
+        Node failing = parse("1/0+x");
+        assertSame(failing, memo.fold(failing, true));
+        assertEquals(0, memo.size());
+        assertThrows(ArithmeticException.class, () -> new CalculatorEngine().calculate("1/0", true));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() {
+        ResultMemo memo = new ResultMemo(2);
+        memo.fold(parse("sind(1)+x"), true);
+        memo.fold(parse("sind(2)+x"), true);
+        memo.fold(parse("sind(1)+x"), true);    // sind(1) 变成最近用过的
+        memo.fold(parse("sind(3)+x"), true);    // 挤掉 sind(2)
+        assertEquals(2, memo.size());
+        long misses = memo.getMissCount();
+        memo.fold(parse("sind(1)+x"), true);
+        assertEquals(misses, memo.getMissCount());
+        memo.fold(parse("sind(2)+x"), true);
+        assertEquals(misses + 1, memo.getMissCount());
+    }
+
+    @Test
+    void longChainsDoNotOverflowTheStack() {
+        // 解析出来是 10 万层深的左偏树
+        ResultMemo memo = new ResultMemo(ResultMemo.DEFAULT_MAX_SIZE);
+        Node tree = parse("sind(1)" + "+sind(1)".repeat(99_999) + "+x");
+        Node folded = memo.fold(tree, true);
+        assertInstanceOf(Node.Binary.class, folded);
+        // 整条纯的链比 MAX_KEY_NODES 大，不整棵记：只记了底下够小的那一截（折成了一个数）和右边的 sind(1)
+        assertEquals(2, memo.size());
+        Node bottom = folded;
+        while (bottom instanceof Node.Binary) {
+            bottom = ((Node.Binary) bottom).left;
+        }
+        assertInstanceOf(Node.Number.class, bottom);
+    }
+}
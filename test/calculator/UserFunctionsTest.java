@@ -0,0 +1,127 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// 用户函数：定义、写错的行、改函数体后已经编译好的表达式跟着变、定义文件改了自动重读
+class UserFunctionsTest {
+
+    private final CalculatorEngine engine = new CalculatorEngine();
+
+    @Test
+    void definesFunctions() {
+        List<String> errors = engine.defineFunctions(Arrays.asList(
+                "hyp(a, b) = sqrt(a^2 + b^2)",
+                "# 注释行",
+                "",
+                "sq(x) = x^2   # 平方",
+                "quad(x) = sq(sq(x))",
+                "half(x) = sin(x) / 2"));
+        assertEquals(Collections.emptyList(), errors);
+        assertEquals(5, engine.calculate("hyp(3, 4)", true), 0);
+        assertEquals(81, engine.calculate("quad(3)", true), 0);
+        assertEquals(0.25, engine.calculate("half(30)", false), 1e-15);     // 函数体里的 sin 跟着调用的角度模式
+        assertEquals(Math.sin(30) / 2, engine.calculate("half(30)", true), 1e-15);
+        assertTrue(engine.getFunctionNames().containsAll(Arrays.asList("hyp", "sq", "quad", "half")));
+    }
+
+    @Test
+    void reportsBadLines() {
+        List<String> errors = engine.defineFunctions(Arrays.asList(
+                "ok(x) = x + 1",
+                "broken(x) = x +",
+                "sin(x) = x",
+                "self(x) = self(x)",
+                "noparens = 1"));
+        assertEquals(4, errors.size(), errors.toString());
+        assertTrue(errors.get(0).startsWith("Line 2: "), errors.get(0));
+        assertTrue(errors.get(3).startsWith("Line 5: "), errors.get(3));
+        assertEquals(2, engine.calculate("ok(1)", true), 0);
+        assertThrows(RuntimeException.class, () -> engine.calculate("broken(1)", true));
+    }
+
+    @Test
+    void redefiningBodyUpdatesCompiledExpressions() {
+        engine.defineFunctions(Collections.singletonList("f(x) = x * 2"));
+        CompiledExpression compiled = engine.compile("f(x) + 1", true, "x");
+        assertEquals(7, compiled.evaluate(3), 0);
+        assertEquals(7, engine.calculate("f(3) + 1", true), 0);
+
+        engine.defineFunctions(Collections.singletonList("f(x) = x * 10"));
+        assertEquals(31, compiled.evaluate(3), 0);
+        assertEquals(31, engine.calculate("f(3) + 1", true), 0);
+
+        // 参数个数变了：缓存清掉，新写法能用，旧的编译结果不再能算
+        engine.defineFunctions(Collections.singletonList("f(x, y) = x * y"));
+        assertEquals(13, engine.calculate("f(3, 4) + 1", true), 0);
+        assertThrows(RuntimeException.class, () -> compiled.evaluate(3));
+
+        engine.defineFunctions(Collections.emptyList());
+        assertThrows(RuntimeException.class, () -> engine.calculate("f(3, 4)", true));
+    }
+
+    @Test
+    void loadsMissingFileAsEmpty(@TempDir Path dir) throws Exception {
+        engine.defineFunctions(Collections.singletonList("g(x) = x"));
+        assertEquals(Collections.emptyList(), engine.loadFunctions(dir.resolve("none.txt")));
+        assertEquals(Collections.emptyList(), engine.getFunctionNames());
+    }
+
+    @Test
+    void reloadsWhenFileChanges(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve(UserFunctions.FILE_NAME);
+        Files.write(file, Collections.singletonList("k(x) = x + 1"), StandardCharsets.UTF_8);
+        BlockingQueue<List<String>> reloads = new LinkedBlockingQueue<>();
+        try (Closeable watcher = engine.watchFunctions(file, reloads::add)) {
+            assertEquals(Collections.emptyList(), reloads.poll(10, TimeUnit.SECONDS));
+            assertEquals(2, engine.calculate("k(1)", true), 0);
+
+            Files.write(file, Arrays.asList("k(x) = x + 100", "bad(x) = )"), StandardCharsets.UTF_8);
+            List<String> errors = awaitReload(reloads, () -> engine.calculate("k(1)", true) == 101);
+            assertEquals(1, errors.size(), errors.toString());
+            assertTrue(errors.get(0).startsWith("Line 2: "), errors.get(0));
+            assertEquals(101, engine.calculate("k(1)", true), 0);
+
+            Files.delete(file);
+            awaitReload(reloads, () -> engine.getFunctionNames().isEmpty());
+            assertThrows(RuntimeException.class, () -> engine.calculate("k(1)", true));
+        }
+    }
+
+    // 一次保存可能触发不止一次重读，等到想要的状态为止
+    private static List<String> awaitReload(BlockingQueue<List<String>> reloads, BooleanSupplier done)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        List<String> last = null;
+        while (System.nanoTime() < deadline) {
+            List<String> errors = reloads.poll(100, TimeUnit.MILLISECONDS);
+            if (errors != null) {
+                last = errors;
+            }
+            try {
+                if (last != null && done.getAsBoolean()) {
+                    return last;
+                }
+            } catch (RuntimeException e) {
+                // 还没重读完
+            }
+        }
+        throw new AssertionError("functions file was not reloaded");
+    }
+}